@@ -0,0 +1,159 @@
+package com.packetboard.packetboard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Binary snapshot of the results of a {@link PacketParser} ({@code .pbsnap}), so a capture can be shown again
+ * without re-parsing it.
+ * <p>
+ * Layout:
+ * <pre>
+ * header   magic: 8, version: 4, capture size: 8 and mtime: 8 (-1 if not tied to a capture), SNI and rDNS flags,
+ *          heavy hitter memory: 8 (0 for exact talker counts)
+ * body     deflated parser state: talkers, MAC history, destinations, SNI bytes, protocol counts, DNS names,
+ *          fingerprints, flows, the throughput series, the distinct count sketches, the VLAN counts, the radio stats,
+ *          the ICMP stats with their pending echoes, the bounded counts, if any, and the sliding window rankings, if
+ *          enabled
+ * </pre>
+ * Snapshots are written next to their target and moved in place, so a crash never leaves a truncated file behind.
+ * Snapshots of another version are rejected rather than misread.
+ */
+public final class AnalysisSnapshot {
+    public static final String SUFFIX = ".pbsnap";
+    private static final byte[] MAGIC = {'P', 'B', 'S', 'N', 'A', 'P', 0, 0};
+    private static final int VERSION = 12;
+
+    private AnalysisSnapshot() {
+    }
+
+    /**
+     * Snapshot file written next to a capture.
+     */
+    public static Path sidecarOf(Path pcap) {
+        return pcap.resolveSibling(pcap.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Write the results of a parser.
+     *
+     * @param parser  parser, after its load has finished.
+     * @param target  snapshot file.
+     * @param capture capture the results came from, used to detect a changed capture; null if none.
+     */
+    public static void write(PacketParser parser, Path target, Path capture) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(tmp)) {
+            write(parser, file, capture);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Write the results of a parser to a stream, e.g. to send them to another process. The stream is left open.
+     *
+     * @param capture capture the results came from, or null.
+     */
+    public static void write(PacketParser parser, OutputStream out, Path capture) throws IOException {
+        DataOutputStream header = new DataOutputStream(out);
+        header.write(MAGIC);
+        header.writeInt(VERSION);
+        header.writeLong(capture == null ? -1 : Files.size(capture));
+        header.writeLong(capture == null ? -1 : Files.getLastModifiedTime(capture).toMillis());
+        header.writeBoolean(parser.isDoSNI());
+        header.writeBoolean(parser.isDorDNS());
+        header.writeLong(parser.getHeavyHitterMemory());
+        header.flush();
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, 1 << 16);
+            DataOutputStream body = new DataOutputStream(new BufferedOutputStream(deflated, 1 << 16));
+            parser.writeState(body);
+            body.flush();
+            deflated.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Read a snapshot into a new parser, ready for the dashboard.
+     */
+    public static PacketParser read(Path snapshot) throws IOException {
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(snapshot))) {
+            return read(file);
+        }
+    }
+
+    /**
+     * Read a snapshot written by {@link #write(PacketParser, OutputStream, Path)} from a stream.
+     */
+    public static PacketParser read(InputStream in) throws IOException {
+        DataInputStream header = new DataInputStream(in);
+        readHeader(header);
+        header.readLong(); // capture size
+        header.readLong(); // capture mtime
+        PacketParser parser = new PacketParser();
+        parser.setDoSNI(header.readBoolean());
+        parser.setDorDNS(header.readBoolean());
+        header.readLong(); // heavy hitter memory, also in the state
+        parser.readState(new DataInputStream(new BufferedInputStream(new InflaterInputStream(in), 1 << 16)));
+        return parser;
+    }
+
+    /**
+     * Read the snapshot written next to a capture by {@link PacketParser#load}, if it is still valid.
+     *
+     * @param doSNI             SNI lookups the caller wants; a snapshot made without them is not used.
+     * @param dorDNS            rDNS lookups the caller wants; a snapshot made without them is not used.
+     * @param heavyHitterMemory talker count budget the caller wants, 0 for exact counts; a snapshot made with another
+     *                          budget is not used, so estimates never pass for exact counts.
+     * @return the parser, or null if there is no snapshot, it is of another version, or the capture has changed.
+     */
+    public static PacketParser openFresh(Path pcap, boolean doSNI, boolean dorDNS, long heavyHitterMemory)
+            throws IOException {
+        Path sidecar = sidecarOf(pcap);
+        if (!Files.exists(sidecar)) {
+            return null;
+        }
+        try (DataInputStream header = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar)))) {
+            readHeader(header);
+            if (header.readLong() != Files.size(pcap) || header.readLong() != Files.getLastModifiedTime(pcap).toMillis()
+                    || header.readBoolean() != doSNI || header.readBoolean() != dorDNS
+                    || header.readLong() != heavyHitterMemory) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return read(sidecar);
+    }
+
+    /**
+     * Check the magic and version.
+     */
+    private static void readHeader(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not an analysis snapshot");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.packetboard.packetboard;
+
+import com.packetboard.packetboard.Parser.Pcap;
+import com.packetboard.packetboard.Parser.PcapRecord;
+import com.packetboard.packetboard.Parser.PcapRecordReader;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Follows a capture that is still being written, e.g. by {@code tcpdump -w}, like {@code tail -f}: records are parsed
+ * into a {@link PacketParser} as they are appended, so its results can be shown while the capture runs.
+ * <p>
+ * The file is kept open and polled for new data. Each byte is read once; a record only partly written is kept back
+ * until the rest of it arrives. Records are parsed on one background thread, in file order.
+ */
+public final class CaptureFollower implements Closeable {
+    public static final long DEFAULT_POLL_MILLIS = 200;
+    private static final Logger logger = LogManager.getLogger(CaptureFollower.class);
+
+    private final PacketParser parser;
+    private final Path capture;
+    private final long pollMillis;
+    private final AtomicLong records = new AtomicLong(0);
+    private final AtomicLong offset = new AtomicLong(0); // End of the last record parsed
+    private volatile boolean stopped;
+    private volatile Thread thread;
+
+    /**
+     * @param parser  parser to add the records to. Its SNI and rDNS settings are used as they are.
+     * @param capture pcap file, which may not have its global header yet.
+     */
+    public CaptureFollower(PacketParser parser, Path capture) {
+        this(parser, capture, DEFAULT_POLL_MILLIS);
+    }
+
+    /**
+     * @param pollMillis wait between checks for new data once the end of the file is reached.
+     */
+    public CaptureFollower(PacketParser parser, Path capture, long pollMillis) {
+        this.parser = parser;
+        this.capture = capture;
+        this.pollMillis = pollMillis;
+    }
+
+    /**
+     * Start following on a background thread.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            throw new IllegalStateException("Already following " + capture);
+        }
+        thread = new Thread(this::follow, "Follow " + capture.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void follow() {
+        try (FileChannel channel = FileChannel.open(capture, StandardOpenOption.READ)) {
+            while (channel.size() < PcapRecord.GLOBAL_HEADER_LENGTH) {
+                if (!pause()) {
+                    return;
+                }
+            }
+            Pcap.Header header = PcapRecord.readHeader(channel);
+            PacketParser.LinkDecoder decoder = parser.decoderFor(header.network());
+            channel.position(PcapRecord.GLOBAL_HEADER_LENGTH);
+            PcapRecordReader reader = new PcapRecordReader(channel, PcapRecord.GLOBAL_HEADER_LENGTH, Long.MAX_VALUE,
+                    header.snaplen());
+            offset.set(PcapRecord.GLOBAL_HEADER_LENGTH);
+            while (!stopped) {
+                PcapRecord record = reader.next();
+                if (record != null) {
+                    parser.parseRecord(decoder, record);
+                    records.incrementAndGet();
+                    offset.set(reader.offset());
+                    continue;
+                }
+                if (channel.size() < channel.position()) {
+                    logger.error("{} was truncated, stopped following it", capture);
+                    return;
+                }
+                if (!pause()) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Could not follow {}", capture);
+            logger.debug(e);
+        }
+    }
+
+    /**
+     * Wait for more data.
+     *
+     * @return false if following was stopped meanwhile.
+     */
+    private boolean pause() {
+        try {
+            Thread.sleep(pollMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !stopped;
+    }
+
+    /**
+     * Number of records parsed so far.
+     */
+    public long getRecords() {
+        return records.get();
+    }
+
+    /**
+     * Offset up to which the capture has been parsed.
+     */
+    public long getOffset() {
+        return offset.get();
+    }
+
+    public boolean isRunning() {
+        Thread current = thread;
+        return current != null && current.isAlive();
+    }
+
+    /**
+     * Stop following. Returns once the background thread has finished, within about one poll interval.
+     */
+    @Override
+    public synchronized void close() {
+        stopped = true;
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.packetboard.packetboard;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Layout shared by {@link ColumnarWriter} and {@link ColumnarReader}.
+ * <p>
+ * A {@code .pbcol} file is a sequence of row groups followed by a footer, all little-endian:
+ * <pre>
+ * magic        8 bytes
+ * row groups   one chunk per column and group, encoded as below
+ * footer       column count, (name, type) per column, group count, (rows, (offset, length, encoding) per column)
+ *              per group, all as varints
+ * trailer      footer length: 4, magic: 8
+ * </pre>
+ * Chunk encodings:
+ * <pre>
+ * DELTA        zigzag varint of the first value, then of each difference to the previous one
+ * VARINT       zigzag varint per row
+ * RLE          (zigzag varint value, varint run length) per run
+ * DICTIONARY   varint entry count, (varint length, UTF-8) per entry, then varint entry per row; 0 is null
+ * </pre>
+ * Rows of a group are sorted by timestamp, so deltas stay small.
+ */
+final class ColumnarFormat {
+    static final byte[] MAGIC = {'P', 'B', 'C', 'O', 'L', 0, 0, 1};
+    static final int TRAILER_LENGTH = 12;
+
+    static final int TYPE_LONG = 0;
+    static final int TYPE_STRING = 1;
+
+    static final int DELTA = 0;
+    static final int VARINT = 1;
+    static final int RLE = 2;
+    static final int DICTIONARY = 3;
+
+    static final String[] COLUMNS = {"ts", "src", "dst", "src_port", "dst_port", "protocol", "length", "vlan",
+            "tcp_flags", "sni", "ja3"};
+    static final int[] TYPES = {TYPE_LONG, TYPE_STRING, TYPE_STRING, TYPE_LONG, TYPE_LONG, TYPE_LONG, TYPE_LONG,
+            TYPE_LONG, TYPE_LONG, TYPE_STRING, TYPE_STRING};
+    static final int[] ENCODINGS = {DELTA, DICTIONARY, DICTIONARY, VARINT, VARINT, RLE, VARINT, RLE, RLE,
+            DICTIONARY, DICTIONARY};
+
+    private ColumnarFormat() {
+    }
+
+    /**
+     * Growable byte buffer with varint writers.
+     */
+    static final class Sink {
+        byte[] buf = new byte[1 << 16];
+        int len;
+
+        void reset() {
+            len = 0;
+        }
+
+        void put(byte b) {
+            if (len == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            buf[len++] = b;
+        }
+
+        void put(byte[] bytes) {
+            if (len + bytes.length > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + bytes.length));
+            }
+            System.arraycopy(bytes, 0, buf, len, bytes.length);
+            len += bytes.length;
+        }
+
+        void putVarLong(long v) {
+            while ((v & ~0x7fL) != 0) {
+                put((byte) ((v & 0x7f) | 0x80));
+                v >>>= 7;
+            }
+            put((byte) v);
+        }
+
+        void putZigZag(long v) {
+            putVarLong((v << 1) ^ (v >> 63));
+        }
+    }
+
+    static long getVarLong(ByteBuffer in) {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            v |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return v;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    static long getZigZag(ByteBuffer in) {
+        long v = getVarLong(in);
+        return (v >>> 1) ^ -(v & 1);
+    }
+}
@@ -0,0 +1,194 @@
+package com.packetboard.packetboard;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static com.packetboard.packetboard.ColumnarFormat.*;
+
+/**
+ * Reads columns of a file written by {@link ColumnarWriter}. Only the chunks of the requested columns are read
+ * and decoded.
+ */
+public class ColumnarReader implements Closeable {
+    private final FileChannel channel;
+    private final String[] columns;
+    private final int[] types;
+    private final long[][] groups; // per group: rows, then (offset, length, encoding) per column
+    private final long rowCount;
+
+    private ColumnarReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        long size = channel.size();
+        if (size < MAGIC.length + TRAILER_LENGTH) {
+            throw new IOException("Not a columnar export");
+        }
+        ByteBuffer trailer = read(size - TRAILER_LENGTH, TRAILER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        int footerLength = trailer.getInt();
+        byte[] magic = new byte[MAGIC.length];
+        trailer.get(magic);
+        if (!Arrays.equals(magic, MAGIC) || footerLength < 0 || footerLength > size - TRAILER_LENGTH) {
+            throw new IOException("Not a columnar export");
+        }
+        ByteBuffer footer = read(size - TRAILER_LENGTH - footerLength, footerLength);
+
+        int columnCount = (int) getVarLong(footer);
+        columns = new String[columnCount];
+        types = new int[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            byte[] name = new byte[(int) getVarLong(footer)];
+            footer.get(name);
+            columns[c] = new String(name, StandardCharsets.UTF_8);
+            types[c] = (int) getVarLong(footer);
+        }
+        groups = new long[(int) getVarLong(footer)][];
+        long rows = 0;
+        for (int g = 0; g < groups.length; g++) {
+            groups[g] = new long[1 + columnCount * 3];
+            for (int i = 0; i < groups[g].length; i++) {
+                groups[g][i] = getVarLong(footer);
+            }
+            rows += groups[g][0];
+        }
+        rowCount = rows;
+    }
+
+    public static ColumnarReader open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new ColumnarReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException io ? io : new IOException("Corrupt columnar export", e);
+        }
+    }
+
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public int getRowGroupCount() {
+        return groups.length;
+    }
+
+    /**
+     * Decode a numeric column (ts, ports, protocol, length, vlan, tcp_flags) over all row groups.
+     */
+    public long[] readLongs(String column) {
+        int c = columnIndex(column, TYPE_LONG);
+        long[] values = new long[Math.toIntExact(rowCount)];
+        int n = 0;
+        for (long[] group : groups) {
+            n = decodeLongs(group, c, values, n);
+        }
+        return values;
+    }
+
+    /**
+     * Decode a string column (src, dst, sni, ja3) over all row groups. Rows with the same value share one String.
+     */
+    public String[] readStrings(String column) {
+        int c = columnIndex(column, TYPE_STRING);
+        String[] values = new String[Math.toIntExact(rowCount)];
+        int n = 0;
+        for (long[] group : groups) {
+            n = decodeStrings(group, c, values, n);
+        }
+        return values;
+    }
+
+    private int columnIndex(String column, int type) {
+        for (int c = 0; c < columns.length; c++) {
+            if (columns[c].equals(column)) {
+                if (types[c] != type) {
+                    throw new IllegalArgumentException("Column " + column + " has another type");
+                }
+                return c;
+            }
+        }
+        throw new IllegalArgumentException("No column " + column);
+    }
+
+    private ByteBuffer chunk(long[] group, int c) {
+        try {
+            return read(group[1 + c * 3], (int) group[2 + c * 3]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new EOFException("Truncated columnar export");
+            }
+        }
+        return buf.flip();
+    }
+
+    private int decodeLongs(long[] group, int c, long[] values, int n) {
+        int rows = (int) group[0];
+        ByteBuffer in = chunk(group, c);
+        switch ((int) group[3 + c * 3]) {
+            case DELTA -> {
+                long previous = 0;
+                for (int i = 0; i < rows; i++) {
+                    previous += getZigZag(in);
+                    values[n++] = previous;
+                }
+            }
+            case VARINT -> {
+                for (int i = 0; i < rows; i++) {
+                    values[n++] = getZigZag(in);
+                }
+            }
+            case RLE -> {
+                int end = n + rows;
+                while (n < end) {
+                    long v = getZigZag(in);
+                    int run = (int) getVarLong(in);
+                    Arrays.fill(values, n, n + run, v);
+                    n += run;
+                }
+            }
+            default -> throw new IllegalStateException("Unknown encoding of " + columns[c]);
+        }
+        return n;
+    }
+
+    private int decodeStrings(long[] group, int c, String[] values, int n) {
+        int rows = (int) group[0];
+        ByteBuffer in = chunk(group, c);
+        if (group[3 + c * 3] != DICTIONARY) {
+            throw new IllegalStateException("Unknown encoding of " + columns[c]);
+        }
+        String[] dictionary = new String[(int) getVarLong(in) + 1];
+        for (int i = 1; i < dictionary.length; i++) {
+            byte[] bytes = new byte[(int) getVarLong(in)];
+            in.get(bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        for (int i = 0; i < rows; i++) {
+            values[n++] = dictionary[(int) getVarLong(in)];
+        }
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,247 @@
+package com.packetboard.packetboard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static com.packetboard.packetboard.ColumnarFormat.*;
+
+/**
+ * Writes per-packet metadata to a column-oriented file, see {@link ColumnarFormat} for the layout.
+ * <p>
+ * Rows are buffered in primitive arrays and encoded one row group at a time. Safe for concurrent {@link #append}
+ * calls; rows may arrive in any order. The file is written next to its target and moved in place on {@link #close}.
+ */
+public class ColumnarWriter implements Closeable {
+    public static final String SUFFIX = ".pbcol";
+    public static final int ROW_GROUP_ROWS = 1 << 16;
+
+    private final Path target;
+    private final Path tmp;
+    private final FileChannel out;
+    private final ArrayList<long[]> groups = new ArrayList<>(); // per group: rows, then (offset, length, encoding) per column
+    private final Sink chunk = new Sink();
+    private final HashMap<String, Integer> dictionary = new HashMap<>();
+    private long position;
+    private boolean closed;
+
+    private int rows;
+    private final long[] ts = new long[ROW_GROUP_ROWS];
+    private final long[][] longs = new long[COLUMNS.length][]; // by column, for long columns
+    private final String[][] strings = new String[COLUMNS.length][]; // by column, for string columns
+    private final int[] order = new int[ROW_GROUP_ROWS];
+    private final long[] sortKeys = new long[ROW_GROUP_ROWS];
+
+    public ColumnarWriter(Path target) throws IOException {
+        this.target = target;
+        this.tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        this.out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        for (int c = 1; c < COLUMNS.length; c++) {
+            if (TYPES[c] == TYPE_LONG) {
+                longs[c] = new long[ROW_GROUP_ROWS];
+            } else {
+                strings[c] = new String[ROW_GROUP_ROWS];
+            }
+        }
+        write(ByteBuffer.wrap(MAGIC));
+    }
+
+    /**
+     * Add the row of a packet, writing a row group once enough rows are buffered.
+     */
+    public synchronized void append(PacketMetadata row) throws IOException {
+        ts[rows] = row.tsMicros;
+        strings[1][rows] = row.src;
+        strings[2][rows] = row.dst;
+        longs[3][rows] = row.srcPort;
+        longs[4][rows] = row.dstPort;
+        longs[5][rows] = row.protocol;
+        longs[6][rows] = row.length;
+        longs[7][rows] = row.vlan;
+        longs[8][rows] = row.tcpFlags;
+        strings[9][rows] = row.sni;
+        strings[10][rows] = row.ja3;
+        if (++rows == ROW_GROUP_ROWS) {
+            flush();
+        }
+    }
+
+    /**
+     * Encode the buffered rows as a row group.
+     */
+    private void flush() throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        sortByTime();
+        long[] group = new long[1 + COLUMNS.length * 3];
+        group[0] = rows;
+        for (int c = 0; c < COLUMNS.length; c++) {
+            chunk.reset();
+            switch (ENCODINGS[c]) {
+                case DELTA -> encodeDelta(c == 0 ? ts : longs[c]);
+                case VARINT -> encodeVarint(longs[c]);
+                case RLE -> encodeRle(longs[c]);
+                case DICTIONARY -> encodeDictionary(strings[c]);
+            }
+            group[1 + c * 3] = position;
+            group[2 + c * 3] = chunk.len;
+            group[3 + c * 3] = ENCODINGS[c];
+            write(ByteBuffer.wrap(chunk.buf, 0, chunk.len));
+        }
+        groups.add(group);
+        Arrays.fill(strings[1], 0, rows, null);
+        Arrays.fill(strings[2], 0, rows, null);
+        Arrays.fill(strings[9], 0, rows, null);
+        Arrays.fill(strings[10], 0, rows, null);
+        rows = 0;
+    }
+
+    /**
+     * Fill {@link #order} with the row numbers in timestamp order. Rows fit in 16 bits, so each row is packed with its
+     * offset from the earliest timestamp into one long and sorted without boxing.
+     */
+    private void sortByTime() {
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (int i = 0; i < rows; i++) {
+            min = Math.min(min, ts[i]);
+            max = Math.max(max, ts[i]);
+        }
+        if (max - min >= 1L << 47) {
+            // Spans more than ~4 years: keep arrival order rather than overflow the packed keys.
+            for (int i = 0; i < rows; i++) {
+                order[i] = i;
+            }
+            return;
+        }
+        for (int i = 0; i < rows; i++) {
+            sortKeys[i] = (ts[i] - min) << 16 | i;
+        }
+        Arrays.sort(sortKeys, 0, rows);
+        for (int i = 0; i < rows; i++) {
+            order[i] = (int) (sortKeys[i] & 0xffff);
+        }
+    }
+
+    private void encodeDelta(long[] values) {
+        long previous = 0;
+        for (int i = 0; i < rows; i++) {
+            long v = values[order[i]];
+            chunk.putZigZag(v - previous);
+            previous = v;
+        }
+    }
+
+    private void encodeVarint(long[] values) {
+        for (int i = 0; i < rows; i++) {
+            chunk.putZigZag(values[order[i]]);
+        }
+    }
+
+    private void encodeRle(long[] values) {
+        int i = 0;
+        while (i < rows) {
+            long v = values[order[i]];
+            int run = 1;
+            while (i + run < rows && values[order[i + run]] == v) {
+                run++;
+            }
+            chunk.putZigZag(v);
+            chunk.putVarLong(run);
+            i += run;
+        }
+    }
+
+    /**
+     * Dictionary of the distinct values of the group, then one entry number per row. Entry numbers are assigned in
+     * a first pass and written in a second, since the dictionary precedes them.
+     */
+    private void encodeDictionary(String[] values) {
+        dictionary.clear();
+        ArrayList<String> entries = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            String v = values[order[i]];
+            if (v != null && !dictionary.containsKey(v)) {
+                entries.add(v);
+                dictionary.put(v, entries.size());
+            }
+        }
+        chunk.putVarLong(entries.size());
+        for (String entry : entries) {
+            byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+            chunk.putVarLong(bytes.length);
+            chunk.put(bytes);
+        }
+        for (int i = 0; i < rows; i++) {
+            String v = values[order[i]];
+            chunk.putVarLong(v == null ? 0 : dictionary.get(v));
+        }
+    }
+
+    private void write(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            position += out.write(buf);
+        }
+    }
+
+    /**
+     * Write the last row group and the footer, then move the file in place.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (out) {
+            flush();
+            Sink footer = new Sink();
+            footer.putVarLong(COLUMNS.length);
+            for (int c = 0; c < COLUMNS.length; c++) {
+                byte[] name = COLUMNS[c].getBytes(StandardCharsets.UTF_8);
+                footer.putVarLong(name.length);
+                footer.put(name);
+                footer.putVarLong(TYPES[c]);
+            }
+            footer.putVarLong(groups.size());
+            for (long[] group : groups) {
+                for (long v : group) {
+                    footer.putVarLong(v);
+                }
+            }
+            write(ByteBuffer.wrap(footer.buf, 0, footer.len));
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.putInt(footer.len).put(MAGIC).flip();
+            write(trailer);
+            out.force(false);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Drop the file being written, e.g. when the load exporting to it failed. The target is left as it was.
+     */
+    public synchronized void abort() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (out) {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -3,19 +3,67 @@ package com.packetboard.packetboard;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
+import javafx.scene.control.Alert;
 import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.TextField;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class HelloController {
+    private static final Map<String, Long> INTERVALS = new LinkedHashMap<>(); // Throughput bin width: microseconds
+    private static final Map<String, Long> MEMORIES = new LinkedHashMap<>(); // Talker counts: heap, 0 for exact
+
+    static {
+        INTERVALS.put("1 ms", 1_000L);
+        INTERVALS.put("10 ms", 10_000L);
+        INTERVALS.put("100 ms", 100_000L);
+        INTERVALS.put("1 s", 1_000_000L);
+        INTERVALS.put("10 s", 10_000_000L);
+        INTERVALS.put("1 min", 60_000_000L);
+        MEMORIES.put("Exact", 0L);
+        MEMORIES.put("16 MiB", 16L << 20);
+        MEMORIES.put("64 MiB", 64L << 20);
+        MEMORIES.put("256 MiB", 256L << 20);
+    }
+
     PacketParser parser = new PacketParser();
     private Stage appStage;
     @FXML
     private CheckBox sniBox, rdnsBox = new CheckBox();
+    @FXML
+    private TextField filterField;
+    @FXML
+    private ChoiceBox<String> intervalBox;
+    @FXML
+    private ChoiceBox<String> memoryBox;
     private Boolean doSNI, dorDNS;
+    private Path capture; // Capture file loaded, or null for a directory
+
+    @FXML
+    protected void initialize() {
+        intervalBox.getItems().addAll(INTERVALS.keySet());
+        intervalBox.setValue("1 s");
+        memoryBox.getItems().addAll(MEMORIES.keySet());
+        memoryBox.setValue("Exact");
+    }
+
+    /**
+     * New parser with the settings chosen.
+     */
+    private PacketParser newParser() {
+        PacketParser parser = new PacketParser();
+        parser.setTimeSeriesInterval(INTERVALS.get(intervalBox.getValue()));
+        parser.setHeavyHitterMemory(MEMORIES.get(memoryBox.getValue()));
+        return parser;
+    }
 
     @FXML
     protected void onImportBtnClick() {
@@ -28,7 +76,29 @@ public class HelloController {
         if (pcapFile != null) {
             doSNI = sniBox.isSelected();
             dorDNS = rdnsBox.isSelected();
-            parser.load(pcapFile.getPath(), doSNI, dorDNS);
+            capture = pcapFile.toPath();
+            parser = newParser();
+            try {
+                parser.setFilter(filterField.getText());
+            } catch (IllegalArgumentException e) {
+                new Alert(Alert.AlertType.ERROR, e.getMessage()).showAndWait();
+                return;
+            }
+            try {
+                // Results of an earlier load of the same capture, if it has not changed since. Snapshots are of
+                // whole captures only.
+                PacketParser saved = parser.getFilter() == null ? AnalysisSnapshot.openFresh(pcapFile.toPath(), doSNI,
+                        dorDNS, parser.getHeavyHitterMemory()) : null;
+                if (saved != null
+                        && saved.getThroughput().getIntervalMicros() == parser.getThroughput().getIntervalMicros()) {
+                    parser = saved;
+                } else {
+                    parser.load(pcapFile.getPath(), doSNI, dorDNS);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                parser.load(pcapFile.getPath(), doSNI, dorDNS);
+            }
 
             try {
                 loadHome();
@@ -39,6 +109,25 @@ public class HelloController {
 
     }
 
+    @FXML
+    protected void onImportDirectoryBtnClick() {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Open directory of pcap files");
+        File directory = directoryChooser.showDialog(new Stage());
+
+        if (directory != null) {
+            doSNI = sniBox.isSelected();
+            dorDNS = rdnsBox.isSelected();
+            capture = null;
+            try {
+                parser = MultiFileAnalysis.load(directory.toPath(), doSNI, dorDNS, this::newParser);
+                loadHome();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     public void setStage(Stage stage) {
         appStage = stage;
     }
@@ -51,6 +140,7 @@ public class HelloController {
         homeController.setSNI(doSNI);
         homeController.setStage(appStage);
         homeController.setParser(parser);
+        homeController.setCapture(capture);
         appStage.setScene(homeScene);
     }
 }
\ No newline at end of file
@@ -1,31 +1,68 @@
 package com.packetboard.packetboard;
 
+import com.packetboard.packetboard.Stats.AddressTable;
+import com.packetboard.packetboard.Stats.FlowTable;
+import com.packetboard.packetboard.Stats.HyperLogLog;
+import com.packetboard.packetboard.Stats.IcmpStats;
+import com.packetboard.packetboard.Stats.RadioStats;
+import com.packetboard.packetboard.Stats.SlidingRankings;
+import com.packetboard.packetboard.Stats.SpaceSaving;
+import com.packetboard.packetboard.Stats.ThroughputSeries;
+import com.packetboard.packetboard.Stats.VlanStats;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Scene;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
 import javafx.scene.chart.PieChart;
+import javafx.scene.chart.XYChart;
 import javafx.scene.control.Accordion;
+import javafx.scene.control.Alert;
+import javafx.scene.control.ChoiceDialog;
 import javafx.scene.control.Label;
+import javafx.scene.control.TextInputDialog;
 import javafx.scene.control.TitledPane;
+import javafx.scene.input.MouseButton;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 public class HomeController {
     private Boolean doSNI;
     private Boolean dorDNS;
     private Stage appStage;
     private PacketParser parser = new PacketParser();
+    private Path capture; // Capture file the results are of, to query through its index, or null
     @FXML
-    private VBox graphsBox, topDestBox, IPProtocolBox;
+    private VBox graphsBox, topDestBox, IPProtocolBox, throughputBox;
+    private LineChart<Number, Number> throughputChart;
+    private long throughputFrom, throughputTo; // Visible range of the throughput chart, microseconds.
+    private static final int THROUGHPUT_POINTS = 500; // Points per line, whatever the zoom level.
     @FXML
     private Label packetTopMAC, packetTopIP, packetTopPacket, dataTopIP, dataTopMAC, dataTopData;
     @FXML
     private Accordion homeAccordion;
+    private final ArrayList<TitledPane> addedPanes = new ArrayList<>(); // Panes added to the accordion from code
+    private CaptureFollower follower; // Capture followed live, or null
+    private Timeline refresher; // Redraws the dashboard while following
 
     public void setSNI(Boolean doSNI) {
         this.doSNI = doSNI;
@@ -40,14 +77,16 @@ public class HomeController {
     }
 
     private void loadDatatoScene() {
-        // Local top speakers
-        var a = parser.getLocalTopSpeaker();
-        packetTopIP.setText(a.get(0));
-        packetTopMAC.setText(" (" + a.get(1) + " ) ");
-        packetTopPacket.setText(a.get(2) + " packets");
-        dataTopIP.setText(a.get(3));
-        dataTopMAC.setText(" (" + a.get(4) + " ) ");
-        dataTopData.setText(a.get(5) + " bytes");
+        // Local top speakers. A capture being followed may have none yet.
+        if (!parser.getLocalTopTalkers(1).isEmpty()) {
+            var a = parser.getLocalTopSpeaker();
+            packetTopIP.setText(a.get(0));
+            packetTopMAC.setText(" (" + a.get(1) + " ) ");
+            packetTopPacket.setText(a.get(2) + " packets" + (a.get(6).equals("0") ? "" : " (up to " + a.get(6) + " over)"));
+            dataTopIP.setText(a.get(3));
+            dataTopMAC.setText(" (" + a.get(4) + " ) ");
+            dataTopData.setText(a.get(5) + " bytes" + (a.get(7).equals("0") ? "" : " (up to " + a.get(7) + " over)"));
+        }
 
         // most visited destinations
         var destData = parser.getTopDest();
@@ -55,6 +94,8 @@ public class HomeController {
         var topData = destData.get(1);
         var topSNI = destData.get(2);
         var toprDNS = destData.get(3);
+        var topNames = destData.get(4);
+        var topErrors = destData.get(5);
 
         for (int i = 0; i < topDest.size(); i++) {
             HBox thisDst = new HBox();
@@ -62,6 +103,16 @@ public class HomeController {
             thisDst.getChildren().add(destLabel);
             Label dataLabel = new Label(" " + topData.get(i));
             thisDst.getChildren().add(dataLabel);
+            if (!topErrors.get(i).isEmpty()) {
+                // Bounded counts overestimate by at most this much.
+                Label errorLabel = new Label(" (up to " + topErrors.get(i) + " over)");
+                thisDst.getChildren().add(errorLabel);
+            }
+            if (!topNames.get(i).isEmpty()) {
+                // Name from DNS answers in the capture, no lookup needed.
+                Label nameLabel = new Label(" Name: " + topNames.get(i));
+                thisDst.getChildren().add(nameLabel);
+            }
             if (doSNI) {
                 Label sniLabel = new Label("Domain Name: " + topSNI.get(i));
                 thisDst.getChildren().add(sniLabel);
@@ -83,6 +134,9 @@ public class HomeController {
         PieChart ipPieChart = new PieChart(ipPieData);
         IPProtocolBox.getChildren().add(ipPieChart);
 
+        // Throughput over time
+        loadThroughput();
+
         if (doSNI) {        // SNIs with most data
             TitledPane sniPane = new TitledPane();
             VBox sniRanking = new VBox();
@@ -94,16 +148,341 @@ public class HomeController {
                 sniRanking.getChildren().add(sniLabel);
 
             }
-            homeAccordion.getPanes().add(sniPane);
+            addPane(sniPane);
+        }
+
+        // TLS client fingerprints
+        TitledPane fingerprintPane = new TitledPane();
+        VBox fingerprintRanking = new VBox();
+        fingerprintPane.setContent(fingerprintRanking);
+        fingerprintPane.setText("TLS client fingerprints (JA4 / JA3)");
+        for (String record : parser.getFingerprintRanking()) {
+            Label fingerprintLabel = new Label(record);
+            fingerprintRanking.getChildren().add(fingerprintLabel);
+        }
+        addPane(fingerprintPane);
+
+        // Distinct counts, estimated in fixed memory
+        TitledPane distinctPane = new TitledPane();
+        VBox distinctCounts = new VBox();
+        distinctPane.setContent(distinctCounts);
+        distinctPane.setText("Distinct counts (estimated)");
+        distinctCounts.getChildren().add(new Label(distinctCount("External IPs", parser.getExternalHosts())));
+        distinctCounts.getChildren().add(new Label(distinctCount("Flows", parser.getDistinctFlows())));
+        distinctCounts.getChildren().add(new Label(distinctCount("TLS server names", parser.getDistinctSNIs())));
+        addPane(distinctPane);
+
+        // Rankings of the last minute/5 minutes/hour, e.g. of a capture being followed
+        SlidingRankings recent = parser.getSlidingWindows();
+        if (recent != null) {
+            TitledPane recentPane = new TitledPane();
+            HBox recentWindows = new HBox(20);
+            recentPane.setContent(recentWindows);
+            recentPane.setText("Recent activity");
+            for (int window = 0; window < SlidingRankings.WINDOW_NAMES.length; window++) {
+                VBox column = new VBox();
+                column.getChildren().add(new Label("Last " + SlidingRankings.WINDOW_NAMES[window]));
+                addRanking(column, "Local talkers", recent.topTalkers(window, 5), " bytes");
+                addRanking(column, "Remote hosts", recent.topRemoteHosts(window, 5), " bytes");
+                addRanking(column, "TLS server names", recent.topServerNames(window, 5), " hellos");
+                recentWindows.getChildren().add(column);
+            }
+            addPane(recentPane);
+        }
+
+        // Traffic per VLAN, for captures of tagged frames
+        VlanStats vlans = parser.getVlans();
+        if (!vlans.isEmpty()) {
+            TitledPane vlanPane = new TitledPane();
+            HBox vlanColumns = new HBox(20);
+            vlanPane.setContent(vlanColumns);
+            vlanPane.setText("VLANs");
+            VBox vlanList = new VBox();
+            for (int vlan : vlans.vlans()) {
+                vlanList.getChildren().add(new Label("VLAN " + vlan + ": " + vlans.packets(vlan) + " packets, "
+                        + vlans.bytes(vlan) + " bytes"));
+                for (SpaceSaving.Counter counter : vlans.topTalkers(vlan, 3)) {
+                    vlanList.getChildren().add(new Label("  " + counter.key() + ": " + counter.count() + " bytes"));
+                }
+            }
+            vlanList.getChildren().add(new Label("Untagged: " + vlans.untaggedPackets() + " packets"));
+            for (int serviceVlan : vlans.serviceVlans()) {
+                vlanList.getChildren().add(new Label("Service VLAN " + serviceVlan + " (QinQ): "
+                        + vlans.servicePackets(serviceVlan) + " packets"));
+            }
+            VBox priorityList = new VBox();
+            priorityList.getChildren().add(new Label("Priority (PCP):"));
+            for (int priority = 0; priority < VlanStats.PRIORITIES; priority++) {
+                priorityList.getChildren().add(new Label("  " + priority + ": " + vlans.priorityPackets(priority) + " packets"));
+            }
+            vlanColumns.getChildren().addAll(vlanList, priorityList);
+            addPane(vlanPane);
+        }
+
+        // Radio stats, for wireless captures
+        RadioStats radio = parser.getRadio();
+        if (!radio.isEmpty()) {
+            TitledPane radioPane = new TitledPane();
+            HBox radioColumns = new HBox(20);
+            radioPane.setContent(radioColumns);
+            radioPane.setText("Wireless");
+            VBox channelList = new VBox();
+            channelList.getChildren().add(new Label("Frames: " + radio.getFrames() + ", bad FCS: " + radio.getFcsErrors()));
+            for (int freq : radio.channels()) {
+                channelList.getChildren().add(new Label("Channel " + RadioStats.channelOf(freq) + " (" + freq + " MHz): "
+                        + radio.channelPackets(freq) + " frames, " + radio.channelBytes(freq) + " bytes, airtime "
+                        + radio.channelAirtime(freq) / 1000 + " ms"));
+            }
+            VBox levelList = new VBox();
+            levelList.getChildren().add(new Label("Signal / noise (dBm):"));
+            for (int dbm = -100; dbm < 0; dbm += 10) {
+                long signal = 0, noise = 0;
+                for (int level = dbm; level < dbm + 10; level++) {
+                    signal += radio.signalFrames(level);
+                    noise += radio.noiseFrames(level);
+                }
+                if (signal + noise > 0) {
+                    levelList.getChildren().add(new Label("  " + dbm + " to " + (dbm + 9) + ": " + signal + " / " + noise));
+                }
+            }
+            VBox rateList = new VBox();
+            rateList.getChildren().add(new Label("Rates:"));
+            for (int rate = 1; rate < RadioStats.RATES; rate++) {
+                if (radio.rateFrames(rate) > 0) {
+                    rateList.getChildren().add(new Label("  " + rate / 2.0 + " Mbps: " + radio.rateFrames(rate) + " frames"));
+                }
+            }
+            rateList.getChildren().add(new Label("802.11n: " + radio.getHtFrames() + " frames, 40 MHz: "
+                    + radio.getHt40Frames() + ", short GI: " + radio.getShortGuardFrames()));
+            for (int mcs = 0; mcs < RadioStats.MCS_INDEXES; mcs++) {
+                if (radio.mcsFrames(mcs) > 0) {
+                    rateList.getChildren().add(new Label("  MCS " + mcs + ": " + radio.mcsFrames(mcs) + " frames"));
+                }
+            }
+            VBox aggregateList = new VBox();
+            long aggregates = radio.aggregates();
+            aggregateList.getChildren().add(new Label("A-MPDUs: " + aggregates + ", subframes: " + radio.getSubframes()));
+            for (int subframes = 1; subframes <= RadioStats.MAX_SUBFRAMES; subframes++) {
+                if (radio.aggregates(subframes) > 0) {
+                    aggregateList.getChildren().add(new Label("  " + subframes
+                            + (subframes == RadioStats.MAX_SUBFRAMES ? "+" : "") + " subframes: "
+                            + radio.aggregates(subframes)));
+                }
+            }
+            radioColumns.getChildren().addAll(channelList, levelList, rateList, aggregateList);
+            addPane(radioPane);
+        }
+
+        // ICMP types, unreachable destinations and ping round trips
+        IcmpStats icmp = parser.getIcmp();
+        if (!icmp.isEmpty()) {
+            TitledPane icmpPane = new TitledPane();
+            HBox icmpColumns = new HBox(20);
+            icmpPane.setContent(icmpColumns);
+            icmpPane.setText("ICMP");
+            VBox typeList = new VBox();
+            typeList.getChildren().add(new Label("Messages: " + icmp.getMessages() + ", errors: " + icmp.getErrors()
+                    + String.format(" (%.1f%%)", icmp.getErrorRate() * 100)));
+            for (int type = 0; type < IcmpStats.TYPES; type++) {
+                if (icmp.messages(type) == 0) {
+                    continue;
+                }
+                typeList.getChildren().add(new Label("  Type " + type + ": " + icmp.messages(type)));
+                for (int code = 0; code < IcmpStats.CODES; code++) {
+                    if (icmp.messages(type, code) > 0 && icmp.messages(type, code) < icmp.messages(type)) {
+                        typeList.getChildren().add(new Label("    code " + code + ": " + icmp.messages(type, code)));
+                    }
+                }
+            }
+            VBox unreachableList = new VBox();
+            unreachableList.getChildren().add(new Label("Unreachable destinations:"));
+            for (SpaceSaving.Counter counter : icmp.topUnreachable(10)) {
+                unreachableList.getChildren().add(new Label("  " + counter.key() + ": " + counter.count()));
+            }
+            VBox rttList = new VBox();
+            rttList.getChildren().add(new Label("Pings answered: " + icmp.getExchanges() + ", unanswered: "
+                    + (icmp.getUnanswered() + icmp.getPendingRequests())));
+            if (icmp.getExchanges() > 0) {
+                rttList.getChildren().add(new Label("RTT mean " + icmp.getMeanRtt() / 1000.0 + " ms, p50 < "
+                        + icmp.rttQuantile(0.5) / 1000.0 + " ms, p99 < " + icmp.rttQuantile(0.99) / 1000.0
+                        + " ms, max " + icmp.getMaxRtt() / 1000.0 + " ms"));
+                for (int bucket = 0; bucket < IcmpStats.RTT_BUCKETS; bucket++) {
+                    if (icmp.rtts(bucket) > 0) {
+                        rttList.getChildren().add(new Label("  < " + (1L << bucket) / 1000.0 + " ms: "
+                                + icmp.rtts(bucket)));
+                    }
+                }
+            }
+            icmpColumns.getChildren().addAll(typeList, unreachableList, rttList);
+            addPane(icmpPane);
+        }
+
+        // ARP traffic and IPs seen with more than one MAC
+        AddressTable addresses = parser.getAddresses();
+        TitledPane arpPane = new TitledPane();
+        VBox arpList = new VBox();
+        arpPane.setContent(arpList);
+        arpPane.setText("ARP and MAC conflicts");
+        arpList.getChildren().add(new Label("ARP requests: " + addresses.getArpRequests() + ", replies: "
+                + addresses.getArpReplies() + ", gratuitous: " + addresses.getGratuitousArps()));
+        Map<String, List<AddressTable.Binding>> conflicts = addresses.conflicts();
+        arpList.getChildren().add(new Label("IPs with more than one MAC: " + conflicts.size()));
+        for (Map.Entry<String, List<AddressTable.Binding>> conflict : conflicts.entrySet()) {
+            arpList.getChildren().add(new Label(conflict.getKey() + ":"));
+            for (AddressTable.Binding binding : conflict.getValue()) {
+                arpList.getChildren().add(new Label("  " + binding + ": " + binding.packets() + " packets, "
+                        + Instant.ofEpochSecond(0, binding.firstSeenMicros() * 1000) + " to "
+                        + Instant.ofEpochSecond(0, binding.lastSeenMicros() * 1000)));
+            }
         }
+        addPane(arpPane);
 
     }
 
+    private static void addRanking(VBox column, String title, List<SpaceSaving.Counter> ranking, String unit) {
+        column.getChildren().add(new Label(title + ":"));
+        for (SpaceSaving.Counter counter : ranking) {
+            column.getChildren().add(new Label("  " + counter.key() + ": " + counter.count() + unit));
+        }
+    }
+
+    private void addPane(TitledPane pane) {
+        homeAccordion.getPanes().add(pane);
+        addedPanes.add(pane);
+    }
+
+    /**
+     * Rebuild the dashboard from the current results of the parser.
+     */
+    private void refresh() {
+        topDestBox.getChildren().clear();
+        IPProtocolBox.getChildren().removeIf(node -> node instanceof PieChart);
+        throughputBox.getChildren().remove(throughputChart);
+        homeAccordion.getPanes().removeAll(addedPanes);
+        addedPanes.clear();
+        loadDatatoScene();
+    }
+
+    /**
+     * One line of the distinct counts pane, with the 95% error bound of the estimate.
+     */
+    private static String distinctCount(String name, HyperLogLog sketch) {
+        long estimate = sketch.estimate();
+        long bound = Math.round(estimate * 2 * sketch.standardError());
+        return String.format("%s: ~%d (\u00b1%d, %.1f%% at 95%% confidence)", name, estimate, bound, 200 * sketch.standardError());
+    }
+
+    /**
+     * Build the throughput chart. Scroll to zoom around the cursor, double click to show the whole capture.
+     */
+    private void loadThroughput() {
+        var throughput = parser.getThroughput();
+        if (throughput.isEmpty()) {
+            return;
+        }
+        NumberAxis timeAxis = new NumberAxis();
+        timeAxis.setLabel("Seconds since capture start");
+        timeAxis.setAutoRanging(false);
+        timeAxis.setForceZeroInRange(false);
+        NumberAxis rateAxis = new NumberAxis();
+        rateAxis.setLabel("Bytes/s");
+        throughputChart = new LineChart<>(timeAxis, rateAxis);
+        throughputChart.setCreateSymbols(false);
+        throughputChart.setAnimated(false);
+
+        throughputChart.setOnScroll(event -> {
+            double cursor = timeAxis.getValueForDisplay(timeAxis.sceneToLocal(event.getSceneX(), event.getSceneY()).getX()).doubleValue();
+            long center = throughput.getStartMicros() + (long) (cursor * 1_000_000);
+            double factor = event.getDeltaY() > 0 ? 0.8 : 1.25;
+            long minRange = throughput.getIntervalMicros() * 10;
+            long from = center - (long) ((center - throughputFrom) * factor);
+            long to = center + (long) ((throughputTo - center) * factor);
+            if (to - from < minRange) {
+                return;
+            }
+            throughputFrom = Math.max(throughput.getStartMicros(), from);
+            throughputTo = Math.min(throughput.getEndMicros(), to);
+            renderThroughput();
+        });
+        throughputChart.setOnMouseClicked(event -> {
+            if (event.getButton() == MouseButton.PRIMARY && event.getClickCount() == 2) {
+                throughputFrom = throughput.getStartMicros();
+                throughputTo = throughput.getEndMicros();
+                renderThroughput();
+            }
+        });
+        throughputBox.getChildren().add(throughputChart);
+
+        throughputFrom = throughput.getStartMicros();
+        throughputTo = throughput.getEndMicros();
+        renderThroughput();
+    }
+
+    /**
+     * Query the visible range of the throughput series and redraw the chart.
+     */
+    private void renderThroughput() {
+        var throughput = parser.getThroughput();
+        long interval = throughput.getIntervalMicros();
+        long range = throughputTo - throughputFrom;
+        long step = Math.max(interval, (range / THROUGHPUT_POINTS + interval - 1) / interval * interval);
+
+        NumberAxis timeAxis = (NumberAxis) throughputChart.getXAxis();
+        double start = throughput.getStartMicros();
+        timeAxis.setLowerBound((throughputFrom - start) / 1e6);
+        timeAxis.setUpperBound((throughputTo - start) / 1e6);
+        timeAxis.setTickUnit(range / 1e6 / 10);
+
+        throughputChart.getData().clear();
+        for (int column = ThroughputSeries.BYTES; column < ThroughputSeries.COLUMN_NAMES.length; column++) {
+            long[] values = throughput.query(column, throughputFrom, throughputTo, step);
+            throughputChart.getData().add(toSeries(ThroughputSeries.COLUMN_NAMES[column], values, step));
+        }
+        for (String talker : parser.getLocalTopTalkers(3)) {
+            long[] values = throughput.queryTalker(talker, throughputFrom, throughputTo, step);
+            if (values != null) {
+                throughputChart.getData().add(toSeries(talker, values, step));
+            }
+        }
+    }
+
+    private XYChart.Series<Number, Number> toSeries(String name, long[] values, long step) {
+        var throughput = parser.getThroughput();
+        long interval = throughput.getIntervalMicros();
+        // Query steps are aligned to buckets, which may start before the visible range.
+        long first = Math.floorDiv(throughputFrom, interval) * interval;
+        double seconds = step / 1e6;
+        XYChart.Series<Number, Number> series = new XYChart.Series<>();
+        series.setName(name);
+        for (int i = 0; i < values.length; i++) {
+            double x = (first + i * step - throughput.getStartMicros()) / 1e6;
+            series.getData().add(new XYChart.Data<>(x, values[i] / seconds));
+        }
+        return series;
+    }
+
     public void setParser(PacketParser parser) {
         this.parser = parser;
         loadDatatoScene();
     }
 
+    /**
+     * Capture file the results are of, to analyse parts of it with {@link #openVisibleRange} and {@link #openFlow}.
+     */
+    public void setCapture(Path capture) {
+        this.capture = capture;
+    }
+
+    /**
+     * New parser with the settings of the results shown: their time series interval and heavy hitter memory.
+     */
+    private PacketParser newParser() {
+        PacketParser results = new PacketParser();
+        results.setTimeSeriesInterval(parser.getThroughput().getIntervalMicros());
+        results.setHeavyHitterMemory(parser.getHeavyHitterMemory());
+        return results;
+    }
+
     @FXML
     public void openNewFile() {
         FileChooser pcapChooser = new FileChooser();
@@ -113,7 +492,234 @@ public class HomeController {
         File pcapFile = pcapChooser.showOpenDialog(pcapChooserStage);
 
         if (pcapFile != null) {
-            parser.load(pcapFile.getPath(), doSNI, dorDNS);
+            // Each capture gets its own results, rather than adding to the ones shown.
+            PacketParser results = newParser();
+            results.load(pcapFile.getPath(), doSNI, dorDNS);
+            try {
+                showParser(results).setCapture(pcapFile.toPath());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Follow a capture still being written, e.g. by {@code tcpdump -w}, redrawing the dashboard every second.
+     */
+    @FXML
+    public void followFile() {
+        FileChooser pcapChooser = new FileChooser();
+        pcapChooser.setTitle("Follow pcap file");
+        pcapChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PCAP files", "*.pcap"));
+        File pcapFile = pcapChooser.showOpenDialog(new Stage());
+
+        if (pcapFile != null) {
+            PacketParser results = newParser();
+            results.setSlidingWindows(true);
+            results.setDoSNI(doSNI);
+            results.setDorDNS(dorDNS);
+            CaptureFollower capture = new CaptureFollower(results, pcapFile.toPath());
+            capture.start();
+            try {
+                HomeController homeController = showParser(results);
+                homeController.follow(capture);
+            } catch (IOException e) {
+                capture.close();
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Redraw the dashboard every second while a capture is followed.
+     */
+    private void follow(CaptureFollower capture) {
+        follower = capture;
+        refresher = new Timeline(new KeyFrame(Duration.seconds(1), event -> refresh()));
+        refresher.setCycleCount(Animation.INDEFINITE);
+        refresher.play();
+    }
+
+    private void stopFollowing() {
+        if (refresher != null) {
+            refresher.stop();
+            refresher = null;
+        }
+        if (follower != null) {
+            follower.close();
+            follower = null;
+        }
+    }
+
+    /**
+     * Show the merged results of every capture of a directory.
+     */
+    @FXML
+    public void openDirectory() {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Open directory of pcap files");
+        File directory = directoryChooser.showDialog(new Stage());
+
+        if (directory != null) {
+            try {
+                showParser(MultiFileAnalysis.load(directory.toPath(), doSNI, dorDNS, this::newParser));
+            } catch (IOException e) {
+                new Alert(Alert.AlertType.ERROR, "Could not open directory: " + e.getMessage()).showAndWait();
+            }
+        }
+    }
+
+    /**
+     * Show the results of the packets in the visible range of the throughput chart alone, read through the index of
+     * the capture.
+     */
+    @FXML
+    public void openVisibleRange() {
+        if (capture == null || throughputChart == null) {
+            new Alert(Alert.AlertType.INFORMATION, "Open a capture file to analyse part of it").showAndWait();
+            return;
+        }
+        PacketParser results = newParser();
+        showPart(results, () -> results.loadTimeRange(capture.toString(), throughputFrom, throughputTo, doSNI, dorDNS));
+    }
+
+    /**
+     * Show the results of the packets of one of the largest flows alone, read through the index of the capture.
+     */
+    @FXML
+    public void openFlow() {
+        if (capture == null) {
+            new Alert(Alert.AlertType.INFORMATION, "Open a capture file to analyse part of it").showAndWait();
+            return;
+        }
+        ArrayList<String> keys = new ArrayList<>();
+        for (FlowTable.Flow flow : parser.getFlows().top(50)) {
+            keys.add(flow.key());
         }
+        if (keys.isEmpty()) {
+            return;
+        }
+        ChoiceDialog<String> flowDialog = new ChoiceDialog<>(keys.get(0), keys);
+        flowDialog.setTitle("Open flow");
+        flowDialog.setHeaderText("Flow to analyse, largest first");
+        Optional<String> key = flowDialog.showAndWait();
+        if (key.isEmpty()) {
+            return;
+        }
+        PacketParser results = newParser();
+        showPart(results, () -> results.loadFlow(capture.toString(), key.get(), doSNI, dorDNS));
+    }
+
+    /**
+     * Load part of the capture into new results and show them.
+     */
+    private void showPart(PacketParser results, IndexQuery query) {
+        try {
+            if (!query.load()) {
+                new Alert(Alert.AlertType.INFORMATION, "The capture has no up-to-date index, open it again first")
+                        .showAndWait();
+                return;
+            }
+            showParser(results).setCapture(capture);
+        } catch (IOException e) {
+            new Alert(Alert.AlertType.ERROR, "Could not read the capture: " + e.getMessage()).showAndWait();
+        }
+    }
+
+    private interface IndexQuery {
+        /**
+         * @return false if the capture has no up-to-date index.
+         */
+        boolean load() throws IOException;
+    }
+
+    /**
+     * Show the results saved in an analysis snapshot, without parsing the capture again.
+     */
+    @FXML
+    public void openSnapshot() {
+        FileChooser snapshotChooser = new FileChooser();
+        snapshotChooser.setTitle("Open analysis snapshot");
+        snapshotChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Analysis snapshots", "*" + AnalysisSnapshot.SUFFIX));
+        File snapshotFile = snapshotChooser.showOpenDialog(new Stage());
+
+        if (snapshotFile != null) {
+            try {
+                showParser(AnalysisSnapshot.read(snapshotFile.toPath()));
+            } catch (IOException e) {
+                new Alert(Alert.AlertType.ERROR, "Could not open snapshot: " + e.getMessage()).showAndWait();
+            }
+        }
+    }
+
+    /**
+     * Save the results shown, to be opened later with {@link #openSnapshot}.
+     */
+    @FXML
+    public void saveSnapshot() {
+        FileChooser snapshotChooser = new FileChooser();
+        snapshotChooser.setTitle("Save analysis snapshot");
+        snapshotChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Analysis snapshots", "*" + AnalysisSnapshot.SUFFIX));
+        File snapshotFile = snapshotChooser.showSaveDialog(new Stage());
+
+        if (snapshotFile != null) {
+            try {
+                AnalysisSnapshot.write(parser, snapshotFile.toPath(), null);
+            } catch (IOException e) {
+                new Alert(Alert.AlertType.ERROR, "Could not save snapshot: " + e.getMessage()).showAndWait();
+            }
+        }
+    }
+
+    /**
+     * Write the packets of a capture matching a filter expression to a new capture, e.g. to open a host's traffic in
+     * another tool.
+     */
+    @FXML
+    public void extractPackets() {
+        FileChooser pcapChooser = new FileChooser();
+        pcapChooser.setTitle("Extract packets from pcap file");
+        pcapChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PCAP files", "*.pcap"));
+        File source = pcapChooser.showOpenDialog(new Stage());
+        if (source == null) {
+            return;
+        }
+        TextInputDialog filterDialog = new TextInputDialog();
+        filterDialog.setTitle("Extract packets");
+        filterDialog.setHeaderText("Packets to extract, e.g. host 10.1.2.3 and tcp port 443");
+        Optional<String> expression = filterDialog.showAndWait();
+        if (expression.isEmpty() || expression.get().isBlank()) {
+            return;
+        }
+        pcapChooser.setTitle("Save extracted packets");
+        pcapChooser.setInitialFileName(source.getName().replaceFirst("\\.pcap$", "") + "-extract.pcap");
+        File target = pcapChooser.showSaveDialog(new Stage());
+        if (target == null) {
+            return;
+        }
+        try {
+            long packets = PcapSlicer.byFilter(source.toPath(), target.toPath(), expression.get());
+            new Alert(Alert.AlertType.INFORMATION, packets + " packets written to " + target.getName()).showAndWait();
+        } catch (IllegalArgumentException | IOException e) {
+            new Alert(Alert.AlertType.ERROR, "Could not extract packets: " + e.getMessage()).showAndWait();
+        }
+    }
+
+    /**
+     * Replace the dashboard with the results of another parser. Stops following a capture, if one is followed.
+     *
+     * @return the controller of the new dashboard.
+     */
+    private HomeController showParser(PacketParser results) throws IOException {
+        stopFollowing();
+        FXMLLoader homeLoader = new FXMLLoader(HomeController.class.getResource("home-view.fxml"));
+        Scene homeScene = new Scene(homeLoader.load());
+        HomeController homeController = homeLoader.getController();
+        homeController.setrDNS(results.isDorDNS());
+        homeController.setSNI(results.isDoSNI());
+        homeController.setStage(appStage);
+        homeController.setParser(results);
+        appStage.setScene(homeScene);
+        return homeController;
     }
 }
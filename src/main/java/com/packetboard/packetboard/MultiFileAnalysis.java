@@ -0,0 +1,165 @@
+package com.packetboard.packetboard;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Analyse every capture of a directory, e.g. the hourly files of {@code tcpdump -G}, as one.
+ * <p>
+ * Each file is loaded by its own {@link PacketParser}, several at a time, and the results are merged in file name
+ * order. Files with an up-to-date {@link AnalysisSnapshot} are not parsed again.
+ */
+public final class MultiFileAnalysis {
+    private static final Logger logger = LogManager.getLogger(MultiFileAnalysis.class);
+    private static final int PCAP_MAGIC = 0xa1b2c3d4; // little-endian, microsecond resolution, as read by Pcap
+    private static final Comparator<Path> ROTATION_ORDER = Comparator.comparing(MultiFileAnalysis::rotationStem)
+            .thenComparing(MultiFileAnalysis::rotationNumber, Comparator.comparingInt(String::length)
+                    .thenComparing(Comparator.naturalOrder()));
+
+    private MultiFileAnalysis() {
+    }
+
+    /**
+     * Capture files of a directory, whatever their names ({@code .pcap}, {@code .cap}, the {@code .pcap1},
+     * {@code .pcap2}... of {@code tcpdump -C}), told apart by their pcap magic number. Sorted by name, with the
+     * rotation numbers at the end of names in numeric order.
+     */
+    public static List<Path> capturesIn(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(MultiFileAnalysis::isCapture)
+                    .sorted(ROTATION_ORDER)
+                    .toList();
+        }
+    }
+
+    /**
+     * Does the file start with the magic number of a supported pcap?
+     */
+    private static boolean isCapture(Path file) {
+        ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(file)) {
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // read the whole magic number
+            }
+        } catch (IOException e) {
+            logger.debug(e);
+            return false;
+        }
+        return !magic.hasRemaining() && magic.getInt(0) == PCAP_MAGIC;
+    }
+
+    /**
+     * File name without its rotation number, e.g. "capture.pcap" for "capture.pcap12".
+     */
+    private static String rotationStem(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, rotationStart(name));
+    }
+
+    /**
+     * Rotation number at the end of the file name without leading zeros, empty if none.
+     */
+    private static String rotationNumber(Path file) {
+        String name = file.getFileName().toString();
+        int start = rotationStart(name);
+        while (start < name.length() - 1 && name.charAt(start) == '0') {
+            start++;
+        }
+        return name.substring(start);
+    }
+
+    private static int rotationStart(String name) {
+        int start = name.length();
+        while (start > 0 && Character.isDigit(name.charAt(start - 1))) {
+            start--;
+        }
+        return start;
+    }
+
+    /**
+     * Load all captures of a directory, a quarter of the processors' worth of files at a time.
+     *
+     * @see #load(List, Boolean, Boolean, int, Supplier)
+     */
+    public static PacketParser load(Path directory, Boolean doSNI, Boolean dorDNS) throws IOException {
+        return load(directory, doSNI, dorDNS, PacketParser::new);
+    }
+
+    /**
+     * Load all captures of a directory with parsers set up by the caller, e.g. with another time series interval.
+     *
+     * @see #load(List, Boolean, Boolean, int, Supplier)
+     */
+    public static PacketParser load(Path directory, Boolean doSNI, Boolean dorDNS, Supplier<PacketParser> parsers)
+            throws IOException {
+        int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+        return load(capturesIn(directory), doSNI, dorDNS, parallelism, parsers);
+    }
+
+    /**
+     * Load captures in parallel and merge their results.
+     *
+     * @param captures    pcap files.
+     * @param doSNI       Look up SNI for each dst IP?
+     * @param dorDNS      Look up rDNS for each dst IP?
+     * @param parallelism files loaded at once. Each load runs its own decoding pool and streams its capture through a read-ahead
+     *                    buffer, so memory grows with the decoding threads rather than with the captures.
+     * @param parsers     new, empty parsers with the settings to load with. Snapshots made with another time series
+     *                    interval or heavy hitter memory are not used.
+     * @return merged results.
+     */
+    public static PacketParser load(List<Path> captures, Boolean doSNI, Boolean dorDNS, int parallelism,
+                                    Supplier<PacketParser> parsers) {
+        ExecutorService executors = Executors.newFixedThreadPool(parallelism);
+        ArrayList<Future<PacketParser>> futures = new ArrayList<>();
+        for (Path capture : captures) {
+            futures.add(executors.submit(() -> loadOne(capture, doSNI, dorDNS, parsers.get())));
+        }
+
+        PacketParser merged = parsers.get();
+        merged.setDoSNI(doSNI);
+        merged.setDorDNS(dorDNS);
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                merged.merge(futures.get(i).get());
+            } catch (InterruptedException | ExecutionException e) {
+                logger.error("Error while loading {}", captures.get(i));
+                logger.error(e);
+            }
+        }
+        executors.shutdown();
+        return merged;
+    }
+
+    private static PacketParser loadOne(Path capture, Boolean doSNI, Boolean dorDNS, PacketParser parser) {
+        try {
+            PacketParser saved = AnalysisSnapshot.openFresh(capture, doSNI, dorDNS, parser.getHeavyHitterMemory());
+            if (saved != null
+                    && saved.getThroughput().getIntervalMicros() == parser.getThroughput().getIntervalMicros()) {
+                return saved;
+            }
+        } catch (IOException e) {
+            logger.error("Could not read analysis snapshot of {}", capture);
+            logger.debug(e);
+        }
+        parser.load(capture.toString(), doSNI, dorDNS);
+        return parser;
+    }
+}
@@ -0,0 +1,461 @@
+package com.packetboard.packetboard;
+
+import com.packetboard.packetboard.Stats.FlowTable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Sidecar index of a pcap file ({@code <capture>.pbidx}), written during the first pass.
+ * <p>
+ * Layout, all little-endian:
+ * <pre>
+ * header       magic, version, packet count, pcap size and mtime (to detect a changed capture), section offsets
+ * entries      (record offset: 8, timestamp us: 8, flow id: 4) per packet, sorted by time, in blocks
+ * time index   (first ts: 8, last ts: 8) per block
+ * flow index   (packet count: 4, first posting: 8) per flow id
+ * postings     entry numbers grouped by flow, in time order
+ * flow keys    (length: 2, UTF-8 key) per flow id
+ * </pre>
+ * Every section is memory-mapped when the index is opened, so time range and flow queries only touch the blocks
+ * and postings they need.
+ */
+public class PacketIndex implements Closeable {
+    public static final String SUFFIX = ".pbidx";
+    public static final int BLOCK_ENTRIES = 4096;
+    private static final byte[] MAGIC = {'P', 'B', 'I', 'D', 'X', 0, 0, 0};
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 80;
+    private static final int ENTRY_LENGTH = 20;
+    private static final int TIME_INDEX_LENGTH = 16;
+    private static final int FLOW_INDEX_LENGTH = 12;
+    private static final int SEGMENT_BLOCKS = 4096; // Entries are mapped in segments of this many blocks (~335 MB).
+
+    private final FileChannel channel;
+    private final long count;
+    private final int flowCount;
+    private final MappedByteBuffer[] entrySegments;
+    private final MappedByteBuffer timeIndex;
+    private final MappedByteBuffer flowIndex;
+    private final long postingsOffset;
+    private final long flowKeysOffset;
+    private final long fileSize;
+    private HashMap<String, Integer> flowIds; // Loaded on first lookup by key.
+
+    /**
+     * Collects the index while the capture is decoded. Safe for concurrent {@link #setFlow} calls on distinct packets.
+     */
+    public static class Builder {
+        private long[] offsets;
+        private long[] timestamps;
+        private int[] flows;
+        private int count;
+
+        /**
+         * @param count number of packets in the capture.
+         */
+        public Builder(int count) {
+            offsets = new long[count];
+            timestamps = new long[count];
+            flows = new int[count];
+            Arrays.fill(flows, -1);
+            this.count = count;
+        }
+
+        /**
+         * Empty builder, for packets registered with {@link #add} as they are read.
+         */
+        public Builder() {
+            this(0);
+        }
+
+        /**
+         * Register the next packet, in file order.
+         *
+         * @return packet number, for {@link #setFlow}.
+         */
+        public int add(long offset, long tsMicros) {
+            if (count == offsets.length) {
+                int capacity = Math.max(1024, count * 2);
+                offsets = Arrays.copyOf(offsets, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                flows = Arrays.copyOf(flows, capacity);
+                Arrays.fill(flows, count, capacity, -1);
+            }
+            offsets[count] = offset;
+            timestamps[count] = tsMicros;
+            return count++;
+        }
+
+        /**
+         * Append the packets of a builder covering the part of the capture after this one's.
+         */
+        public void addAll(Builder next) {
+            for (int i = 0; i < next.count; i++) {
+                setFlow(add(next.offsets[i], next.timestamps[i]), next.flows[i]);
+            }
+        }
+
+        /**
+         * Register a packet, in file order.
+         *
+         * @param ordinal  packet number.
+         * @param offset   offset of the record header in the pcap.
+         * @param tsMicros timestamp, microseconds since the epoch.
+         */
+        public void set(int ordinal, long offset, long tsMicros) {
+            offsets[ordinal] = offset;
+            timestamps[ordinal] = tsMicros;
+        }
+
+        /**
+         * Set the flow of a packet once it is decoded.
+         *
+         * @param flow flow id, or -1 if the packet is not part of an IP flow.
+         */
+        public void setFlow(int ordinal, int flow) {
+            flows[ordinal] = flow;
+        }
+
+        /**
+         * Write the index next to the capture. The file is written under a temporary name and moved in place, so a
+         * reader never sees a partial index.
+         *
+         * @param pcap  capture file.
+         * @param table flows referred to by {@link #setFlow}.
+         */
+        public void write(Path pcap, FlowTable table) throws IOException {
+            int n = count;
+            int[] order = timeOrder();
+            int blocks = (n + BLOCK_ENTRIES - 1) / BLOCK_ENTRIES;
+            int flowCount = table.size();
+
+            // Postings: counting sort of the time ordered entries by flow.
+            long[] firstPosting = new long[flowCount + 1];
+            for (int p = 0; p < n; p++) {
+                int flow = flows[p];
+                if (flow >= 0) {
+                    firstPosting[flow + 1]++;
+                }
+            }
+            for (int f = 0; f < flowCount; f++) {
+                firstPosting[f + 1] += firstPosting[f];
+            }
+            int[] postings = new int[(int) firstPosting[flowCount]];
+            long[] fill = Arrays.copyOf(firstPosting, flowCount);
+            for (int entry = 0; entry < n; entry++) {
+                int flow = flows[order[entry]];
+                if (flow >= 0) {
+                    postings[(int) fill[flow]++] = entry;
+                }
+            }
+
+            long timeIndexOffset = HEADER_LENGTH + (long) n * ENTRY_LENGTH;
+            long flowIndexOffset = timeIndexOffset + (long) blocks * TIME_INDEX_LENGTH;
+            long postingsOffset = flowIndexOffset + (long) flowCount * FLOW_INDEX_LENGTH;
+            long flowKeysOffset = postingsOffset + (long) postings.length * 4;
+
+            Path tmp = sidecarOf(pcap).resolveSibling(sidecarOf(pcap).getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+                buf.put(MAGIC).putInt(VERSION).putInt(BLOCK_ENTRIES).putLong(n);
+                buf.putLong(Files.size(pcap)).putLong(Files.getLastModifiedTime(pcap).toMillis());
+                buf.putInt(flowCount).putInt(0);
+                buf.putLong(timeIndexOffset).putLong(flowIndexOffset).putLong(postingsOffset).putLong(flowKeysOffset);
+
+                for (int entry = 0; entry < n; entry++) {
+                    buf = ensure(out, buf, ENTRY_LENGTH);
+                    int p = order[entry];
+                    buf.putLong(offsets[p]).putLong(timestamps[p]).putInt(flows[p]);
+                }
+                for (int block = 0; block < blocks; block++) {
+                    buf = ensure(out, buf, TIME_INDEX_LENGTH);
+                    int first = block * BLOCK_ENTRIES;
+                    int last = Math.min(n, first + BLOCK_ENTRIES) - 1;
+                    buf.putLong(timestamps[order[first]]).putLong(timestamps[order[last]]);
+                }
+                for (int f = 0; f < flowCount; f++) {
+                    buf = ensure(out, buf, FLOW_INDEX_LENGTH);
+                    buf.putInt((int) (firstPosting[f + 1] - firstPosting[f])).putLong(firstPosting[f]);
+                }
+                for (int posting : postings) {
+                    buf = ensure(out, buf, 4);
+                    buf.putInt(posting);
+                }
+                for (int f = 0; f < flowCount; f++) {
+                    byte[] key = table.flow(f).key().getBytes(StandardCharsets.UTF_8);
+                    buf = ensure(out, buf, 2 + key.length);
+                    buf.putShort((short) key.length).put(key);
+                }
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    out.write(buf);
+                }
+            }
+            Files.move(tmp, sidecarOf(pcap), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         * Packet numbers sorted by timestamp. Captures are nearly always in order already.
+         */
+        private int[] timeOrder() {
+            int n = count;
+            boolean sorted = true;
+            for (int i = 1; i < n && sorted; i++) {
+                sorted = timestamps[i - 1] <= timestamps[i];
+            }
+            if (sorted) {
+                return IntStream.range(0, n).toArray();
+            }
+            int[] order = IntStream.range(0, n).toArray();
+            sortByTime(order, new int[n], 0, n);
+            return order;
+        }
+
+        /**
+         * Merge sort of packet numbers by timestamp. Stable, so packets with the same timestamp stay in file order;
+         * runs already in order are not merged again.
+         */
+        private void sortByTime(int[] order, int[] buffer, int from, int to) {
+            if (to - from <= 32) {
+                for (int i = from + 1; i < to; i++) {
+                    int packet = order[i];
+                    int j = i;
+                    for (; j > from && timestamps[order[j - 1]] > timestamps[packet]; j--) {
+                        order[j] = order[j - 1];
+                    }
+                    order[j] = packet;
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            sortByTime(order, buffer, from, mid);
+            sortByTime(order, buffer, mid, to);
+            if (timestamps[order[mid - 1]] <= timestamps[order[mid]]) {
+                return;
+            }
+            System.arraycopy(order, from, buffer, from, to - from);
+            int left = from;
+            int right = mid;
+            for (int i = from; i < to; i++) {
+                if (right >= to || left < mid && timestamps[buffer[left]] <= timestamps[buffer[right]]) {
+                    order[i] = buffer[left++];
+                } else {
+                    order[i] = buffer[right++];
+                }
+            }
+        }
+
+        private static ByteBuffer ensure(FileChannel out, ByteBuffer buf, int bytes) throws IOException {
+            if (buf.remaining() >= bytes) {
+                return buf;
+            }
+            buf.flip();
+            while (buf.hasRemaining()) {
+                out.write(buf);
+            }
+            buf.clear();
+            if (buf.capacity() < bytes) {
+                return ByteBuffer.allocate(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return buf;
+        }
+    }
+
+    private PacketIndex(FileChannel channel, ByteBuffer header) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        this.count = header.getLong(16);
+        this.flowCount = header.getInt(40);
+        long timeIndexOffset = header.getLong(48);
+        long flowIndexOffset = header.getLong(56);
+        this.postingsOffset = header.getLong(64);
+        this.flowKeysOffset = header.getLong(72);
+
+        long segmentEntries = (long) SEGMENT_BLOCKS * BLOCK_ENTRIES;
+        int segments = (int) ((count + segmentEntries - 1) / segmentEntries);
+        entrySegments = new MappedByteBuffer[segments];
+        for (int i = 0; i < segments; i++) {
+            long first = i * segmentEntries;
+            long entries = Math.min(segmentEntries, count - first);
+            entrySegments[i] = map(HEADER_LENGTH + first * ENTRY_LENGTH, entries * ENTRY_LENGTH);
+        }
+        timeIndex = map(timeIndexOffset, flowIndexOffset - timeIndexOffset);
+        flowIndex = map(flowIndexOffset, postingsOffset - flowIndexOffset);
+    }
+
+    private MappedByteBuffer map(long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Sidecar index path of a capture.
+     */
+    public static Path sidecarOf(Path pcap) {
+        return pcap.resolveSibling(pcap.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Open the index of a capture.
+     *
+     * @return the index, or null if there is none or it was written for a different version of the capture.
+     */
+    public static PacketIndex open(Path pcap) throws IOException {
+        Path sidecar = sidecarOf(pcap);
+        if (!Files.exists(sidecar)) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            byte[] magic = new byte[MAGIC.length];
+            header.get(0, magic);
+            boolean current = !header.hasRemaining() && Arrays.equals(magic, MAGIC)
+                    && header.getInt(8) == VERSION && header.getInt(12) == BLOCK_ENTRIES
+                    && header.getLong(24) == Files.size(pcap)
+                    && header.getLong(32) == Files.getLastModifiedTime(pcap).toMillis();
+            if (!current) {
+                channel.close();
+                return null;
+            }
+            return new PacketIndex(channel, header);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Number of packets in the capture.
+     */
+    public long size() {
+        return count;
+    }
+
+    public int flowCount() {
+        return flowCount;
+    }
+
+    private ByteBuffer segmentOf(long entry) {
+        return entrySegments[(int) (entry / ((long) SEGMENT_BLOCKS * BLOCK_ENTRIES))];
+    }
+
+    private int positionOf(long entry) {
+        return (int) (entry % ((long) SEGMENT_BLOCKS * BLOCK_ENTRIES)) * ENTRY_LENGTH;
+    }
+
+    /**
+     * Record offset of an entry (entries are numbered in time order).
+     */
+    public long offsetOf(long entry) {
+        return segmentOf(entry).getLong(positionOf(entry));
+    }
+
+    /**
+     * Timestamp of an entry, in microseconds.
+     */
+    public long timestampOf(long entry) {
+        return segmentOf(entry).getLong(positionOf(entry) + 8);
+    }
+
+    /**
+     * Flow id of an entry, or -1 if the packet is not part of an IP flow.
+     */
+    public int flowOf(long entry) {
+        return segmentOf(entry).getInt(positionOf(entry) + 16);
+    }
+
+    /**
+     * Record offsets of the packets in a time range, in time order.
+     *
+     * @param fromMicros start (inclusive).
+     * @param toMicros   end (exclusive).
+     */
+    public long[] offsetsBetween(long fromMicros, long toMicros) {
+        int blocks = (int) ((count + BLOCK_ENTRIES - 1) / BLOCK_ENTRIES);
+        // First block whose last timestamp reaches the range.
+        int lo = 0, hi = blocks;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (timeIndex.getLong(mid * TIME_INDEX_LENGTH + 8) < fromMicros) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        long[] out = new long[16];
+        int n = 0;
+        for (long entry = (long) lo * BLOCK_ENTRIES; entry < count; entry++) {
+            long ts = timestampOf(entry);
+            if (ts >= toMicros) {
+                break;
+            }
+            if (ts >= fromMicros) {
+                if (n == out.length) {
+                    out = Arrays.copyOf(out, n * 2);
+                }
+                out[n++] = offsetOf(entry);
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Record offsets of the packets of a flow, in time order.
+     *
+     * @param flow flow id.
+     */
+    public long[] offsetsOfFlow(int flow) throws IOException {
+        if (flow < 0 || flow >= flowCount) {
+            return new long[0];
+        }
+        int packets = flowIndex.getInt(flow * FLOW_INDEX_LENGTH);
+        long first = flowIndex.getLong(flow * FLOW_INDEX_LENGTH + 4);
+        MappedByteBuffer postings = map(postingsOffset + first * 4, (long) packets * 4);
+        long[] out = new long[packets];
+        for (int i = 0; i < packets; i++) {
+            out[i] = offsetOf(postings.getInt(i * 4));
+        }
+        return out;
+    }
+
+    /**
+     * Flow id of a flow key, see {@link FlowTable#key}.
+     *
+     * @return the id, or -1 if the capture has no such flow.
+     */
+    public synchronized int flowId(String key) throws IOException {
+        if (flowIds == null) {
+            flowIds = new HashMap<>(flowCount * 2);
+            MappedByteBuffer keys = map(flowKeysOffset, fileSize - flowKeysOffset);
+            for (int f = 0; f < flowCount; f++) {
+                byte[] bytes = new byte[keys.getShort() & 0xffff];
+                keys.get(bytes);
+                flowIds.put(new String(bytes, StandardCharsets.UTF_8), f);
+            }
+        }
+        return flowIds.getOrDefault(key, -1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
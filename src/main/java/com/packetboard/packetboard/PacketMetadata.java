@@ -0,0 +1,65 @@
+package com.packetboard.packetboard;
+
+/**
+ * Decoded summary of one packet, as exported by {@link ColumnarWriter}.
+ */
+public class PacketMetadata {
+    long tsMicros;
+    String src;
+    String dst;
+    int srcPort = -1;
+    int dstPort = -1;
+    int protocol;
+    int length;
+    int vlan = -1;
+    int tcpFlags = -1;
+    String sni;
+    String ja3;
+
+    /**
+     * Timestamp, microseconds since the epoch.
+     */
+    public long getTsMicros() { return tsMicros; }
+    public String getSrc() { return src; }
+    public String getDst() { return dst; }
+
+    /**
+     * Source port, -1 if the protocol has none.
+     */
+    public int getSrcPort() { return srcPort; }
+
+    /**
+     * Destination port, -1 if the protocol has none.
+     */
+    public int getDstPort() { return dstPort; }
+
+    /**
+     * IP protocol number.
+     */
+    public int getProtocol() { return protocol; }
+
+    /**
+     * Size of the packet as described in IP header.
+     */
+    public int getLength() { return length; }
+
+    /**
+     * 802.1Q VLAN id, -1 if untagged.
+     */
+    public int getVlan() { return vlan; }
+
+    /**
+     * TCP flags byte (CWR..FIN), -1 if not TCP.
+     */
+    public int getTcpFlags() { return tcpFlags; }
+
+    /**
+     * Server name of a TLS Client Hello in this packet, or null.
+     */
+    public String getSni() { return sni; }
+
+    /**
+     * JA3 of a TLS Client Hello in this packet, or null.
+     */
+    public String getJa3() { return ja3; }
+}
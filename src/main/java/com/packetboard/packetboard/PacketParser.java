@@ -1,16 +1,40 @@
 package com.packetboard.packetboard;
 
 import com.packetboard.packetboard.Parser.*;
+import com.packetboard.packetboard.Stats.AddressTable;
+import com.packetboard.packetboard.Stats.DnsIndex;
+import com.packetboard.packetboard.Stats.FingerprintTable;
+import com.packetboard.packetboard.Stats.FlowTable;
+import com.packetboard.packetboard.Stats.HyperLogLog;
+import com.packetboard.packetboard.Stats.IcmpStats;
+import com.packetboard.packetboard.Stats.RadioStats;
+import com.packetboard.packetboard.Stats.SlidingRankings;
+import com.packetboard.packetboard.Stats.ShardedSpaceSaving;
+import com.packetboard.packetboard.Stats.SpaceSaving;
+import com.packetboard.packetboard.Stats.ThroughputSeries;
+import com.packetboard.packetboard.Stats.TlsFingerprinter;
+import com.packetboard.packetboard.Stats.VlanStats;
 
 import io.kaitai.struct.ByteBufferKaitaiStream;
+import io.kaitai.struct.KaitaiStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.net.ssl.*;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.CertificateException;
@@ -24,18 +48,50 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class PacketParser {
     private final ConcurrentHashMap<String, Integer> localTalkers = new ConcurrentHashMap<>(); // IP: Packet count.
     private final ConcurrentHashMap<String, Long> localTalkersData = new ConcurrentHashMap<>(); // IP: data(bytes)
-    private final ConcurrentHashMap<String, String> addressResolution = new ConcurrentHashMap<>(); // IP: MAC
+    private AddressTable addresses = new AddressTable(); // IP: MACs seen, from ARP and local hosts
     private final ConcurrentHashMap<String, Long> dataCount = new ConcurrentHashMap<>(); // dstIP: Data(bytes)
     private final ConcurrentHashMap<String, ArrayList> sniRecords = new ConcurrentHashMap<>(); // dstIP: Arraylist(SNI(domain name))
     private final ConcurrentHashMap<String, String> rDNSRecords = new ConcurrentHashMap<>(); // IP: rDNS
     private final ConcurrentHashMap<String, Long> sniDataCount = new ConcurrentHashMap<>(); // SNI: Data(bytes)
+    private FingerprintTable fingerprints = new FingerprintTable(); // JA3/JA4 of TLS Client Hellos
+    private DnsIndex dnsIndex = new DnsIndex(this::parseIPv4Address, this::parseIPv6); // IP: name, from DNS answers in the capture
+    private FlowTable flows = new FlowTable(); // Flow key: packets, bytes
+    private ThroughputSeries throughput = new ThroughputSeries(1_000_000L); // Bytes/packets per second
+    private HyperLogLog externalHosts = new HyperLogLog(); // Distinct non-local IPs, estimated
+    private VlanStats vlans = new VlanStats(); // Traffic per 802.1Q VLAN
+    private RadioStats radio = new RadioStats(); // 802.11 radio stats of PPI captures
+    private IcmpStats icmp = new IcmpStats(this::parseIPv4Address); // ICMP types, unreachable hosts and ping RTTs
+    private final Ipv4Reassembler reassembler = new Ipv4Reassembler(this::wantsPayload); // IPv4 fragments in progress
+    private final QuicInitial quic = new QuicInitial(); // QUIC connections: Initial keys and Client Hello so far
+    private HyperLogLog distinctFlows = new HyperLogLog(); // Distinct flows, estimated
+    private HyperLogLog distinctSNIs = new HyperLogLog(); // Distinct SNIs of Client Hellos, estimated
+    private long heavyHitterMemory = 0; // Heap for bounded talker/destination counts, 0 for exact maps.
+    private ShardedSpaceSaving talkerPackets, talkerData, destData; // Bounded localTalkers, localTalkersData and dataCount, or null
+    private volatile PacketFilter filter; // Only packets matching this are analysed, or null for all
+    private volatile SlidingRankings windows; // Rankings of the last minute/5 minutes/hour, or null
     private final AtomicInteger ipv4Counts = new AtomicInteger(0);
     private final AtomicInteger ipv6Counts = new AtomicInteger(0);
     private final Logger logger = LogManager.getLogger(PacketParser.class);
-    private AtomicBoolean doSNI, dorDNS = new AtomicBoolean(false);
+    private AtomicBoolean doSNI = new AtomicBoolean(false), dorDNS = new AtomicBoolean(false);
 
+    private Boolean writeIndex = true; // Write a sidecar packet index during load.
+    private Boolean writeSnapshot = true; // Write a sidecar analysis snapshot after load.
+    private Path exportPath; // Export per-packet metadata during load, null for none.
+    private volatile ColumnarWriter exporter; // Open while a load exports metadata.
+    private static final int STREAM_BATCH_RECORDS = 256; // Records decoded per task of a stream load.
     private Boolean localTrafficStats = true; // Collect local traffic stats. TODO: Bind to JavaFX.
 
+    /**
+     * Decodes the records of one link-type, see {@link #decoderFor}.
+     */
+    @FunctionalInterface
+    interface LinkDecoder {
+        /**
+         * @return Flow id of the packet, -1 if it is not part of an IP flow.
+         */
+        int parse(PcapRecord record);
+    }
+
     /**
      * Header length of each protocol.
      */
@@ -61,171 +117,900 @@ public class PacketParser {
     }
 
     /**
-     * TLS protocol specifications
+     * UDP protocol specifications
      */
-    private static final class TLS {
+    private static final class UDP {
         /**
-         * TLS protocol number.
+         * UDP protocol number.
          */
-        public static final byte Handshake = 22; // TLS Handshake protocol number in byte
+        public static final int Proto = 17;
+    }
+
+    /**
+     * ICMP protocol specifications
+     */
+    private static final class ICMP {
+        /**
+         * ICMP protocol number.
+         */
+        public static final int Proto = 1;
     }
 
     /**
      * Parse a given pcap file.
+     * <p>
+     * The file is split into byte ranges at record boundaries, and the ranges are decoded concurrently from the start.
      *
      * @param fileName Path to the file
      * @param doSNI    Look up SNI for each dst IP?
      * @param dorDNS   Look up rDNS for each dst IP?
      */
     public void load(String fileName, Boolean doSNI, Boolean dorDNS) {
-        try {
-            // register settings
-            this.doSNI = new AtomicBoolean(doSNI);
-            this.dorDNS = new AtomicBoolean(dorDNS);
-            Pcap data = Pcap.fromFile(fileName);
+        // register settings
+        this.doSNI = new AtomicBoolean(doSNI);
+        this.dorDNS = new AtomicBoolean(dorDNS);
+        Path path = Path.of(fileName);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Pcap.Header header = PcapRecord.readHeader(channel);
             // check link-type.
-            var linkType = data.hdr().network();
+            LinkDecoder decoder = decoderFor(header.network());
+
+            if (exportPath != null) {
+                exporter = new ColumnarWriter(exportPath);
+            }
+
+            // Lookups block on the network, so use more ranges than cores when they are enabled.
+            int parts = doSNI || dorDNS ? 64 : Runtime.getRuntime().availableProcessors();
+            long[] ranges = PcapSplitter.split(channel, header.snaplen(), parts);
+
+            // Sidecar index: each range collects its records, in file order. A filtered load would index only part of
+            // the flows, and replace the index of the whole capture.
+            boolean index = writeIndex && filter == null;
+            PacketIndex.Builder[] indexes = new PacketIndex.Builder[ranges.length - 1];
 
             // Create thread pool
-            ExecutorService executors = Executors.newFixedThreadPool(64);
+            setDecodingThreads(ranges.length - 1);
+            ExecutorService executors = Executors.newFixedThreadPool(ranges.length - 1);
             ArrayList<Future> futures = new ArrayList<>();
-            data.packets().forEach(packet -> {
+            for (int i = 0; i + 1 < ranges.length; i++) {
+                int range = i;
+                indexes[range] = index ? new PacketIndex.Builder() : null;
                 futures.add(executors.submit(() -> {
-                    switch (linkType) {
-                        case ETHERNET:
-                            EthernetFrame ethFrame = (EthernetFrame) packet.body();
-                            parseEther(ethFrame);
-                            break;
-                    }
-                    return;
-
+                    parseRange(path, decoder, header.snaplen(), ranges[range], ranges[range + 1], indexes[range]);
+                    return null;
                 }));
-            });
+            }
+            awaitAll(executors, futures);
+            foldThreadCounts();
+            closeExporter();
 
-            // Wait for all threads to finish
-            for (Future future : futures) {
+            if (index) {
                 try {
-                    future.get();
-                } catch (InterruptedException | ExecutionException e) {
-                    logger.error("Error while parsing packet");
-                    logger.error(e);
+                    PacketIndex.Builder whole = new PacketIndex.Builder();
+                    for (PacketIndex.Builder part : indexes) {
+                        whole.addAll(part);
+                    }
+                    whole.write(path, flows);
+                } catch (IOException e) {
+                    logger.error("Could not write packet index for {}", fileName);
+                    logger.debug(e);
+                }
+            }
+
+            // A filtered load must not pass for the results of the whole capture.
+            if (writeSnapshot && filter == null) {
+                try {
+                    AnalysisSnapshot.write(this, AnalysisSnapshot.sidecarOf(path), path);
+                } catch (IOException e) {
+                    logger.error("Could not write analysis snapshot for {}", fileName);
+                    logger.debug(e);
                 }
             }
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            abortExporter();
+        }
+    }
+
+    /**
+     * Parse a pcap stream, e.g. {@code tcpdump -w -} piped in, without writing it to disk first. Returns at the end of
+     * the stream. Metadata is exported if an export path is set; no index or snapshot is written.
+     *
+     * @param in     Stream starting with the pcap global header.
+     * @param doSNI  Look up SNI for each dst IP?
+     * @param dorDNS Look up rDNS for each dst IP?
+     */
+    public void loadStream(InputStream in, Boolean doSNI, Boolean dorDNS) throws IOException {
+        loadStream(Channels.newChannel(in), doSNI, dorDNS);
+    }
+
+    /**
+     * Parse a pcap stream, e.g. {@code tcpdump -w -} piped in, without writing it to disk first.
+     * <p>
+     * Records are read through a fixed read-ahead buffer and decoded in batches by a thread pool. When the pool is
+     * behind, the reading thread decodes the next batch itself, so memory stays bounded however fast the stream is.
+     *
+     * @see #loadStream(InputStream, Boolean, Boolean)
+     */
+    public void loadStream(ReadableByteChannel channel, Boolean doSNI, Boolean dorDNS) throws IOException {
+        this.doSNI = new AtomicBoolean(doSNI);
+        this.dorDNS = new AtomicBoolean(dorDNS);
+        PcapRecordReader reader = PcapRecordReader.ofStream(channel, PcapRecordReader.DEFAULT_BUFFER_SIZE);
+        LinkDecoder decoder = decoderFor(reader.header().network());
+        if (exportPath != null) {
+            exporter = new ColumnarWriter(exportPath);
+        }
+
+        int threads = doSNI || dorDNS ? 64 : Runtime.getRuntime().availableProcessors();
+        setDecodingThreads(threads + 1); // The reading thread decodes too when the queue is full.
+        ThreadPoolExecutor executors = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            ArrayList<PcapRecord> batch = new ArrayList<>(STREAM_BATCH_RECORDS);
+            PcapRecord record;
+            while ((record = reader.next()) != null) {
+                batch.add(record);
+                if (batch.size() == STREAM_BATCH_RECORDS) {
+                    submitBatch(executors, decoder, batch);
+                    batch = new ArrayList<>(STREAM_BATCH_RECORDS);
+                }
+            }
+            submitBatch(executors, decoder, batch);
+        } finally {
+            executors.shutdown();
+            try {
+                executors.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            foldThreadCounts();
+            closeExporter();
+        }
+    }
+
+    private void submitBatch(ExecutorService executors, LinkDecoder decoder, ArrayList<PcapRecord> batch) {
+        executors.execute(() -> {
+            for (PcapRecord record : batch) {
+                parseRecord(decoder, record);
+            }
+        });
+    }
+
+    /**
+     * Decode the records of a byte range one after the other, on the calling thread.
+     *
+     * @param from  Offset of the first record header of the range.
+     * @param to    End of the range (exclusive).
+     * @param index Index to register the records in, or null.
+     */
+    private void parseRange(Path path, LinkDecoder decoder, long snaplen, long from, long to,
+                            PacketIndex.Builder index) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.position(from);
+            PcapRecordReader reader = new PcapRecordReader(channel, from, to, snaplen);
+            PcapRecord record;
+            while ((record = reader.next()) != null) {
+                int flow = parseRecord(decoder, record);
+                if (index != null) {
+                    index.setFlow(index.add(record.offset(), record.tsMicros()), flow);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse one record, e.g. of a capture being followed.
+     *
+     * @param decoder decoder for the link-type of the capture, see {@link #decoderFor}.
+     * @return Flow id of the packet, -1 if it is not part of an IP flow or is malformed.
+     */
+    int parseRecord(LinkDecoder decoder, PcapRecord record) {
+        try {
+            return decoder.parse(record);
+        } catch (RuntimeException e) {
+            // A malformed packet must not end the rest of the capture.
+            logger.error("Error while parsing packet at {}", record.offset());
+            logger.debug(e);
+            return -1;
+        }
+    }
+
+    /**
+     * Parse only the packets of a time range, using the sidecar index written by {@link #load}. Like load, the
+     * packets add to the results already here, so call on a new parser to get the results of the range alone.
+     *
+     * @param fileName   Path to the file
+     * @param fromMicros Start of the range (inclusive), microseconds since the epoch.
+     * @param toMicros   End of the range (exclusive), microseconds since the epoch.
+     * @param doSNI      Look up SNI for each dst IP?
+     * @param dorDNS     Look up rDNS for each dst IP?
+     * @return false if the capture has no up-to-date index.
+     */
+    public boolean loadTimeRange(String fileName, long fromMicros, long toMicros, Boolean doSNI, Boolean dorDNS)
+            throws IOException {
+        try (PacketIndex index = PacketIndex.open(Path.of(fileName))) {
+            if (index == null) {
+                return false;
+            }
+            loadRecords(fileName, index.offsetsBetween(fromMicros, toMicros), doSNI, dorDNS);
+            return true;
+        }
+    }
+
+    /**
+     * Parse only the packets of one flow, using the sidecar index written by {@link #load}. Call on a new parser,
+     * see {@link #loadTimeRange}.
+     *
+     * @param fileName Path to the file
+     * @param flowKey  Flow, as built by {@link FlowTable#key}.
+     * @param doSNI    Look up SNI for each dst IP?
+     * @param dorDNS   Look up rDNS for each dst IP?
+     * @return false if the capture has no up-to-date index.
+     */
+    public boolean loadFlow(String fileName, String flowKey, Boolean doSNI, Boolean dorDNS) throws IOException {
+        try (PacketIndex index = PacketIndex.open(Path.of(fileName))) {
+            if (index == null) {
+                return false;
+            }
+            loadRecords(fileName, index.offsetsOfFlow(index.flowId(flowKey)), doSNI, dorDNS);
+            return true;
+        }
+    }
+
+    /**
+     * Parse the records of a byte range of a pcap file, e.g. one shard of a capture split across processes.
+     * No index or snapshot is written.
+     *
+     * @param fileName   Path to the file
+     * @param fromOffset Offset of the first record header of the range.
+     * @param toOffset   End of the range (exclusive): records whose header starts here or later are not parsed.
+     * @param doSNI      Look up SNI for each dst IP?
+     * @param dorDNS     Look up rDNS for each dst IP?
+     */
+    public void loadRange(String fileName, long fromOffset, long toOffset, Boolean doSNI, Boolean dorDNS) throws IOException {
+        this.doSNI = new AtomicBoolean(doSNI);
+        this.dorDNS = new AtomicBoolean(dorDNS);
+        Path path = Path.of(fileName);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Pcap.Header header = PcapRecord.readHeader(channel);
+            LinkDecoder decoder = decoderFor(header.network());
+            long from = Math.max(fromOffset, PcapRecord.GLOBAL_HEADER_LENGTH);
+            long to = Math.min(toOffset, channel.size());
+            // Split the range itself, so all cores decode it.
+            long[] ranges = PcapSplitter.split(channel, header.snaplen(), from, to, Runtime.getRuntime().availableProcessors());
+            setDecodingThreads(ranges.length - 1);
+            ExecutorService executors = Executors.newFixedThreadPool(ranges.length - 1);
+            ArrayList<Future> futures = new ArrayList<>();
+            for (int i = 0; i + 1 < ranges.length; i++) {
+                int range = i;
+                futures.add(executors.submit(() -> {
+                    parseRange(path, decoder, header.snaplen(), ranges[range], ranges[range + 1], null);
+                    return null;
+                }));
+            }
+            awaitAll(executors, futures);
+            foldThreadCounts();
+        }
+    }
+
+    /**
+     * Parse the records at the given offsets of a pcap file.
+     */
+    private void loadRecords(String fileName, long[] offsets, Boolean doSNI, Boolean dorDNS) throws IOException {
+        this.doSNI = new AtomicBoolean(doSNI);
+        this.dorDNS = new AtomicBoolean(dorDNS);
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            Pcap.Header header = PcapRecord.readHeader(channel);
+            LinkDecoder decoder = decoderFor(header.network());
+            setDecodingThreads(64);
+            ExecutorService executors = Executors.newFixedThreadPool(64);
+            ArrayList<Future> futures = new ArrayList<>();
+            for (long offset : offsets) {
+                PcapRecord record = PcapRecord.read(channel, offset, header.snaplen());
+                futures.add(executors.submit(() -> parseRecord(decoder, record)));
+            }
+            awaitAll(executors, futures);
+            foldThreadCounts();
+        }
+    }
+
+    /**
+     * Finish the metadata export of a load, if any.
+     */
+    private void closeExporter() {
+        if (exporter == null) {
+            return;
+        }
+        try {
+            exporter.close();
+        } catch (IOException e) {
+            logger.error("Could not export packet metadata to {}", exportPath);
+            logger.debug(e);
+        }
+        exporter = null;
+    }
+
+    /**
+     * Drop the metadata export of a load that failed before {@link #closeExporter}, so no partial file is left.
+     */
+    private void abortExporter() {
+        if (exporter == null) {
+            return;
+        }
+        try {
+            exporter.abort();
+        } catch (IOException e) {
+            logger.error("Could not delete the partial export of {}", exportPath);
+            logger.debug(e);
+        }
+        exporter = null;
+    }
+
+    /**
+     * Split the per-thread talker and destination counters between the decoding threads of a load, so bounded
+     * counts stay within their memory budget.
+     */
+    private void setDecodingThreads(int threads) {
+        if (talkerPackets != null) {
+            talkerPackets.setThreads(threads);
+            talkerData.setThreads(threads);
+            destData.setThreads(threads);
+        }
+    }
+
+    /**
+     * Merge the per-thread counts of a finished load: VLAN and radio counts, and talker and destination counts if
+     * they are bounded. Pings left without a reply by the end of the load count as unanswered.
+     */
+    private void foldThreadCounts() {
+        vlans.fold();
+        radio.fold();
+        if (!throughput.isEmpty()) {
+            // Start of the last second with traffic: a lower bound of the last timestamp, so no ping expires early.
+            icmp.expireRequests(throughput.getEndMicros() - throughput.getIntervalMicros());
+        }
+        if (talkerPackets != null) {
+            talkerPackets.fold();
+            talkerData.fold();
+            destData.fold();
+        }
+    }
+
+    /**
+     * Wait for all threads to finish, then release the pool.
+     */
+    private void awaitAll(ExecutorService executors, ArrayList<Future> futures) {
+        for (Future future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                logger.error("Error while parsing packet");
+                logger.error(e);
+            }
+        }
+        executors.shutdown();
+    }
+
+    /**
+     * Decoder of the records of a capture, according to its link-type. Resolve once per capture.
+     *
+     * @param linkType Link-type from the pcap header.
+     */
+    LinkDecoder decoderFor(Pcap.Linktype linkType) {
+        if (linkType == Pcap.Linktype.ETHERNET) {
+            return record -> {
+                PacketFilter match = filter;
+                if (match != null && !match.matches(record.body(), PacketFilter.wireLength(record))) {
+                    // Filtered out on the raw bytes, before any decoding.
+                    return -1;
+                }
+                return parseEther(new EthernetFrame(new ByteBufferKaitaiStream(record.body())), record.tsMicros());
+            };
+        }
+        if (linkType == Pcap.Linktype.PPI) {
+            return this::parsePpi;
+        }
+        LinkLayer layer = LinkLayer.of(linkType);
+        if (layer == null) {
+            logger.error("Link type {} is not supported, its packets are skipped", linkType);
+            return record -> -1;
+        }
+        return record -> parseLinkLayer(layer, record);
+    }
+
+    /**
+     * Count a frame in the VLAN stats. A double tagged frame is counted under its customer VLAN.
+     *
+     * @return VLAN ID of the frame, -1 if it is untagged.
+     */
+    private int countVlan(EthernetFrame ethFrame) {
+        EthernetFrame.TagControlInfo tag = ethFrame.innerTci() != null ? ethFrame.innerTci() : ethFrame.tci();
+        int size = (int) ethFrame._io().size();
+        if (tag == null) {
+            vlans.add(-1, 0, -1, size);
+            return -1;
         }
+        int serviceVlan = ethFrame.innerTci() != null ? (int) ethFrame.tci().vlanId() : -1;
+        vlans.add((int) tag.vlanId(), (int) tag.priority(), serviceVlan, size);
+        return (int) tag.vlanId();
     }
 
     /**
      * When link-type of pcap is set to Ethernet. Parse the packet.
      *
      * @param ethFrame Ethernet frame
+     * @param tsMicros Capture timestamp, microseconds since the epoch.
+     * @return Flow id of the packet, -1 if it is not part of an IP flow.
      */
-    private void parseEther(EthernetFrame ethFrame) {
+    private int parseEther(EthernetFrame ethFrame, long tsMicros) {
+        int vlan = countVlan(ethFrame);
+        if (ethFrame.etherType() == null) {
+            return -1;
+        }
         // Check the type of the next packet
         switch (ethFrame.etherType()) {
             case IPV4:
-                ipv4Counts.incrementAndGet();
-
-                Ipv4Packet ipv4Packet = (Ipv4Packet) ethFrame.body();
-                String destIPv4 = parseIPv4Address(ipv4Packet.dstIpAddr());
-                String srcIPv4 = parseIPv4Address(ipv4Packet.srcIpAddr());
-                String srcMAC = parseMacAddress(ethFrame.srcMac());
-                String dstMAC = parseMacAddress(ethFrame.dstMac());
-                var size = ipv4Packet.totalLength();
-
-                // SNI
-                if (doSNI.get() && sniRecords.get(destIPv4) == null && !isLocalIPv4(destIPv4)) {
-                    var sni = getSNI(destIPv4);
-                    if (sni != null) {
-                        sniRecords.put(destIPv4, sni);
-                    }
+                return parseIPv4Layer((Ipv4Packet) ethFrame.body(), tsMicros, vlan,
+                        AddressTable.mac(ethFrame.srcMac()), AddressTable.mac(ethFrame.dstMac()));
+            case IPV6:
+                return parseIPv6Layer((Ipv6Packet) ethFrame.body(), tsMicros, vlan,
+                        AddressTable.mac(ethFrame.srcMac()), AddressTable.mac(ethFrame.dstMac()));
+            case ARP:
+                parseArp((byte[]) ethFrame.body(), tsMicros);
+                return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Parse a packet of a link type carrying IP without Ethernet, e.g. Linux cooked or raw IP captures.
+     *
+     * @param layer  decoder of the link type.
+     * @param record the packet.
+     * @return Flow id of the packet, -1 if it is not part of an IP flow.
+     */
+    private int parseLinkLayer(LinkLayer layer, PcapRecord record) {
+        byte[] body = record.body();
+        long location = layer.locate(body);
+        if (location < 0) {
+            return -1;
+        }
+        PacketFilter match = filter;
+        if (match != null && !match.matches(body, LinkLayer.offset(location), LinkLayer.etherType(location),
+                PacketFilter.wireLength(record))) {
+            return -1;
+        }
+        return parseNetworkLayer(layer, body, 0, location, record.tsMicros());
+    }
+
+    /**
+     * Parse the network layer of a packet found by {@link LinkLayer#locate}.
+     *
+     * @param start    offset of the link-layer header in the record.
+     * @param location location of the network layer in the record.
+     * @return Flow id of the packet, -1 if it is not part of an IP flow.
+     */
+    private int parseNetworkLayer(LinkLayer layer, byte[] body, int start, long location, long tsMicros) {
+        int offset = LinkLayer.offset(location);
+        KaitaiStream io = new ByteBufferKaitaiStream(ByteBuffer.wrap(body, offset, body.length - offset).slice());
+        switch (LinkLayer.etherType(location)) {
+            case LinkLayer.ETHERTYPE_IPV4:
+                return parseIPv4Layer(new Ipv4Packet(io), tsMicros, -1, layer.sourceMac(body, start), -1);
+            case LinkLayer.ETHERTYPE_IPV6:
+                return parseIPv6Layer(new Ipv6Packet(io), tsMicros, -1, layer.sourceMac(body, start), -1);
+            case LinkLayer.ETHERTYPE_ARP:
+                parseArp(Arrays.copyOfRange(body, offset, body.length), tsMicros);
+                return -1;
+        }
+        return -1;
+    }
+
+    /**
+     * Parse a packet of a PPI capture: count its radio information, then parse the 802.11 or Ethernet frame it
+     * carries. With a filter, only the frames it matches are counted; frames without a network layer never match.
+     *
+     * @param record the packet.
+     * @return Flow id of the packet, -1 if it is not part of an IP flow.
+     */
+    private int parsePpi(PcapRecord record) {
+        byte[] body = record.body();
+        long tsMicros = record.tsMicros();
+        PpiHeader header = PpiHeader.parse(body);
+        if (header == null) {
+            return -1;
+        }
+        // The frame is decoded in place, after the PPI header.
+        int start = header.length();
+        int frameLength = body.length - start;
+        PacketFilter match = filter;
+        int wireLength = PacketFilter.wireLength(record) - start; // Of the frame, without the PPI header
+        switch (header.dlt()) {
+            case PpiHeader.DLT_IEEE802_11: {
+                long location = LinkLayer.IEEE802_11.locate(body, start);
+                if (match != null && (location < 0
+                        || !match.matches(body, LinkLayer.offset(location), LinkLayer.etherType(location),
+                        wireLength))) {
+                    return -1;
                 }
-                if (doSNI.get() && sniRecords.get(srcIPv4) == null && !isLocalIPv4(srcIPv4)) {
-                    var sni = getSNI(srcIPv4);
-                    if (sni != null) {
-                        sniRecords.put(srcIPv4, sni);
-                    }
+                radio.add(header, frameLength);
+                return location < 0 ? -1
+                        : parseNetworkLayer(LinkLayer.IEEE802_11, body, start, location, tsMicros);
+            }
+            case PpiHeader.DLT_ETHERNET:
+                if (match != null && !match.matchesEthernet(body, start, wireLength)) {
+                    return -1;
                 }
+                radio.add(header, frameLength);
+                KaitaiStream io = new ByteBufferKaitaiStream(ByteBuffer.wrap(body, start, frameLength).slice());
+                return parseEther(new EthernetFrame(io), tsMicros);
+        }
+        if (match == null) {
+            radio.add(header, frameLength);
+        }
+        return -1;
+    }
+
+    /**
+     * Collect stats from an IPv4 packet.
+     *
+     * @param vlan   VLAN ID of the frame, -1 if untagged or not Ethernet.
+     * @param srcMac source MAC of the frame, -1 if unknown.
+     * @param dstMac destination MAC of the frame, -1 if unknown.
+     * @return Flow id of the packet, -1 if it is not part of an IP flow.
+     */
+    private int parseIPv4Layer(Ipv4Packet ipv4Packet, long tsMicros, int vlan, long srcMac, long dstMac) {
+        ipv4Counts.incrementAndGet();
+
+        String destIPv4 = parseIPv4Address(ipv4Packet.dstIpAddr());
+        String srcIPv4 = parseIPv4Address(ipv4Packet.srcIpAddr());
+        var size = ipv4Packet.totalLength();
+        PacketMetadata row = newRow(vlan, tsMicros, srcIPv4, destIPv4, ipv4Packet.protocol(), size);
+
+        // SNI
+        if (doSNI.get() && sniRecords.get(destIPv4) == null && !isLocalIPv4(destIPv4)) {
+            var sni = getSNI(destIPv4);
+            if (sni != null) {
+                sniRecords.put(destIPv4, sni);
+            }
+        }
+        if (doSNI.get() && sniRecords.get(srcIPv4) == null && !isLocalIPv4(srcIPv4)) {
+            var sni = getSNI(srcIPv4);
+            if (sni != null) {
+                sniRecords.put(srcIPv4, sni);
+            }
+        }
+
+        // rDNS
+        if (dorDNS.get() && rDNSRecords.get(destIPv4) == null && !isLocalIPv4(destIPv4)) {
+            var rDNS = getRDNS(destIPv4);
+            rDNSRecords.put(destIPv4, rDNS);
+        }
+        if (dorDNS.get() && rDNSRecords.get(srcIPv4) == null && !isLocalIPv4(srcIPv4)) {
+            var rDNS = getRDNS(srcIPv4);
+            rDNSRecords.put(srcIPv4, rDNS);
+        }
+
+        // Add stats from the packet
+        registerPacket(srcIPv4, destIPv4, size);
+        registerMac(srcIPv4, srcMac, tsMicros, isLocalIPv4(srcIPv4));
+        registerMac(destIPv4, dstMac, tsMicros, isLocalIPv4(destIPv4));
+        SlidingRankings recent = windows;
+        if (recent != null) {
+            recent.addHost(tsMicros, srcIPv4, isLocalIPv4(srcIPv4), size);
+            recent.addHost(tsMicros, destIPv4, isLocalIPv4(destIPv4), size);
+        }
+        throughput.add(tsMicros, false, ipv4Packet.protocol(), size);
+        if (isLocalIPv4(srcIPv4)) {
+            throughput.addTalker(tsMicros, srcIPv4, size);
+            if (vlan >= 0) {
+                vlans.addTalker(vlan, srcIPv4, size);
+            }
+        }
+        if (isLocalIPv4(destIPv4)) {
+            throughput.addTalker(tsMicros, destIPv4, size);
+            if (vlan >= 0) {
+                vlans.addTalker(vlan, destIPv4, size);
+            }
+        }
+
+        long srcHash = HyperLogLog.hash(ipv4Packet.srcIpAddr());
+        long dstHash = HyperLogLog.hash(ipv4Packet.dstIpAddr());
+        if (!isLocalIPv4(srcIPv4)) {
+            externalHosts.addHash(srcHash);
+        }
+        if (!isLocalIPv4(destIPv4)) {
+            externalHosts.addHash(dstHash);
+        }
+
+        int flow;
+        Object l4;
+        if (ipv4Packet.isFragment()) {
+            // Every fragment counts in the flow of its datagram; the payload is looked into once reassembled.
+            Ipv4Reassembler.Result datagram = reassembler.add(ipv4Packet.srcIpAddr(), ipv4Packet.dstIpAddr(),
+                    ipv4Packet.identification(), ipv4Packet.protocol(), ipv4Packet.fragmentOffset(),
+                    ipv4Packet.moreFragments(), ipv4Packet._raw_body(), tsMicros);
+            l4 = datagram.payload() == null ? null
+                    : new ProtocolBody(new ByteBufferKaitaiStream(datagram.payload()), ipv4Packet.protocol()).body();
+            flow = l4 != null ? registerFlow(ipv4Packet.protocol(), srcIPv4, destIPv4, srcHash, dstHash, l4, size, row)
+                    : registerFlow(ipv4Packet.protocol(), srcIPv4, destIPv4, srcHash, dstHash, datagram.srcPort(),
+                    datagram.dstPort(), size, row);
+            if (ipv4Packet.protocol() == ICMP.Proto && datagram.payload() != null) {
+                icmp.add(datagram.payload(), ipv4Packet.srcIpAddr(), ipv4Packet.dstIpAddr(), tsMicros);
+            }
+        } else {
+            l4 = ipv4Packet.body().body();
+            flow = registerFlow(ipv4Packet.protocol(), srcIPv4, destIPv4, srcHash, dstHash, l4, size, row);
+            if (ipv4Packet.protocol() == ICMP.Proto) {
+                icmp.add(ipv4Packet._raw_body(), ipv4Packet.srcIpAddr(), ipv4Packet.dstIpAddr(), tsMicros);
+            }
+        }
+        parseTransport(ipv4Packet.protocol(), l4, tsMicros, srcIPv4, flow, row);
+        export(row);
+
+        return flow;
+    }
+
+    /**
+     * Collect stats from an IPv6 packet, see {@link #parseIPv4Layer}.
+     */
+    private int parseIPv6Layer(Ipv6Packet ipv6Packet, long tsMicros, int vlan, long srcMac, long dstMac) {
+        ipv6Counts.incrementAndGet();
+
+        String destIPv6 = parseIPv6(ipv6Packet.dstIpv6Addr());
+        String srcIPv6 = parseIPv6(ipv6Packet.srcIpv6Addr());
+        var size6 = ipv6Packet.payloadLength();
+        PacketMetadata row6 = newRow(vlan, tsMicros, srcIPv6, destIPv6, ipv6Packet.protocol(), size6);
+
+        //SNI
+        if (doSNI.get() && sniRecords.get(destIPv6) == null && !isLocalIPv6(destIPv6)) {
+            var sni = getSNI(destIPv6);
+            if (sni != null) {
+                sniRecords.put(destIPv6, sni);
+            }
+        }
+        if (doSNI.get() && sniRecords.get(srcIPv6) == null && !isLocalIPv6(srcIPv6)) {
+            var sni = getSNI(srcIPv6);
+            if (sni != null) {
+                sniRecords.put(srcIPv6, sni);
+            }
+        }
+
+        // rDNS
+        if (dorDNS.get() && rDNSRecords.get(destIPv6) == null) {
+            var rDNS = getRDNS(destIPv6);
+            rDNSRecords.put(destIPv6, rDNS);
+        }
+        if (dorDNS.get() && rDNSRecords.get(srcIPv6) == null) {
+            var rDNS = getRDNS(srcIPv6);
+            rDNSRecords.put(srcIPv6, rDNS);
+        }
+
+        // Add stats from the packet
+        registerPacket6(srcIPv6, destIPv6, size6);
+        registerMac(srcIPv6, srcMac, tsMicros, isLocalIPv6(srcIPv6));
+        registerMac(destIPv6, dstMac, tsMicros, isLocalIPv6(destIPv6));
+        SlidingRankings recent6 = windows;
+        if (recent6 != null) {
+            recent6.addHost(tsMicros, srcIPv6, isLocalIPv6(srcIPv6), size6);
+            recent6.addHost(tsMicros, destIPv6, isLocalIPv6(destIPv6), size6);
+        }
+        throughput.add(tsMicros, true, ipv6Packet.protocol(), size6);
+        if (isLocalIPv6(srcIPv6)) {
+            throughput.addTalker(tsMicros, srcIPv6, size6);
+            if (vlan >= 0) {
+                vlans.addTalker(vlan, srcIPv6, size6);
+            }
+        }
+        if (isLocalIPv6(destIPv6)) {
+            throughput.addTalker(tsMicros, destIPv6, size6);
+            if (vlan >= 0) {
+                vlans.addTalker(vlan, destIPv6, size6);
+            }
+        }
+        long srcHash6 = HyperLogLog.hash(ipv6Packet.srcIpv6Addr());
+        long dstHash6 = HyperLogLog.hash(ipv6Packet.dstIpv6Addr());
+        if (!isLocalIPv6(srcIPv6)) {
+            externalHosts.addHash(srcHash6);
+        }
+        if (!isLocalIPv6(destIPv6)) {
+            externalHosts.addHash(dstHash6);
+        }
+        Object l4 = ipv6Packet.nextHeader() == null ? null : ipv6Packet.nextHeader().body();
+        int flow6;
+        byte[] fragment = ipv6Packet.rest();
+        if (ipv6Packet.fragmentOffset() == 0 && ipv6Packet.isFragment() && fragment.length >= 4
+                && (ipv6Packet.protocol() == TCP.Proto || ipv6Packet.protocol() == UDP.Proto)) {
+            // First fragment: the ports are there, the rest of the datagram is not.
+            int srcPort = ((fragment[0] & 0xff) << 8) | (fragment[1] & 0xff);
+            int dstPort = ((fragment[2] & 0xff) << 8) | (fragment[3] & 0xff);
+            flow6 = registerFlow(ipv6Packet.protocol(), srcIPv6, destIPv6, srcHash6, dstHash6, srcPort, dstPort, size6,
+                    row6);
+        } else {
+            flow6 = registerFlow(ipv6Packet.protocol(), srcIPv6, destIPv6, srcHash6, dstHash6, l4, size6, row6);
+        }
+        parseTransport(ipv6Packet.protocol(), l4, tsMicros, srcIPv6, flow6, row6);
+        export(row6);
+        return flow6;
+    }
+
+    /**
+     * Start the exported row of a packet.
+     *
+     * @return the row, or null if no export is running.
+     */
+    private PacketMetadata newRow(int vlan, long tsMicros, String src, String dst, int protocol, int size) {
+        if (exporter == null) {
+            return null;
+        }
+        PacketMetadata row = new PacketMetadata();
+        row.tsMicros = tsMicros;
+        row.src = src;
+        row.dst = dst;
+        row.protocol = protocol;
+        row.length = size;
+        row.vlan = vlan;
+        return row;
+    }
+
+    private void export(PacketMetadata row) {
+        ColumnarWriter writer = exporter;
+        if (row == null || writer == null) {
+            return;
+        }
+        try {
+            writer.append(row);
+        } catch (IOException e) {
+            logger.error("Could not export packet metadata to {}", exportPath);
+            logger.debug(e);
+        }
+    }
+
+    /**
+     * Count a packet in its flow.
+     *
+     * @param protocol IP protocol number.
+     * @param src      src IP.
+     * @param dst      dst IP.
+     * @param srcHash  {@link HyperLogLog#hash} of the raw src address.
+     * @param dstHash  {@link HyperLogLog#hash} of the raw dst address.
+     * @param l4       Parsed transport layer, used for ports.
+     * @param size     size of the packet as described in IP header.
+     * @param row      Exported row to fill with ports and TCP flags, or null.
+     * @return Flow id.
+     */
+    private int registerFlow(int protocol, String src, String dst, long srcHash, long dstHash, Object l4, int size,
+                             PacketMetadata row) {
+        int srcPort = -1, dstPort = -1;
+        if (l4 instanceof TcpSegment tcpSegment) {
+            srcPort = tcpSegment.srcPort();
+            dstPort = tcpSegment.dstPort();
+            if (row != null) {
+                row.tcpFlags = tcpFlags(tcpSegment.flags());
+            }
+        } else if (l4 instanceof UdpDatagram udpDatagram) {
+            srcPort = udpDatagram.srcPort();
+            dstPort = udpDatagram.dstPort();
+        }
+        return registerFlow(protocol, src, dst, srcHash, dstHash, srcPort, dstPort, size, row);
+    }
 
-                // rDNS
-                if (dorDNS.get() && rDNSRecords.get(destIPv4) == null && !isLocalIPv4(destIPv4)) {
-                    var rDNS = getRDNS(destIPv4);
-                    rDNSRecords.put(destIPv4, rDNS);
+    /**
+     * Count a packet in its flow, with the ports already known, e.g. from the first fragment of its datagram.
+     *
+     * @param srcPort source port, -1 if none.
+     * @param dstPort destination port, -1 if none.
+     */
+    private int registerFlow(int protocol, String src, String dst, long srcHash, long dstHash, int srcPort,
+                             int dstPort, int size, PacketMetadata row) {
+        if (row != null) {
+            row.srcPort = srcPort;
+            row.dstPort = dstPort;
+        }
+        // Same hash for both directions, like the flow key.
+        long a = HyperLogLog.mix(srcHash + srcPort);
+        long b = HyperLogLog.mix(dstHash + dstPort);
+        distinctFlows.addHash(HyperLogLog.mix(Math.min(a, b) * 31 + Math.max(a, b) + protocol));
+        return flows.record(FlowTable.key(protocol, src, srcPort, dst, dstPort), size);
+    }
+
+    /**
+     * TCP flags as on the wire, CWR in the high bit down to FIN.
+     */
+    private static int tcpFlags(TcpSegment.Flags flags) {
+        return (flags.cwr() ? 0x80 : 0) | (flags.ece() ? 0x40 : 0) | (flags.urg() ? 0x20 : 0) | (flags.ack() ? 0x10 : 0)
+                | (flags.psh() ? 0x08 : 0) | (flags.rst() ? 0x04 : 0) | (flags.syn() ? 0x02 : 0) | (flags.fin() ? 0x01 : 0);
+    }
+
+    /**
+     * Look into the transport payload of an IPv4 or IPv6 packet.
+     *
+     * @param protocol IP protocol, after any IPv6 extension headers.
+     * @param l4       decoded TCP segment or UDP datagram, or null.
+     * @param src      source IP, as text.
+     */
+    private void parseTransport(int protocol, Object l4, long tsMicros, String src, int flow, PacketMetadata row) {
+        // We want to parse TLS Client Hello for fingerprinting, and DNS answers for naming.
+        switch (protocol) {
+            case TCP.Proto:
+                if (!(l4 instanceof TcpSegment tcpSegment)) {
+                    break;
+                }
+                byte[] applicationData = tcpSegment.body();
+                if (tcpSegment.srcPort() == DnsMessage.PORT || tcpSegment.dstPort() == DnsMessage.PORT) {
+                    // DNS over TCP: 2 bytes message length, then the message.
+                    if (applicationData.length > 2) {
+                        int dnsLength = ((applicationData[0] & 0xff) << 8) | (applicationData[1] & 0xff);
+                        parseDNS(applicationData, 2, Math.min(dnsLength, applicationData.length - 2));
+                    }
+                    break;
                 }
-                if (dorDNS.get() && rDNSRecords.get(srcIPv4) == null && !isLocalIPv4(srcIPv4)) {
-                    var rDNS = getRDNS(srcIPv4);
-                    rDNSRecords.put(srcIPv4, rDNS);
+                // Check if this is a TLS Client Hello, validating the headers in place.
+                TlsClientHello clientHello = TlsRecordSniffer.parseClientHello(applicationData, 0, applicationData.length);
+                if (clientHello != null) {
+                    countClientHello(clientHello, false, tsMicros, src, flow, row);
                 }
-
-                // Add stats from the packet
-                registerPacket(srcIPv4, destIPv4, srcMAC, dstMAC, size);
-
-                parseIPv4Packet(ipv4Packet);
-
                 break;
-            case IPV6:
-                ipv6Counts.incrementAndGet();
-
-                Ipv6Packet ipv6Packet = (Ipv6Packet) ethFrame.body();
-                String destIPv6 = parseIPv6(ipv6Packet.dstIpv6Addr());
-                String srcIPv6 = parseIPv6(ipv6Packet.srcIpv6Addr());
-                String srcMAC6 = parseMacAddress(ethFrame.srcMac());
-                String dstMAC6 = parseMacAddress(ethFrame.dstMac());
-                var size6 = ipv6Packet.payloadLength();
-
-                //SNI
-                if (doSNI.get() && sniRecords.get(destIPv6) == null && !isLocalIPv6(destIPv6)) {
-                    var sni = getSNI(destIPv6);
-                    sniRecords.put(destIPv6, sni);
+            case UDP.Proto:
+                if (!(l4 instanceof UdpDatagram udpDatagram)) {
+                    break;
                 }
-                if (doSNI.get() && sniRecords.get(srcIPv6) == null && !isLocalIPv6(srcIPv6)) {
-                    var sni = getSNI(srcIPv6);
-                    sniRecords.put(srcIPv6, sni);
+                byte[] datagramData = udpDatagram.body();
+                if (udpDatagram.srcPort() == DnsMessage.PORT || udpDatagram.dstPort() == DnsMessage.PORT) {
+                    parseDNS(datagramData, 0, datagramData.length);
+                    break;
                 }
-
-                // rDNS
-                if (dorDNS.get() && rDNSRecords.get(destIPv6) == null) {
-                    var rDNS = getRDNS(destIPv6);
-                    rDNSRecords.put(destIPv6, rDNS);
+                // QUIC Initial packets carry the Client Hello in CRYPTO frames, protected with keys anyone can derive.
+                if (udpDatagram.dstPort() != QuicInitial.PORT) {
+                    break;
                 }
-                if (dorDNS.get() && rDNSRecords.get(srcIPv6) == null) {
-                    var rDNS = getRDNS(srcIPv6);
-                    rDNSRecords.put(srcIPv6, rDNS);
+                TlsClientHello quicHello = quic.clientHello(datagramData, 0, datagramData.length);
+                if (quicHello != null) {
+                    countClientHello(quicHello, true, tsMicros, src, flow, row);
                 }
-
-                // Add stats from the packet
-                registerPacket6(srcIPv6, destIPv6, srcMAC6, dstMAC6, size6);
                 break;
         }
     }
 
-    private void parseIPv4Packet(Ipv4Packet ipv4Packet) {
-        // We want to parse TLS Client Hello for fingerprinting.
-        switch (ipv4Packet.protocol()) {
-            case TCP.Proto:
-                // TCP
-                ProtocolBody ipBody = ipv4Packet.body();
-                TcpSegment tcpSegment = (TcpSegment) ipBody.body();
-                byte[] applicationData = tcpSegment.body();
-                if (applicationData.length > 0) {
-                    // Check if this is a TLS handshake
-                    if (applicationData[0] == TLS.Handshake) {
-                        // This is a TLS handshake, we can parse it.
-                        int tlsHeaderLength = 5; // 1 byte for type, 2 bytes for version, 2 bytes for length
-                        byte[] handshakeData = Arrays.copyOfRange(applicationData, tlsHeaderLength, applicationData.length);
-                        TlsClientHello clientHello = new TlsClientHello(new ByteBufferKaitaiStream(handshakeData));
-                        var protocol = "t";
-                        System.out.println("client hello with tls version: " + clientHello.version().toString());
-                        String tlsVersion = switch (clientHello.version().toString()) {
-                            case "0x0301" -> "TLS 1.0";
-                            case "0x0302" -> "TLS 1.1";
-                            case "0x0303" -> "TLS 1.2";
-                            case "0x0304" -> "TLS 1.3";
-                            default -> "Unknown TLS version";
-                        };
-                    }
-                }
+    /**
+     * Count the SNI and fingerprint of a Client Hello sent over TCP or QUIC.
+     */
+    private void countClientHello(TlsClientHello clientHello, boolean quic, long tsMicros, String src, int flow,
+                                  PacketMetadata row) {
+        byte[] serverName = TlsRecordSniffer.serverNameBytes(clientHello);
+        if (serverName != null) {
+            distinctSNIs.add(serverName);
+            SlidingRankings recent = windows;
+            if (recent != null) {
+                recent.addServerName(tsMicros, new String(serverName, StandardCharsets.US_ASCII));
+            }
+        }
+        int fingerprint = TlsFingerprinter.fingerprint(clientHello, quic, fingerprints, src, flow);
+        if (row != null) {
+            row.sni = TlsRecordSniffer.serverName(clientHello);
+            row.ja3 = fingerprints.getJa3(fingerprint);
+        }
+    }
+
+    /**
+     * Is the payload of a fragmented datagram worth reassembling? TCP may carry a Client Hello on any port; UDP is
+     * looked into for DNS and QUIC only. ICMP is reassembled so large pings are timed too.
+     */
+    private boolean wantsPayload(int protocol, int srcPort, int dstPort) {
+        return switch (protocol) {
+            case TCP.Proto, ICMP.Proto -> true;
+            case UDP.Proto -> srcPort == DnsMessage.PORT || dstPort == DnsMessage.PORT || dstPort == QuicInitial.PORT;
+            default -> false;
+        };
+    }
+
+    /**
+     * Index the answers of a DNS message, so destinations can be named without lookups.
+     */
+    private void parseDNS(byte[] data, int offset, int length) {
+        DnsMessage message = DnsMessage.parse(data, offset, length);
+        if (message != null) {
+            dnsIndex.observe(message);
         }
     }
 
@@ -292,41 +1077,21 @@ public class PacketParser {
      *
      * @param srcIPv4  src IP, from pcap.
      * @param destIPv4 dst IP, from pcap.
-     * @param srcMAC   src MAC from pcap.
-     * @param dstMAC   dst MAC from pcap.
      * @param size     size of the packet as described in IP header.
      */
-    private void registerPacket(String srcIPv4, String destIPv4, String srcMAC, String dstMAC, int size) {
+    private void registerPacket(String srcIPv4, String destIPv4, int size) {
         if (isLocalIPv4(srcIPv4)) {
             // Source is local machine
-            if (localTalkers.get(srcIPv4) == null) {
-                localTalkers.put(srcIPv4, 1);
-            } else {
-                localTalkers.put(srcIPv4, localTalkers.get(srcIPv4) + 1);
-            }
-
-            if (localTalkersData.get(srcIPv4) == null) {
-                localTalkersData.put(srcIPv4, (long) size);
-            } else {
-                localTalkersData.put(srcIPv4, localTalkersData.get(srcIPv4) + size);
-            }
+            countTalker(srcIPv4, size);
 
             if (localTrafficStats) {
                 // Count local networking data with localTalkersData flag set.
-                if (dataCount.get(srcIPv4) == null) {
-                    dataCount.put(srcIPv4, (long) size);
-                } else {
-                    dataCount.put(srcIPv4, dataCount.get(srcIPv4) + size);
-                }
+                countData(srcIPv4, size);
             }
         } else {
             // Source is Internet machine
             // Count data
-            if (dataCount.get(srcIPv4) == null) {
-                dataCount.put(srcIPv4, (long) size);
-            } else {
-                dataCount.put(srcIPv4, dataCount.get(srcIPv4) + size);
-            }
+            countData(srcIPv4, size);
 
             if (doSNI.get()) {
                 ArrayList<String> snis = sniRecords.get(srcIPv4);
@@ -344,34 +1109,16 @@ public class PacketParser {
         if (isLocalIPv4(destIPv4)) {
             // destination is local machine
             // Source is local machine
-            if (localTalkers.get(destIPv4) == null) {
-                localTalkers.put(destIPv4, 1);
-            } else {
-                localTalkers.put(destIPv4, localTalkers.get(destIPv4) + 1);
-            }
-
-            if (localTalkersData.get(destIPv4) == null) {
-                localTalkersData.put(destIPv4, (long) size);
-            } else {
-                localTalkersData.put(destIPv4, localTalkersData.get(destIPv4) + size);
-            }
+            countTalker(destIPv4, size);
 
             if (localTrafficStats) {
                 // Count local networking data with localTalkersData flag set.
-                if (dataCount.get(destIPv4) == null) {
-                    dataCount.put(destIPv4, (long) size);
-                } else {
-                    dataCount.put(destIPv4, dataCount.get(destIPv4) + size);
-                }
+                countData(destIPv4, size);
             }
         } else {
             // destination is internet node
             // Count data
-            if (dataCount.get(destIPv4) == null) {
-                dataCount.put(destIPv4, (long) size);
-            } else {
-                dataCount.put(destIPv4, dataCount.get(destIPv4) + size);
-            }
+            countData(destIPv4, size);
 
             if (doSNI.get()) {
                 ArrayList<String> snis = sniRecords.get(destIPv4);
@@ -385,11 +1132,6 @@ public class PacketParser {
                 }
             }
         }
-
-        // Register the MAC address
-        // ASSUMPTION: An IP address will only associate with one MAC address.
-        addressResolution.putIfAbsent(srcIPv4, srcMAC);
-        addressResolution.putIfAbsent(destIPv4, dstMAC);
     }
 
     /**
@@ -397,41 +1139,21 @@ public class PacketParser {
      *
      * @param srcIPv6  src IP, from pcap.
      * @param destIPv6 dst IP, from pcap.
-     * @param srcMAC   src MAC from pcap.
-     * @param dstMAC   dst MAC from pcap.
      * @param size     size of the packet as described in IP header.
      */
-    private void registerPacket6(String srcIPv6, String destIPv6, String srcMAC, String dstMAC, int size) {
+    private void registerPacket6(String srcIPv6, String destIPv6, int size) {
         if (isLocalIPv4(srcIPv6)) {
             // Source is local machine
-            if (localTalkers.get(srcIPv6) == null) {
-                localTalkers.put(srcIPv6, 1);
-            } else {
-                localTalkers.put(srcIPv6, localTalkers.get(srcIPv6) + 1);
-            }
-
-            if (localTalkersData.get(srcIPv6) == null) {
-                localTalkersData.put(srcIPv6, (long) size);
-            } else {
-                localTalkersData.put(srcIPv6, localTalkersData.get(srcIPv6) + size);
-            }
+            countTalker(srcIPv6, size);
 
             if (localTrafficStats) {
                 // Count local networking data with localTalkersData flag set.
-                if (dataCount.get(srcIPv6) == null) {
-                    dataCount.put(srcIPv6, (long) size);
-                } else {
-                    dataCount.put(srcIPv6, dataCount.get(srcIPv6) + size);
-                }
+                countData(srcIPv6, size);
             }
         } else {
             // Source is Internet machine
             // Count data
-            if (dataCount.get(srcIPv6) == null) {
-                dataCount.put(srcIPv6, (long) size);
-            } else {
-                dataCount.put(srcIPv6, dataCount.get(srcIPv6) + size);
-            }
+            countData(srcIPv6, size);
 
             if (doSNI.get()) {
                 ArrayList<String> snis = sniRecords.get(srcIPv6);
@@ -449,34 +1171,16 @@ public class PacketParser {
         if (isLocalIPv4(destIPv6)) {
             // destination is local machine
             // Source is local machine
-            if (localTalkers.get(destIPv6) == null) {
-                localTalkers.put(destIPv6, 1);
-            } else {
-                localTalkers.put(destIPv6, localTalkers.get(destIPv6) + 1);
-            }
-
-            if (localTalkersData.get(destIPv6) == null) {
-                localTalkersData.put(destIPv6, (long) size);
-            } else {
-                localTalkersData.put(destIPv6, localTalkersData.get(destIPv6) + size);
-            }
+            countTalker(destIPv6, size);
 
             if (localTrafficStats) {
                 // Count local networking data with localTalkersData flag set.
-                if (dataCount.get(destIPv6) == null) {
-                    dataCount.put(destIPv6, (long) size);
-                } else {
-                    dataCount.put(destIPv6, dataCount.get(destIPv6) + size);
-                }
+                countData(destIPv6, size);
             }
         } else {
             // destination is internet node
             // Count data
-            if (dataCount.get(destIPv6) == null) {
-                dataCount.put(destIPv6, (long) size);
-            } else {
-                dataCount.put(destIPv6, dataCount.get(destIPv6) + size);
-            }
+            countData(destIPv6, size);
 
             if (doSNI.get()) {
                 ArrayList<String> snis = sniRecords.get(destIPv6);
@@ -490,11 +1194,56 @@ public class PacketParser {
                 }
             }
         }
+    }
+
+    /**
+     * Count a packet of a local talker.
+     */
+    private void countTalker(String ip, int size) {
+        if (talkerPackets != null) {
+            talkerPackets.add(ip, 1);
+            talkerData.add(ip, size);
+            return;
+        }
+        localTalkers.merge(ip, 1, Integer::sum);
+        localTalkersData.merge(ip, (long) size, Long::sum);
+    }
+
+    /**
+     * Count the data of a destination.
+     */
+    private void countData(String ip, int size) {
+        if (destData != null) {
+            destData.add(ip, size);
+            return;
+        }
+        dataCount.merge(ip, (long) size, Long::sum);
+    }
+
+    /**
+     * Register the MAC address on a frame of an IP. Only local IPs are kept: the frames of other IPs carry the MAC of
+     * a router. Local IPs may be routed too, so these bindings are kept apart from those announced by ARP.
+     */
+    private void registerMac(String ip, long mac, long tsMicros, boolean local) {
+        if (local && mac >= 0) {
+            addresses.observeFrame(ip, mac, tsMicros);
+        }
+    }
 
-        // Register the MAC address
-        // ASSUMPTION: An IP address will only associate with one MAC address.
-        addressResolution.putIfAbsent(srcIPv6, srcMAC);
-        addressResolution.putIfAbsent(destIPv6, dstMAC);
+    /**
+     * Count an ARP packet, and register the binding it announces.
+     */
+    private void parseArp(byte[] body, long tsMicros) {
+        ArpPacket arp = ArpPacket.parse(body);
+        if (arp == null) {
+            return;
+        }
+        addresses.countArp(arp.operation() == ArpPacket.OP_REPLY, arp.isGratuitous());
+        if (!arp.isProbe()) {
+            int ip = arp.senderIp();
+            addresses.observe(parseIPv4Address(new byte[]{(byte) (ip >>> 24), (byte) (ip >>> 16), (byte) (ip >>> 8), (byte) ip}),
+                    arp.senderMac(), tsMicros);
+        }
     }
 
     private String parseIPv6(byte[] ipAddr) {
@@ -521,16 +1270,6 @@ public class PacketParser {
         return String.format("%d.%d.%d.%d", a_int, b_int, c_int, d_int);
     }
 
-    private String parseMacAddress(byte[] mac) {
-        var a = String.format("%02X", mac[0]);
-        var b = String.format("%02X", mac[1]);
-        var c = String.format("%02X", mac[2]);
-        var d = String.format("%02X", mac[3]);
-        var e = String.format("%02X", mac[4]);
-        var f = String.format("%02X", mac[5]);
-        return String.format("%s:%s:%s:%s:%s:%s", a, b, c, d, e, f);
-    }
-
     /**
      * Our insecure trust manager. Trust everything.
      */
@@ -555,19 +1294,35 @@ public class PacketParser {
     /**
      * Local top speakers.
      *
-     * @return [Top packet speaker IP; MAC; Packet counts; Top data speak IP; MAC; Packet counts.]
+     * @return [Top packet speaker IP; MAC; Packet counts; Top data speak IP; MAC; Packet counts; Max overcount of the
+     * packet counts; Max overcount of the data.] The overcounts are 0 unless counts are bounded, see
+     * {@link #setHeavyHitterMemory}.
      */
     public ArrayList<String> getLocalTopSpeaker() {
         ArrayList<String> topSpeakers = new ArrayList<>();
-        localTalkers.entrySet().stream().max(Comparator.comparingInt(HashMap.Entry::getValue));
+        if (talkerPackets != null) {
+            var topPacket = talkerPackets.top(1).get(0);
+            var topData = talkerData.top(1).get(0);
+            topSpeakers.add(topPacket.key());
+            topSpeakers.add(addresses.macOf(topPacket.key()));
+            topSpeakers.add(String.valueOf(topPacket.count()));
+            topSpeakers.add(topData.key());
+            topSpeakers.add(addresses.macOf(topData.key()));
+            topSpeakers.add(String.valueOf(topData.count()));
+            topSpeakers.add(String.valueOf(topPacket.error()));
+            topSpeakers.add(String.valueOf(topData.error()));
+            return topSpeakers;
+        }
         var topPacket = localTalkers.entrySet().stream().max(Comparator.comparingInt(HashMap.Entry::getValue)).get();
         var topData = localTalkersData.entrySet().stream().max(Comparator.comparingLong(HashMap.Entry::getValue)).get();
         topSpeakers.add(topPacket.getKey());
-        topSpeakers.add(addressResolution.get(topPacket.getKey()));
+        topSpeakers.add(addresses.macOf(topPacket.getKey()));
         topSpeakers.add(topPacket.getValue().toString());
         topSpeakers.add(topData.getKey());
-        topSpeakers.add(addressResolution.get(topData.getKey()));
+        topSpeakers.add(addresses.macOf(topData.getKey()));
         topSpeakers.add(topData.getValue().toString());
+        topSpeakers.add("0");
+        topSpeakers.add("0");
 
         return topSpeakers;
     }
@@ -575,77 +1330,96 @@ public class PacketParser {
     /**
      * Get top 10 destinations information
      *
-     * @return [[Top 10 dest ips] : [Top 10 dest data] : [Top 10 dest SNIs] : [Top10 dest rDNS]]
+     * @return [[Top 10 dest ips] : [Top 10 dest data] : [Top 10 dest SNIs] : [Top10 dest rDNS] : [Top 10 dest names from the capture's DNS answers] : [Top 10 dest max data overcount, empty if exact]]
      */
     public ArrayList<ArrayList<String>> getTopDest() {
         ArrayList<String> topDest = new ArrayList<>();
         ArrayList<String> topData = new ArrayList<>();
         ArrayList<String> topSNI = new ArrayList<>();
         ArrayList<String> topRDNS = new ArrayList<>();
+        ArrayList<String> topNames = new ArrayList<>();
+        ArrayList<String> topErrors = new ArrayList<>();
         ArrayList<ArrayList<String>> resp = new ArrayList<>();
 
-        ArrayList<Long> traffic = new ArrayList<>();
-        for (Long data : dataCount.values()) {
-            traffic.add(data);
-        }
-        // sort data in descending order
-        traffic.sort(Comparator.reverseOrder());
-
-        // get top 10 / most ips
-        int topsize = 10;
-        if (dataCount.size() < 10) {
-            topsize = dataCount.size();
-        }
-        for (int i = 0; i < topsize; i++) {
-            var data = traffic.get(i);
-            int dataUnitTracker = 0; // 0: bytes, 1: KB, 2: MB, 3: GB
-            double kb = (double) data; // convert and store to double for accurate division
-            while (kb >= 1024 && dataUnitTracker < 3) {
-                kb /= 1024; // convert to KB
-                dataUnitTracker++;
-            }
-            kb = Math.round(kb * 100.0) / 100.0; // round to 2 decimal places
-            var dataUnit = "bytes"; // default unit
-            switch (dataUnitTracker) {
-                case 1 -> {
-                    dataUnit = "KB";
-                }
-                case 2 -> {
-                    dataUnit = "MB";
-                }
-                case 3 -> {
-                    dataUnit = "GB";
-                }
-                default -> {
-                    dataUnit = "bytes";
-                }
-            }
-            for (String ip : dataCount.keySet()) {
-                if (Objects.equals(dataCount.get(ip), data)) {
-                    topDest.add(ip);
-                    topData.add(kb + " " + dataUnit);
-                    if (dorDNS.get()) {
-                        topRDNS.add(rDNSRecords.get(ip));
-                    }
-                    if (doSNI.get()) {
-                        ArrayList snis = sniRecords.get(ip);
-                        if (snis.size() > 0) {
-                            topSNI.add(snis.get(0).toString());
-                        } else {
-                            // Faild to do sni. Empty Arraylist.
-                            topSNI.add("Unknown");
-                        }
-                    }
-                }
+        if (destData != null) {
+            for (SpaceSaving.Counter counter : destData.top(10)) {
+                addDest(counter.key(), formatData(counter.count()), topDest, topData, topSNI, topRDNS, topNames);
+                topErrors.add(counter.error() == 0 ? "" : formatData(counter.error()));
             }
+            resp.add(topDest);
+            resp.add(topData);
+            resp.add(topSNI);
+            resp.add(topRDNS);
+            resp.add(topNames);
+            resp.add(topErrors);
+            return resp;
+        }
+
+        for (Map.Entry<String, Long> entry : top(dataCount, 10)) {
+            addDest(entry.getKey(), formatData(entry.getValue()), topDest, topData, topSNI, topRDNS, topNames);
+            topErrors.add("");
         }
         resp.add(topDest);
         resp.add(topData);
         resp.add(topSNI);
         resp.add(topRDNS);
+        resp.add(topNames);
+        resp.add(topErrors);
         return resp;
     }
 
+    /**
+     * Add one destination to the lists of {@link #getTopDest}.
+     */
+    private void addDest(String ip, String data, ArrayList<String> topDest, ArrayList<String> topData,
+                         ArrayList<String> topSNI, ArrayList<String> topRDNS, ArrayList<String> topNames) {
+        topDest.add(ip);
+        topData.add(data);
+        String name = dnsIndex.nameOf(ip);
+        topNames.add(name == null ? "" : name);
+        if (dorDNS.get()) {
+            topRDNS.add(rDNSRecords.get(ip));
+        }
+        if (doSNI.get()) {
+            ArrayList snis = sniRecords.get(ip);
+            if (snis != null && snis.size() > 0) {
+                topSNI.add(snis.get(0).toString());
+            } else {
+                // Faild to do sni. Empty Arraylist. Fall back to the capture's DNS answers.
+                topSNI.add(name == null ? "Unknown" : name);
+            }
+        }
+    }
+
+    /**
+     * Format an amount of data with a binary unit, e.g. "1.5 MB".
+     */
+    private static String formatData(long data) {
+        int dataUnitTracker = 0; // 0: bytes, 1: KB, 2: MB, 3: GB
+        double kb = (double) data; // convert and store to double for accurate division
+        while (kb >= 1024 && dataUnitTracker < 3) {
+            kb /= 1024; // convert to KB
+            dataUnitTracker++;
+        }
+        kb = Math.round(kb * 100.0) / 100.0; // round to 2 decimal places
+        var dataUnit = "bytes"; // default unit
+        switch (dataUnitTracker) {
+            case 1 -> {
+                dataUnit = "KB";
+            }
+            case 2 -> {
+                dataUnit = "MB";
+            }
+            case 3 -> {
+                dataUnit = "GB";
+            }
+            default -> {
+                dataUnit = "bytes";
+            }
+        }
+        return kb + " " + dataUnit;
+    }
+
     /**
      * Get top 10 SNI ranking of the pcap file.
      *
@@ -653,29 +1427,410 @@ public class PacketParser {
      */
     public ArrayList<String> getSNIRanking() {
         ArrayList<String> topSNI = new ArrayList<>();
-        ArrayList<Long> traffic = new ArrayList<>();
-        for (Long data : sniDataCount.values()) {
-            traffic.add(data);
-        }
-        // sort data in descending order
-        traffic.sort(Comparator.reverseOrder());
-
-        // get top 10 / most contained snis
-        int topsize = 10;
-        if (sniDataCount.size() < 10) {
-            topsize = sniDataCount.size();
-        }
-        for (int i = 0; i < topsize; i++) {
-            var data = traffic.get(i);
-            for (String sni : sniDataCount.keySet()) {
-                if (sniDataCount.get(sni) == data) {
-                    topSNI.add(sni + ": " + data + " (bytes)");
-                }
-            }
+        for (Map.Entry<String, Long> entry : top(sniDataCount, 10)) {
+            topSNI.add(entry.getKey() + ": " + entry.getValue() + " (bytes)");
         }
         return topSNI;
     }
 
+    /**
+     * Largest counts of a map, from one snapshot of its entries, so a map still being filled (e.g. while following
+     * a capture) is read consistently.
+     *
+     * @return at most {@code limit} entries, largest first.
+     */
+    private static List<Map.Entry<String, Long>> top(Map<String, Long> counts, int limit) {
+        ArrayList<Map.Entry<String, Long>> entries = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            entries.add(Map.entry(entry.getKey(), entry.getValue()));
+        }
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return entries.subList(0, Math.min(limit, entries.size()));
+    }
+
+    /**
+     * Get top 10 TLS client fingerprints of the pcap file.
+     *
+     * @return ["JA4 (JA3): hellos, hosts, flows"]
+     */
+    public ArrayList<String> getFingerprintRanking() {
+        ArrayList<String> topFingerprints = new ArrayList<>();
+        for (int id : fingerprints.top(10)) {
+            topFingerprints.add(fingerprints.getJa4(id) + " (JA3 " + fingerprints.getJa3(id) + "): "
+                    + fingerprints.count(id) + " hellos, " + fingerprints.hostsFor(id) + " hosts, "
+                    + fingerprints.flowsFor(id) + " flows");
+        }
+        return topFingerprints;
+    }
+
+    public FlowTable getFlows() {
+        return flows;
+    }
+
+    /**
+     * Write a sidecar packet index (capture path + {@value PacketIndex#SUFFIX}) during the next load?
+     */
+    public void setWriteIndex(Boolean writeIndex) {
+        this.writeIndex = writeIndex;
+    }
+
+    /**
+     * Export per-packet metadata to a columnar file during the next load, see {@link ColumnarWriter}.
+     *
+     * @param exportPath target file, or null to stop exporting.
+     */
+    public void setExportPath(Path exportPath) {
+        this.exportPath = exportPath;
+    }
+
+    /**
+     * Write a sidecar analysis snapshot (capture path + {@value AnalysisSnapshot#SUFFIX}) after the next load?
+     */
+    public void setWriteSnapshot(Boolean writeSnapshot) {
+        this.writeSnapshot = writeSnapshot;
+    }
+
+    /**
+     * Add the results of another parser, e.g. of another capture file, to this one. Counters are summed, tables are
+     * unioned (entries already here win) and flows and fingerprints are re-interned, so merging is associative and
+     * the other parser is left unchanged. If either parser has bounded counts, the result has too. Call after both
+     * loads have finished.
+     */
+    public void merge(PacketParser other) {
+        if (talkerPackets == null && other.talkerPackets != null) {
+            setHeavyHitterMemory(other.heavyHitterMemory);
+        }
+        if (talkerPackets == null) {
+            other.localTalkers.forEach((ip, packets) -> localTalkers.merge(ip, packets, Integer::sum));
+            other.localTalkersData.forEach((ip, data) -> localTalkersData.merge(ip, data, Long::sum));
+            other.dataCount.forEach((ip, data) -> dataCount.merge(ip, data, Long::sum));
+        } else if (other.talkerPackets != null) {
+            talkerPackets.merge(other.talkerPackets);
+            talkerData.merge(other.talkerData);
+            destData.merge(other.destData);
+        } else {
+            other.localTalkers.forEach(talkerPackets::add);
+            other.localTalkersData.forEach(talkerData::add);
+            other.dataCount.forEach(destData::add);
+        }
+        addresses.merge(other.addresses);
+        other.sniRecords.forEach(sniRecords::putIfAbsent);
+        other.rDNSRecords.forEach(rDNSRecords::putIfAbsent);
+        other.sniDataCount.forEach((sni, data) -> sniDataCount.merge(sni, data, Long::sum));
+        ipv4Counts.addAndGet(other.ipv4Counts.get());
+        ipv6Counts.addAndGet(other.ipv6Counts.get());
+        dnsIndex.merge(other.dnsIndex);
+        int[] flowIds = flows.merge(other.flows);
+        fingerprints.merge(other.fingerprints, flowIds);
+        throughput.merge(other.throughput);
+        externalHosts.merge(other.externalHosts);
+        vlans.merge(other.vlans);
+        radio.merge(other.radio);
+        icmp.merge(other.icmp);
+        distinctFlows.merge(other.distinctFlows);
+        distinctSNIs.merge(other.distinctSNIs);
+        if (other.windows != null) {
+            if (windows == null) {
+                windows = new SlidingRankings();
+            }
+            windows.merge(other.windows);
+        }
+        doSNI = new AtomicBoolean(isDoSNI() || other.isDoSNI());
+        dorDNS = new AtomicBoolean(isDorDNS() || other.isDorDNS());
+    }
+
+    /**
+     * Write the results for {@link AnalysisSnapshot}. Call after load has finished.
+     */
+    void writeState(DataOutputStream out) throws IOException {
+        writeCounts(out, localTalkers);
+        writeCounts(out, localTalkersData);
+        addresses.writeTo(out);
+        writeCounts(out, dataCount);
+        out.writeInt(sniRecords.size());
+        for (Map.Entry<String, ArrayList> entry : sniRecords.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (Object sni : entry.getValue()) {
+                out.writeUTF(sni.toString());
+            }
+        }
+        writeNames(out, rDNSRecords);
+        writeCounts(out, sniDataCount);
+        out.writeInt(ipv4Counts.get());
+        out.writeInt(ipv6Counts.get());
+        dnsIndex.writeTo(out);
+        fingerprints.writeTo(out);
+        flows.writeTo(out);
+        throughput.writeTo(out);
+        externalHosts.writeTo(out);
+        distinctFlows.writeTo(out);
+        distinctSNIs.writeTo(out);
+        vlans.writeTo(out);
+        radio.writeTo(out);
+        icmp.writeTo(out);
+        out.writeLong(heavyHitterMemory);
+        if (talkerPackets != null) {
+            talkerPackets.writeTo(out);
+            talkerData.writeTo(out);
+            destData.writeTo(out);
+        }
+        SlidingRankings recent = windows;
+        out.writeBoolean(recent != null);
+        if (recent != null) {
+            recent.writeTo(out);
+        }
+    }
+
+    /**
+     * Restore the results written by {@link #writeState} into this empty parser.
+     */
+    void readState(DataInputStream in) throws IOException {
+        int talkers = in.readInt();
+        for (int i = 0; i < talkers; i++) {
+            localTalkers.put(in.readUTF(), (int) in.readLong());
+        }
+        readCounts(in, localTalkersData);
+        addresses = AddressTable.readFrom(in);
+        readCounts(in, dataCount);
+        int sniHosts = in.readInt();
+        for (int i = 0; i < sniHosts; i++) {
+            String ip = in.readUTF();
+            int count = in.readInt();
+            ArrayList<String> snis = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                snis.add(in.readUTF());
+            }
+            sniRecords.put(ip, snis);
+        }
+        readNames(in, rDNSRecords);
+        readCounts(in, sniDataCount);
+        ipv4Counts.set(in.readInt());
+        ipv6Counts.set(in.readInt());
+        dnsIndex = DnsIndex.readFrom(in, this::parseIPv4Address, this::parseIPv6);
+        fingerprints = FingerprintTable.readFrom(in);
+        flows = FlowTable.readFrom(in);
+        throughput = ThroughputSeries.readFrom(in);
+        externalHosts = HyperLogLog.readFrom(in);
+        distinctFlows = HyperLogLog.readFrom(in);
+        distinctSNIs = HyperLogLog.readFrom(in);
+        vlans = VlanStats.readFrom(in);
+        radio = RadioStats.readFrom(in);
+        icmp = IcmpStats.readFrom(in, this::parseIPv4Address);
+        heavyHitterMemory = in.readLong();
+        if (heavyHitterMemory > 0) {
+            talkerPackets = ShardedSpaceSaving.readFrom(in);
+            talkerData = ShardedSpaceSaving.readFrom(in);
+            destData = ShardedSpaceSaving.readFrom(in);
+        }
+        windows = in.readBoolean() ? SlidingRankings.readFrom(in) : null;
+    }
+
+    private static void writeCounts(DataOutputStream out, Map<String, ? extends Number> counts) throws IOException {
+        out.writeInt(counts.size());
+        for (Map.Entry<String, ? extends Number> entry : counts.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().longValue());
+        }
+    }
+
+    private static void readCounts(DataInputStream in, Map<String, Long> counts) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            counts.put(in.readUTF(), in.readLong());
+        }
+    }
+
+    private static void writeNames(DataOutputStream out, Map<String, String> names) throws IOException {
+        out.writeInt(names.size());
+        for (Map.Entry<String, String> entry : names.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    private static void readNames(DataInputStream in, Map<String, String> names) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            names.put(in.readUTF(), in.readUTF());
+        }
+    }
+
+    public FingerprintTable getFingerprints() {
+        return fingerprints;
+    }
+
+    /**
+     * Local talkers with the most data sent/received.
+     *
+     * @param limit maximum entries returned.
+     * @return [IP], most data first.
+     */
+    public ArrayList<String> getLocalTopTalkers(int limit) {
+        if (talkerData != null) {
+            ArrayList<String> talkers = new ArrayList<>();
+            talkerData.top(limit).forEach(counter -> talkers.add(counter.key()));
+            return talkers;
+        }
+        ArrayList<String> talkers = new ArrayList<>();
+        top(localTalkersData, limit).forEach(entry -> talkers.add(entry.getKey()));
+        return talkers;
+    }
+
+    /**
+     * Count top talkers and destinations in a fixed amount of memory instead of one map entry per IP, for captures
+     * with very many addresses (scans, floods). Counts then become estimates with error bounds. Counts collected so
+     * far are carried over. Each decoding thread counts into summaries of its own, merged at the end of a load; they
+     * share half of the memory, so the budget holds however many threads decode.
+     *
+     * @param bytes heap for the counters, split between talker packets, talker data and destinations; 0 for exact
+     *              counts.
+     */
+    public void setHeavyHitterMemory(long bytes) {
+        if (bytes <= 0) {
+            if (talkerPackets != null) {
+                talkerPackets.top(Integer.MAX_VALUE).forEach(c -> localTalkers.put(c.key(), (int) c.count()));
+                talkerData.top(Integer.MAX_VALUE).forEach(c -> localTalkersData.put(c.key(), c.count()));
+                destData.top(Integer.MAX_VALUE).forEach(c -> dataCount.put(c.key(), c.count()));
+            }
+            heavyHitterMemory = 0;
+            talkerPackets = talkerData = destData = null;
+            return;
+        }
+        ShardedSpaceSaving packets = ShardedSpaceSaving.ofMemory(bytes / 3);
+        ShardedSpaceSaving data = ShardedSpaceSaving.ofMemory(bytes / 3);
+        ShardedSpaceSaving dest = ShardedSpaceSaving.ofMemory(bytes / 3);
+        if (talkerPackets != null) {
+            packets.merge(talkerPackets);
+            data.merge(talkerData);
+            dest.merge(destData);
+        }
+        localTalkers.forEach(packets::add);
+        localTalkersData.forEach(data::add);
+        dataCount.forEach(dest::add);
+        localTalkers.clear();
+        localTalkersData.clear();
+        dataCount.clear();
+        heavyHitterMemory = bytes;
+        talkerPackets = packets;
+        talkerData = data;
+        destData = dest;
+    }
+
+    /**
+     * Only analyse packets matching a filter expression, see {@link PacketFilter} for the syntax. Packets are tested
+     * on their raw bytes, so the others cost almost nothing. No snapshot or index is written for a filtered load.
+     * Call before load.
+     *
+     * @param expression filter, or null or blank for all packets.
+     * @throws IllegalArgumentException if the expression is not valid.
+     */
+    public void setFilter(String expression) {
+        filter = expression == null || expression.isBlank() ? null : PacketFilter.compile(expression);
+    }
+
+    /**
+     * Filter set with {@link #setFilter}, or null.
+     */
+    public PacketFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Also rank talkers, remote hosts and TLS server names over the last minute, 5 minutes and hour of the capture,
+     * e.g. while following it. The rankings are merged and saved in snapshots. Call before load.
+     */
+    public void setSlidingWindows(Boolean slidingWindows) {
+        windows = slidingWindows ? new SlidingRankings() : null;
+    }
+
+    /**
+     * Rankings of the last minute, 5 minutes and hour, or null if not enabled with {@link #setSlidingWindows}.
+     */
+    public SlidingRankings getSlidingWindows() {
+        return windows;
+    }
+
+    public long getHeavyHitterMemory() {
+        return heavyHitterMemory;
+    }
+
+    public ThroughputSeries getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Set the bucket width of the throughput series. Discards the current series, call before load.
+     *
+     * @param intervalMicros between 1 ms and 1 h, in microseconds.
+     */
+    public void setTimeSeriesInterval(long intervalMicros) {
+        this.throughput = new ThroughputSeries(intervalMicros);
+    }
+
+    /**
+     * MACs seen for each local IP, with ARP counters and conflicts.
+     */
+    public AddressTable getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * Traffic per VLAN, for captures of tagged frames.
+     */
+    public VlanStats getVlans() {
+        return vlans;
+    }
+
+    /**
+     * QUIC Initial decryption counters.
+     */
+    public QuicInitial getQuic() {
+        return quic;
+    }
+
+    /**
+     * IPv4 fragments in progress, with reassembly counters.
+     */
+    public Ipv4Reassembler getReassembler() {
+        return reassembler;
+    }
+
+    /**
+     * ICMP stats: types and codes, unreachable destinations and echo round trip times.
+     */
+    public IcmpStats getIcmp() {
+        return icmp;
+    }
+
+    /**
+     * 802.11 radio stats, for PPI captures.
+     */
+    public RadioStats getRadio() {
+        return radio;
+    }
+
+    /**
+     * Estimated number of distinct non-local IPs.
+     */
+    public HyperLogLog getExternalHosts() {
+        return externalHosts;
+    }
+
+    /**
+     * Estimated number of distinct flows, both directions counted once.
+     */
+    public HyperLogLog getDistinctFlows() {
+        return distinctFlows;
+    }
+
+    /**
+     * Estimated number of distinct server names sent in TLS Client Hellos.
+     */
+    public HyperLogLog getDistinctSNIs() {
+        return distinctSNIs;
+    }
+
     public Integer getIpv4Counts() {
         return ipv4Counts.get();
     }
@@ -691,4 +1846,12 @@ public class PacketParser {
     public void setDoSNI(Boolean doSNI) {
         this.doSNI = new AtomicBoolean(doSNI);
     }
+
+    public boolean isDoSNI() {
+        return doSNI != null && doSNI.get();
+    }
+
+    public boolean isDorDNS() {
+        return dorDNS != null && dorDNS.get();
+    }
 }
\ No newline at end of file
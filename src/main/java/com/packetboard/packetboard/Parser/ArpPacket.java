@@ -0,0 +1,80 @@
+package com.packetboard.packetboard.Parser;
+
+/**
+ * ARP packet for IPv4 over Ethernet (RFC 826), read in place from the Ethernet payload.
+ * <p>
+ * Addresses are kept as primitives: MACs in the low 48 bits of a long, IPv4 addresses as an int.
+ */
+public final class ArpPacket {
+    public static final int OP_REQUEST = 1;
+    public static final int OP_REPLY = 2;
+    public static final int LENGTH = 28;
+    private static final int HTYPE_ETHERNET = 1;
+    private static final int PTYPE_IPV4 = 0x0800;
+
+    private final int operation;
+    private final long senderMac;
+    private final int senderIp;
+    private final long targetMac;
+    private final int targetIp;
+
+    private ArpPacket(int operation, long senderMac, int senderIp, long targetMac, int targetIp) {
+        this.operation = operation;
+        this.senderMac = senderMac;
+        this.senderIp = senderIp;
+        this.targetMac = targetMac;
+        this.targetIp = targetIp;
+    }
+
+    /**
+     * Read an ARP packet.
+     *
+     * @param body Ethernet payload.
+     * @return the packet, or null if it is too short or not IPv4 over Ethernet.
+     */
+    public static ArpPacket parse(byte[] body) {
+        if (body.length < LENGTH || u2(body, 0) != HTYPE_ETHERNET || u2(body, 2) != PTYPE_IPV4
+                || body[4] != 6 || body[5] != 4) {
+            return null;
+        }
+        return new ArpPacket(u2(body, 6), mac(body, 8), u4(body, 14), mac(body, 18), u4(body, 24));
+    }
+
+    private static int u2(byte[] buf, int offset) {
+        return ((buf[offset] & 0xff) << 8) | (buf[offset + 1] & 0xff);
+    }
+
+    private static int u4(byte[] buf, int offset) {
+        return (u2(buf, offset) << 16) | u2(buf, offset + 2);
+    }
+
+    /**
+     * MAC address at an offset, as a long.
+     */
+    public static long mac(byte[] buf, int offset) {
+        return ((long) u2(buf, offset) << 32) | (u4(buf, offset + 2) & 0xffffffffL);
+    }
+
+    /**
+     * {@link #OP_REQUEST}, {@link #OP_REPLY} or another operation code.
+     */
+    public int operation() { return operation; }
+    public long senderMac() { return senderMac; }
+    public int senderIp() { return senderIp; }
+    public long targetMac() { return targetMac; }
+    public int targetIp() { return targetIp; }
+
+    /**
+     * Gratuitous ARP: a host announcing its own binding, e.g. after an address change or failover.
+     */
+    public boolean isGratuitous() {
+        return senderIp == targetIp && senderIp != 0;
+    }
+
+    /**
+     * ARP probe (RFC 5227): a host checking that an address is free, with no sender address yet.
+     */
+    public boolean isProbe() {
+        return senderIp == 0;
+    }
+}
@@ -0,0 +1,198 @@
+package com.packetboard.packetboard.Parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Minimal DNS message decoder (RFC 1035) for passive name collection.
+ * <p>
+ * Only the header, the question names and the answer section are decoded. Names are followed through compression
+ * pointers with a hop limit, so a malicious pointer loop cannot hang a worker thread.
+ */
+public final class DnsMessage {
+    public static final int PORT = 53;
+    public static final int TYPE_A = 1;
+    public static final int TYPE_CNAME = 5;
+    public static final int TYPE_AAAA = 28;
+    private static final int HEADER_LENGTH = 12;
+    private static final int MAX_POINTER_HOPS = 32;
+    private static final int MAX_NAME_LENGTH = 255;
+
+    /**
+     * A resource record from the answer section.
+     */
+    public static final class Answer {
+        private final String name;
+        private final int type;
+        private final long ttl;
+        private final byte[] address;
+        private final String target;
+
+        Answer(String name, int type, long ttl, byte[] address, String target) {
+            this.name = name;
+            this.type = type;
+            this.ttl = ttl;
+            this.address = address;
+            this.target = target;
+        }
+
+        /**
+         * Owner name of the record.
+         */
+        public String name() { return name; }
+        public int type() { return type; }
+        public long ttl() { return ttl; }
+
+        /**
+         * Address of A (4 bytes) and AAAA (16 bytes) records, null otherwise.
+         */
+        public byte[] address() { return address; }
+
+        /**
+         * Canonical name of CNAME records, null otherwise.
+         */
+        public String target() { return target; }
+    }
+
+    private final int id;
+    private final int flags;
+    private final ArrayList<String> questions;
+    private final ArrayList<Answer> answers;
+
+    private DnsMessage(int id, int flags, ArrayList<String> questions, ArrayList<Answer> answers) {
+        this.id = id;
+        this.flags = flags;
+        this.questions = questions;
+        this.answers = answers;
+    }
+
+    public int id() { return id; }
+    public int flags() { return flags; }
+
+    /**
+     * Is this a response (QR bit set)?
+     */
+    public boolean isResponse() { return (flags & 0x8000) != 0; }
+
+    /**
+     * Response code, 0 is NOERROR.
+     */
+    public int rcode() { return flags & 0xf; }
+    public ArrayList<String> questions() { return questions; }
+    public ArrayList<Answer> answers() { return answers; }
+
+    /**
+     * Decode a DNS message.
+     *
+     * @param buf    buffer holding the message.
+     * @param offset start of the DNS header.
+     * @param length length of the message.
+     * @return decoded message, or null if it is malformed or truncated.
+     */
+    public static DnsMessage parse(byte[] buf, int offset, int length) {
+        if (length < HEADER_LENGTH || offset + length > buf.length) {
+            return null;
+        }
+        int end = offset + length;
+        int id = u2(buf, offset);
+        int flags = u2(buf, offset + 2);
+        int qdCount = u2(buf, offset + 4);
+        int anCount = u2(buf, offset + 6);
+        int[] pos = {offset + HEADER_LENGTH};
+        StringBuilder name = new StringBuilder(64);
+
+        ArrayList<String> questions = new ArrayList<>(qdCount);
+        for (int i = 0; i < qdCount; i++) {
+            if (!readName(buf, offset, end, pos, name) || pos[0] + 4 > end) {
+                return null;
+            }
+            questions.add(name.toString());
+            pos[0] += 4; // type, class
+        }
+
+        ArrayList<Answer> answers = new ArrayList<>(anCount);
+        for (int i = 0; i < anCount; i++) {
+            if (!readName(buf, offset, end, pos, name) || pos[0] + 10 > end) {
+                return null;
+            }
+            String owner = name.toString();
+            int type = u2(buf, pos[0]);
+            long ttl = ((long) u2(buf, pos[0] + 4) << 16) | u2(buf, pos[0] + 6);
+            int rdLength = u2(buf, pos[0] + 8);
+            int rdata = pos[0] + 10;
+            if (rdata + rdLength > end) {
+                return null;
+            }
+            switch (type) {
+                case TYPE_A, TYPE_AAAA -> {
+                    if (rdLength == (type == TYPE_A ? 4 : 16)) {
+                        answers.add(new Answer(owner, type, ttl, Arrays.copyOfRange(buf, rdata, rdata + rdLength), null));
+                    }
+                }
+                case TYPE_CNAME -> {
+                    int[] targetPos = {rdata};
+                    if (readName(buf, offset, end, targetPos, name)) {
+                        answers.add(new Answer(owner, type, ttl, null, name.toString()));
+                    }
+                }
+                default -> {
+                }
+            }
+            pos[0] = rdata + rdLength;
+        }
+        return new DnsMessage(id, flags, questions, answers);
+    }
+
+    /**
+     * Read a possibly compressed name into {@code out} (lower case, dot separated, no trailing dot).
+     *
+     * @param msgStart start of the DNS header, base of compression pointers.
+     * @param pos      in: position of the name. Out: position right after the name in the original location.
+     */
+    private static boolean readName(byte[] buf, int msgStart, int end, int[] pos, StringBuilder out) {
+        out.setLength(0);
+        int p = pos[0];
+        int resume = -1;
+        int hops = 0;
+        while (true) {
+            if (p >= end) {
+                return false;
+            }
+            int len = buf[p] & 0xff;
+            if (len == 0) {
+                p++;
+                break;
+            }
+            if ((len & 0xc0) == 0xc0) {
+                if (p + 1 >= end || ++hops > MAX_POINTER_HOPS) {
+                    return false;
+                }
+                if (resume < 0) {
+                    resume = p + 2;
+                }
+                p = msgStart + (((len & 0x3f) << 8) | (buf[p + 1] & 0xff));
+                continue;
+            }
+            if ((len & 0xc0) != 0 || p + 1 + len > end) {
+                return false; // extended label types are not supported
+            }
+            if (out.length() > 0) {
+                out.append('.');
+            }
+            for (int i = p + 1; i <= p + len; i++) {
+                char c = (char) (buf[i] & 0xff);
+                out.append(c >= 'A' && c <= 'Z' ? (char) (c + 32) : c);
+            }
+            if (out.length() > MAX_NAME_LENGTH) {
+                return false;
+            }
+            p += 1 + len;
+        }
+        pos[0] = resume >= 0 ? resume : p;
+        return true;
+    }
+
+    private static int u2(byte[] b, int i) {
+        return ((b[i] & 0xff) << 8) | (b[i + 1] & 0xff);
+    }
+}
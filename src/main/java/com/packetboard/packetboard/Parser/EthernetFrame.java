@@ -28,12 +28,13 @@ public class EthernetFrame extends KaitaiStruct {
         X_25_LEVEL_3(2053),
         ARP(2054),
         IEEE_802_1Q_TPID(33024),
-        IPV6(34525);
+        IPV6(34525),
+        IEEE_802_1AD_TPID(34984);
 
         private final long id;
         EtherTypeEnum(long id) { this.id = id; }
         public long id() { return id; }
-        private static final Map<Long, EtherTypeEnum> byId = new HashMap<Long, EtherTypeEnum>(9);
+        private static final Map<Long, EtherTypeEnum> byId = new HashMap<Long, EtherTypeEnum>(10);
         static {
             for (EtherTypeEnum e : EtherTypeEnum.values())
                 byId.put(e.id(), e);
@@ -59,12 +60,18 @@ public class EthernetFrame extends KaitaiStruct {
         this.dstMac = this._io.readBytes(6);
         this.srcMac = this._io.readBytes(6);
         this.etherType1 = EtherTypeEnum.byId(this._io.readU2be());
-        if (etherType1() == EtherTypeEnum.IEEE_802_1Q_TPID) {
+        if (etherType1() == EtherTypeEnum.IEEE_802_1Q_TPID || etherType1() == EtherTypeEnum.IEEE_802_1AD_TPID) {
             this.tci = new TagControlInfo(this._io, this, _root);
         }
-        if (etherType1() == EtherTypeEnum.IEEE_802_1Q_TPID) {
+        if (etherType1() == EtherTypeEnum.IEEE_802_1Q_TPID || etherType1() == EtherTypeEnum.IEEE_802_1AD_TPID) {
             this.etherType2 = EtherTypeEnum.byId(this._io.readU2be());
         }
+        if (etherType2() == EtherTypeEnum.IEEE_802_1Q_TPID) {
+            this.innerTci = new TagControlInfo(this._io, this, _root);
+        }
+        if (etherType2() == EtherTypeEnum.IEEE_802_1Q_TPID) {
+            this.etherType3 = EtherTypeEnum.byId(this._io.readU2be());
+        }
         {
             EtherTypeEnum on = etherType();
             if (on != null) {
@@ -151,14 +158,16 @@ public class EthernetFrame extends KaitaiStruct {
 
     /**
      * Ether type can be specied in several places in the frame. If
-     * first location bears special marker (0x8100), then it is not the
-     * real ether frame yet, an additional payload (`tci`) is expected
-     * and real ether type is upcoming next.
+     * first location bears special marker (0x8100, or 0x88a8 for an
+     * 802.1ad service tag), then it is not the real ether frame yet, an
+     * additional payload (`tci`) is expected and real ether type is
+     * upcoming next. A double tagged (QinQ) frame has a second marker
+     * (0x8100) and payload (`inner_tci`) before the real ether type.
      */
     public EtherTypeEnum etherType() {
         if (this.etherType != null)
             return this.etherType;
-        this.etherType = (etherType1() == EtherTypeEnum.IEEE_802_1Q_TPID ? etherType2() : etherType1());
+        this.etherType = (innerTci() != null ? etherType3() : (tci() != null ? etherType2() : etherType1()));
         return this.etherType;
     }
     private byte[] dstMac;
@@ -166,6 +175,8 @@ public class EthernetFrame extends KaitaiStruct {
     private EtherTypeEnum etherType1;
     private TagControlInfo tci;
     private EtherTypeEnum etherType2;
+    private TagControlInfo innerTci;
+    private EtherTypeEnum etherType3;
     private Object body;
     private EthernetFrame _root;
     private KaitaiStruct _parent;
@@ -187,6 +198,13 @@ public class EthernetFrame extends KaitaiStruct {
     public EtherTypeEnum etherType1() { return etherType1; }
     public TagControlInfo tci() { return tci; }
     public EtherTypeEnum etherType2() { return etherType2; }
+
+    /**
+     * Customer VLAN tag of a double tagged (QinQ) frame, whose `tci`
+     * is then the service VLAN tag
+     */
+    public TagControlInfo innerTci() { return innerTci; }
+    public EtherTypeEnum etherType3() { return etherType3; }
     public Object body() { return body; }
     public EthernetFrame _root() { return _root; }
     public KaitaiStruct _parent() { return _parent; }
@@ -42,8 +42,11 @@ public class Ipv4Packet extends KaitaiStruct {
         KaitaiStream _io__raw_options = new ByteBufferKaitaiStream(_raw_options);
         this.options = new Ipv4Options(_io__raw_options, this, _root);
         this._raw_body = this._io.readBytes((totalLength() - ihlBytes()));
-        KaitaiStream _io__raw_body = new ByteBufferKaitaiStream(_raw_body);
-        this.body = new ProtocolBody(_io__raw_body, protocol());
+        // A fragment carries part of the upper-layer datagram, decoded once reassembled.
+        if (!isFragment()) {
+            KaitaiStream _io__raw_body = new ByteBufferKaitaiStream(_raw_body);
+            this.body = new ProtocolBody(_io__raw_body, protocol());
+        }
     }
     public static class Ipv4Options extends KaitaiStruct {
         public static Ipv4Options fromFile(String fileName) throws IOException {
@@ -164,6 +167,24 @@ public class Ipv4Packet extends KaitaiStruct {
         this.ihlBytes = _tmp;
         return this.ihlBytes;
     }
+
+    /**
+     * Offset of the fragment in the datagram, in bytes.
+     */
+    public int fragmentOffset() {
+        return (b67() & 0x1fff) * 8;
+    }
+
+    public boolean moreFragments() {
+        return (b67() & 0x2000) != 0;
+    }
+
+    /**
+     * Is the packet a fragment of a larger datagram?
+     */
+    public boolean isFragment() {
+        return moreFragments() || fragmentOffset() != 0;
+    }
     private int b1;
     private int b2;
     private int totalLength;
@@ -191,6 +212,10 @@ public class Ipv4Packet extends KaitaiStruct {
     public byte[] srcIpAddr() { return srcIpAddr; }
     public byte[] dstIpAddr() { return dstIpAddr; }
     public Ipv4Options options() { return options; }
+
+    /**
+     * Upper-layer datagram, null if the packet is a fragment; see {@link #_raw_body()} for its bytes.
+     */
     public ProtocolBody body() { return body; }
     public Ipv4Packet _root() { return _root; }
     public KaitaiStruct _parent() { return _parent; }
@@ -0,0 +1,322 @@
+package com.packetboard.packetboard.Parser;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * Reassembly of fragmented IPv4 datagrams, keyed by (src, dst, id, protocol).
+ * <p>
+ * Payloads are only kept for datagrams the caller is interested in, decided by {@link Interest} from the ports in
+ * the first fragment; the fragments of other datagrams are tracked by their extents only. Fragments are kept as
+ * received and copied into one buffer when the last hole is filled.
+ * <p>
+ * Memory is bounded by a cap per datagram and a global cap on buffered bytes, beyond which the oldest datagrams are
+ * evicted. A datagram expires when a fragment of it arrives more than the timeout after the previous one. There is no
+ * sweep by capture time: ranges of a capture are decoded concurrently, so timestamps arrive out of order, and a sweep
+ * could expire a datagram another range is still completing. Stale datagrams are evicted by the caps instead.
+ * <p>
+ * A fragment overlapping another with different extents drops the whole datagram, as do fragments past 64 KiB,
+ * inconsistent ends and datagrams split into too many fragments, so overlap and teardrop attacks are never
+ * assembled. Exact duplicates are ignored.
+ */
+public final class Ipv4Reassembler {
+    public static final long DEFAULT_TIMEOUT_MICROS = 30_000_000L; // Same as Linux ipfrag_time
+    public static final int DEFAULT_MAX_DATAGRAM = 65535;
+    public static final long DEFAULT_MAX_MEMORY = 4L << 20; // Same as Linux ipfrag_high_thresh
+    private static final int MAX_DATAGRAMS = 4096; // Datagrams in progress
+    private static final int MAX_FRAGMENTS = 64; // Fragments per datagram
+    private static final int MAX_LENGTH = 65535 - 20; // Payload of the largest datagram with no options
+    private static final int PENDING = 0, WANTED = 1, SKIPPED = 2, DROPPED = 3;
+
+    private final Interest interest;
+    private final long timeoutMicros;
+    private final int maxDatagram;
+    private final long maxMemory;
+    private final LinkedHashMap<Key, Datagram> datagrams = new LinkedHashMap<>(); // Oldest first
+    private long memory; // Bytes of the fragments kept
+    private long fragments, reassembled, skipped, expired, evicted, dropped;
+
+    /**
+     * Decides whether a datagram is worth reassembling.
+     */
+    @FunctionalInterface
+    public interface Interest {
+        /**
+         * @param protocol IP protocol.
+         * @param srcPort  source port of a TCP or UDP datagram, -1 for other protocols.
+         * @param dstPort  destination port, -1 for other protocols.
+         */
+        boolean wants(int protocol, int srcPort, int dstPort);
+    }
+
+    /**
+     * Datagram a fragment belongs to, as far as known.
+     *
+     * @param srcPort source port from the first fragment, -1 if it has not been seen or has none.
+     * @param dstPort destination port, likewise.
+     * @param payload payload of the whole datagram when this fragment completed a wanted datagram, or null.
+     */
+    public record Result(int srcPort, int dstPort, byte[] payload) {
+    }
+
+    private record Key(long addresses, int idProtocol) {
+    }
+
+    private static final class Datagram {
+        long lastSeenMicros;
+        int state = PENDING;
+        int ports = -1; // src << 16 | dst
+        int length = -1; // Known once the last fragment is seen
+        int covered; // Bytes received
+        int count;
+        int[] offsets = new int[4];
+        int[] ends = new int[4];
+        byte[][] parts = new byte[4][]; // null once skipped or dropped
+        int kept; // Bytes of parts kept
+    }
+
+    public Ipv4Reassembler(Interest interest) {
+        this(interest, DEFAULT_TIMEOUT_MICROS, DEFAULT_MAX_DATAGRAM, DEFAULT_MAX_MEMORY);
+    }
+
+    /**
+     * @param timeoutMicros longest gap between the fragments of a datagram.
+     * @param maxDatagram   most bytes kept for one datagram.
+     * @param maxMemory     most bytes kept for all datagrams.
+     */
+    public Ipv4Reassembler(Interest interest, long timeoutMicros, int maxDatagram, long maxMemory) {
+        if (timeoutMicros <= 0 || maxDatagram <= 0 || maxMemory < maxDatagram) {
+            throw new IllegalArgumentException("Timeout and caps must be positive, and the global cap at least the datagram cap");
+        }
+        this.interest = Objects.requireNonNull(interest);
+        this.timeoutMicros = timeoutMicros;
+        this.maxDatagram = maxDatagram;
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Add a fragment.
+     *
+     * @param src      source address, 4 bytes.
+     * @param dst      destination address, 4 bytes.
+     * @param offset   fragment offset, in bytes.
+     * @param more     more fragments flag.
+     * @param payload  payload of the fragment, after the IPv4 header. Kept as is, not copied.
+     * @param tsMicros capture timestamp.
+     * @return what is known of the datagram.
+     */
+    public synchronized Result add(byte[] src, byte[] dst, int id, int protocol, int offset, boolean more,
+                                   byte[] payload, long tsMicros) {
+        fragments++;
+        Key key = new Key(((long) u4(src) << 32) | (u4(dst) & 0xffffffffL), (id << 8) | protocol);
+        Datagram datagram = datagrams.get(key);
+        if (datagram != null && Math.abs(tsMicros - datagram.lastSeenMicros) > timeoutMicros) {
+            expired++;
+            remove(key, datagram);
+            datagram = null;
+        }
+        if (datagram == null) {
+            if (datagrams.size() == MAX_DATAGRAMS) {
+                evictOldest(null, false);
+            }
+            datagram = new Datagram();
+            datagrams.put(key, datagram);
+        }
+        datagram.lastSeenMicros = tsMicros;
+        int end = offset + payload.length;
+        if (datagram.state == DROPPED) {
+            return result(datagram, null);
+        }
+        if (offset == 0 && payload.length >= 4 && (protocol == 6 || protocol == 17)) {
+            datagram.ports = ((payload[0] & 0xff) << 24) | ((payload[1] & 0xff) << 16) | ((payload[2] & 0xff) << 8)
+                    | (payload[3] & 0xff);
+        }
+        if (datagram.state == PENDING && offset == 0) {
+            boolean wanted = datagram.ports == -1 ? interest.wants(protocol, -1, -1)
+                    : interest.wants(protocol, datagram.ports >>> 16, datagram.ports & 0xffff);
+            if (wanted) {
+                datagram.state = WANTED;
+            } else {
+                datagram.state = SKIPPED;
+                release(datagram);
+            }
+        }
+        if (!isValid(datagram, offset, end, more)) {
+            dropped++;
+            datagram.state = DROPPED;
+            release(datagram);
+            return result(datagram, null);
+        }
+        for (int i = 0; i < datagram.count; i++) {
+            if (datagram.offsets[i] == offset && datagram.ends[i] == end) {
+                return result(datagram, null); // Duplicate
+            }
+        }
+        if (!more) {
+            datagram.length = end;
+        }
+        if (datagram.count == datagram.offsets.length) {
+            datagram.offsets = Arrays.copyOf(datagram.offsets, datagram.count * 2);
+            datagram.ends = Arrays.copyOf(datagram.ends, datagram.count * 2);
+            if (datagram.parts != null) {
+                datagram.parts = Arrays.copyOf(datagram.parts, datagram.count * 2);
+            }
+        }
+        if (datagram.parts != null) {
+            while (memory + payload.length > maxMemory && evictOldest(datagram, true)) {
+                // Make room at the expense of the oldest datagrams.
+            }
+            if (memory + payload.length > maxMemory) {
+                dropped++;
+                datagram.state = DROPPED;
+                release(datagram);
+                return result(datagram, null);
+            }
+            datagram.parts[datagram.count] = payload;
+            datagram.kept += payload.length;
+            memory += payload.length;
+        }
+        datagram.offsets[datagram.count] = offset;
+        datagram.ends[datagram.count] = end;
+        datagram.count++;
+        datagram.covered += payload.length;
+        if (datagram.length < 0 || datagram.covered != datagram.length) {
+            return result(datagram, null);
+        }
+        byte[] whole = datagram.state == WANTED ? assemble(datagram) : null;
+        remove(key, datagram);
+        if (whole == null) {
+            skipped++;
+        } else {
+            reassembled++;
+        }
+        return result(datagram, whole);
+    }
+
+    /**
+     * Can a fragment be added to a datagram? Overlaps with different extents, fragments past the end or the size
+     * caps, and too many fragments are refused.
+     */
+    private boolean isValid(Datagram datagram, int offset, int end, boolean more) {
+        if (end > MAX_LENGTH || end > maxDatagram || datagram.count == MAX_FRAGMENTS) {
+            return false;
+        }
+        if (more && (end - offset) % 8 != 0) {
+            return false; // Only the last fragment may end off an 8-byte boundary
+        }
+        if (datagram.length >= 0 && (end > datagram.length || (!more && end != datagram.length))) {
+            return false;
+        }
+        for (int i = 0; i < datagram.count; i++) {
+            boolean duplicate = datagram.offsets[i] == offset && datagram.ends[i] == end;
+            if (!duplicate && offset < datagram.ends[i] && datagram.offsets[i] < end) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int u4(byte[] p) {
+        return ((p[0] & 0xff) << 24) | ((p[1] & 0xff) << 16) | ((p[2] & 0xff) << 8) | (p[3] & 0xff);
+    }
+
+    private static byte[] assemble(Datagram datagram) {
+        byte[] payload = new byte[datagram.length];
+        for (int i = 0; i < datagram.count; i++) {
+            System.arraycopy(datagram.parts[i], 0, payload, datagram.offsets[i], datagram.parts[i].length);
+        }
+        return payload;
+    }
+
+    private static Result result(Datagram datagram, byte[] payload) {
+        return datagram.ports == -1 ? new Result(-1, -1, payload)
+                : new Result(datagram.ports >>> 16, datagram.ports & 0xffff, payload);
+    }
+
+    /**
+     * Stop keeping the bytes of a datagram, still tracking its fragments.
+     */
+    private void release(Datagram datagram) {
+        memory -= datagram.kept;
+        datagram.kept = 0;
+        datagram.parts = null;
+    }
+
+    private void remove(Key key, Datagram datagram) {
+        release(datagram);
+        datagrams.remove(key);
+    }
+
+    /**
+     * Evict the oldest datagram other than one.
+     *
+     * @param keep     datagram not to evict, or null.
+     * @param keeping  only evict a datagram whose bytes are kept?
+     * @return was one evicted?
+     */
+    private boolean evictOldest(Datagram keep, boolean keeping) {
+        Iterator<Datagram> it = datagrams.values().iterator();
+        while (it.hasNext()) {
+            Datagram oldest = it.next();
+            if (oldest != keep && (!keeping || oldest.kept > 0)) {
+                release(oldest);
+                it.remove();
+                evicted++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Datagrams in progress.
+     */
+    public synchronized int size() {
+        return datagrams.size();
+    }
+
+    /**
+     * Bytes of fragments kept.
+     */
+    public synchronized long memory() {
+        return memory;
+    }
+
+    public synchronized long getFragments() {
+        return fragments;
+    }
+
+    /**
+     * Datagrams completed and assembled.
+     */
+    public synchronized long getReassembled() {
+        return reassembled;
+    }
+
+    /**
+     * Datagrams completed without keeping their payload.
+     */
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    public synchronized long getExpired() {
+        return expired;
+    }
+
+    /**
+     * Datagrams evicted to stay within the caps.
+     */
+    public synchronized long getEvicted() {
+        return evicted;
+    }
+
+    /**
+     * Datagrams dropped for overlapping, oversized or inconsistent fragments.
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+}
@@ -8,6 +8,13 @@ import io.kaitai.struct.KaitaiStream;
 import java.io.IOException;
 
 public class Ipv6Packet extends KaitaiStruct {
+    private static final int HOP_BY_HOP = 0;
+    private static final int ROUTING = 43;
+    private static final int FRAGMENT = 44;
+    private static final int AUTHENTICATION = 51;
+    private static final int DESTINATION_OPTIONS = 60;
+    private static final int MOBILITY = 135;
+
     public static Ipv6Packet fromFile(String fileName) throws IOException {
         return new Ipv6Packet(new ByteBufferKaitaiStream(fileName));
     }
@@ -36,9 +43,48 @@ public class Ipv6Packet extends KaitaiStruct {
         this.hopLimit = this._io.readU1();
         this.srcIpv6Addr = this._io.readBytes(16);
         this.dstIpv6Addr = this._io.readBytes(16);
-        this.nextHeader = new ProtocolBody(this._io, nextHeaderType());
+        walkExtensionHeaders();
+        // The lengths in the upper-layer header of a fragment cover the whole datagram, so it is not decoded.
+        if (!isExtensionHeader(protocol) && !isFragment()) {
+            this.nextHeader = new ProtocolBody(this._io, protocol);
+        }
         this.rest = this._io.readBytesFull();
     }
+
+    /**
+     * Skip the extension headers in place, up to the upper-layer header, noting the fragment header on the way.
+     * A truncated chain leaves {@link #protocol} on the extension header that could not be read.
+     */
+    private void walkExtensionHeaders() {
+        this.protocol = nextHeaderType();
+        this.fragmentOffset = -1;
+        while (isExtensionHeader(protocol) && this._io.size() - this._io.pos() >= 8) {
+            long start = this._io.pos();
+            int next = this._io.readU1();
+            int length = this._io.readU1();
+            if (protocol == FRAGMENT) {
+                int offsetFlags = this._io.readU2be();
+                this.fragmentOffset = offsetFlags & 0xfff8;
+                this.moreFragments = (offsetFlags & 0x1) != 0;
+                this.fragmentId = this._io.readU4be();
+                length = 8;
+            } else if (protocol == AUTHENTICATION) {
+                length = (length + 2) * 4;
+            } else {
+                length = (length + 1) * 8;
+            }
+            if (start + length > this._io.size()) {
+                return;
+            }
+            this._io.seek(start + length);
+            this.protocol = next;
+        }
+    }
+
+    private static boolean isExtensionHeader(int type) {
+        return type == HOP_BY_HOP || type == ROUTING || type == FRAGMENT || type == DESTINATION_OPTIONS
+                || type == AUTHENTICATION || type == MOBILITY;
+    }
     private long version;
     private long trafficClass;
     private long flowLabel;
@@ -48,6 +94,10 @@ public class Ipv6Packet extends KaitaiStruct {
     private byte[] srcIpv6Addr;
     private byte[] dstIpv6Addr;
     private ProtocolBody nextHeader;
+    private int protocol;
+    private int fragmentOffset;
+    private boolean moreFragments;
+    private long fragmentId;
     private byte[] rest;
     private Ipv6Packet _root;
     private KaitaiStruct _parent;
@@ -59,7 +109,32 @@ public class Ipv6Packet extends KaitaiStruct {
     public int hopLimit() { return hopLimit; }
     public byte[] srcIpv6Addr() { return srcIpv6Addr; }
     public byte[] dstIpv6Addr() { return dstIpv6Addr; }
+
+    /**
+     * Upper-layer header, after the extension headers.
+     *
+     * @return the header, or null if it is not decoded: a fragment, ESP, or a truncated chain. The bytes of a
+     * fragment after its extension headers are in {@link #rest()}.
+     */
     public ProtocolBody nextHeader() { return nextHeader; }
+
+    /**
+     * Upper-layer protocol, after the extension headers, e.g. 6 for TCP or 58 for ICMPv6.
+     */
+    public int protocol() { return protocol; }
+
+    /**
+     * Offset of the fragment in bytes, -1 if the packet has no fragment header.
+     */
+    public int fragmentOffset() { return fragmentOffset; }
+    public boolean moreFragments() { return moreFragments; }
+
+    /**
+     * Is this packet part of a fragmented datagram? A fragment header with offset 0 and no more fragments (an atomic
+     * fragment) carries a whole datagram.
+     */
+    public boolean isFragment() { return fragmentOffset > 0 || moreFragments; }
+    public long fragmentId() { return fragmentId; }
     public byte[] rest() { return rest; }
     public Ipv6Packet _root() { return _root; }
     public KaitaiStruct _parent() { return _parent; }
@@ -0,0 +1,231 @@
+package com.packetboard.packetboard.Parser;
+
+import java.util.EnumMap;
+
+/**
+ * Link-layer headers that carry IP directly, read in place to find the network layer of a record.
+ * <p>
+ * Each constant decodes one family of {@link Pcap.Linktype}s; {@link #of} is meant to be called once per capture,
+ * so records are decoded without a switch on the link type. A location packs the EtherType of the network layer
+ * and its offset in the record into a long, see {@link #etherType} and {@link #offset}.
+ */
+public enum LinkLayer {
+    /**
+     * Linux "cooked" capture v1, e.g. {@code tcpdump -i any}: 16 byte header ending with the EtherType.
+     */
+    LINUX_SLL {
+        @Override
+        public long locate(byte[] p, int start) {
+            return p.length - start < 16 ? -1 : location(u2(p, start + 14), start + 16);
+        }
+
+        @Override
+        public long sourceMac(byte[] p, int start) {
+            // ARPHRD_ETHER link-layer address of the sender.
+            return p.length - start >= 16 && u2(p, start + 2) == ARPHRD_ETHER && u2(p, start + 4) == 6
+                    ? mac(p, start + 6) : -1;
+        }
+    },
+    /**
+     * Linux "cooked" capture v2: 20 byte header starting with the EtherType.
+     */
+    LINUX_SLL2 {
+        @Override
+        public long locate(byte[] p, int start) {
+            return p.length - start < 20 ? -1 : location(u2(p, start), start + 20);
+        }
+
+        @Override
+        public long sourceMac(byte[] p, int start) {
+            return p.length - start >= 20 && u2(p, start + 8) == ARPHRD_ETHER && (p[start + 11] & 0xff) == 6
+                    ? mac(p, start + 12) : -1;
+        }
+    },
+    /**
+     * Raw IP, version told by the first nibble.
+     */
+    RAW {
+        @Override
+        public long locate(byte[] p, int start) {
+            if (p.length <= start) {
+                return -1;
+            }
+            return switch ((p[start] & 0xff) >>> 4) {
+                case 4 -> location(ETHERTYPE_IPV4, start);
+                case 6 -> location(ETHERTYPE_IPV6, start);
+                default -> -1;
+            };
+        }
+    },
+    /**
+     * 802.11 frames, e.g. after the PPI header of a wireless capture. Only unprotected data frames carrying an
+     * LLC/SNAP header have a network layer.
+     */
+    IEEE802_11 {
+        @Override
+        public long locate(byte[] p, int start) {
+            if (p.length - start < 24) {
+                return -1;
+            }
+            int fc0 = p[start] & 0xff; // frame control
+            int fc1 = p[start + 1] & 0xff;
+            if ((fc0 & 0x0c) != 0x08 || (fc0 & 0x40) != 0 || (fc1 & 0x40) != 0) {
+                // Not data, a null data frame, or encrypted.
+                return -1;
+            }
+            int header = start + ((fc1 & 0x03) == 0x03 ? 30 : 24);
+            if ((fc0 & 0x80) != 0) {
+                // QoS control, then HT control when the order bit is set.
+                header += (fc1 & 0x80) != 0 ? 6 : 2;
+            }
+            if (p.length < header + 8 || (p[header] & 0xff) != 0xaa || (p[header + 1] & 0xff) != 0xaa
+                    || p[header + 2] != 0x03) {
+                return -1;
+            }
+            return location(u2(p, header + 6), header + 8);
+        }
+
+        @Override
+        public long sourceMac(byte[] p, int start) {
+            if (p.length - start < 24) {
+                return -1;
+            }
+            // Source address: address 2 from a station, 3 from the distribution system, 4 over a bridge.
+            return switch (p[start + 1] & 0x03) {
+                case 0x00, 0x01 -> mac(p, start + 10);
+                case 0x02 -> mac(p, start + 16);
+                default -> p.length - start < 30 ? -1 : mac(p, start + 24);
+            };
+        }
+    },
+    IPV4 {
+        @Override
+        public long locate(byte[] p, int start) {
+            return location(ETHERTYPE_IPV4, start);
+        }
+    },
+    IPV6 {
+        @Override
+        public long locate(byte[] p, int start) {
+            return location(ETHERTYPE_IPV6, start);
+        }
+    },
+    /**
+     * BSD loopback: 4 byte address family in the byte order of the capturing host.
+     */
+    NULL {
+        @Override
+        public long locate(byte[] p, int start) {
+            if (p.length - start < 4) {
+                return -1;
+            }
+            int family = (p[start] & 0xff) | ((p[start + 1] & 0xff) << 8) | ((p[start + 2] & 0xff) << 16)
+                    | ((p[start + 3] & 0xff) << 24);
+            // Written on a big-endian host, the family lands in the high bytes.
+            return family(family < 0x10000 ? family : Integer.reverseBytes(family), start);
+        }
+    },
+    /**
+     * OpenBSD loopback: 4 byte address family in network byte order.
+     */
+    LOOP {
+        @Override
+        public long locate(byte[] p, int start) {
+            return p.length - start < 4 ? -1 : family((u2(p, start) << 16) | u2(p, start + 2), start);
+        }
+    };
+
+    public static final int ETHERTYPE_IPV4 = 0x0800;
+    public static final int ETHERTYPE_ARP = 0x0806;
+    public static final int ETHERTYPE_IPV6 = 0x86dd;
+    private static final int ARPHRD_ETHER = 1;
+    private static final int AF_INET = 2;
+    private static final EnumMap<Pcap.Linktype, LinkLayer> BY_LINKTYPE = new EnumMap<>(Pcap.Linktype.class);
+
+    static {
+        BY_LINKTYPE.put(Pcap.Linktype.LINUX_SLL, LINUX_SLL);
+        BY_LINKTYPE.put(Pcap.Linktype.LINUX_SLL2, LINUX_SLL2);
+        BY_LINKTYPE.put(Pcap.Linktype.RAW, RAW);
+        BY_LINKTYPE.put(Pcap.Linktype.IEEE802_11, IEEE802_11);
+        BY_LINKTYPE.put(Pcap.Linktype.IPV4, IPV4);
+        BY_LINKTYPE.put(Pcap.Linktype.IPV6, IPV6);
+        BY_LINKTYPE.put(Pcap.Linktype.NULL_LINKTYPE, NULL);
+        BY_LINKTYPE.put(Pcap.Linktype.LOOP, LOOP);
+    }
+
+    /**
+     * Decoder of a link type.
+     *
+     * @return the decoder, or null if the link type is not one of these (Ethernet is decoded by
+     * {@link EthernetFrame}).
+     */
+    public static LinkLayer of(Pcap.Linktype linkType) {
+        return linkType == null ? null : BY_LINKTYPE.get(linkType);
+    }
+
+    /**
+     * Find the network layer of a record.
+     *
+     * @param p record bytes.
+     * @return location of the network layer, or -1 if the record is too short or carries something else.
+     */
+    public long locate(byte[] p) {
+        return locate(p, 0);
+    }
+
+    /**
+     * Find the network layer of a link-layer header starting inside a record, e.g. after a PPI header.
+     *
+     * @param start offset of the link-layer header in {@code p}.
+     * @return location of the network layer, its offset counted from the start of {@code p}, or -1.
+     */
+    public abstract long locate(byte[] p, int start);
+
+    /**
+     * MAC address of the sender of a record, if the header has one.
+     *
+     * @return the MAC in the low 48 bits, or -1.
+     */
+    public long sourceMac(byte[] p) {
+        return sourceMac(p, 0);
+    }
+
+    /**
+     * @param start offset of the link-layer header in {@code p}.
+     * @see #sourceMac(byte[])
+     */
+    public long sourceMac(byte[] p, int start) {
+        return -1;
+    }
+
+    public static int etherType(long location) {
+        return (int) (location >>> 32);
+    }
+
+    public static int offset(long location) {
+        return (int) location;
+    }
+
+    private static long location(int etherType, int offset) {
+        return ((long) etherType << 32) | offset;
+    }
+
+    /**
+     * Location after a 4 byte address family. IPv6 has a different value on each BSD, so any value of theirs is taken.
+     */
+    private static long family(int family, int start) {
+        return switch (family) {
+            case AF_INET -> location(ETHERTYPE_IPV4, start + 4);
+            case 10, 24, 28, 30 -> location(ETHERTYPE_IPV6, start + 4); // Linux, NetBSD/OpenBSD, FreeBSD, macOS
+            default -> -1;
+        };
+    }
+
+    private static int u2(byte[] p, int offset) {
+        return ((p[offset] & 0xff) << 8) | (p[offset + 1] & 0xff);
+    }
+
+    private static long mac(byte[] p, int offset) {
+        return ((long) u2(p, offset) << 32) | ((long) u2(p, offset + 2) << 16) | u2(p, offset + 4);
+    }
+}
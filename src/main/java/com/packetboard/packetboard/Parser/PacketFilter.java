@@ -0,0 +1,589 @@
+package com.packetboard.packetboard.Parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * Packet filter with a subset of the tcpdump (pcap-filter) syntax, tested on the raw bytes of an Ethernet frame
+ * (or of a packet of another link type, given where its network layer starts) before anything is decoded.
+ * <p>
+ * The expression is compiled once into a tree of small lambdas that read header fields at fixed offsets from the
+ * network layer; the frame itself only has its VLAN tags skipped once per packet. Supported primitives:
+ * <pre>
+ * [src|dst] host ADDR       [src|dst] net ADDR/LEN       [src|dst] port N       [src|dst] portrange N-M
+ * tcp  udp  sctp  icmp  icmp6  ip  ip6  arp  [ip|ip6] proto N  vlan [ID]  ether [src|dst] host MAC
+ * less N  greater N  (frame length on the wire, not the captured length)
+ * </pre>
+ * combined with {@code and}/{@code &&}, {@code or}/{@code ||}, {@code not}/{@code !} and parentheses. As in tcpdump,
+ * {@code tcp port 443} means {@code tcp and port 443}, and a bare address means {@code host ADDR}. Addresses must
+ * be literal; host names are not resolved. The protocol and ports of IPv6 packets are those of the upper-layer header,
+ * after any extension headers.
+ */
+public final class PacketFilter {
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+    private static final int ETHERTYPE_IPV6 = 0x86dd;
+    private static final int ETHERTYPE_ARP = 0x0806;
+    private static final int ETHERTYPE_VLAN = 0x8100;
+    private static final int ETHERTYPE_QINQ = 0x88a8;
+    private static final int ETHERNET_HEADER_LENGTH = 14;
+    private static final int IPV4_HEADER_LENGTH = 20;
+    private static final int IPV6_HEADER_LENGTH = 40;
+    private static final int PROTO_ICMP = 1;
+    private static final int PROTO_TCP = 6;
+    private static final int PROTO_UDP = 17;
+    private static final int PROTO_ICMPV6 = 58;
+    private static final int PROTO_SCTP = 132;
+    private static final int SRC = 1;
+    private static final int DST = 2;
+    private static final int EITHER = SRC | DST;
+
+    /**
+     * Compiled primitive or combination of primitives.
+     */
+    @FunctionalInterface
+    private interface Node {
+        /**
+         * @param p         packet bytes.
+         * @param l2        offset of the Ethernet header, -1 if there is none.
+         * @param l3        offset of the network layer header.
+         * @param etherType EtherType after any VLAN tags.
+         * @param wire      length of the packet on the wire, which may be more than the bytes captured.
+         */
+        boolean test(byte[] p, int l2, int l3, int etherType, int wire);
+    }
+
+    private final String expression;
+    private final Node root;
+
+    private PacketFilter(String expression, Node root) {
+        this.expression = expression;
+        this.root = root;
+    }
+
+    /**
+     * Compile a filter expression.
+     *
+     * @throws IllegalArgumentException if the expression is not valid.
+     */
+    public static PacketFilter compile(String expression) {
+        Compiler compiler = new Compiler(expression);
+        Node root = compiler.or();
+        if (compiler.peek() != null) {
+            throw compiler.error("unexpected '" + compiler.peek() + "'");
+        }
+        return new PacketFilter(expression, root);
+    }
+
+    /**
+     * Test an Ethernet frame captured whole.
+     */
+    public boolean matches(byte[] frame) {
+        return matches(frame, frame.length);
+    }
+
+    /**
+     * Test an Ethernet frame.
+     *
+     * @param frame      captured bytes.
+     * @param wireLength length of the frame on the wire, e.g. the original length of its pcap record.
+     */
+    public boolean matches(byte[] frame, int wireLength) {
+        return matchesEthernet(frame, 0, wireLength);
+    }
+
+    /**
+     * Test an Ethernet frame starting inside a buffer, e.g. after the PPI header of a record.
+     *
+     * @param start      offset of the Ethernet header; the frame runs to the end of the buffer.
+     * @param wireLength length of the frame on the wire.
+     */
+    public boolean matchesEthernet(byte[] buffer, int start, int wireLength) {
+        if (buffer.length - start < ETHERNET_HEADER_LENGTH) {
+            return false;
+        }
+        int offset = start + 12;
+        int etherType = u16(buffer, offset);
+        while ((etherType == ETHERTYPE_VLAN || etherType == ETHERTYPE_QINQ) && offset + 6 <= buffer.length) {
+            offset += 4;
+            etherType = u16(buffer, offset);
+        }
+        return root.test(buffer, start, offset + 2, etherType, wireLength);
+    }
+
+    /**
+     * Test a packet of a link type without Ethernet header, e.g. Linux cooked or raw IP. The {@code ether} and
+     * {@code vlan} primitives never match.
+     *
+     * @param packet    record bytes.
+     * @param l3        offset of the network layer header.
+     * @param etherType EtherType of the network layer.
+     */
+    public boolean matches(byte[] packet, int l3, int etherType) {
+        return matches(packet, l3, etherType, packet.length);
+    }
+
+    /**
+     * @param wireLength length of the packet on the wire.
+     * @see #matches(byte[], int, int)
+     */
+    public boolean matches(byte[] packet, int l3, int etherType, int wireLength) {
+        return root.test(packet, -1, l3, etherType, wireLength);
+    }
+
+    /**
+     * Length of a record on the wire, for the {@code less} and {@code greater} primitives.
+     */
+    public static int wireLength(PcapRecord record) {
+        return (int) Math.min(Integer.MAX_VALUE, record.origLen());
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private static int u16(byte[] p, int offset) {
+        return ((p[offset] & 0xff) << 8) | (p[offset + 1] & 0xff);
+    }
+
+    private static int u32(byte[] p, int offset) {
+        return ((p[offset] & 0xff) << 24) | ((p[offset + 1] & 0xff) << 16) | ((p[offset + 2] & 0xff) << 8) | (p[offset + 3] & 0xff);
+    }
+
+    private static long u64(byte[] p, int offset) {
+        return ((long) u32(p, offset) << 32) | (u32(p, offset + 4) & 0xffffffffL);
+    }
+
+    /**
+     * IP protocol of an IPv4 or IPv6 packet, -1 if it is neither or truncated.
+     */
+    private static int protocol(byte[] p, int l3, int etherType) {
+        if (etherType == ETHERTYPE_IPV4 && l3 + IPV4_HEADER_LENGTH <= p.length) {
+            return p[l3 + 9] & 0xff;
+        }
+        if (etherType == ETHERTYPE_IPV6 && l3 + IPV6_HEADER_LENGTH <= p.length) {
+            return (int) (upperLayer(p, l3) >>> 32);
+        }
+        return -1;
+    }
+
+    /**
+     * Walk the extension headers of an IPv6 packet, in place.
+     *
+     * @return the upper-layer protocol in the high 32 bits, and the offset of its header in the low 32 bits or -1 if
+     * it is not in this packet (a non-first fragment or a truncated chain).
+     */
+    private static long upperLayer(byte[] p, int l3) {
+        int protocol = p[l3 + 6] & 0xff;
+        int offset = l3 + IPV6_HEADER_LENGTH;
+        while (protocol == 0 || protocol == 43 || protocol == 44 || protocol == 51 || protocol == 60 || protocol == 135) {
+            if (offset + 8 > p.length) {
+                return ((long) protocol << 32) | 0xffffffffL;
+            }
+            int length;
+            if (protocol == 44) {
+                // Fragment header; only the first fragment has the upper-layer header.
+                if ((u16(p, offset + 2) & 0xfff8) != 0) {
+                    return ((long) (p[offset] & 0xff) << 32) | 0xffffffffL;
+                }
+                length = 8;
+            } else if (protocol == 51) {
+                length = ((p[offset + 1] & 0xff) + 2) * 4; // Authentication header, in 32-bit words
+            } else {
+                length = ((p[offset + 1] & 0xff) + 1) * 8;
+            }
+            protocol = p[offset] & 0xff;
+            offset += length;
+        }
+        return ((long) protocol << 32) | offset;
+    }
+
+    /**
+     * Offset of the TCP/UDP/SCTP header, -1 if the packet has none or is a non-first fragment.
+     */
+    private static int transport(byte[] p, int l3, int etherType) {
+        int protocol = protocol(p, l3, etherType);
+        if (protocol != PROTO_TCP && protocol != PROTO_UDP && protocol != PROTO_SCTP) {
+            return -1;
+        }
+        int l4;
+        if (etherType == ETHERTYPE_IPV4) {
+            if ((u16(p, l3 + 6) & 0x1fff) != 0) {
+                return -1;
+            }
+            l4 = l3 + (p[l3] & 0x0f) * 4;
+        } else {
+            l4 = (int) upperLayer(p, l3);
+        }
+        return l4 >= 0 && l4 + 4 <= p.length ? l4 : -1;
+    }
+
+    /**
+     * Recursive descent parser turning the expression into nodes.
+     */
+    private static final class Compiler {
+        private final String expression;
+        private final ArrayList<String> tokens = new ArrayList<>();
+        private int next;
+
+        Compiler(String expression) {
+            this.expression = expression;
+            int i = 0;
+            while (i < expression.length()) {
+                char c = expression.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')' || c == '!') {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else if (expression.startsWith("&&", i) || expression.startsWith("||", i)) {
+                    tokens.add(expression.substring(i, i + 2));
+                    i += 2;
+                } else {
+                    int start = i;
+                    while (i < expression.length() && !Character.isWhitespace(expression.charAt(i))
+                            && "()!&|".indexOf(expression.charAt(i)) < 0) {
+                        i++;
+                    }
+                    if (start == i) {
+                        throw new IllegalArgumentException("Bad filter: unexpected '" + c + "' in " + expression);
+                    }
+                    tokens.add(expression.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+            }
+            if (tokens.isEmpty()) {
+                throw new IllegalArgumentException("Bad filter: empty expression");
+            }
+        }
+
+        String peek() {
+            return next < tokens.size() ? tokens.get(next) : null;
+        }
+
+        String take() {
+            String token = peek();
+            if (token == null) {
+                throw error("unexpected end");
+            }
+            next++;
+            return token;
+        }
+
+        boolean accept(String... choices) {
+            String token = peek();
+            for (String choice : choices) {
+                if (choice.equals(token)) {
+                    next++;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Bad filter: " + message + " in " + expression);
+        }
+
+        Node or() {
+            Node left = and();
+            while (accept("or", "||")) {
+                Node a = left;
+                Node b = and();
+                left = (p, l2, l3, type, wire) -> a.test(p, l2, l3, type, wire) || b.test(p, l2, l3, type, wire);
+            }
+            return left;
+        }
+
+        Node and() {
+            Node left = not();
+            while (accept("and", "&&")) {
+                Node a = left;
+                Node b = not();
+                left = (p, l2, l3, type, wire) -> a.test(p, l2, l3, type, wire) && b.test(p, l2, l3, type, wire);
+            }
+            return left;
+        }
+
+        Node not() {
+            if (accept("not", "!")) {
+                Node a = not();
+                return (p, l2, l3, type, wire) -> !a.test(p, l2, l3, type, wire);
+            }
+            if (accept("(")) {
+                Node inner = or();
+                if (!accept(")")) {
+                    throw error("missing ')'");
+                }
+                return inner;
+            }
+            return primitive();
+        }
+
+        Node primitive() {
+            String token = take();
+            switch (token) {
+                case "src", "dst" -> {
+                    return directed(token.equals("src") ? SRC : DST);
+                }
+                case "host", "net", "port", "portrange" -> {
+                    next--;
+                    return directed(EITHER);
+                }
+                case "tcp", "udp", "sctp" -> {
+                    int protocol = token.equals("tcp") ? PROTO_TCP : token.equals("udp") ? PROTO_UDP : PROTO_SCTP;
+                    return withQualifier(protocolIs(protocol));
+                }
+                case "icmp" -> {
+                    return (p, l2, l3, type, wire) -> type == ETHERTYPE_IPV4 && protocol(p, l3, type) == PROTO_ICMP;
+                }
+                case "icmp6" -> {
+                    return (p, l2, l3, type, wire) -> type == ETHERTYPE_IPV6 && protocol(p, l3, type) == PROTO_ICMPV6;
+                }
+                case "ip", "ip6" -> {
+                    int etherType = token.equals("ip") ? ETHERTYPE_IPV4 : ETHERTYPE_IPV6;
+                    if (accept("proto")) {
+                        int protocol = number(take(), 255);
+                        return (p, l2, l3, type, wire) -> type == etherType && protocol(p, l3, type) == protocol;
+                    }
+                    return withQualifier((p, l2, l3, type, wire) -> type == etherType);
+                }
+                case "proto" -> {
+                    return protocolIs(number(take(), 255));
+                }
+                case "arp" -> {
+                    return (p, l2, l3, type, wire) -> type == ETHERTYPE_ARP;
+                }
+                case "vlan" -> {
+                    return vlan();
+                }
+                case "ether" -> {
+                    return ether();
+                }
+                case "less", "greater" -> {
+                    int length = number(take(), Integer.MAX_VALUE);
+                    return token.equals("less") ? (p, l2, l3, type, wire) -> wire <= length
+                            : (p, l2, l3, type, wire) -> wire >= length;
+                }
+                default -> {
+                    // A bare address, as in tcpdump.
+                    next--;
+                    return directed(EITHER);
+                }
+            }
+        }
+
+        /**
+         * Protocol followed by a port or host primitive, e.g. {@code tcp port 443}.
+         */
+        Node withQualifier(Node protocol) {
+            String token = peek();
+            if (token == null || !(token.equals("src") || token.equals("dst") || token.equals("host")
+                    || token.equals("net") || token.equals("port") || token.equals("portrange"))) {
+                return protocol;
+            }
+            Node qualified = primitive();
+            return (p, l2, l3, type, wire) -> protocol.test(p, l2, l3, type, wire)
+                    && qualified.test(p, l2, l3, type, wire);
+        }
+
+        Node directed(int direction) {
+            if (accept("port")) {
+                int port = number(take(), 0xffff);
+                return port(direction, port, port);
+            }
+            if (accept("portrange")) {
+                String range = take();
+                int dash = range.indexOf('-');
+                if (dash < 0) {
+                    throw error("port range '" + range + "' is not N-M");
+                }
+                return port(direction, number(range.substring(0, dash), 0xffff), number(range.substring(dash + 1), 0xffff));
+            }
+            if (accept("net")) {
+                String net = take();
+                int slash = net.indexOf('/');
+                String prefix = slash < 0 ? net : net.substring(0, slash);
+                byte[] address = address(prefix, true);
+                // tcpdump reads a short network such as "net 10.1" as 10.1.0.0/16.
+                int bits = slash >= 0 ? number(net.substring(slash + 1), address.length * 8)
+                        : address.length == 4 ? prefix.split("\\.").length * 8 : 128;
+                return network(direction, address, bits);
+            }
+            accept("host");
+            byte[] address = address(take(), false);
+            return network(direction, address, address.length * 8);
+        }
+
+        Node protocolIs(int protocol) {
+            return (p, l2, l3, type, wire) -> protocol(p, l3, type) == protocol;
+        }
+
+        Node port(int direction, int low, int high) {
+            return (p, l2, l3, type, wire) -> {
+                int l4 = transport(p, l3, type);
+                if (l4 < 0) {
+                    return false;
+                }
+                int src = u16(p, l4);
+                int dst = u16(p, l4 + 2);
+                return ((direction & SRC) != 0 && src >= low && src <= high)
+                        || ((direction & DST) != 0 && dst >= low && dst <= high);
+            };
+        }
+
+        /**
+         * Match the src and/or dst address against an address prefix.
+         */
+        Node network(int direction, byte[] address, int bits) {
+            if (address.length == 4) {
+                int mask = bits == 0 ? 0 : -1 << (32 - bits);
+                int value = u32(address, 0) & mask;
+                return (p, l2, l3, type, wire) -> type == ETHERTYPE_IPV4 && l3 + IPV4_HEADER_LENGTH <= p.length
+                        && (((direction & SRC) != 0 && (u32(p, l3 + 12) & mask) == value)
+                        || ((direction & DST) != 0 && (u32(p, l3 + 16) & mask) == value));
+            }
+            long highMask = bits == 0 ? 0 : bits >= 64 ? -1L : -1L << (64 - bits);
+            long lowMask = bits <= 64 ? 0 : -1L << (128 - bits);
+            long high = u64(address, 0) & highMask;
+            long low = u64(address, 8) & lowMask;
+            return (p, l2, l3, type, wire) -> type == ETHERTYPE_IPV6 && l3 + IPV6_HEADER_LENGTH <= p.length
+                    && (((direction & SRC) != 0 && (u64(p, l3 + 8) & highMask) == high && (u64(p, l3 + 16) & lowMask) == low)
+                    || ((direction & DST) != 0 && (u64(p, l3 + 24) & highMask) == high && (u64(p, l3 + 32) & lowMask) == low));
+        }
+
+        Node vlan() {
+            String token = peek();
+            if (token != null && Character.isDigit(token.charAt(0))) {
+                int id = number(take(), 4095);
+                return (p, l2, l3, type, wire) -> {
+                    if (l2 < 0) {
+                        return false;
+                    }
+                    int tpid = u16(p, l2 + 12);
+                    return (tpid == ETHERTYPE_VLAN || tpid == ETHERTYPE_QINQ) && l3 > l2 + ETHERNET_HEADER_LENGTH
+                            && (u16(p, l2 + 14) & 0x0fff) == id;
+                };
+            }
+            return (p, l2, l3, type, wire) -> {
+                if (l2 < 0) {
+                    return false;
+                }
+                int tpid = u16(p, l2 + 12);
+                return (tpid == ETHERTYPE_VLAN || tpid == ETHERTYPE_QINQ) && l3 > l2 + ETHERNET_HEADER_LENGTH;
+            };
+        }
+
+        Node ether() {
+            int direction = accept("src") ? SRC : accept("dst") ? DST : EITHER;
+            accept("host");
+            String mac = take();
+            String[] parts = mac.split("[:-]");
+            if (parts.length != 6) {
+                throw error("'" + mac + "' is not a MAC address");
+            }
+            long value = 0;
+            for (String part : parts) {
+                value = (value << 8) | number("0x" + part, 0xff);
+            }
+            long expected = value;
+            return (p, l2, l3, type, wire) -> l2 >= 0
+                    && (((direction & DST) != 0 && mac(p, l2) == expected)
+                    || ((direction & SRC) != 0 && mac(p, l2 + 6) == expected));
+        }
+
+        private static long mac(byte[] p, int offset) {
+            return ((long) u16(p, offset) << 32) | (u32(p, offset + 2) & 0xffffffffL);
+        }
+
+        int number(String token, int max) {
+            try {
+                long value = token.startsWith("0x") ? Long.parseLong(token.substring(2), 16) : Long.parseLong(token);
+                if (value < 0 || value > max) {
+                    throw error(token + " is out of range");
+                }
+                return (int) value;
+            } catch (NumberFormatException e) {
+                throw error("'" + token + "' is not a number");
+            }
+        }
+
+        /**
+         * @param network allow a short IPv4 network such as "10.1".
+         */
+        byte[] address(String token, boolean network) {
+            if (token.indexOf(':') >= 0) {
+                return ipv6Address(token);
+            }
+            String[] parts = token.split("\\.", -1);
+            if (parts.length > 4 || (!network && parts.length != 4)) {
+                throw error("'" + token + "' is not an IP address");
+            }
+            byte[] address = new byte[4];
+            for (int i = 0; i < parts.length; i++) {
+                if (parts[i].isEmpty() || !parts[i].chars().allMatch(Character::isDigit)) {
+                    throw error("'" + token + "' is not an IP address");
+                }
+                address[i] = (byte) number(parts[i], 255);
+            }
+            return address;
+        }
+
+        /**
+         * Parse an IPv6 literal (RFC 4291 2.2), with "::" and a trailing dotted IPv4 part allowed. Nothing is ever
+         * looked up.
+         */
+        byte[] ipv6Address(String token) {
+            String[] halves = token.split("::", -1);
+            if (halves.length > 2) {
+                throw error("'" + token + "' is not an IPv6 address");
+            }
+            byte[] head = ipv6Groups(token, halves[0], halves.length == 1);
+            byte[] tail = halves.length == 2 ? ipv6Groups(token, halves[1], false) : new byte[0];
+            if (halves.length == 1 ? head.length != 16 : head.length + tail.length > 14) {
+                throw error("'" + token + "' is not an IPv6 address");
+            }
+            byte[] address = new byte[16];
+            System.arraycopy(head, 0, address, 0, head.length);
+            System.arraycopy(tail, 0, address, 16 - tail.length, tail.length);
+            return address;
+        }
+
+        /**
+         * Bytes of colon-separated hex groups, the last of which may be a dotted IPv4 address.
+         *
+         * @param whole is this the whole address, rather than one side of "::"?
+         */
+        private byte[] ipv6Groups(String token, String groups, boolean whole) {
+            if (groups.isEmpty()) {
+                if (whole) {
+                    throw error("'" + token + "' is not an IPv6 address");
+                }
+                return new byte[0];
+            }
+            String[] parts = groups.split(":", -1);
+            byte[] bytes = new byte[16];
+            int n = 0;
+            for (int i = 0; i < parts.length; i++) {
+                String part = parts[i];
+                if (i == parts.length - 1 && part.indexOf('.') >= 0) {
+                    if (n + 4 > 16) {
+                        throw error("'" + token + "' is not an IPv6 address");
+                    }
+                    System.arraycopy(address(part, false), 0, bytes, n, 4);
+                    n += 4;
+                    break;
+                }
+                if (part.isEmpty() || part.length() > 4 || n + 2 > 16
+                        || !part.chars().allMatch(HexFormat::isHexDigit)) {
+                    throw error("'" + token + "' is not an IPv6 address");
+                }
+                int group = Integer.parseInt(part, 16);
+                bytes[n++] = (byte) (group >> 8);
+                bytes[n++] = (byte) group;
+            }
+            return Arrays.copyOf(bytes, n);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.packetboard.packetboard.Parser;
+
+import io.kaitai.struct.ByteBufferKaitaiStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A single libpcap record read at a known file offset, without parsing the rest of the file.
+ * <p>
+ * Like {@link Pcap}, only little-endian, microsecond resolution files are supported.
+ */
+public final class PcapRecord {
+    public static final int GLOBAL_HEADER_LENGTH = 24;
+    public static final int HEADER_LENGTH = 16;
+
+    private final long offset;
+    private final long tsSec;
+    private final long tsUsec;
+    private final long inclLen;
+    private final long origLen;
+    private final byte[] body;
+
+    public PcapRecord(long offset, long tsSec, long tsUsec, long inclLen, long origLen, byte[] body) {
+        this.offset = offset;
+        this.tsSec = tsSec;
+        this.tsUsec = tsUsec;
+        this.inclLen = inclLen;
+        this.origLen = origLen;
+        this.body = body;
+    }
+
+    /**
+     * Read the record starting at a file offset.
+     *
+     * @param channel pcap file.
+     * @param offset  offset of the record header.
+     * @param snaplen snapshot length from the global header; longer bodies are truncated like {@link Pcap} does.
+     */
+    public static PcapRecord read(FileChannel channel, long offset, long snaplen) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header, offset);
+        header.flip();
+        long tsSec = header.getInt() & 0xffffffffL;
+        long tsUsec = header.getInt() & 0xffffffffL;
+        long inclLen = header.getInt() & 0xffffffffL;
+        long origLen = header.getInt() & 0xffffffffL;
+        ByteBuffer body = ByteBuffer.allocate((int) Math.min(inclLen, snaplen));
+        readFully(channel, body, offset + HEADER_LENGTH);
+        return new PcapRecord(offset, tsSec, tsUsec, inclLen, origLen, body.array());
+    }
+
+    /**
+     * Read the global header of a pcap file.
+     */
+    public static Pcap.Header readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(GLOBAL_HEADER_LENGTH);
+        readFully(channel, header, 0);
+        return new Pcap.Header(new ByteBufferKaitaiStream(header.array()));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Truncated pcap record at " + position);
+            }
+        }
+    }
+
+    /**
+     * Offset of the record header in the file.
+     */
+    public long offset() { return offset; }
+    public long tsSec() { return tsSec; }
+    public long tsUsec() { return tsUsec; }
+
+    /**
+     * Timestamp in microseconds since the epoch.
+     */
+    public long tsMicros() { return tsSec * 1_000_000L + tsUsec; }
+    public long inclLen() { return inclLen; }
+    public long origLen() { return origLen; }
+
+    /**
+     * Captured bytes, starting at the link-layer header.
+     */
+    public byte[] body() { return body; }
+
+    /**
+     * Offset of the next record header.
+     */
+    public long nextOffset() { return offset + HEADER_LENGTH + body.length; }
+}
@@ -0,0 +1,136 @@
+package com.packetboard.packetboard.Parser;
+
+import io.kaitai.struct.ByteBufferKaitaiStream;
+import io.kaitai.struct.KaitaiStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads libpcap records one after the other from a channel through a fixed read-ahead buffer, without parsing the
+ * whole file first.
+ * <p>
+ * Like {@link Pcap}, only little-endian, microsecond resolution files are supported.
+ */
+public final class PcapRecordReader {
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private final ReadableByteChannel channel;
+    private final long end;
+    private long snaplen;
+    private Pcap.Header header; // Global header, if read by this reader
+    private ByteBuffer buffer;
+    private long offset; // file offset of the next unread byte of the buffer
+
+    /**
+     * @param channel channel positioned at the first record header to read.
+     * @param offset  file offset of that header, reported by {@link PcapRecord#offset}.
+     * @param end     records whose header starts at or after this offset are not read.
+     * @param snaplen snapshot length from the global header; longer bodies are truncated like {@link Pcap} does.
+     */
+    public PcapRecordReader(ReadableByteChannel channel, long offset, long end, long snaplen) {
+        this(channel, offset, end, snaplen, DEFAULT_BUFFER_SIZE);
+    }
+
+    public PcapRecordReader(ReadableByteChannel channel, long offset, long end, long snaplen, int bufferSize) {
+        this.channel = channel;
+        this.offset = offset;
+        this.end = end;
+        this.snaplen = snaplen;
+        this.buffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+    }
+
+    /**
+     * Reader of a whole capture from a stream, e.g. a pipe from {@code tcpdump -w -}, starting with the global header.
+     *
+     * @param bufferSize read-ahead buffer size; it only grows for a record larger than itself.
+     * @throws EOFException if the stream ends before the global header.
+     * @throws IOException  if the stream is not a supported pcap.
+     */
+    public static PcapRecordReader ofStream(ReadableByteChannel channel, int bufferSize) throws IOException {
+        PcapRecordReader reader = new PcapRecordReader(channel, 0, Long.MAX_VALUE, Long.MAX_VALUE, bufferSize);
+        if (!reader.fill(PcapRecord.GLOBAL_HEADER_LENGTH)) {
+            throw new EOFException("Stream ended before the pcap header");
+        }
+        byte[] header = new byte[PcapRecord.GLOBAL_HEADER_LENGTH];
+        reader.buffer.get(header);
+        try {
+            reader.header = new Pcap.Header(new ByteBufferKaitaiStream(header));
+        } catch (KaitaiStream.KaitaiStructError e) {
+            throw new IOException("Not a little-endian, microsecond resolution pcap stream", e);
+        }
+        reader.snaplen = reader.header.snaplen();
+        reader.offset = PcapRecord.GLOBAL_HEADER_LENGTH;
+        return reader;
+    }
+
+    /**
+     * Global header read by {@link #ofStream}, null for readers of a range.
+     */
+    public Pcap.Header header() {
+        return header;
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return the record, or null at the end of the range or of the channel. A record cut short by the end of the
+     * channel is not returned, but kept: if more data is appended to the channel later, e.g. to a capture still being
+     * written, the next call returns it.
+     */
+    public PcapRecord next() throws IOException {
+        if (offset >= end || !fill(PcapRecord.HEADER_LENGTH)) {
+            return null;
+        }
+        int start = buffer.position();
+        long tsSec = buffer.getInt(start) & 0xffffffffL;
+        long tsUsec = buffer.getInt(start + 4) & 0xffffffffL;
+        long inclLen = buffer.getInt(start + 8) & 0xffffffffL;
+        long origLen = buffer.getInt(start + 12) & 0xffffffffL;
+        int bodyLength = (int) Math.min(inclLen, snaplen);
+        if (!fill(PcapRecord.HEADER_LENGTH + bodyLength)) {
+            return null;
+        }
+        byte[] body = new byte[bodyLength];
+        buffer.position(buffer.position() + PcapRecord.HEADER_LENGTH);
+        buffer.get(body);
+        PcapRecord record = new PcapRecord(offset, tsSec, tsUsec, inclLen, origLen, body);
+        offset += PcapRecord.HEADER_LENGTH + bodyLength;
+        return record;
+    }
+
+    /**
+     * File offset of the next record header.
+     */
+    public long offset() {
+        return offset;
+    }
+
+    /**
+     * Make sure the buffer holds at least the given number of unread bytes.
+     *
+     * @return false if the channel ends first.
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        if (bytes > buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(bytes, buffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+            larger.put(buffer).flip();
+            buffer = larger;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= bytes;
+    }
+}
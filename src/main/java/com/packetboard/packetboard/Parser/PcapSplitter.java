@@ -0,0 +1,140 @@
+package com.packetboard.packetboard.Parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Splits a libpcap file into byte ranges that start on record boundaries, so the ranges can be decoded concurrently
+ * without walking the file first.
+ * <p>
+ * Records carry no sync marker, so a boundary is found by scanning forward from a guessed offset for a position
+ * whose header is plausible (microseconds below one second, {@code 0 < inclLen <= snaplen}, {@code inclLen <= origLen})
+ * and whose next {@value #CHAIN_LENGTH} headers are plausible too, with timestamps that do not go back by more
+ * than {@value #MAX_BACKWARD_MICROS} us or jump ahead by more than a day. The chain is followed until it runs
+ * past the longest record, so headers nested in a payload, such as those of a pcap file being downloaded, cannot
+ * form a chain of their own.
+ */
+public final class PcapSplitter {
+    public static final int CHAIN_LENGTH = 8;
+    public static final long MAX_BACKWARD_MICROS = 1_000_000L; // Multi-queue capture can reorder slightly.
+    private static final long MAX_FORWARD_MICROS = 86_400_000_000L;
+    private static final long MAX_ORIG_LENGTH = 1 << 18;
+    private static final long MIN_RANGE_BYTES = 1 << 20; // Smaller ranges are not worth a resync.
+    private static final int SCAN_WINDOW = 1 << 16;
+
+    private PcapSplitter() {
+    }
+
+    /**
+     * Split the records of a file into ranges of about equal size.
+     *
+     * @param channel pcap file.
+     * @param snaplen snapshot length from the global header.
+     * @param parts   number of ranges wanted; fewer are returned for small files.
+     * @return range boundaries: range i is [b[i], b[i + 1]). The first is the first record, the last the file size.
+     */
+    public static long[] split(FileChannel channel, long snaplen, int parts) throws IOException {
+        return split(channel, snaplen, PcapRecord.GLOBAL_HEADER_LENGTH, channel.size(), parts);
+    }
+
+    /**
+     * Split the records of part of a file into ranges of about equal size.
+     *
+     * @param start offset of a record header.
+     * @param end   end of the part (exclusive).
+     * @return range boundaries: range i is [b[i], b[i + 1]). The first is {@code start}, the last {@code end}.
+     */
+    public static long[] split(FileChannel channel, long snaplen, long start, long end, int parts) throws IOException {
+        long size = Math.max(start, end);
+        parts = (int) Math.max(1, Math.min(parts, (size - start) / MIN_RANGE_BYTES));
+        long[] boundaries = new long[parts + 1];
+        int n = 0;
+        boundaries[n++] = start;
+        for (int i = 1; i < parts; i++) {
+            long guess = start + (size - start) / parts * i;
+            long boundary = resync(channel, Math.max(guess, boundaries[n - 1] + 1), size, snaplen);
+            if (boundary < size) {
+                boundaries[n++] = boundary;
+            }
+        }
+        boundaries[n++] = size;
+        return Arrays.copyOf(boundaries, n);
+    }
+
+    /**
+     * Find the first plausible record header at or after an offset.
+     *
+     * @param from  first candidate offset.
+     * @param limit end of the scan (exclusive).
+     * @return offset of the header, or {@code limit} if there is none.
+     */
+    public static long resync(FileChannel channel, long from, long limit, long snaplen) throws IOException {
+        long maxLength = snaplen > 0 ? snaplen : MAX_ORIG_LENGTH;
+        long size = channel.size();
+        ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW + PcapRecord.HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer header = ByteBuffer.allocate(PcapRecord.HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        for (long base = from; base < limit; base += SCAN_WINDOW) {
+            window.clear();
+            while (window.hasRemaining() && channel.read(window, base + window.position()) >= 0) {
+                if (base + window.position() >= size) {
+                    break;
+                }
+            }
+            int available = window.position();
+            for (int p = 0; p + PcapRecord.HEADER_LENGTH <= available && p < SCAN_WINDOW && base + p < limit; p++) {
+                long inclLen = window.getInt(p + 8) & 0xffffffffL;
+                if (!plausible(window.getInt(p + 4) & 0xffffffffL, inclLen, window.getInt(p + 12) & 0xffffffffL,
+                        maxLength) || base + p + PcapRecord.HEADER_LENGTH + inclLen > size) {
+                    continue;
+                }
+                if (chainHolds(channel, header, base + p, size, maxLength)) {
+                    return base + p;
+                }
+            }
+        }
+        return limit;
+    }
+
+    private static boolean plausible(long tsUsec, long inclLen, long origLen, long maxLength) {
+        // Empty records are rejected: runs of zeros would read as a chain of them.
+        return tsUsec < 1_000_000L && inclLen > 0 && inclLen <= maxLength && inclLen <= origLen
+                && origLen <= Math.max(maxLength, MAX_ORIG_LENGTH);
+    }
+
+    /**
+     * Check that the headers following a candidate are plausible and in time order, for at least
+     * {@value #CHAIN_LENGTH} headers and past the end of a record of {@code maxLength} bytes at the candidate. Reaching
+     * the end of the file exactly, or cut short by it, also counts as a valid chain.
+     */
+    private static boolean chainHolds(FileChannel channel, ByteBuffer header, long offset, long size, long maxLength)
+            throws IOException {
+        long previousTs = -1;
+        long span = offset + PcapRecord.HEADER_LENGTH + maxLength;
+        for (int i = 0; i <= CHAIN_LENGTH || offset <= span; i++) {
+            if (offset + PcapRecord.HEADER_LENGTH > size) {
+                return i > 0;
+            }
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.read(header, offset + header.position());
+            }
+            long tsSec = header.getInt(0) & 0xffffffffL;
+            long tsUsec = header.getInt(4) & 0xffffffffL;
+            long inclLen = header.getInt(8) & 0xffffffffL;
+            long origLen = header.getInt(12) & 0xffffffffL;
+            if (!plausible(tsUsec, inclLen, origLen, maxLength)) {
+                return false;
+            }
+            long ts = tsSec * 1_000_000L + tsUsec;
+            if (previousTs >= 0 && (ts < previousTs - MAX_BACKWARD_MICROS || ts > previousTs + MAX_FORWARD_MICROS)) {
+                return false;
+            }
+            previousTs = ts;
+            offset += PcapRecord.HEADER_LENGTH + inclLen;
+        }
+        return true;
+    }
+}
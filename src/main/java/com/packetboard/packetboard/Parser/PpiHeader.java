@@ -0,0 +1,167 @@
+package com.packetboard.packetboard.Parser;
+
+/**
+ * PPI header of a record (link-type 192) with the 802.11 radio fields it carries, read in place.
+ * <p>
+ * Only the 802.11-Common field and the 802.11n MAC and MAC+PHY extensions are read; other fields are skipped. The
+ * frame itself follows the header, at {@link #length()}, and is of link-type {@link #dlt()}.
+ */
+public final class PpiHeader {
+    public static final int DLT_ETHERNET = 1;
+    public static final int DLT_IEEE802_11 = 105;
+    public static final int UNKNOWN_MCS = -1;
+    private static final int FIELD_COMMON = 2;
+    private static final int FIELD_MAC_EXT = 3;
+    private static final int FIELD_MAC_PHY_EXT = 4;
+    private static final int FLAG_ALIGNED = 0x01; // Fields are padded to 32 bits
+    private static final int COMMON_FCS_INVALID = 0x0004;
+    private static final int HT_40 = 0x02;
+    private static final int HT_SHORT_GUARD = 0x04;
+    private static final int HT_AGGREGATE = 0x10;
+    private static final int HT_MORE_AGGREGATES = 0x20;
+
+    private int length;
+    private int dlt;
+    private boolean radio; // 802.11-Common field present?
+    private int commonFlags;
+    private int rate; // 500 kbps units, 0 if unknown
+    private int channelFreq; // MHz
+    private int signal; // dBm
+    private int noise; // dBm
+    private boolean ht; // 802.11n extension present?
+    private int htFlags;
+    private long aMpduId;
+    private int mcs = UNKNOWN_MCS;
+    private int streams;
+
+    private PpiHeader() {
+    }
+
+    /**
+     * Read the PPI header of a record.
+     *
+     * @param p record bytes.
+     * @return the header, or null if the record is too short or not PPI version 0.
+     */
+    public static PpiHeader parse(byte[] p) {
+        if (p.length < 8 || p[0] != 0) {
+            return null;
+        }
+        PpiHeader header = new PpiHeader();
+        header.length = u2(p, 2);
+        header.dlt = (int) u4(p, 4);
+        if (header.length < 8 || header.length > p.length) {
+            return null;
+        }
+        boolean aligned = (p[1] & FLAG_ALIGNED) != 0;
+        int offset = 8;
+        while (offset + 4 <= header.length) {
+            int type = u2(p, offset);
+            int size = u2(p, offset + 2);
+            int data = offset + 4;
+            if (data + size > header.length) {
+                break;
+            }
+            switch (type) {
+                case FIELD_COMMON -> header.readCommon(p, data, size);
+                case FIELD_MAC_EXT, FIELD_MAC_PHY_EXT -> header.readHt(p, data, size, type == FIELD_MAC_PHY_EXT);
+            }
+            offset = data + size;
+            if (aligned) {
+                offset = (offset + 3) & ~3;
+            }
+        }
+        return header;
+    }
+
+    private void readCommon(byte[] p, int offset, int size) {
+        if (size < 20) {
+            return;
+        }
+        radio = true;
+        commonFlags = u2(p, offset + 8);
+        rate = u2(p, offset + 10);
+        channelFreq = u2(p, offset + 12);
+        signal = p[offset + 18];
+        noise = p[offset + 19];
+    }
+
+    private void readHt(byte[] p, int offset, int size, boolean phy) {
+        if (size < 12) {
+            return;
+        }
+        ht = true;
+        htFlags = (int) u4(p, offset);
+        aMpduId = u4(p, offset + 4);
+        if (phy) {
+            int index = p[offset + 9] & 0xff;
+            // 255 is "unknown"; MCS 32 and up (unequal modulation) have no entry in the rate table.
+            mcs = index < 32 ? index : UNKNOWN_MCS;
+            streams = p[offset + 10] & 0xff;
+        }
+    }
+
+    private static int u2(byte[] p, int offset) {
+        return (p[offset] & 0xff) | ((p[offset + 1] & 0xff) << 8);
+    }
+
+    private static long u4(byte[] p, int offset) {
+        return u2(p, offset) | ((long) u2(p, offset + 2) << 16);
+    }
+
+    /**
+     * Length of the PPI header, i.e. offset of the frame.
+     */
+    public int length() { return length; }
+
+    /**
+     * Link-type of the frame, e.g. {@link #DLT_IEEE802_11} or {@link #DLT_ETHERNET}.
+     */
+    public int dlt() { return dlt; }
+
+    /**
+     * Did the header carry an 802.11-Common field?
+     */
+    public boolean hasRadio() { return radio; }
+
+    /**
+     * Data rate in 500 kbps units, 0 if unknown.
+     */
+    public int rate() { return rate; }
+    public int channelFreq() { return channelFreq; }
+    public int signal() { return signal; }
+    public int noise() { return noise; }
+
+    /**
+     * Did the radio report a bad FCS?
+     */
+    public boolean isFcsInvalid() { return (commonFlags & COMMON_FCS_INVALID) != 0; }
+
+    /**
+     * Did the header carry an 802.11n MAC or MAC+PHY extension?
+     */
+    public boolean isHt() { return ht; }
+    public boolean isHt40() { return (htFlags & HT_40) != 0; }
+    public boolean isShortGuard() { return (htFlags & HT_SHORT_GUARD) != 0; }
+
+    /**
+     * Is the frame a subframe of an A-MPDU?
+     */
+    public boolean isAggregate() { return (htFlags & HT_AGGREGATE) != 0; }
+
+    /**
+     * Is the frame followed by more subframes of its A-MPDU?
+     */
+    public boolean hasMoreAggregates() { return (htFlags & HT_MORE_AGGREGATES) != 0; }
+    public long aMpduId() { return aMpduId; }
+
+    /**
+     * HT MCS index 0-31, or {@link #UNKNOWN_MCS}.
+     */
+    public int mcs() { return mcs; }
+
+    /**
+     * Spatial streams reported by the MAC+PHY extension, 0 if unknown.
+     */
+    public int streams() { return streams; }
+}
@@ -0,0 +1,465 @@
+package com.packetboard.packetboard.Parser;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Client Initial packets of QUIC v1 (RFC 9001) and v2 (RFC 9369), decrypted to recover the TLS Client Hello carried
+ * in their CRYPTO frames.
+ * <p>
+ * Initial packets are protected with keys derived from the Destination Connection ID the client picked, so they can
+ * be read on path. The keys are derived once per connection ID and cached, with the CRYPTO stream received so far,
+ * so a Client Hello split over several frames or packets is reassembled. The cache holds a fixed number of
+ * connections, least recently used evicted first. A connection ID whose first packet does not decrypt with client
+ * keys (e.g. a server's Initial) is remembered and not tried again. Keys are only derived for datagrams that start
+ * with a v1 or v2 long header, so other UDP traffic costs a few byte compares.
+ */
+public final class QuicInitial {
+    public static final int VERSION_1 = 0x00000001;
+    public static final int VERSION_2 = 0x6b3343cf;
+    public static final int PORT = 443; // Server port of QUIC over HTTP/3
+    public static final int DEFAULT_CONNECTIONS = 4096;
+    private static final int MIN_DATAGRAM = 1200; // Datagrams with a client Initial are padded to this (RFC 9000 14.1)
+    private static final int MAX_CONNECTION_ID = 20;
+    private static final int MAX_HELLO = 1 << 16; // Longest Client Hello reassembled
+    private static final int SAMPLE_LENGTH = 16;
+    private static final int TAG_LENGTH = 16;
+    private static final int FRAME_PADDING = 0x00, FRAME_PING = 0x01, FRAME_ACK = 0x02, FRAME_ACK_ECN = 0x03,
+            FRAME_CRYPTO = 0x06;
+    private static final HexFormat HEX = HexFormat.of();
+    private static final byte[] SALT_V1 = HEX.parseHex("38762cf7f55934b34d179ae6a4c80cadccbb7f0a");
+    private static final byte[] SALT_V2 = HEX.parseHex("0dede3def700a6db819381be6e269dcbf9bd2ed9");
+    private static final ThreadLocal<Ciphers> CIPHERS = ThreadLocal.withInitial(Ciphers::new);
+
+    private final Map<String, Connection> connections; // Destination Connection ID: keys and CRYPTO stream
+    private long packets, failures, hellos;
+
+    /**
+     * Per-thread cipher instances, which are not thread-safe.
+     */
+    private static final class Ciphers {
+        final Mac hmac;
+        final Cipher ecb;
+        final Cipher gcm;
+
+        Ciphers() {
+            try {
+                hmac = Mac.getInstance("HmacSHA256");
+                ecb = Cipher.getInstance("AES/ECB/NoPadding");
+                gcm = Cipher.getInstance("AES/GCM/NoPadding");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("AES-GCM, AES-ECB and HMAC-SHA256 are required", e);
+            }
+        }
+    }
+
+    /**
+     * Client Initial keys of a connection ID, and its CRYPTO stream so far.
+     */
+    private static final class Connection {
+        final int version;
+        final SecretKeySpec key;
+        final byte[] iv;
+        final SecretKeySpec hp;
+        byte[] crypto = new byte[0];
+        final BitSet received = new BitSet();
+        int helloLength = -1; // Known once the handshake header is received
+        long largestPacketNumber = -1; // Of the packets decrypted so far
+        boolean done; // Hello found, or not a client Initial
+
+        Connection(int version, SecretKeySpec key, byte[] iv, SecretKeySpec hp) {
+            this.version = version;
+            this.key = key;
+            this.iv = iv;
+            this.hp = hp;
+        }
+    }
+
+    public QuicInitial() {
+        this(DEFAULT_CONNECTIONS);
+    }
+
+    /**
+     * @param capacity connections cached.
+     */
+    public QuicInitial(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.connections = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Connection> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Look for a Client Hello in a UDP payload.
+     *
+     * @param p      UDP payload.
+     * @param offset start of the payload in {@code p}.
+     * @param length payload length.
+     * @return the hello, if the Initial packets of this datagram complete one; null otherwise.
+     */
+    public TlsClientHello clientHello(byte[] p, int offset, int length) {
+        if (length < MIN_DATAGRAM) {
+            return null;
+        }
+        int end = offset + length;
+        int pos = offset;
+        // A datagram may coalesce several long header packets; the Initial comes first.
+        while (pos + 7 <= end && (p[pos] & 0xc0) == 0xc0) {
+            int version = u4(p, pos + 1);
+            if (version != VERSION_1 && version != VERSION_2) {
+                return null;
+            }
+            int type = (p[pos] >> 4) & 0x03;
+            boolean initial = type == (version == VERSION_1 ? 0 : 1);
+            int i = pos + 5;
+            int dcidLength = p[i++] & 0xff;
+            int dcid = i;
+            i += dcidLength;
+            if (dcidLength > MAX_CONNECTION_ID || i >= end) {
+                return null;
+            }
+            i += 1 + (p[i] & 0xff); // Source Connection ID
+            if (initial) {
+                long tokenLength = varint(p, i, end);
+                i += varintLength(p[i]);
+                if (tokenLength < 0 || tokenLength > end - i) {
+                    return null;
+                }
+                i += (int) tokenLength;
+            }
+            long packetLength = varint(p, i, end);
+            if (packetLength < 0) {
+                return null;
+            }
+            i += varintLength(p[i]);
+            if (packetLength > end - i) {
+                return null;
+            }
+            int packetEnd = i + (int) packetLength;
+            if (initial) {
+                TlsClientHello hello = decrypt(p, pos, dcid, dcidLength, version, i, packetEnd);
+                if (hello != null) {
+                    return hello;
+                }
+            }
+            pos = packetEnd;
+        }
+        return null;
+    }
+
+    /**
+     * Decrypt an Initial packet and add its CRYPTO frames to the stream of its connection.
+     *
+     * @param start    start of the packet.
+     * @param pnOffset start of the protected packet number.
+     * @param end      end of the packet.
+     */
+    private TlsClientHello decrypt(byte[] p, int start, int dcid, int dcidLength, int version, int pnOffset, int end) {
+        if (pnOffset + 4 + SAMPLE_LENGTH > end) {
+            return null;
+        }
+        Connection connection = connection(p, dcid, dcidLength, version);
+        long largest;
+        synchronized (connection) {
+            if (connection.done) {
+                return null;
+            }
+            largest = connection.largestPacketNumber;
+        }
+        Ciphers ciphers = CIPHERS.get();
+        byte[] plain;
+        long packetNumber;
+        try {
+            // Remove header protection: the mask is AES-ECB of a sample of the ciphertext.
+            ciphers.ecb.init(Cipher.ENCRYPT_MODE, connection.hp);
+            byte[] mask = ciphers.ecb.doFinal(p, pnOffset + 4, SAMPLE_LENGTH);
+            int firstByte = (p[start] ^ (mask[0] & 0x0f)) & 0xff;
+            int pnLength = (firstByte & 0x03) + 1;
+            byte[] header = Arrays.copyOfRange(p, start, pnOffset + pnLength);
+            header[0] = (byte) firstByte;
+            long truncated = 0;
+            for (int k = 0; k < pnLength; k++) {
+                header[pnOffset - start + k] ^= mask[1 + k];
+                truncated = (truncated << 8) | (header[pnOffset - start + k] & 0xff);
+            }
+            packetNumber = decodePacketNumber(largest, truncated, pnLength * 8);
+            if (end - pnOffset - pnLength < TAG_LENGTH) {
+                return null;
+            }
+            byte[] nonce = connection.iv.clone();
+            for (int k = 0; k < 8; k++) {
+                nonce[nonce.length - 1 - k] ^= (byte) (packetNumber >>> (8 * k));
+            }
+            ciphers.gcm.init(Cipher.DECRYPT_MODE, connection.key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            ciphers.gcm.updateAAD(header);
+            plain = ciphers.gcm.doFinal(p, pnOffset + pnLength, end - pnOffset - pnLength);
+        } catch (AEADBadTagException e) {
+            // Not protected with client keys for this connection ID, e.g. sent by the server.
+            synchronized (this) {
+                failures++;
+            }
+            synchronized (connection) {
+                // Only give up on connections with nothing received yet, so a stray packet cannot lose a hello.
+                if (connection.received.isEmpty()) {
+                    connection.done = true;
+                }
+            }
+            return null;
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+        synchronized (this) {
+            packets++;
+        }
+        synchronized (connection) {
+            connection.largestPacketNumber = Math.max(connection.largestPacketNumber, packetNumber);
+        }
+        return readFrames(connection, plain);
+    }
+
+    /**
+     * Full packet number from its truncated encoding, the closest to the next expected one (RFC 9000 A.3).
+     *
+     * @param largest   largest packet number received so far, -1 if none.
+     * @param truncated packet number as sent.
+     * @param bits      length of the truncated packet number, in bits.
+     */
+    static long decodePacketNumber(long largest, long truncated, int bits) {
+        long expected = largest + 1;
+        long window = 1L << bits;
+        long halfWindow = window / 2;
+        long candidate = (expected & ~(window - 1)) | truncated;
+        if (candidate <= expected - halfWindow && candidate < (1L << 62) - window) {
+            return candidate + window;
+        }
+        if (candidate > expected + halfWindow && candidate >= window) {
+            return candidate - window;
+        }
+        return candidate;
+    }
+
+    /**
+     * Add the CRYPTO frames of a decrypted payload to the stream of its connection.
+     *
+     * @return the Client Hello, if the stream now holds all of it.
+     */
+    private TlsClientHello readFrames(Connection connection, byte[] plain) {
+        int i = 0;
+        while (i < plain.length) {
+            int type = plain[i] & 0xff;
+            if (type == FRAME_PADDING || type == FRAME_PING) {
+                i++;
+            } else if (type == FRAME_ACK || type == FRAME_ACK_ECN) {
+                i++;
+                // Largest acknowledged, delay, range count, first range, then gap and length per range.
+                int fields = 4;
+                for (int f = 0; f < fields; f++) {
+                    long value = varint(plain, i, plain.length);
+                    if (value < 0) {
+                        return null;
+                    }
+                    if (f == 2) {
+                        fields += (int) Math.min(value * 2, plain.length);
+                    }
+                    i += varintLength(plain[i]);
+                }
+                if (type == FRAME_ACK_ECN) {
+                    for (int f = 0; f < 3; f++) {
+                        if (varint(plain, i, plain.length) < 0) {
+                            return null;
+                        }
+                        i += varintLength(plain[i]);
+                    }
+                }
+            } else if (type == FRAME_CRYPTO) {
+                i++;
+                long offset = varint(plain, i, plain.length);
+                if (offset < 0) {
+                    return null;
+                }
+                i += varintLength(plain[i]);
+                long length = varint(plain, i, plain.length);
+                if (length < 0) {
+                    return null;
+                }
+                i += varintLength(plain[i]);
+                if (length > plain.length - i) {
+                    return null;
+                }
+                TlsClientHello hello = addCrypto(connection, offset, plain, i, (int) length);
+                if (hello != null) {
+                    return hello;
+                }
+                i += (int) length;
+            } else {
+                // Other frames are not allowed in client Initials before the hello is sent.
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private TlsClientHello addCrypto(Connection connection, long offset, byte[] data, int from, int length) {
+        byte[] message;
+        int helloLength;
+        synchronized (connection) {
+            if (connection.done || offset + length > MAX_HELLO) {
+                return null;
+            }
+            int to = (int) offset + length;
+            if (to > connection.crypto.length) {
+                connection.crypto = Arrays.copyOf(connection.crypto, Math.min(MAX_HELLO,
+                        Math.max(to, connection.crypto.length * 2)));
+            }
+            System.arraycopy(data, from, connection.crypto, (int) offset, length);
+            connection.received.set((int) offset, to);
+            if (connection.helloLength < 0 && connection.received.nextClearBit(0) >= 4) {
+                byte[] c = connection.crypto;
+                connection.helloLength = 4 + (((c[1] & 0xff) << 16) | ((c[2] & 0xff) << 8) | (c[3] & 0xff));
+                if (c[0] != TlsRecordSniffer.HANDSHAKE_CLIENT_HELLO || connection.helloLength > MAX_HELLO) {
+                    connection.done = true;
+                    connection.crypto = null;
+                    return null;
+                }
+            }
+            if (connection.helloLength < 0 || connection.received.nextClearBit(0) < connection.helloLength) {
+                return null;
+            }
+            message = connection.crypto;
+            helloLength = connection.helloLength;
+            connection.done = true;
+            connection.crypto = null;
+        }
+        TlsClientHello hello = TlsRecordSniffer.parseClientHelloMessage(message, 0, helloLength);
+        if (hello != null) {
+            synchronized (this) {
+                hellos++;
+            }
+        }
+        return hello;
+    }
+
+    /**
+     * Cached keys of a connection ID, derived on first use.
+     */
+    private Connection connection(byte[] p, int dcid, int dcidLength, int version) {
+        String id = new String(p, dcid, dcidLength, StandardCharsets.ISO_8859_1);
+        synchronized (this) {
+            Connection connection = connections.get(id);
+            if (connection != null && connection.version == version) {
+                return connection;
+            }
+        }
+        Connection derived = derive(Arrays.copyOfRange(p, dcid, dcid + dcidLength), version);
+        synchronized (this) {
+            Connection connection = connections.get(id);
+            if (connection != null && connection.version == version) {
+                return connection;
+            }
+            connections.put(id, derived);
+            return derived;
+        }
+    }
+
+    /**
+     * Client Initial keys of a connection ID (RFC 9001 5.2, RFC 9369 3.3).
+     */
+    private static Connection derive(byte[] dcid, int version) {
+        Mac hmac = CIPHERS.get().hmac;
+        boolean v2 = version == VERSION_2;
+        byte[] initialSecret = hmac(hmac, v2 ? SALT_V2 : SALT_V1, dcid);
+        byte[] clientSecret = expandLabel(hmac, initialSecret, "client in", 32);
+        byte[] key = expandLabel(hmac, clientSecret, v2 ? "quicv2 key" : "quic key", 16);
+        byte[] iv = expandLabel(hmac, clientSecret, v2 ? "quicv2 iv" : "quic iv", 12);
+        byte[] hp = expandLabel(hmac, clientSecret, v2 ? "quicv2 hp" : "quic hp", 16);
+        return new Connection(version, new SecretKeySpec(key, "AES"), iv, new SecretKeySpec(hp, "AES"));
+    }
+
+    /**
+     * HKDF-Expand-Label of TLS 1.3 (RFC 8446 7.1) with an empty context, for outputs of at most one hash.
+     */
+    private static byte[] expandLabel(Mac hmac, byte[] secret, String label, int length) {
+        byte[] fullLabel = ("tls13 " + label).getBytes(StandardCharsets.US_ASCII);
+        byte[] info = new byte[2 + 1 + fullLabel.length + 1 + 1];
+        info[0] = (byte) (length >>> 8);
+        info[1] = (byte) length;
+        info[2] = (byte) fullLabel.length;
+        System.arraycopy(fullLabel, 0, info, 3, fullLabel.length);
+        info[info.length - 2] = 0; // context length
+        info[info.length - 1] = 1; // HKDF-Expand block counter
+        return Arrays.copyOf(hmac(hmac, secret, info), length);
+    }
+
+    private static byte[] hmac(Mac hmac, byte[] key, byte[] data) {
+        try {
+            hmac.init(new SecretKeySpec(key, "HmacSHA256"));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        return hmac.doFinal(data);
+    }
+
+    /**
+     * Variable-length integer (RFC 9000 16).
+     *
+     * @return the value, or -1 if it runs past {@code end}.
+     */
+    private static long varint(byte[] p, int i, int end) {
+        if (i >= end) {
+            return -1;
+        }
+        int length = varintLength(p[i]);
+        if (i + length > end) {
+            return -1;
+        }
+        long value = p[i] & 0x3f;
+        for (int k = 1; k < length; k++) {
+            value = (value << 8) | (p[i + k] & 0xff);
+        }
+        return value;
+    }
+
+    private static int varintLength(byte first) {
+        return 1 << ((first & 0xff) >>> 6);
+    }
+
+    private static int u4(byte[] p, int i) {
+        return ((p[i] & 0xff) << 24) | ((p[i + 1] & 0xff) << 16) | ((p[i + 2] & 0xff) << 8) | (p[i + 3] & 0xff);
+    }
+
+    /**
+     * Initial packets decrypted.
+     */
+    public synchronized long getPackets() {
+        return packets;
+    }
+
+    /**
+     * Initial packets that did not decrypt with client keys.
+     */
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Client Hellos recovered.
+     */
+    public synchronized long getHellos() {
+        return hellos;
+    }
+}
@@ -0,0 +1,192 @@
+package com.packetboard.packetboard.Parser;
+
+import io.kaitai.struct.ByteBufferKaitaiStream;
+import io.kaitai.struct.KaitaiStream;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cheap in-place check for a TLS Client Hello at the start of a TCP payload, or of the CRYPTO stream of QUIC.
+ * <p>
+ * The record header, handshake header and the length fields of the hello body are validated directly on the
+ * segment buffer. Only when they describe a complete Client Hello is a {@link TlsClientHello} built, on a view of
+ * the same buffer rather than a copy.
+ */
+public final class TlsRecordSniffer {
+    public static final int CONTENT_TYPE_HANDSHAKE = 22;
+    public static final int HANDSHAKE_CLIENT_HELLO = 1;
+    public static final int RECORD_HEADER_LENGTH = 5; // 1 byte for type, 2 bytes for version, 2 bytes for length
+    public static final int HANDSHAKE_HEADER_LENGTH = 4; // 1 byte for handshake type, 3 bytes for length
+    private static final int MAX_RECORD_LENGTH = (1 << 14) + 2048; // RFC 8446 5.2 upper bound
+    private static final int MIN_HELLO_LENGTH = 2 + 32 + 1 + 2 + 1; // version, random, sid len, ciphers len, comp len
+
+    private TlsRecordSniffer() {
+    }
+
+    /**
+     * Validate the record and handshake headers of a Client Hello.
+     *
+     * @param buf    segment payload.
+     * @param offset start of the TLS record in {@code buf}.
+     * @param length bytes available from {@code offset}.
+     * @return length of the Client Hello body starting at {@code offset + 9}, or -1 if this is not a complete,
+     * well-formed Client Hello.
+     */
+    public static int clientHelloLength(byte[] buf, int offset, int length) {
+        if (length < RECORD_HEADER_LENGTH + HANDSHAKE_HEADER_LENGTH + MIN_HELLO_LENGTH) {
+            return -1;
+        }
+        if (buf[offset] != CONTENT_TYPE_HANDSHAKE) {
+            return -1;
+        }
+        // Record version: SSL 3.0 (3.0) up to TLS 1.3's legacy value (3.4).
+        if (buf[offset + 1] != 3 || (buf[offset + 2] & 0xff) > 4) {
+            return -1;
+        }
+        int recordLength = u2(buf, offset + 3);
+        if (recordLength < HANDSHAKE_HEADER_LENGTH + MIN_HELLO_LENGTH || recordLength > MAX_RECORD_LENGTH) {
+            return -1;
+        }
+        int hs = offset + RECORD_HEADER_LENGTH;
+        if (buf[hs] != HANDSHAKE_CLIENT_HELLO) {
+            return -1;
+        }
+        int helloLength = ((buf[hs + 1] & 0xff) << 16) | u2(buf, hs + 2);
+        if (helloLength < MIN_HELLO_LENGTH || helloLength > recordLength - HANDSHAKE_HEADER_LENGTH) {
+            return -1;
+        }
+        // The whole hello must be in this segment; hellos split over several segments are not reassembled.
+        if (helloLength > length - RECORD_HEADER_LENGTH - HANDSHAKE_HEADER_LENGTH) {
+            return -1;
+        }
+        int body = hs + HANDSHAKE_HEADER_LENGTH;
+        if (!bodyIsConsistent(buf, body, body + helloLength)) {
+            return -1;
+        }
+        return helloLength;
+    }
+
+    /**
+     * Walk the variable length fields of a Client Hello body and check that they add up.
+     */
+    static boolean bodyIsConsistent(byte[] buf, int pos, int end) {
+        if (buf[pos] != 3) {
+            return false; // client version major
+        }
+        pos += 2 + 32; // version, random
+        pos += 1 + (buf[pos] & 0xff); // session id
+        if (pos + 2 > end) {
+            return false;
+        }
+        int ciphersLength = u2(buf, pos);
+        if ((ciphersLength & 1) != 0) {
+            return false;
+        }
+        pos += 2 + ciphersLength;
+        if (pos + 1 > end) {
+            return false;
+        }
+        pos += 1 + (buf[pos] & 0xff); // compression methods
+        if (pos == end) {
+            return true; // no extensions
+        }
+        if (pos + 2 > end) {
+            return false;
+        }
+        int extensionsEnd = pos + 2 + u2(buf, pos);
+        if (extensionsEnd != end) {
+            return false;
+        }
+        pos += 2;
+        while (pos < end) {
+            if (pos + 4 > end) {
+                return false;
+            }
+            pos += 4 + u2(buf, pos + 2);
+        }
+        return pos == end;
+    }
+
+    /**
+     * Parse a Client Hello if the payload holds one.
+     *
+     * @param buf    segment payload.
+     * @param offset start of the TLS record in {@code buf}.
+     * @param length bytes available from {@code offset}.
+     * @return parsed hello, or null if this is not a complete, well-formed Client Hello.
+     */
+    public static TlsClientHello parseClientHello(byte[] buf, int offset, int length) {
+        int helloLength = clientHelloLength(buf, offset, length);
+        if (helloLength < 0) {
+            return null;
+        }
+        return build(buf, offset + RECORD_HEADER_LENGTH + HANDSHAKE_HEADER_LENGTH, helloLength);
+    }
+
+    /**
+     * Parse a Client Hello handshake message with no record header, as carried by the CRYPTO frames of QUIC.
+     *
+     * @param buf    handshake messages.
+     * @param offset start of the handshake header in {@code buf}.
+     * @param length bytes available from {@code offset}.
+     * @return parsed hello, or null if this is not a complete, well-formed Client Hello.
+     */
+    public static TlsClientHello parseClientHelloMessage(byte[] buf, int offset, int length) {
+        if (length < HANDSHAKE_HEADER_LENGTH + MIN_HELLO_LENGTH || buf[offset] != HANDSHAKE_CLIENT_HELLO) {
+            return null;
+        }
+        int helloLength = ((buf[offset + 1] & 0xff) << 16) | u2(buf, offset + 2);
+        if (helloLength < MIN_HELLO_LENGTH || helloLength > length - HANDSHAKE_HEADER_LENGTH) {
+            return null;
+        }
+        int body = offset + HANDSHAKE_HEADER_LENGTH;
+        if (!bodyIsConsistent(buf, body, body + helloLength)) {
+            return null;
+        }
+        return build(buf, body, helloLength);
+    }
+
+    /**
+     * Build a hello on a view of the body, checked by {@link #bodyIsConsistent}.
+     */
+    private static TlsClientHello build(byte[] buf, int body, int helloLength) {
+        ByteBuffer view = ByteBuffer.wrap(buf, body, helloLength).slice();
+        try {
+            return new TlsClientHello(new ByteBufferKaitaiStream(view));
+        } catch (BufferUnderflowException | KaitaiStream.KaitaiStructError e) {
+            // Malformed extension contents (e.g. SNI or ALPN lists).
+            return null;
+        }
+    }
+
+    private static int u2(byte[] b, int i) {
+        return ((b[i] & 0xff) << 8) | (b[i + 1] & 0xff);
+    }
+
+    /**
+     * First host name of the server_name extension of a parsed Client Hello.
+     *
+     * @return the name, or null if the hello carries none.
+     */
+    public static String serverName(TlsClientHello hello) {
+        byte[] name = serverNameBytes(hello);
+        return name == null ? null : new String(name, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Raw bytes of {@link #serverName}, without decoding them.
+     */
+    public static byte[] serverNameBytes(TlsClientHello hello) {
+        if (hello.extensions() == null) {
+            return null;
+        }
+        for (TlsClientHello.Extension ext : hello.extensions().extensions()) {
+            if (ext.type() == 0 && ext.body() instanceof TlsClientHello.Sni sni && !sni.serverNames().isEmpty()) {
+                return sni.serverNames().get(0).hostName();
+            }
+        }
+        return null;
+    }
+}
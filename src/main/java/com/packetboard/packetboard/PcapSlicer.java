@@ -0,0 +1,217 @@
+package com.packetboard.packetboard;
+
+import com.packetboard.packetboard.Parser.LinkLayer;
+import com.packetboard.packetboard.Parser.PacketFilter;
+import com.packetboard.packetboard.Parser.Pcap;
+import com.packetboard.packetboard.Parser.PcapRecord;
+import com.packetboard.packetboard.Parser.PcapRecordReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the packets of a capture matching a filter, a time range or a flow to a new pcap file.
+ * <p>
+ * Records are never decoded or rebuilt: runs of consecutive matching records are copied from the source with
+ * {@link FileChannel#transferTo}, which the OS can do without passing the bytes through the JVM. The global header
+ * is copied as is, so the output keeps the link type, snapshot length and timestamp format of the source. Time
+ * range and flow slices use the {@link PacketIndex} of the capture when there is one, and only touch the records
+ * they copy.
+ */
+public final class PcapSlicer {
+    private final Path source;
+    private final Path target;
+    private FileChannel in;
+    private FileChannel out;
+    private long snaplen;
+    private long runStart = -1; // Offset of the first record of the run not copied yet, -1 for none
+    private long runEnd; // End of that run
+    private long packets;
+
+    private PcapSlicer(Path source, Path target) {
+        this.source = source;
+        this.target = target;
+    }
+
+    /**
+     * Write the packets matching a filter expression, in file order.
+     *
+     * @return number of packets written.
+     * @throws IllegalArgumentException if the expression is not valid.
+     */
+    public static long byFilter(Path source, Path target, String expression) throws IOException {
+        return byFilter(source, target, PacketFilter.compile(expression));
+    }
+
+    /**
+     * Write the packets matching a filter, in file order. Ethernet captures and those of a {@link LinkLayer} can be
+     * filtered.
+     *
+     * @return number of packets written.
+     */
+    public static long byFilter(Path source, Path target, PacketFilter filter) throws IOException {
+        PcapSlicer slicer = new PcapSlicer(source, target);
+        return slicer.write(header -> {
+            if (header.network() == Pcap.Linktype.ETHERNET) {
+                slicer.scan(record -> filter.matches(record.body(), PacketFilter.wireLength(record)));
+                return;
+            }
+            LinkLayer layer = LinkLayer.of(header.network());
+            if (layer == null) {
+                throw new IOException("Cannot filter " + source + ": link type " + header.network() + " is not supported");
+            }
+            slicer.scan(record -> {
+                long location = layer.locate(record.body());
+                return location >= 0
+                        && filter.matches(record.body(), LinkLayer.offset(location), LinkLayer.etherType(location),
+                        PacketFilter.wireLength(record));
+            });
+        });
+    }
+
+    /**
+     * Write the packets of a time range, in time order if the capture is indexed, else in file order.
+     *
+     * @param fromMicros start (inclusive).
+     * @param toMicros   end (exclusive).
+     * @return number of packets written.
+     */
+    public static long byTimeRange(Path source, Path target, long fromMicros, long toMicros) throws IOException {
+        if (fromMicros > toMicros) {
+            throw new IllegalArgumentException("Time range ends before it starts");
+        }
+        PcapSlicer slicer = new PcapSlicer(source, target);
+        return slicer.write(header -> {
+            try (PacketIndex index = PacketIndex.open(source)) {
+                if (index != null) {
+                    slicer.copyAll(index.offsetsBetween(fromMicros, toMicros));
+                } else {
+                    slicer.scan(record -> record.tsMicros() >= fromMicros && record.tsMicros() < toMicros);
+                }
+            }
+        });
+    }
+
+    /**
+     * Write the packets of a flow, in time order. The capture must have been indexed by a load.
+     *
+     * @param flowKey flow key, see {@link com.packetboard.packetboard.Stats.FlowTable#key}.
+     * @return number of packets written, 0 if the capture has no such flow.
+     */
+    public static long byFlow(Path source, Path target, String flowKey) throws IOException {
+        PcapSlicer slicer = new PcapSlicer(source, target);
+        return slicer.write(header -> {
+            try (PacketIndex index = PacketIndex.open(source)) {
+                if (index == null) {
+                    throw new IOException("No current packet index for " + source + ", load the capture first");
+                }
+                slicer.copyAll(index.offsetsOfFlow(index.flowId(flowKey)));
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface Body {
+        void run(Pcap.Header header) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface RecordTest {
+        boolean test(PcapRecord record);
+    }
+
+    /**
+     * Copy the global header, run the body, then move the finished output into place.
+     */
+    private long write(Body body) throws IOException {
+        if (Files.exists(target) && Files.isSameFile(source, target)) {
+            throw new IllegalArgumentException("Cannot write a slice of " + source + " over itself");
+        }
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            this.in = in;
+            this.out = out;
+            Pcap.Header header = PcapRecord.readHeader(in);
+            snaplen = header.snaplen();
+            transfer(0, PcapRecord.GLOBAL_HEADER_LENGTH);
+            body.run(header);
+            flush();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return packets;
+    }
+
+    /**
+     * Read the capture sequentially and copy the records passing a test.
+     */
+    private void scan(RecordTest test) throws IOException {
+        in.position(PcapRecord.GLOBAL_HEADER_LENGTH);
+        PcapRecordReader reader = new PcapRecordReader(in, PcapRecord.GLOBAL_HEADER_LENGTH, Long.MAX_VALUE, snaplen);
+        PcapRecord record;
+        while ((record = reader.next()) != null) {
+            if (test.test(record)) {
+                add(record.offset(), record.nextOffset());
+            }
+        }
+    }
+
+    /**
+     * Copy the records at the given offsets, reading only their headers.
+     */
+    private void copyAll(long[] offsets) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(PcapRecord.HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        for (long offset : offsets) {
+            header.clear();
+            while (header.hasRemaining()) {
+                if (in.read(header, offset + header.position()) < 0) {
+                    throw new IOException("Truncated pcap record at " + offset + " in " + source);
+                }
+            }
+            long inclLen = header.getInt(8) & 0xffffffffL;
+            add(offset, offset + PcapRecord.HEADER_LENGTH + Math.min(inclLen, snaplen));
+        }
+    }
+
+    /**
+     * Queue a record for copying, extending the current run if it directly follows it.
+     */
+    private void add(long start, long end) throws IOException {
+        packets++;
+        if (runStart >= 0 && start == runEnd) {
+            runEnd = end;
+            return;
+        }
+        flush();
+        runStart = start;
+        runEnd = end;
+    }
+
+    private void flush() throws IOException {
+        if (runStart >= 0) {
+            transfer(runStart, runEnd - runStart);
+            runStart = -1;
+        }
+    }
+
+    private void transfer(long position, long count) throws IOException {
+        while (count > 0) {
+            long sent = in.transferTo(position, count, out);
+            if (sent <= 0) {
+                throw new IOException("Could not copy " + count + " bytes at " + position + " of " + source);
+            }
+            position += sent;
+            count -= sent;
+        }
+    }
+}
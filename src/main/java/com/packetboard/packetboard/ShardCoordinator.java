@@ -0,0 +1,321 @@
+package com.packetboard.packetboard;
+
+import com.packetboard.packetboard.Parser.Pcap;
+import com.packetboard.packetboard.Parser.PcapRecord;
+import com.packetboard.packetboard.Parser.PcapSplitter;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits captures into shards and has them parsed by {@link ShardWorker} processes, then merges the results.
+ * <p>
+ * Workers pull shards one at a time over a socket, so faster workers take more shards. A shard whose worker
+ * disconnects is handed to another worker. Workers can be started by the coordinator on this host, or on other
+ * hosts with {@code ShardWorker <coordinator host> <port>} as long as they see the captures at the same paths.
+ */
+public final class ShardCoordinator {
+    public static final long MIN_SHARD_BYTES = 64L << 20; // Smallest shard size chosen by run().
+    static final String HEAVY_HITTER_OPTION = "--heavy-hitter-memory="; // Command line option, in MiB
+    private static final Logger logger = LogManager.getLogger(ShardCoordinator.class);
+
+    private ShardCoordinator() {
+    }
+
+    /**
+     * Part of a capture: the records whose header starts in [from, to), or the whole file.
+     */
+    public static final class Shard {
+        private final Path file;
+        private final long from;
+        private final long to;
+
+        /**
+         * @param from offset of a record header.
+         * @param to   end of the shard, or -1 for the whole file from the start.
+         */
+        public Shard(Path file, long from, long to) {
+            this.file = file;
+            this.from = from;
+            this.to = to;
+        }
+
+        public Path file() { return file; }
+        public long from() { return from; }
+
+        /**
+         * End of the shard (exclusive), -1 if the shard is the whole file.
+         */
+        public long to() { return to; }
+
+        @Override
+        public String toString() {
+            return to < 0 ? file.toString() : file + " [" + from + ", " + to + ")";
+        }
+    }
+
+    /**
+     * Split captures into shards of about the given size. Smaller files are one shard each; larger ones are cut at
+     * record boundaries.
+     */
+    public static List<Shard> split(List<Path> captures, long shardBytes) throws IOException {
+        ArrayList<Shard> shards = new ArrayList<>();
+        for (Path capture : captures) {
+            long size = Files.size(capture);
+            if (size <= shardBytes) {
+                shards.add(new Shard(capture, 0, -1));
+                continue;
+            }
+            long[] cuts = recordBoundaries(capture, shardBytes);
+            for (int i = 0; i + 1 < cuts.length; i++) {
+                shards.add(new Shard(capture, cuts[i], cuts[i + 1]));
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * Record boundaries about one shard size apart, found by {@link PcapSplitter}, plus the start and end of the
+     * records.
+     */
+    private static long[] recordBoundaries(Path capture, long shardBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(capture, StandardOpenOption.READ)) {
+            Pcap.Header header = PcapRecord.readHeader(channel);
+            int parts = (int) Math.min(Integer.MAX_VALUE, (channel.size() + shardBytes - 1) / shardBytes);
+            return PcapSplitter.split(channel, header.snaplen(), parts);
+        }
+    }
+
+    /**
+     * Parse captures with worker processes started on this host.
+     *
+     * @param captures pcap files.
+     * @param workers  number of worker JVMs.
+     * @param heavyHitterMemory heap for bounded talker and destination counts in each worker and in the results, 0
+     *                          for exact counts. See {@link PacketParser#setHeavyHitterMemory}.
+     * @return merged results.
+     */
+    public static PacketParser run(List<Path> captures, int workers, Boolean doSNI, Boolean dorDNS,
+                                   long heavyHitterMemory) throws IOException {
+        long total = 0;
+        for (Path capture : captures) {
+            total += Files.size(capture);
+        }
+        // A few shards per worker, so a slow shard does not hold up the end of the run.
+        long shardBytes = Math.max(MIN_SHARD_BYTES, total / (workers * 4L) + 1);
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            return run(split(captures, shardBytes), server, workers, doSNI, dorDNS, heavyHitterMemory);
+        }
+    }
+
+    /**
+     * Hand shards to the workers connecting to a server socket and merge their results in shard order.
+     *
+     * @param server       socket the workers connect to.
+     * @param localWorkers worker JVMs to start on this host. With none, waits for workers started elsewhere.
+     * @param heavyHitterMemory heap for bounded talker and destination counts, 0 for exact counts.
+     * @return merged results.
+     * @throws IOException if every local worker exited before all shards were parsed.
+     */
+    public static PacketParser run(List<Shard> shards, ServerSocket server, int localWorkers, Boolean doSNI,
+                                   Boolean dorDNS, long heavyHitterMemory) throws IOException {
+        ConcurrentLinkedQueue<Integer> pending = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < shards.size(); i++) {
+            pending.add(i);
+        }
+        PacketParser[] results = new PacketParser[shards.size()];
+        CountDownLatch finished = new CountDownLatch(shards.size());
+        AtomicInteger connected = new AtomicInteger(0);
+
+        ArrayList<Process> processes = new ArrayList<>();
+        for (int i = 0; i < localWorkers; i++) {
+            processes.add(new ProcessBuilder(workerCommand(server.getInetAddress().getHostAddress(), server.getLocalPort()))
+                    .inheritIO().start());
+        }
+
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.setSoTimeout(1000);
+                while (finished.getCount() > 0) {
+                    try {
+                        Socket socket = server.accept();
+                        connected.incrementAndGet();
+                        Thread serve = new Thread(() -> serve(socket, shards, pending, results, finished, connected,
+                                doSNI, dorDNS, heavyHitterMemory));
+                        serve.setDaemon(true);
+                        serve.start();
+                    } catch (SocketTimeoutException e) {
+                        // Check whether all shards are done.
+                    }
+                }
+            } catch (IOException e) {
+                if (finished.getCount() > 0) {
+                    logger.error("Shard coordinator stopped accepting workers");
+                    logger.debug(e);
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        try {
+            while (!finished.await(1, TimeUnit.SECONDS)) {
+                if (localWorkers > 0 && connected.get() == 0 && processes.stream().noneMatch(Process::isAlive)) {
+                    throw new IOException("All shard workers exited, " + finished.getCount() + " shards not parsed");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for shard workers", e);
+        } finally {
+            for (Process process : processes) {
+                try {
+                    if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                        process.destroy();
+                    }
+                } catch (InterruptedException e) {
+                    process.destroy();
+                }
+            }
+        }
+
+        PacketParser merged = new PacketParser();
+        merged.setDoSNI(doSNI);
+        merged.setDorDNS(dorDNS);
+        merged.setHeavyHitterMemory(heavyHitterMemory);
+        for (PacketParser result : results) {
+            if (result != null) {
+                merged.merge(result);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Feed shards to one worker until none are left.
+     */
+    private static void serve(Socket socket, List<Shard> shards, ConcurrentLinkedQueue<Integer> pending,
+                              PacketParser[] results, CountDownLatch finished, AtomicInteger connected,
+                              Boolean doSNI, Boolean dorDNS, long heavyHitterMemory) {
+        Integer current = null;
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            while (finished.getCount() > 0) {
+                current = pending.poll();
+                if (current == null) {
+                    // Other workers hold the remaining shards; wait in case one of them disconnects.
+                    Thread.sleep(100);
+                    continue;
+                }
+                Shard shard = shards.get(current);
+                out.writeByte(ShardWorker.TASK);
+                out.writeUTF(shard.file().toAbsolutePath().toString());
+                out.writeLong(shard.from());
+                out.writeLong(shard.to());
+                out.writeBoolean(doSNI);
+                out.writeBoolean(dorDNS);
+                out.writeLong(heavyHitterMemory);
+                out.flush();
+
+                if (in.readByte() == ShardWorker.RESULT) {
+                    byte[] snapshot = new byte[in.readInt()];
+                    in.readFully(snapshot);
+                    results[current] = AnalysisSnapshot.read(new ByteArrayInputStream(snapshot));
+                } else {
+                    logger.error("Worker could not parse {}: {}", shard, in.readUTF());
+                }
+                current = null;
+                finished.countDown();
+            }
+            out.writeByte(ShardWorker.DONE);
+            out.flush();
+        } catch (IOException e) {
+            logger.error("Lost shard worker {}", socket.getRemoteSocketAddress());
+            logger.debug(e);
+            if (current != null) {
+                pending.add(current);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            connected.decrementAndGet();
+        }
+    }
+
+    /**
+     * Command starting a worker JVM with the same Java runtime and class or module path as this one.
+     */
+    private static List<String> workerCommand(String host, int port) {
+        ArrayList<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command()
+                .orElse(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java"));
+        String modulePath = System.getProperty("jdk.module.path");
+        if (modulePath != null && !modulePath.isEmpty()) {
+            command.add("--module-path");
+            command.add(modulePath);
+            command.add("--module");
+            command.add(ShardWorker.class.getModule().getName() + "/" + ShardWorker.class.getName());
+        } else {
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(ShardWorker.class.getName());
+        }
+        command.add(host);
+        command.add(String.valueOf(port));
+        return command;
+    }
+
+    /**
+     * Usage: {@code ShardCoordinator [--heavy-hitter-memory=<MiB>] <workers> <snapshot> <capture or directory>...}.
+     * Writes the merged results as an {@link AnalysisSnapshot}, to be opened in the dashboard. With
+     * {@code --heavy-hitter-memory}, talker and destination counts are bounded to that much heap.
+     */
+    public static void main(String[] args) throws IOException {
+        long heavyHitterMemory = 0;
+        int first = 0;
+        if (args.length > 0 && args[0].startsWith(HEAVY_HITTER_OPTION)) {
+            heavyHitterMemory = Long.parseLong(args[0].substring(HEAVY_HITTER_OPTION.length())) << 20;
+            first = 1;
+        }
+        if (args.length - first < 3) {
+            System.err.println("Usage: ShardCoordinator [--heavy-hitter-memory=<MiB>] <workers> <snapshot>"
+                    + " <capture or directory>...");
+            System.exit(2);
+        }
+        ArrayList<Path> captures = new ArrayList<>();
+        for (int i = first + 2; i < args.length; i++) {
+            Path path = Path.of(args[i]);
+            if (Files.isDirectory(path)) {
+                captures.addAll(MultiFileAnalysis.capturesIn(path));
+            } else {
+                captures.add(path);
+            }
+        }
+        PacketParser merged = run(captures, Integer.parseInt(args[first]), false, false, heavyHitterMemory);
+        AnalysisSnapshot.write(merged, Path.of(args[first + 1]), null);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,95 @@
+package com.packetboard.packetboard;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Path;
+
+/**
+ * Worker process of a sharded analysis. Connects to a {@link ShardCoordinator}, parses the shards it is given and
+ * sends back the results of each as an {@link AnalysisSnapshot}.
+ * <p>
+ * Protocol, over one TCP connection:
+ * <pre>
+ * coordinator: TASK, file (UTF), from offset: 8, to offset: 8 (-1 for the whole file), SNI flag, rDNS flag,
+ *              heavy hitter memory: 8 (0 for exact talker counts)
+ * worker:      RESULT, length: 4, snapshot   or   FAILED, message (UTF)
+ * ...
+ * coordinator: DONE
+ * </pre>
+ * Usage: {@code ShardWorker <coordinator host> <port>}. Capture paths must be readable by the worker as sent.
+ */
+public final class ShardWorker {
+    static final int DONE = 0;
+    static final int TASK = 1;
+    static final int RESULT = 1;
+    static final int FAILED = 2;
+
+    private static final Logger logger = LogManager.getLogger(ShardWorker.class);
+
+    private ShardWorker() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: ShardWorker <coordinator host> <port>");
+            System.exit(2);
+        }
+        try (Socket socket = new Socket(args[0], Integer.parseInt(args[1]))) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            while (in.readByte() == TASK) {
+                String file = in.readUTF();
+                long from = in.readLong();
+                long to = in.readLong();
+                boolean doSNI = in.readBoolean();
+                boolean dorDNS = in.readBoolean();
+                long heavyHitterMemory = in.readLong();
+                try {
+                    // Set the budget before loading, so the workers count within it too.
+                    PacketParser parser = new PacketParser();
+                    parser.setHeavyHitterMemory(heavyHitterMemory);
+                    parser = parse(parser, Path.of(file), from, to, doSNI, dorDNS);
+                    ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+                    AnalysisSnapshot.write(parser, snapshot, null);
+                    out.writeByte(RESULT);
+                    out.writeInt(snapshot.size());
+                    snapshot.writeTo(out);
+                } catch (IOException | RuntimeException e) {
+                    logger.error("Could not parse {} [{}, {})", file, from, to);
+                    logger.debug(e);
+                    out.writeByte(FAILED);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                }
+                out.flush();
+            }
+        }
+        // The parsers' lookups may leave non-daemon threads behind.
+        System.exit(0);
+    }
+
+    /**
+     * Parse a shard with a parser set up for it, or take the results of a whole file from its snapshot if it was made
+     * with the same settings.
+     */
+    private static PacketParser parse(PacketParser parser, Path file, long from, long to, boolean doSNI,
+                                      boolean dorDNS) throws IOException {
+        if (to < 0) {
+            PacketParser saved = AnalysisSnapshot.openFresh(file, doSNI, dorDNS, parser.getHeavyHitterMemory());
+            if (saved != null) {
+                return saved;
+            }
+            parser.load(file.toString(), doSNI, dorDNS);
+            return parser;
+        }
+        parser.loadRange(file.toString(), from, to, doSNI, dorDNS);
+        return parser;
+    }
+}
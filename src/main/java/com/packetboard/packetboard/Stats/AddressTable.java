@@ -0,0 +1,287 @@
+package com.packetboard.packetboard.Stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * History of the MAC addresses seen for each IP, from ARP and from the frames of local hosts, with ARP counters.
+ * <p>
+ * Each IP keeps up to {@value #MAX_MACS} bindings of a MAC (as a long) with the times it was first and last seen.
+ * Bindings announced by ARP are kept apart from those read off data frames: a host reached through a router sends
+ * and receives frames with the router's MAC, so only ARP tells which MAC really owns an IP on the segment. Frame
+ * bindings only stand in for IPs that ARP never announced. An IP bound to several MACs by ARP is a conflict: a
+ * duplicate address, a failover, or ARP spoofing.
+ */
+public class AddressTable {
+    public static final int MAX_MACS = 8; // Bindings kept per IP; further MACs are ignored.
+    private static final int FIELDS = 4; // mac, first seen, last seen, packets
+
+    private final ConcurrentHashMap<String, Bindings> bindings = new ConcurrentHashMap<>(); // IP: MACs announced by ARP
+    private final ConcurrentHashMap<String, Bindings> frameBindings = new ConcurrentHashMap<>(); // IP: frame MACs
+    private final AtomicLong arpRequests = new AtomicLong(0);
+    private final AtomicLong arpReplies = new AtomicLong(0);
+    private final AtomicLong gratuitousArps = new AtomicLong(0);
+
+    /**
+     * MAC bound to an IP.
+     *
+     * @param mac             MAC address in the low 48 bits.
+     * @param firstSeenMicros timestamp of the first packet showing the binding.
+     * @param lastSeenMicros  timestamp of the last packet showing the binding.
+     * @param packets         packets showing the binding.
+     */
+    public record Binding(long mac, long firstSeenMicros, long lastSeenMicros, long packets) {
+        @Override
+        public String toString() {
+            return formatMac(mac);
+        }
+    }
+
+    /**
+     * MACs of one IP, as {@link #FIELDS} longs per MAC.
+     */
+    private static final class Bindings {
+        private long[] data = new long[FIELDS];
+        private int size;
+
+        synchronized void add(long mac, long firstSeenMicros, long lastSeenMicros, long packets) {
+            for (int i = 0; i < size * FIELDS; i += FIELDS) {
+                if (data[i] == mac) {
+                    data[i + 1] = Math.min(data[i + 1], firstSeenMicros);
+                    data[i + 2] = Math.max(data[i + 2], lastSeenMicros);
+                    data[i + 3] += packets;
+                    return;
+                }
+            }
+            if (size == MAX_MACS) {
+                return;
+            }
+            if ((size + 1) * FIELDS > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            int i = size++ * FIELDS;
+            data[i] = mac;
+            data[i + 1] = firstSeenMicros;
+            data[i + 2] = lastSeenMicros;
+            data[i + 3] = packets;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        /**
+         * Bindings, most recently seen first.
+         */
+        synchronized List<Binding> list() {
+            ArrayList<Binding> list = new ArrayList<>(size);
+            for (int i = 0; i < size * FIELDS; i += FIELDS) {
+                list.add(new Binding(data[i], data[i + 1], data[i + 2], data[i + 3]));
+            }
+            list.sort((a, b) -> Long.compare(b.lastSeenMicros(), a.lastSeenMicros()));
+            return list;
+        }
+
+        synchronized long latestMac() {
+            int latest = 0;
+            for (int i = FIELDS; i < size * FIELDS; i += FIELDS) {
+                if (data[i + 2] > data[latest + 2]) {
+                    latest = i;
+                }
+            }
+            return data[latest];
+        }
+    }
+
+    /**
+     * Record an ARP packet announcing that an IP uses a MAC.
+     *
+     * @param mac MAC address in the low 48 bits.
+     */
+    public void observe(String ip, long mac, long tsMicros) {
+        bindings.computeIfAbsent(ip, k -> new Bindings()).add(mac, tsMicros, tsMicros, 1);
+    }
+
+    /**
+     * Record a data frame sent to or from an IP with a MAC. The MAC may be a router's, see the class comment.
+     *
+     * @param mac MAC address in the low 48 bits.
+     */
+    public void observeFrame(String ip, long mac, long tsMicros) {
+        frameBindings.computeIfAbsent(ip, k -> new Bindings()).add(mac, tsMicros, tsMicros, 1);
+    }
+
+    /**
+     * Count an ARP packet.
+     *
+     * @param reply      reply rather than request?
+     * @param gratuitous announcement of the sender's own binding?
+     */
+    public void countArp(boolean reply, boolean gratuitous) {
+        (reply ? arpReplies : arpRequests).incrementAndGet();
+        if (gratuitous) {
+            gratuitousArps.incrementAndGet();
+        }
+    }
+
+    /**
+     * MAC most recently announced by ARP for an IP, else the one most recently seen on its frames.
+     *
+     * @return the MAC as text, or null if none was seen.
+     */
+    public String macOf(String ip) {
+        Bindings macs = bindingsFor(ip);
+        return macs == null ? null : formatMac(macs.latestMac());
+    }
+
+    /**
+     * MACs announced by ARP for an IP, else those seen on its frames, most recently seen first.
+     */
+    public List<Binding> bindingsOf(String ip) {
+        Bindings macs = bindingsFor(ip);
+        return macs == null ? List.of() : macs.list();
+    }
+
+    private Bindings bindingsFor(String ip) {
+        Bindings macs = bindings.get(ip);
+        return macs != null ? macs : frameBindings.get(ip);
+    }
+
+    /**
+     * IPs announced by ARP with more than one MAC. Frame bindings are left out, as routed hosts share the MAC of
+     * their router.
+     *
+     * @return IP: its MACs, most recently seen first.
+     */
+    public Map<String, List<Binding>> conflicts() {
+        TreeMap<String, List<Binding>> conflicts = new TreeMap<>();
+        bindings.forEach((ip, macs) -> {
+            if (macs.size() > 1) {
+                conflicts.put(ip, macs.list());
+            }
+        });
+        return conflicts;
+    }
+
+    /**
+     * Number of IPs with a known MAC, from ARP or from frames.
+     */
+    public int size() {
+        int size = bindings.size();
+        for (String ip : frameBindings.keySet()) {
+            if (!bindings.containsKey(ip)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public long getArpRequests() {
+        return arpRequests.get();
+    }
+
+    public long getArpReplies() {
+        return arpReplies.get();
+    }
+
+    public long getGratuitousArps() {
+        return gratuitousArps.get();
+    }
+
+    /**
+     * MAC address of 6 bytes as a long.
+     */
+    public static long mac(byte[] mac) {
+        long value = 0;
+        for (int i = 0; i < 6; i++) {
+            value = (value << 8) | (mac[i] & 0xff);
+        }
+        return value;
+    }
+
+    /**
+     * MAC address as colon-separated hex, e.g. 00:1A:2B:3C:4D:5E.
+     */
+    public static String formatMac(long mac) {
+        return String.format("%02X:%02X:%02X:%02X:%02X:%02X", (mac >>> 40) & 0xff, (mac >>> 32) & 0xff,
+                (mac >>> 24) & 0xff, (mac >>> 16) & 0xff, (mac >>> 8) & 0xff, mac & 0xff);
+    }
+
+    /**
+     * Add the bindings and counters of another capture.
+     */
+    public void merge(AddressTable other) {
+        merge(bindings, other.bindings);
+        merge(frameBindings, other.frameBindings);
+        arpRequests.addAndGet(other.arpRequests.get());
+        arpReplies.addAndGet(other.arpReplies.get());
+        gratuitousArps.addAndGet(other.gratuitousArps.get());
+    }
+
+    private static void merge(ConcurrentHashMap<String, Bindings> ours, ConcurrentHashMap<String, Bindings> theirs) {
+        theirs.forEach((ip, macs) -> {
+            Bindings merged = ours.computeIfAbsent(ip, k -> new Bindings());
+            for (Binding binding : macs.list()) {
+                merged.add(binding.mac(), binding.firstSeenMicros(), binding.lastSeenMicros(), binding.packets());
+            }
+        });
+    }
+
+    /**
+     * Write the table, to be read back by {@link #readFrom}.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(arpRequests.get());
+        out.writeLong(arpReplies.get());
+        out.writeLong(gratuitousArps.get());
+        writeBindings(out, bindings);
+        writeBindings(out, frameBindings);
+    }
+
+    private static void writeBindings(DataOutputStream out, ConcurrentHashMap<String, Bindings> bindings)
+            throws IOException {
+        out.writeInt(bindings.size());
+        for (Map.Entry<String, Bindings> entry : bindings.entrySet()) {
+            List<Binding> macs = entry.getValue().list();
+            out.writeUTF(entry.getKey());
+            out.writeByte(macs.size());
+            for (Binding binding : macs) {
+                out.writeLong(binding.mac());
+                out.writeLong(binding.firstSeenMicros());
+                out.writeLong(binding.lastSeenMicros());
+                out.writeLong(binding.packets());
+            }
+        }
+    }
+
+    public static AddressTable readFrom(DataInputStream in) throws IOException {
+        AddressTable table = new AddressTable();
+        table.arpRequests.set(in.readLong());
+        table.arpReplies.set(in.readLong());
+        table.gratuitousArps.set(in.readLong());
+        readBindings(in, table.bindings);
+        readBindings(in, table.frameBindings);
+        return table;
+    }
+
+    private static void readBindings(DataInputStream in, ConcurrentHashMap<String, Bindings> bindings)
+            throws IOException {
+        int ips = in.readInt();
+        for (int i = 0; i < ips; i++) {
+            Bindings macs = new Bindings();
+            bindings.put(in.readUTF(), macs);
+            int size = in.readUnsignedByte();
+            for (int j = 0; j < size; j++) {
+                macs.add(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+            }
+        }
+    }
+}
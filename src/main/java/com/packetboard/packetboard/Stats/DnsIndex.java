@@ -0,0 +1,123 @@
+package com.packetboard.packetboard.Stats;
+
+import com.packetboard.packetboard.Parser.DnsMessage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Passive DNS: IP to name index built from the A/AAAA/CNAME answers of responses seen in the capture.
+ * <p>
+ * An address is named after the name the client asked for, so a CNAME chain such as
+ * {@code www.example.com -> edge.cdn.net -> 1.2.3.4} names 1.2.3.4 as www.example.com.
+ */
+public class DnsIndex {
+    private static final int MAX_CNAME_HOPS = 8;
+
+    private final ConcurrentHashMap<String, String> names = new ConcurrentHashMap<>(); // IP: name
+    private final AtomicLong responses = new AtomicLong(0);
+    private final Function<byte[], String> ipv4Format;
+    private final Function<byte[], String> ipv6Format;
+
+    /**
+     * @param ipv4Format formats a 4 byte address the same way as the other per-IP tables.
+     * @param ipv6Format formats a 16 byte address the same way as the other per-IP tables.
+     */
+    public DnsIndex(Function<byte[], String> ipv4Format, Function<byte[], String> ipv6Format) {
+        this.ipv4Format = ipv4Format;
+        this.ipv6Format = ipv6Format;
+    }
+
+    /**
+     * Add the answers of a DNS message to the index. Queries and failed responses are ignored.
+     */
+    public void observe(DnsMessage message) {
+        if (!message.isResponse() || message.rcode() != 0 || message.answers().isEmpty()) {
+            return;
+        }
+        responses.incrementAndGet();
+
+        // canonical name: alias, to walk a CNAME chain back to the queried name
+        HashMap<String, String> aliases = new HashMap<>();
+        for (DnsMessage.Answer answer : message.answers()) {
+            if (answer.type() == DnsMessage.TYPE_CNAME) {
+                aliases.putIfAbsent(answer.target(), answer.name());
+            }
+        }
+        for (DnsMessage.Answer answer : message.answers()) {
+            if (answer.address() == null) {
+                continue;
+            }
+            String name = answer.name();
+            for (int hop = 0; hop < MAX_CNAME_HOPS && aliases.containsKey(name); hop++) {
+                name = aliases.get(name);
+            }
+            String ip = answer.type() == DnsMessage.TYPE_A ? ipv4Format.apply(answer.address())
+                    : ipv6Format.apply(answer.address());
+            names.put(ip, name);
+        }
+    }
+
+    /**
+     * Name of an IP address as seen in the capture's DNS answers.
+     *
+     * @return the name, or null if the capture never resolved this address.
+     */
+    public String nameOf(String ip) {
+        return names.get(ip);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Number of successful responses with answers that were indexed.
+     */
+    public long getResponses() {
+        return responses.get();
+    }
+
+    /**
+     * Add the names of another index. Addresses already named here keep their name.
+     */
+    public void merge(DnsIndex other) {
+        responses.addAndGet(other.responses.get());
+        for (Map.Entry<String, String> entry : other.names.entrySet()) {
+            names.putIfAbsent(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Write the index for {@link #readFrom}.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(responses.get());
+        out.writeInt(names.size());
+        for (Map.Entry<String, String> entry : names.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    /**
+     * @param ipv4Format see {@link #DnsIndex}.
+     * @param ipv6Format see {@link #DnsIndex}.
+     */
+    public static DnsIndex readFrom(DataInputStream in, Function<byte[], String> ipv4Format,
+                                    Function<byte[], String> ipv6Format) throws IOException {
+        DnsIndex index = new DnsIndex(ipv4Format, ipv6Format);
+        index.responses.set(in.readLong());
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            index.names.put(in.readUTF(), in.readUTF());
+        }
+        return index;
+    }
+}
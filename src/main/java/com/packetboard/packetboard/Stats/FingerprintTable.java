@@ -0,0 +1,240 @@
+package com.packetboard.packetboard.Stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interned table of TLS client fingerprints with per-host and per-flow hello counts.
+ * <p>
+ * Each distinct (JA3, JA4) pair is stored once and referred to by a small int id. Hosts are interned the same way and
+ * flows are referred to by their {@link FlowTable} id, so the counters are keyed by a packed {@code long} instead of
+ * by strings.
+ */
+public class FingerprintTable {
+    private final ConcurrentHashMap<Long, Integer> idsByKey = new ConcurrentHashMap<>(); // fingerprint key: id
+    private final ArrayList<String> ja3s = new ArrayList<>(); // id: JA3 (MD5 hex)
+    private final ArrayList<String> ja4s = new ArrayList<>(); // id: JA4
+    private final ConcurrentHashMap<String, Integer> hostIds = new ConcurrentHashMap<>(); // host: id
+    private final AtomicInteger nextHostId = new AtomicInteger(0);
+    private final ConcurrentHashMap<Integer, LongAdder> totalCounts = new ConcurrentHashMap<>(); // fp id: hellos
+    private final ConcurrentHashMap<Long, LongAdder> hostCounts = new ConcurrentHashMap<>(); // (host id, fp id): hellos
+    private final ConcurrentHashMap<Long, LongAdder> flowCounts = new ConcurrentHashMap<>(); // (flow id, fp id): hellos
+
+    /**
+     * Count one Client Hello.
+     *
+     * @param key   64-bit key of the fingerprint, as computed by {@link TlsFingerprinter}.
+     * @param host  source host.
+     * @param flow  flow id of the hello, or -1 if unknown.
+     * @param md5   JA3 digest. Only read the first time the key is seen.
+     * @param ja4a  JA4 readable part. Only read the first time the key is seen.
+     * @param ja4b  JA4 cipher hash. Only read the first time the key is seen.
+     * @param ja4c  JA4 extension hash. Only read the first time the key is seen.
+     * @return fingerprint id.
+     */
+    int record(long key, String host, int flow, byte[] md5, byte[] ja4a, byte[] ja4b, byte[] ja4c) {
+        Integer id = idsByKey.get(key);
+        if (id == null) {
+            id = idsByKey.computeIfAbsent(key, k -> intern(TlsFingerprinter.hex(md5),
+                    new String(ja4a) + "_" + TlsFingerprinter.hex(ja4b) + "_" + TlsFingerprinter.hex(ja4c)));
+        }
+        totalCounts.computeIfAbsent(id, k -> new LongAdder()).increment();
+        long fp = id;
+        if (host != null) {
+            long hostId = hostIds.computeIfAbsent(host, h -> nextHostId.getAndIncrement());
+            hostCounts.computeIfAbsent((hostId << 32) | fp, k -> new LongAdder()).increment();
+        }
+        if (flow >= 0) {
+            flowCounts.computeIfAbsent(((long) flow << 32) | fp, k -> new LongAdder()).increment();
+        }
+        return id;
+    }
+
+    private synchronized int intern(String ja3, String ja4) {
+        ja3s.add(ja3);
+        ja4s.add(ja4);
+        return ja3s.size() - 1;
+    }
+
+    public synchronized String getJa3(int id) {
+        return ja3s.get(id);
+    }
+
+    public synchronized String getJa4(int id) {
+        return ja4s.get(id);
+    }
+
+    public int size() {
+        return idsByKey.size();
+    }
+
+    /**
+     * Number of distinct hosts that sent the given fingerprint.
+     */
+    public int hostsFor(int id) {
+        int hosts = 0;
+        for (Long key : hostCounts.keySet()) {
+            if ((int) (key & 0xffffffffL) == id) {
+                hosts++;
+            }
+        }
+        return hosts;
+    }
+
+    /**
+     * Number of distinct flows that carried the given fingerprint.
+     */
+    public int flowsFor(int id) {
+        int flows = 0;
+        for (Long key : flowCounts.keySet()) {
+            if ((int) (key & 0xffffffffL) == id) {
+                flows++;
+            }
+        }
+        return flows;
+    }
+
+    /**
+     * Most frequently seen fingerprints.
+     *
+     * @param limit maximum entries returned.
+     * @return fingerprint ids, most seen first.
+     */
+    public ArrayList<Integer> top(int limit) {
+        ArrayList<Integer> ids = new ArrayList<>(totalCounts.keySet());
+        ids.sort(Comparator.comparingLong((Integer id) -> totalCounts.get(id).sum()).reversed());
+        return new ArrayList<>(ids.subList(0, Math.min(limit, ids.size())));
+    }
+
+    public long count(int id) {
+        LongAdder count = totalCounts.get(id);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * Fingerprints seen from a host.
+     *
+     * @return fingerprint ids sent by the host.
+     */
+    public ArrayList<Integer> fingerprintsOf(String host) {
+        ArrayList<Integer> ids = new ArrayList<>();
+        Integer hostId = hostIds.get(host);
+        if (hostId == null) {
+            return ids;
+        }
+        for (Long key : hostCounts.keySet()) {
+            if ((key >>> 32) == hostId) {
+                ids.add((int) (key & 0xffffffffL));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Add the hellos of another table.
+     *
+     * @param flowIds this table's flow id of each of the other table's flow ids, as returned by
+     *                {@link FlowTable#merge}.
+     */
+    public void merge(FingerprintTable other, int[] flowIds) {
+        int[] ids;
+        synchronized (other) {
+            ids = new int[other.ja3s.size()];
+        }
+        for (Map.Entry<Long, Integer> entry : other.idsByKey.entrySet()) {
+            int theirs = entry.getValue();
+            ids[theirs] = idsByKey.computeIfAbsent(entry.getKey(), k -> intern(other.getJa3(theirs), other.getJa4(theirs)));
+        }
+        for (Map.Entry<Integer, LongAdder> entry : other.totalCounts.entrySet()) {
+            totalCounts.computeIfAbsent(ids[entry.getKey()], k -> new LongAdder()).add(entry.getValue().sum());
+        }
+        String[] hosts = new String[other.nextHostId.get()];
+        for (Map.Entry<String, Integer> entry : other.hostIds.entrySet()) {
+            hosts[entry.getValue()] = entry.getKey();
+        }
+        for (Map.Entry<Long, LongAdder> entry : other.hostCounts.entrySet()) {
+            long hostId = hostIds.computeIfAbsent(hosts[(int) (entry.getKey() >>> 32)], h -> nextHostId.getAndIncrement());
+            long fp = ids[(int) (entry.getKey() & 0xffffffffL)];
+            hostCounts.computeIfAbsent((hostId << 32) | fp, k -> new LongAdder()).add(entry.getValue().sum());
+        }
+        for (Map.Entry<Long, LongAdder> entry : other.flowCounts.entrySet()) {
+            long flow = flowIds[(int) (entry.getKey() >>> 32)];
+            long fp = ids[(int) (entry.getKey() & 0xffffffffL)];
+            flowCounts.computeIfAbsent((flow << 32) | fp, k -> new LongAdder()).add(entry.getValue().sum());
+        }
+    }
+
+    /**
+     * Write the table for {@link #readFrom}. Not safe while hellos are still being recorded.
+     */
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(ja3s.size());
+        for (int id = 0; id < ja3s.size(); id++) {
+            out.writeUTF(ja3s.get(id));
+            out.writeUTF(ja4s.get(id));
+        }
+        out.writeInt(idsByKey.size());
+        for (Map.Entry<Long, Integer> entry : idsByKey.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        out.writeInt(hostIds.size());
+        for (Map.Entry<String, Integer> entry : hostIds.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        out.writeInt(totalCounts.size());
+        for (Map.Entry<Integer, LongAdder> entry : totalCounts.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeLong(entry.getValue().sum());
+        }
+        writeCounts(out, hostCounts);
+        writeCounts(out, flowCounts);
+    }
+
+    private static void writeCounts(DataOutputStream out, ConcurrentHashMap<Long, LongAdder> counts) throws IOException {
+        out.writeInt(counts.size());
+        for (Map.Entry<Long, LongAdder> entry : counts.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeLong(entry.getValue().sum());
+        }
+    }
+
+    public static FingerprintTable readFrom(DataInputStream in) throws IOException {
+        FingerprintTable table = new FingerprintTable();
+        int fingerprints = in.readInt();
+        for (int id = 0; id < fingerprints; id++) {
+            table.intern(in.readUTF(), in.readUTF());
+        }
+        int keys = in.readInt();
+        for (int i = 0; i < keys; i++) {
+            table.idsByKey.put(in.readLong(), in.readInt());
+        }
+        int hosts = in.readInt();
+        for (int i = 0; i < hosts; i++) {
+            table.hostIds.put(in.readUTF(), in.readInt());
+        }
+        table.nextHostId.set(hosts);
+        int totals = in.readInt();
+        for (int i = 0; i < totals; i++) {
+            table.totalCounts.computeIfAbsent(in.readInt(), k -> new LongAdder()).add(in.readLong());
+        }
+        readCounts(in, table.hostCounts);
+        readCounts(in, table.flowCounts);
+        return table;
+    }
+
+    private static void readCounts(DataInputStream in, ConcurrentHashMap<Long, LongAdder> counts) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            counts.computeIfAbsent(in.readLong(), k -> new LongAdder()).add(in.readLong());
+        }
+    }
+}
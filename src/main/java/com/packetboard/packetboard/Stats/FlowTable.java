@@ -0,0 +1,164 @@
+package com.packetboard.packetboard.Stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bidirectional flows (protocol and both endpoints) interned to compact int ids, with packet and byte counts.
+ * <p>
+ * Both directions of a conversation map to the same flow: the endpoint that sorts first is always written first in
+ * the key.
+ */
+public class FlowTable {
+    private final ConcurrentHashMap<String, Flow> byKey = new ConcurrentHashMap<>(); // flow key: flow
+    private final ArrayList<Flow> flows = new ArrayList<>(); // id: flow
+
+    /**
+     * Counters of one flow.
+     */
+    public static final class Flow {
+        private final int id;
+        private final String key;
+        private final LongAdder packets = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+
+        Flow(int id, String key) {
+            this.id = id;
+            this.key = key;
+        }
+
+        public int id() { return id; }
+
+        /**
+         * Canonical key, e.g. {@code "6 10.0.0.1:443-10.0.0.2:50000"}.
+         */
+        public String key() { return key; }
+        public long packets() { return packets.sum(); }
+        public long bytes() { return bytes.sum(); }
+    }
+
+    /**
+     * Canonical key of a flow.
+     *
+     * @param protocol IP protocol number.
+     * @param src      source address.
+     * @param srcPort  source port, or -1 if the protocol has none.
+     * @param dst      destination address.
+     * @param dstPort  destination port, or -1 if the protocol has none.
+     */
+    public static String key(int protocol, String src, int srcPort, String dst, int dstPort) {
+        String a = srcPort < 0 ? src : src + ":" + srcPort;
+        String b = dstPort < 0 ? dst : dst + ":" + dstPort;
+        return a.compareTo(b) <= 0 ? protocol + " " + a + "-" + b : protocol + " " + b + "-" + a;
+    }
+
+    /**
+     * Count a packet of a flow.
+     *
+     * @return flow id.
+     */
+    public int record(String key, int size) {
+        Flow flow = intern(key);
+        flow.packets.increment();
+        flow.bytes.add(size);
+        return flow.id;
+    }
+
+    /**
+     * Id of a flow, interning it if it is new.
+     */
+    public int id(String key) {
+        return intern(key).id;
+    }
+
+    private Flow intern(String key) {
+        Flow flow = byKey.get(key);
+        if (flow == null) {
+            flow = byKey.computeIfAbsent(key, this::newFlow);
+        }
+        return flow;
+    }
+
+    private synchronized Flow newFlow(String key) {
+        Flow flow = new Flow(flows.size(), key);
+        flows.add(flow);
+        return flow;
+    }
+
+    /**
+     * Look a flow up without interning it.
+     *
+     * @return the flow, or null if it was never seen.
+     */
+    public Flow find(String key) {
+        return byKey.get(key);
+    }
+
+    public synchronized Flow flow(int id) {
+        return flows.get(id);
+    }
+
+    public synchronized int size() {
+        return flows.size();
+    }
+
+    /**
+     * Flows with the most bytes.
+     *
+     * @param limit maximum entries returned.
+     * @return flows, most bytes first.
+     */
+    public synchronized ArrayList<Flow> top(int limit) {
+        ArrayList<Flow> sorted = new ArrayList<>(flows);
+        sorted.sort(Comparator.comparingLong(Flow::bytes).reversed());
+        return new ArrayList<>(sorted.subList(0, Math.min(limit, sorted.size())));
+    }
+
+    /**
+     * Add the flows of another table. Flows new to this table get the next free ids.
+     *
+     * @return this table's id of each of the other table's flow ids.
+     */
+    public int[] merge(FlowTable other) {
+        ArrayList<Flow> theirs;
+        synchronized (other) {
+            theirs = new ArrayList<>(other.flows);
+        }
+        int[] ids = new int[theirs.size()];
+        for (Flow flow : theirs) {
+            Flow ours = intern(flow.key);
+            ours.packets.add(flow.packets());
+            ours.bytes.add(flow.bytes());
+            ids[flow.id] = ours.id;
+        }
+        return ids;
+    }
+
+    /**
+     * Write the flows in id order for {@link #readFrom}, so ids stay valid.
+     */
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(flows.size());
+        for (Flow flow : flows) {
+            out.writeUTF(flow.key);
+            out.writeLong(flow.packets());
+            out.writeLong(flow.bytes());
+        }
+    }
+
+    public static FlowTable readFrom(DataInputStream in) throws IOException {
+        FlowTable table = new FlowTable();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            Flow flow = table.intern(in.readUTF());
+            flow.packets.add(in.readLong());
+            flow.bytes.add(in.readLong());
+        }
+        return table;
+    }
+}
@@ -0,0 +1,172 @@
+package com.packetboard.packetboard.Stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * HyperLogLog estimate of the number of distinct keys, in {@code 2^precision} one-byte registers whatever the number
+ * of keys.
+ * <p>
+ * Keys are added as 64-bit hashes, see {@link #hash}, so callers can hash raw address bytes once and feed several
+ * sketches. Sketches of the same precision merge without loss, e.g. across files or shards. Safe for concurrent adds.
+ */
+public class HyperLogLog {
+    public static final int DEFAULT_PRECISION = 12; // 4 KB, about 1.6% standard error
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+    private static final VarHandle REGISTER = MethodHandles.arrayElementVarHandle(byte[].class);
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private final int precision;
+    private final byte[] registers; // register: longest run of leading zeros + 1
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision log2 of the number of registers, between 4 and 18.
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between 4 and 18, got " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * 64-bit hash of a byte range (Murmur3-style mixing), for {@link #addHash}.
+     */
+    public static long hash(byte[] data, int offset, int length) {
+        long h = length * C2;
+        int i = offset;
+        int end = offset + length;
+        for (; i + 8 <= end; i += 8) {
+            h ^= mixKey((long) LONG_LE.get(data, i));
+            h = Long.rotateLeft(h, 27) * 5 + 0x52dce729;
+        }
+        long tail = 0;
+        for (int shift = 0; i < end; i++, shift += 8) {
+            tail |= (data[i] & 0xffL) << shift;
+        }
+        return mix(h ^ mixKey(tail));
+    }
+
+    public static long hash(byte[] data) {
+        return hash(data, 0, data.length);
+    }
+
+    /**
+     * Scramble a value into a hash, e.g. to combine hashes into the hash of a compound key.
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long mixKey(long k) {
+        return Long.rotateLeft(k * C1, 31) * C2;
+    }
+
+    /**
+     * Add a key by its hash.
+     */
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // Leading zeros of the remaining bits; the sentinel bit bounds the run.
+        raise(index, (byte) (Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1));
+    }
+
+    /**
+     * Set a register to a rank unless it already holds a higher one.
+     */
+    private void raise(int index, byte rank) {
+        byte current;
+        while ((current = (byte) REGISTER.getOpaque(registers, index)) < rank) {
+            if (REGISTER.weakCompareAndSet(registers, index, current, rank)) {
+                return;
+            }
+        }
+    }
+
+    public void add(byte[] data) {
+        addHash(hash(data, 0, data.length));
+    }
+
+    /**
+     * Estimated number of distinct keys added.
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < m; i++) {
+            byte register = (byte) REGISTER.getOpaque(registers, i);
+            sum += Math.scalb(1.0, -register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = m >= 128 ? 0.7213 / (1 + 1.079 / m) : m >= 64 ? 0.709 : m >= 32 ? 0.697 : 0.673;
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Linear counting is more accurate while many registers are still empty.
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Relative standard error of {@link #estimate}, 1.04 / sqrt(registers).
+     */
+    public double standardError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Add the keys of another sketch to this one. The other sketch is left unchanged.
+     *
+     * @throws IllegalArgumentException if the precisions differ.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge sketches of precision " + other.precision + " and " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            raise(i, (byte) REGISTER.getOpaque(other.registers, i));
+        }
+    }
+
+    /**
+     * Write the sketch, to be read back by {@link #readFrom}.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(precision);
+        out.write(registers);
+    }
+
+    public static HyperLogLog readFrom(DataInputStream in) throws IOException {
+        int precision = in.readUnsignedByte();
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IOException("Bad sketch precision " + precision);
+        }
+        HyperLogLog sketch = new HyperLogLog(precision);
+        in.readFully(sketch.registers);
+        return sketch;
+    }
+}
@@ -0,0 +1,401 @@
+package com.packetboard.packetboard.Stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * ICMP stats: messages by type and code, the destinations reported unreachable, and the round trip time of pings.
+ * <p>
+ * Messages are read in place, so types the {@code IcmpPacket} enum does not know are counted too. Codes are counted
+ * per type up to {@link #CODES}; higher codes count in their type only. Unreachable destinations are taken from the
+ * original datagram quoted in the message, i.e. the host that could not be reached rather than the router reporting
+ * it, and kept in a bounded summary.
+ * <p>
+ * Echo requests and replies are matched by (requester, responder, identifier, sequence number). Ranges of a capture
+ * are decoded concurrently, so whichever of the two arrives first waits in a pending table for the other. The table
+ * holds {@link #MAX_PENDING} messages, oldest evicted first: evicted requests count as unanswered, and so do the
+ * requests still pending {@link #DEFAULT_TIMEOUT_MICROS} before the end of a load ({@link #expireRequests}). The
+ * table is saved with the counts and carried over by {@link #merge}, so a ping answered in the next file of a rotated
+ * capture is still matched. Round trip times are counted in a histogram of power of two buckets, from capture
+ * timestamps.
+ */
+public class IcmpStats {
+    public static final int TYPES = 256;
+    public static final int CODES = 16; // Codes counted per type
+    public static final int RTT_BUCKETS = 32; // Bucket i: RTTs in [2^(i-1), 2^i) µs; the last takes the rest
+    public static final long DEFAULT_TIMEOUT_MICROS = 60_000_000L; // Replies later than this start a new exchange
+    public static final int TYPE_ECHO_REPLY = 0;
+    public static final int TYPE_DESTINATION_UNREACHABLE = 3;
+    public static final int TYPE_SOURCE_QUENCH = 4;
+    public static final int TYPE_REDIRECT = 5;
+    public static final int TYPE_ECHO = 8;
+    public static final int TYPE_TIME_EXCEEDED = 11;
+    public static final int TYPE_PARAMETER_PROBLEM = 12;
+    private static final int MAX_PENDING = 4096; // Echo messages waiting for their counterpart
+    private static final int UNREACHABLE_CAPACITY = 64; // Unreachable destinations held
+
+    private final Function<byte[], String> ipv4Format;
+    private final AtomicLongArray types = new AtomicLongArray(TYPES); // Type: messages
+    private final AtomicLongArray typeCodes = new AtomicLongArray(TYPES * CODES); // Type * CODES + code: messages
+    private final AtomicLongArray rtts = new AtomicLongArray(RTT_BUCKETS); // log2 of RTT in µs: echo exchanges
+    private final AtomicLong rttTotal = new AtomicLong(0); // Microseconds
+    private final AtomicLong rttMax = new AtomicLong(0); // Microseconds
+    private final AtomicLong unanswered = new AtomicLong(0); // Requests evicted without a reply
+    private final AtomicLong unmatched = new AtomicLong(0); // Replies evicted without a request
+    private SpaceSaving unreachable = new SpaceSaving(UNREACHABLE_CAPACITY); // Unreachable IP: messages
+    private final LinkedHashMap<Key, Pending> pending = new LinkedHashMap<>(); // Oldest first
+
+    private record Key(long addresses, int idSeq) {
+    }
+
+    private record Pending(long tsMicros, boolean reply) {
+    }
+
+    /**
+     * @param ipv4Format formats the unreachable addresses, e.g. {@code 192.0.2.1}.
+     */
+    public IcmpStats(Function<byte[], String> ipv4Format) {
+        this.ipv4Format = ipv4Format;
+    }
+
+    /**
+     * Count an ICMP message.
+     *
+     * @param message  ICMP message, from its type field on.
+     * @param src      source address of the packet, 4 bytes.
+     * @param dst      destination address, 4 bytes.
+     * @param tsMicros capture timestamp.
+     */
+    public void add(byte[] message, byte[] src, byte[] dst, long tsMicros) {
+        if (message.length < 4) {
+            return;
+        }
+        int type = message[0] & 0xff;
+        int code = message[1] & 0xff;
+        types.incrementAndGet(type);
+        if (code < CODES) {
+            typeCodes.incrementAndGet(type * CODES + code);
+        }
+        switch (type) {
+            case TYPE_DESTINATION_UNREACHABLE -> {
+                // Unused word, then the IP header of the original datagram.
+                if (message.length >= 8 + 20 && (message[8] & 0xf0) == 0x40) {
+                    byte[] original = new byte[4];
+                    System.arraycopy(message, 8 + 16, original, 0, 4);
+                    unreachable.add(ipv4Format.apply(original), 1);
+                }
+            }
+            case TYPE_ECHO, TYPE_ECHO_REPLY -> {
+                if (message.length >= 8) {
+                    int idSeq = ((message[4] & 0xff) << 24) | ((message[5] & 0xff) << 16) | ((message[6] & 0xff) << 8)
+                            | (message[7] & 0xff);
+                    boolean reply = type == TYPE_ECHO_REPLY;
+                    matchEcho(reply ? dst : src, reply ? src : dst, idSeq, reply, tsMicros);
+                }
+            }
+        }
+    }
+
+    /**
+     * Match an echo message with its counterpart, or leave it pending.
+     */
+    private void matchEcho(byte[] requester, byte[] responder, int idSeq, boolean reply, long tsMicros) {
+        matchEcho(new Key(((long) u4(requester) << 32) | (u4(responder) & 0xffffffffL), idSeq), reply, tsMicros);
+    }
+
+    private void matchEcho(Key key, boolean reply, long tsMicros) {
+        long rtt;
+        synchronized (pending) {
+            Pending other = pending.get(key);
+            if (other == null || other.reply() == reply
+                    || Math.abs(tsMicros - other.tsMicros()) > DEFAULT_TIMEOUT_MICROS) {
+                // First of an exchange, a retransmission or a late answer: wait for the counterpart.
+                if (other != null) {
+                    countEvicted(other);
+                    pending.remove(key);
+                } else if (pending.size() == MAX_PENDING) {
+                    Iterator<Pending> it = pending.values().iterator();
+                    countEvicted(it.next());
+                    it.remove();
+                }
+                pending.put(key, new Pending(tsMicros, reply));
+                return;
+            }
+            pending.remove(key);
+            rtt = reply ? tsMicros - other.tsMicros() : other.tsMicros() - tsMicros;
+        }
+        if (rtt < 0) {
+            return;
+        }
+        rtts.incrementAndGet(bucketOf(rtt));
+        rttTotal.addAndGet(rtt);
+        rttMax.accumulateAndGet(rtt, Math::max);
+    }
+
+    /**
+     * Count the requests pending since more than {@link #DEFAULT_TIMEOUT_MICROS} before the end of a capture as
+     * unanswered, as no reply in the capture can match them any more. Pending replies are kept: their request may be
+     * at the end of the previous file.
+     *
+     * @param endMicros timestamp of the last packet.
+     */
+    public void expireRequests(long endMicros) {
+        synchronized (pending) {
+            pending.values().removeIf(message -> {
+                boolean expired = !message.reply() && message.tsMicros() < endMicros - DEFAULT_TIMEOUT_MICROS;
+                if (expired) {
+                    unanswered.incrementAndGet();
+                }
+                return expired;
+            });
+        }
+    }
+
+    private void countEvicted(Pending message) {
+        (message.reply() ? unmatched : unanswered).incrementAndGet();
+    }
+
+    private static int bucketOf(long rttMicros) {
+        return Math.min(64 - Long.numberOfLeadingZeros(rttMicros), RTT_BUCKETS - 1);
+    }
+
+    private static int u4(byte[] p) {
+        return ((p[0] & 0xff) << 24) | ((p[1] & 0xff) << 16) | ((p[2] & 0xff) << 8) | (p[3] & 0xff);
+    }
+
+    /**
+     * Messages of a type.
+     */
+    public long messages(int type) {
+        return types.get(type);
+    }
+
+    /**
+     * Messages of a type and code.
+     *
+     * @param code code below {@link #CODES}.
+     */
+    public long messages(int type, int code) {
+        return typeCodes.get(type * CODES + code);
+    }
+
+    /**
+     * ICMP messages seen.
+     */
+    public long getMessages() {
+        long total = 0;
+        for (int type = 0; type < TYPES; type++) {
+            total += types.get(type);
+        }
+        return total;
+    }
+
+    /**
+     * Error messages seen: destination unreachable, source quench, redirect, time exceeded and parameter problem.
+     */
+    public long getErrors() {
+        return types.get(TYPE_DESTINATION_UNREACHABLE) + types.get(TYPE_SOURCE_QUENCH) + types.get(TYPE_REDIRECT)
+                + types.get(TYPE_TIME_EXCEEDED) + types.get(TYPE_PARAMETER_PROBLEM);
+    }
+
+    /**
+     * Share of the messages that are errors, 0 if there are none.
+     */
+    public double getErrorRate() {
+        long messages = getMessages();
+        return messages == 0 ? 0 : (double) getErrors() / messages;
+    }
+
+    /**
+     * Destinations reported unreachable most often.
+     */
+    public List<SpaceSaving.Counter> topUnreachable(int limit) {
+        return unreachable.top(limit);
+    }
+
+    /**
+     * Echo exchanges with a round trip time in a bucket.
+     *
+     * @param bucket 0 for 0 µs, i for [2^(i-1), 2^i) µs; the last bucket also counts longer times.
+     */
+    public long rtts(int bucket) {
+        return rtts.get(bucket);
+    }
+
+    /**
+     * Echo requests matched with their reply.
+     */
+    public long getExchanges() {
+        long total = 0;
+        for (int i = 0; i < RTT_BUCKETS; i++) {
+            total += rtts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Mean round trip time in microseconds, 0 without exchanges.
+     */
+    public long getMeanRtt() {
+        long exchanges = getExchanges();
+        return exchanges == 0 ? 0 : rttTotal.get() / exchanges;
+    }
+
+    public long getMaxRtt() {
+        return rttMax.get();
+    }
+
+    /**
+     * Upper bound of a quantile of the round trip times, from the histogram.
+     *
+     * @param q quantile from 0 to 1.
+     * @return the upper bound in microseconds, 0 without exchanges.
+     */
+    public long rttQuantile(double q) {
+        long exchanges = getExchanges();
+        long rank = (long) Math.ceil(q * exchanges);
+        long seen = 0;
+        for (int i = 0; i < RTT_BUCKETS; i++) {
+            seen += rtts.get(i);
+            if (seen > 0 && seen >= rank) {
+                return i == RTT_BUCKETS - 1 ? rttMax.get() : Math.min((1L << i) - 1, rttMax.get());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Echo requests evicted from the pending table without a reply, or left without one at the end of a load.
+     */
+    public long getUnanswered() {
+        return unanswered.get();
+    }
+
+    /**
+     * Echo replies evicted from the pending table without a request.
+     */
+    public long getUnmatched() {
+        return unmatched.get();
+    }
+
+    /**
+     * Echo messages waiting for their counterpart.
+     */
+    public int getPending() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Requests still waiting for a reply, e.g. at the end of a capture.
+     */
+    public long getPendingRequests() {
+        synchronized (pending) {
+            return pending.values().stream().filter(message -> !message.reply()).count();
+        }
+    }
+
+    /**
+     * Were any ICMP messages seen?
+     */
+    public boolean isEmpty() {
+        return getMessages() == 0;
+    }
+
+    /**
+     * Add the counts of another capture. Its pending echo messages are matched against the ones pending here, e.g.
+     * the request at the end of one file with the reply at the start of the next.
+     */
+    public void merge(IcmpStats other) {
+        LinkedHashMap<Key, Pending> theirs;
+        synchronized (other.pending) {
+            theirs = new LinkedHashMap<>(other.pending);
+        }
+        theirs.forEach((key, message) -> matchEcho(key, message.reply(), message.tsMicros()));
+        for (int i = 0; i < TYPES; i++) {
+            types.addAndGet(i, other.types.get(i));
+        }
+        for (int i = 0; i < TYPES * CODES; i++) {
+            typeCodes.addAndGet(i, other.typeCodes.get(i));
+        }
+        for (int i = 0; i < RTT_BUCKETS; i++) {
+            rtts.addAndGet(i, other.rtts.get(i));
+        }
+        rttTotal.addAndGet(other.rttTotal.get());
+        rttMax.accumulateAndGet(other.rttMax.get(), Math::max);
+        unanswered.addAndGet(other.unanswered.get());
+        unmatched.addAndGet(other.unmatched.get());
+        unreachable.merge(other.unreachable);
+    }
+
+    /**
+     * Write the counts and the pending echo messages, to be read back by {@link #readFrom}.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        writeCounts(out, types);
+        writeCounts(out, typeCodes);
+        writeCounts(out, rtts);
+        out.writeLong(rttTotal.get());
+        out.writeLong(rttMax.get());
+        out.writeLong(unanswered.get());
+        out.writeLong(unmatched.get());
+        unreachable.writeTo(out);
+        synchronized (pending) {
+            out.writeShort(pending.size());
+            for (var entry : pending.entrySet()) {
+                out.writeLong(entry.getKey().addresses());
+                out.writeInt(entry.getKey().idSeq());
+                out.writeLong(entry.getValue().tsMicros());
+                out.writeBoolean(entry.getValue().reply());
+            }
+        }
+    }
+
+    /**
+     * Write the non-zero counters of a histogram.
+     */
+    private static void writeCounts(DataOutputStream out, AtomicLongArray counts) throws IOException {
+        int n = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            if (counts.get(i) > 0) {
+                n++;
+            }
+        }
+        out.writeShort(n);
+        for (int i = 0; i < counts.length(); i++) {
+            if (counts.get(i) > 0) {
+                out.writeShort(i);
+                out.writeLong(counts.get(i));
+            }
+        }
+    }
+
+    public static IcmpStats readFrom(DataInputStream in, Function<byte[], String> ipv4Format) throws IOException {
+        IcmpStats stats = new IcmpStats(ipv4Format);
+        for (AtomicLongArray counts : new AtomicLongArray[]{stats.types, stats.typeCodes, stats.rtts}) {
+            int n = in.readUnsignedShort();
+            for (int i = 0; i < n; i++) {
+                counts.set(in.readUnsignedShort(), in.readLong());
+            }
+        }
+        stats.rttTotal.set(in.readLong());
+        stats.rttMax.set(in.readLong());
+        stats.unanswered.set(in.readLong());
+        stats.unmatched.set(in.readLong());
+        stats.unreachable = SpaceSaving.readFrom(in);
+        int pending = in.readUnsignedShort();
+        for (int i = 0; i < pending; i++) {
+            Key key = new Key(in.readLong(), in.readInt());
+            stats.pending.put(key, new Pending(in.readLong(), in.readBoolean()));
+        }
+        return stats;
+    }
+}
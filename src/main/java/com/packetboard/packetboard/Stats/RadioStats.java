@@ -0,0 +1,432 @@
+package com.packetboard.packetboard.Stats;
+
+import com.packetboard.packetboard.Parser.PpiHeader;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.ToLongFunction;
+
+/**
+ * 802.11 radio stats of a wireless capture: traffic and airtime per channel, signal and noise levels, data rates and
+ * A-MPDU aggregation.
+ * <p>
+ * Every distribution is a fixed array of counters indexed by its value (channel frequency in MHz, dBm + 128, rate,
+ * MCS, subframes), so counting a frame is a few increments and never allocates. As in {@link VlanStats}, each thread
+ * counts into arrays of its own with plain increments, and {@link #fold} adds them into the main counts once the
+ * threads are done; reads add up the main and thread counts. Airtime is estimated from the frame
+ * length, the data rate and the PHY preamble; it ignores inter-frame spaces, backoff and acknowledgements, so it is a
+ * lower bound of the channel time used.
+ */
+public class RadioStats {
+    public static final int FREQUENCIES = 8192; // Channel frequencies counted, in MHz
+    public static final int LEVELS = 256; // dBm from -128 to 127
+    public static final int RATES = 256; // Legacy rates, in 500 kbps units
+    public static final int MCS_INDEXES = 32;
+    public static final int MAX_SUBFRAMES = 64; // A-MPDUs with more subframes are counted here
+    private static final int PENDING = 256; // A-MPDUs followed at once
+    private static final int[] HT20_RATES = {65, 130, 195, 260, 390, 520, 585, 650}; // 100 kbps, one stream
+    private static final int[] HT40_RATES = {135, 270, 405, 540, 810, 1080, 1215, 1350};
+
+    private final Counts main = new Counts();
+    private final ConcurrentLinkedQueue<Counts> shards = new ConcurrentLinkedQueue<>(); // Thread counts not folded
+    private final ThreadLocal<Counts> local = new ThreadLocal<>(); // Counts of the calling thread
+
+    // Subframes counted so far of the A-MPDUs in progress, slot by A-MPDU ID
+    private final long[] pendingIds = new long[PENDING];
+    private final int[] pendingCounts = new int[PENDING];
+
+    /**
+     * Frame counts, of one thread or folded.
+     */
+    private static final class Counts {
+        final long[] channelPackets = new long[FREQUENCIES]; // MHz: frames
+        final long[] channelBytes = new long[FREQUENCIES]; // MHz: frame bytes
+        final long[] channelAirtime = new long[FREQUENCIES]; // MHz: microseconds
+        final long[] signal = new long[LEVELS]; // dBm + 128: frames
+        final long[] noise = new long[LEVELS]; // dBm + 128: frames
+        final long[] rates = new long[RATES]; // 500 kbps units: frames
+        final long[] mcs = new long[MCS_INDEXES]; // MCS index: HT frames
+        final long[] aggregateSizes = new long[MAX_SUBFRAMES + 1]; // Subframes: A-MPDUs
+        long frames;
+        long fcsErrors;
+        long htFrames;
+        long ht40Frames;
+        long shortGuardFrames;
+        long subframes;
+        volatile boolean folded; // Added into the main counts; the thread starts new ones
+
+        /**
+         * Histograms, in the order they are saved after the channels.
+         */
+        long[][] histograms() {
+            return new long[][]{signal, noise, rates, mcs, aggregateSizes};
+        }
+
+        void addTo(Counts total) {
+            add(total.channelPackets, channelPackets);
+            add(total.channelBytes, channelBytes);
+            add(total.channelAirtime, channelAirtime);
+            long[][] ours = histograms();
+            long[][] totals = total.histograms();
+            for (int i = 0; i < ours.length; i++) {
+                add(totals[i], ours[i]);
+            }
+            total.frames += frames;
+            total.fcsErrors += fcsErrors;
+            total.htFrames += htFrames;
+            total.ht40Frames += ht40Frames;
+            total.shortGuardFrames += shortGuardFrames;
+            total.subframes += subframes;
+        }
+
+        private static void add(long[] total, long[] counts) {
+            for (int i = 0; i < counts.length; i++) {
+                total[i] += counts[i];
+            }
+        }
+    }
+
+    /**
+     * Count a frame of a PPI capture, in the counts of the calling thread.
+     *
+     * @param header PPI header of the frame.
+     * @param size   length of the 802.11 frame.
+     */
+    public void add(PpiHeader header, int size) {
+        if (!header.hasRadio()) {
+            return;
+        }
+        Counts counts = local.get();
+        if (counts == null || counts.folded) {
+            counts = new Counts();
+            shards.add(counts);
+            local.set(counts);
+        }
+        counts.frames++;
+        if (header.isFcsInvalid()) {
+            counts.fcsErrors++;
+        }
+        counts.signal[header.signal() + 128]++;
+        counts.noise[header.noise() + 128]++;
+        int streams = 1;
+        int kbps = header.rate() * 500;
+        if (header.rate() > 0 && header.rate() < RATES) {
+            counts.rates[header.rate()]++;
+        }
+        if (header.isHt()) {
+            counts.htFrames++;
+            if (header.isHt40()) {
+                counts.ht40Frames++;
+            }
+            if (header.isShortGuard()) {
+                counts.shortGuardFrames++;
+            }
+            if (header.mcs() != PpiHeader.UNKNOWN_MCS) {
+                counts.mcs[header.mcs()]++;
+                streams = header.mcs() / 8 + 1;
+                kbps = htRate(header.mcs(), header.isHt40(), header.isShortGuard());
+            }
+            if (header.isAggregate()) {
+                countSubframe(counts, header.aMpduId(), header.hasMoreAggregates());
+            }
+        }
+        int freq = header.channelFreq();
+        if (freq <= 0 || freq >= FREQUENCIES) {
+            return;
+        }
+        counts.channelPackets[freq]++;
+        counts.channelBytes[freq] += size;
+        if (kbps > 0) {
+            // An A-MPDU is sent after a single preamble.
+            boolean preamble = !header.isAggregate() || !header.hasMoreAggregates();
+            long micros = (size * 8000L + kbps - 1) / kbps;
+            if (preamble) {
+                micros += header.isHt() && header.mcs() != PpiHeader.UNKNOWN_MCS ? 32 + 4 * streams
+                        : isDsss(freq, header.rate()) ? 192 : 20;
+            }
+            counts.channelAirtime[freq] += micros;
+        }
+    }
+
+    /**
+     * HT data rate in kbps.
+     */
+    private static int htRate(int mcsIndex, boolean ht40, boolean shortGuard) {
+        int rate = (ht40 ? HT40_RATES : HT20_RATES)[mcsIndex % 8] * (mcsIndex / 8 + 1) * 100;
+        return shortGuard ? rate * 10 / 9 : rate;
+    }
+
+    /**
+     * 802.11b rates, sent after a long DSSS preamble.
+     */
+    private static boolean isDsss(int freq, int rate) {
+        return freq < 3000 && (rate == 2 || rate == 4 || rate == 11 || rate == 22);
+    }
+
+    private void countSubframe(Counts counts, long id, boolean more) {
+        counts.subframes++;
+        int slot = (int) (id & (PENDING - 1));
+        int count;
+        synchronized (pendingIds) {
+            if (pendingIds[slot] != id || pendingCounts[slot] == 0) {
+                // A new A-MPDU; one left in this slot without its last subframe is dropped.
+                pendingIds[slot] = id;
+                pendingCounts[slot] = 0;
+            }
+            count = ++pendingCounts[slot];
+            if (!more) {
+                pendingCounts[slot] = 0;
+            }
+        }
+        if (!more) {
+            counts.aggregateSizes[Math.min(count, MAX_SUBFRAMES)]++;
+        }
+    }
+
+    /**
+     * Add the thread counts into the main ones and drop them. Call when no thread is counting, e.g. at the end of a
+     * load.
+     */
+    public synchronized void fold() {
+        Counts counts;
+        while ((counts = shards.poll()) != null) {
+            counts.addTo(main);
+            counts.folded = true;
+        }
+    }
+
+    /**
+     * Main counts added up with the thread counts.
+     */
+    private synchronized Counts view() {
+        if (shards.isEmpty()) {
+            return main;
+        }
+        Counts view = new Counts();
+        main.addTo(view);
+        shards.forEach(counts -> counts.addTo(view));
+        return view;
+    }
+
+    /**
+     * Sum of one counter over the main and thread counts.
+     */
+    private synchronized long sum(ToLongFunction<Counts> counter) {
+        long sum = counter.applyAsLong(main);
+        for (Counts counts : shards) {
+            sum += counter.applyAsLong(counts);
+        }
+        return sum;
+    }
+
+    /**
+     * Frequencies of the channels seen, in MHz, ascending.
+     */
+    public int[] channels() {
+        return channels(view());
+    }
+
+    private static int[] channels(Counts counts) {
+        int n = 0;
+        int[] freqs = new int[FREQUENCIES];
+        for (int freq = 0; freq < FREQUENCIES; freq++) {
+            if (counts.channelPackets[freq] > 0) {
+                freqs[n++] = freq;
+            }
+        }
+        return Arrays.copyOf(freqs, n);
+    }
+
+    /**
+     * IEEE channel number of a frequency, e.g. 6 for 2437 MHz.
+     *
+     * @return the channel, or -1 if the frequency is not in the 2.4, 5 or 6 GHz band.
+     */
+    public static int channelOf(int freq) {
+        if (freq == 2484) {
+            return 14;
+        } else if (freq >= 2412 && freq < 2484) {
+            return (freq - 2407) / 5;
+        } else if (freq >= 5955 && freq <= 7115) {
+            return (freq - 5950) / 5;
+        } else if (freq >= 5000 && freq < 5955) {
+            return (freq - 5000) / 5;
+        }
+        return -1;
+    }
+
+    public long channelPackets(int freq) {
+        return sum(counts -> counts.channelPackets[freq]);
+    }
+
+    public long channelBytes(int freq) {
+        return sum(counts -> counts.channelBytes[freq]);
+    }
+
+    /**
+     * Estimated airtime of the frames on a channel, in microseconds.
+     */
+    public long channelAirtime(int freq) {
+        return sum(counts -> counts.channelAirtime[freq]);
+    }
+
+    /**
+     * Frames received at a signal level.
+     *
+     * @param dbm level from -128 to 127.
+     */
+    public long signalFrames(int dbm) {
+        return sum(counts -> counts.signal[dbm + 128]);
+    }
+
+    /**
+     * Frames received at a noise level.
+     *
+     * @param dbm level from -128 to 127.
+     */
+    public long noiseFrames(int dbm) {
+        return sum(counts -> counts.noise[dbm + 128]);
+    }
+
+    /**
+     * Frames sent at a legacy rate.
+     *
+     * @param rate rate in 500 kbps units, e.g. 108 for 54 Mbps.
+     */
+    public long rateFrames(int rate) {
+        return sum(counts -> counts.rates[rate]);
+    }
+
+    public long mcsFrames(int mcsIndex) {
+        return sum(counts -> counts.mcs[mcsIndex]);
+    }
+
+    /**
+     * A-MPDUs made of a number of subframes; {@link #MAX_SUBFRAMES} counts those with as many or more.
+     */
+    public long aggregates(int subframes) {
+        return sum(counts -> counts.aggregateSizes[subframes]);
+    }
+
+    /**
+     * Complete A-MPDUs seen.
+     */
+    public long aggregates() {
+        return sum(counts -> Arrays.stream(counts.aggregateSizes).sum());
+    }
+
+    public long getFrames() {
+        return sum(counts -> counts.frames);
+    }
+
+    public long getFcsErrors() {
+        return sum(counts -> counts.fcsErrors);
+    }
+
+    public long getHtFrames() {
+        return sum(counts -> counts.htFrames);
+    }
+
+    public long getHt40Frames() {
+        return sum(counts -> counts.ht40Frames);
+    }
+
+    public long getShortGuardFrames() {
+        return sum(counts -> counts.shortGuardFrames);
+    }
+
+    /**
+     * Frames sent as subframes of an A-MPDU.
+     */
+    public long getSubframes() {
+        return sum(counts -> counts.subframes);
+    }
+
+    /**
+     * Were any frames with radio information seen?
+     */
+    public boolean isEmpty() {
+        return getFrames() == 0;
+    }
+
+    /**
+     * Add the counts of another capture. A-MPDUs still in progress are not carried over.
+     */
+    public void merge(RadioStats other) {
+        Counts theirs = other.view();
+        synchronized (this) {
+            theirs.addTo(main);
+        }
+    }
+
+    /**
+     * Write the counts, thread counts included, to be read back by {@link #readFrom}.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        Counts counts = view();
+        out.writeLong(counts.frames);
+        out.writeLong(counts.fcsErrors);
+        out.writeLong(counts.htFrames);
+        out.writeLong(counts.ht40Frames);
+        out.writeLong(counts.shortGuardFrames);
+        out.writeLong(counts.subframes);
+        int[] channels = channels(counts);
+        out.writeInt(channels.length);
+        for (int freq : channels) {
+            out.writeShort(freq);
+            out.writeLong(counts.channelPackets[freq]);
+            out.writeLong(counts.channelBytes[freq]);
+            out.writeLong(counts.channelAirtime[freq]);
+        }
+        for (long[] histogram : counts.histograms()) {
+            writeCounts(out, histogram);
+        }
+    }
+
+    /**
+     * Write the non-zero counters of a histogram.
+     */
+    private static void writeCounts(DataOutputStream out, long[] counts) throws IOException {
+        int n = 0;
+        for (long count : counts) {
+            if (count > 0) {
+                n++;
+            }
+        }
+        out.writeShort(n);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                out.writeShort(i);
+                out.writeLong(counts[i]);
+            }
+        }
+    }
+
+    public static RadioStats readFrom(DataInputStream in) throws IOException {
+        RadioStats stats = new RadioStats();
+        Counts counts = stats.main;
+        counts.frames = in.readLong();
+        counts.fcsErrors = in.readLong();
+        counts.htFrames = in.readLong();
+        counts.ht40Frames = in.readLong();
+        counts.shortGuardFrames = in.readLong();
+        counts.subframes = in.readLong();
+        int channels = in.readInt();
+        for (int i = 0; i < channels; i++) {
+            int freq = in.readUnsignedShort();
+            counts.channelPackets[freq] = in.readLong();
+            counts.channelBytes[freq] = in.readLong();
+            counts.channelAirtime[freq] = in.readLong();
+        }
+        for (long[] histogram : counts.histograms()) {
+            int n = in.readUnsignedShort();
+            for (int i = 0; i < n; i++) {
+                histogram[in.readUnsignedShort()] = in.readLong();
+            }
+        }
+        return stats;
+    }
+}
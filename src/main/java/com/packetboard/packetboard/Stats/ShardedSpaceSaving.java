@@ -0,0 +1,122 @@
+package com.packetboard.packetboard.Stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link SpaceSaving} summary fed by many threads at once. Each thread adds to a summary of its own, so the hot path
+ * takes no shared lock, and the thread summaries are merged into the main one with {@link #fold} once the threads
+ * are done. Reads see the main summary merged with copies of the thread summaries, so they are exact (within the
+ * Space-Saving bounds) while threads are still adding.
+ * <p>
+ * The thread summaries share one budget of counters, split evenly between the threads that add (see
+ * {@link #setThreads}), so memory stays bounded however many threads decode. Smaller thread summaries are coarser:
+ * {@link SpaceSaving#errorBound()} of the folded summary reports the bound actually reached.
+ */
+public class ShardedSpaceSaving {
+    private final int capacity;
+    private final int shardsCapacity; // counters shared by the thread summaries
+    private volatile int shardCapacity; // counters of each thread summary
+    private final SpaceSaving main;
+    private final ConcurrentHashMap<Thread, SpaceSaving> shards = new ConcurrentHashMap<>(); // thread: its summary
+
+    /**
+     * @param capacity maximum number of counters held by the main summary, and by all thread summaries together.
+     */
+    public ShardedSpaceSaving(int capacity) {
+        this(new SpaceSaving(capacity));
+    }
+
+    private ShardedSpaceSaving(SpaceSaving main) {
+        this.capacity = main.getCapacity();
+        this.shardsCapacity = capacity;
+        this.shardCapacity = capacity;
+        this.main = main;
+    }
+
+    /**
+     * Summary using about the given amount of heap, half for the main summary and half for the thread summaries.
+     */
+    public static ShardedSpaceSaving ofMemory(long bytes) {
+        return new ShardedSpaceSaving(SpaceSaving.ofMemory(bytes / 2));
+    }
+
+    /**
+     * Split the counters of the thread summaries between this many threads. Call before the threads start adding,
+     * e.g. when a load creates its decoding pool; summaries already started keep their capacity.
+     */
+    public void setThreads(int threads) {
+        shardCapacity = Math.max(1, shardsCapacity / Math.max(1, threads));
+    }
+
+    /**
+     * Add weight to a key, in the summary of the calling thread.
+     */
+    public void add(String key, long weight) {
+        Thread thread = Thread.currentThread();
+        SpaceSaving shard = shards.get(thread);
+        if (shard == null) {
+            shard = shards.computeIfAbsent(thread, t -> new SpaceSaving(shardCapacity));
+        }
+        shard.add(key, weight);
+    }
+
+    /**
+     * Merge the thread summaries into the main one and drop them. Call when no thread is adding, e.g. at the end of
+     * a load.
+     */
+    public void fold() {
+        for (Thread thread : shards.keySet()) {
+            SpaceSaving shard = shards.remove(thread);
+            if (shard != null) {
+                main.merge(shard);
+            }
+        }
+    }
+
+    /**
+     * Heaviest keys, see {@link SpaceSaving#top}.
+     */
+    public List<SpaceSaving.Counter> top(int limit) {
+        return view().top(limit);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Add the keys of another summary to this one, see {@link SpaceSaving#merge}. The other summary is left
+     * unchanged.
+     */
+    public void merge(ShardedSpaceSaving other) {
+        main.merge(other.view());
+    }
+
+    /**
+     * Main summary merged with copies of the thread summaries.
+     */
+    private SpaceSaving view() {
+        if (shards.isEmpty()) {
+            return main;
+        }
+        SpaceSaving view = new SpaceSaving(capacity);
+        view.merge(main);
+        shards.values().forEach(view::merge);
+        return view;
+    }
+
+    /**
+     * Write the summary, thread summaries included, to be read back by {@link #readFrom}.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        view().writeTo(out);
+    }
+
+    public static ShardedSpaceSaving readFrom(DataInputStream in) throws IOException {
+        return new ShardedSpaceSaving(SpaceSaving.readFrom(in));
+    }
+}
@@ -0,0 +1,97 @@
+package com.packetboard.packetboard.Stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Top talkers, remote hosts and TLS server names of the last minute, 5 minutes and hour of a capture, for captures
+ * followed live or read from a stream, where totals since the start say little about the present. The windows end
+ * with the latest packet, so a saved ranking still shows the end of its capture.
+ */
+public class SlidingRankings {
+    public static final long[] WINDOW_MICROS = {60_000_000L, 300_000_000L, 3_600_000_000L};
+    public static final String[] WINDOW_NAMES = {"1 min", "5 min", "1 h"};
+    private static final int SLOTS = 12; // Intervals per window: 5 s, 25 s and 5 min.
+    private static final int CAPACITY = 256; // Counters per interval.
+
+    private final WindowedTopK[] talkers = windows(); // Local IPs by bytes
+    private final WindowedTopK[] remoteHosts = windows(); // Non-local IPs by bytes
+    private final WindowedTopK[] serverNames = windows(); // SNIs by Client Hellos
+
+    private static WindowedTopK[] windows() {
+        WindowedTopK[] windows = new WindowedTopK[WINDOW_MICROS.length];
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = new WindowedTopK(WINDOW_MICROS[i], SLOTS, CAPACITY);
+        }
+        return windows;
+    }
+
+    /**
+     * Count the bytes of a packet for one of its endpoints.
+     *
+     * @param local is the IP on the local network?
+     */
+    public void addHost(long tsMicros, String ip, boolean local, int size) {
+        for (WindowedTopK window : local ? talkers : remoteHosts) {
+            window.add(tsMicros, ip, size);
+        }
+    }
+
+    /**
+     * Count a Client Hello for a server name.
+     */
+    public void addServerName(long tsMicros, String serverName) {
+        for (WindowedTopK window : serverNames) {
+            window.add(tsMicros, serverName, 1);
+        }
+    }
+
+    /**
+     * @param window index in {@link #WINDOW_MICROS}.
+     */
+    public List<SpaceSaving.Counter> topTalkers(int window, int limit) {
+        return talkers[window].top(limit);
+    }
+
+    public List<SpaceSaving.Counter> topRemoteHosts(int window, int limit) {
+        return remoteHosts[window].top(limit);
+    }
+
+    public List<SpaceSaving.Counter> topServerNames(int window, int limit) {
+        return serverNames[window].top(limit);
+    }
+
+    /**
+     * Add the rankings of another capture, see {@link WindowedTopK#merge}.
+     */
+    public void merge(SlidingRankings other) {
+        for (int i = 0; i < WINDOW_MICROS.length; i++) {
+            talkers[i].merge(other.talkers[i]);
+            remoteHosts[i].merge(other.remoteHosts[i]);
+            serverNames[i].merge(other.serverNames[i]);
+        }
+    }
+
+    /**
+     * Write the rankings, to be read back by {@link #readFrom}.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        for (int i = 0; i < WINDOW_MICROS.length; i++) {
+            talkers[i].writeTo(out);
+            remoteHosts[i].writeTo(out);
+            serverNames[i].writeTo(out);
+        }
+    }
+
+    public static SlidingRankings readFrom(DataInputStream in) throws IOException {
+        SlidingRankings rankings = new SlidingRankings();
+        for (int i = 0; i < WINDOW_MICROS.length; i++) {
+            rankings.talkers[i] = WindowedTopK.readFrom(in);
+            rankings.remoteHosts[i] = WindowedTopK.readFrom(in);
+            rankings.serverNames[i] = WindowedTopK.readFrom(in);
+        }
+        return rankings;
+    }
+}
@@ -0,0 +1,208 @@
+package com.packetboard.packetboard.Stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving summary of the heaviest keys of a weighted stream, holding at most a fixed number of counters.
+ * <p>
+ * When the summary is full, a new key takes over the counter with the smallest count and inherits that count as its
+ * error. So every count is an overestimate by at most its {@link Counter#error()}, which is itself at most
+ * {@link #errorBound()} (total weight / capacity), and every key heavier than that bound is guaranteed to be held.
+ * Summaries merge with the same guarantees (Agarwal et al., Mergeable Summaries).
+ */
+public class SpaceSaving {
+    public static final int ENTRY_BYTES = 160; // Rough heap cost of one counter with an IP key, for memory budgets.
+
+    private final int capacity;
+    private final HashMap<String, Counter> counters = new HashMap<>(); // key: counter
+    private final TreeSet<Counter> byCount = new TreeSet<>(Comparator.comparingLong(Counter::count).thenComparing(Counter::key));
+    private long total;
+
+    /**
+     * Count of one key.
+     */
+    public static final class Counter {
+        private final String key;
+        private long count;
+        private long error;
+
+        Counter(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String key() { return key; }
+
+        /**
+         * Estimated weight of the key, never below the true weight.
+         */
+        public long count() { return count; }
+
+        /**
+         * Maximum overestimate of {@link #count()}.
+         */
+        public long error() { return error; }
+
+        /**
+         * Weight the key is guaranteed to have.
+         */
+        public long guaranteed() { return count - error; }
+    }
+
+    /**
+     * @param capacity maximum number of counters held.
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Summary using about the given amount of heap.
+     */
+    public static SpaceSaving ofMemory(long bytes) {
+        return new SpaceSaving((int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes / ENTRY_BYTES)));
+    }
+
+    /**
+     * Add weight to a key.
+     */
+    public synchronized void add(String key, long weight) {
+        total += weight;
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            byCount.remove(counter);
+            counter.count += weight;
+            byCount.add(counter);
+            return;
+        }
+        if (counters.size() < capacity) {
+            counter = new Counter(key, weight, 0);
+        } else {
+            // Take over the smallest counter.
+            Counter smallest = byCount.pollFirst();
+            counters.remove(smallest.key);
+            counter = new Counter(key, smallest.count + weight, smallest.count);
+        }
+        counters.put(key, counter);
+        byCount.add(counter);
+    }
+
+    /**
+     * Heaviest keys.
+     *
+     * @param limit maximum entries returned.
+     * @return copies of the counters, highest count first.
+     */
+    public synchronized List<Counter> top(int limit) {
+        ArrayList<Counter> top = new ArrayList<>(Math.min(limit, counters.size()));
+        for (Counter counter : byCount.descendingSet()) {
+            if (top.size() == limit) {
+                break;
+            }
+            top.add(new Counter(counter.key, counter.count, counter.error));
+        }
+        return top;
+    }
+
+    /**
+     * Estimated weight of a key, 0 if it is not held (its weight is then at most {@link #errorBound()}).
+     */
+    public synchronized long count(String key) {
+        Counter counter = counters.get(key);
+        return counter == null ? 0 : counter.count;
+    }
+
+    /**
+     * Maximum overestimate of any count, and maximum weight of any key not held.
+     */
+    public synchronized long errorBound() {
+        return counters.size() < capacity ? 0 : byCount.first().count;
+    }
+
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    public synchronized int size() {
+        return counters.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Add the keys of another summary to this one. The other summary is left unchanged; the capacity of this one is
+     * kept.
+     */
+    public void merge(SpaceSaving other) {
+        HashMap<String, Counter> theirs = new HashMap<>();
+        long theirMin;
+        long theirTotal;
+        synchronized (other) {
+            other.counters.forEach((key, counter) -> theirs.put(key, new Counter(key, counter.count, counter.error)));
+            theirMin = other.errorBound();
+            theirTotal = other.total;
+        }
+        synchronized (this) {
+            long ourMin = errorBound();
+            // A key missing from one side may have had up to that side's smallest count there.
+            HashMap<String, Counter> merged = new HashMap<>();
+            for (Counter counter : counters.values()) {
+                Counter their = theirs.remove(counter.key);
+                long count = their == null ? theirMin : their.count;
+                long error = their == null ? theirMin : their.error;
+                merged.put(counter.key, new Counter(counter.key, counter.count + count, counter.error + error));
+            }
+            for (Counter their : theirs.values()) {
+                merged.put(their.key, new Counter(their.key, their.count + ourMin, their.error + ourMin));
+            }
+            ArrayList<Counter> ranked = new ArrayList<>(merged.values());
+            ranked.sort(Comparator.comparingLong(Counter::count).reversed());
+            counters.clear();
+            byCount.clear();
+            for (Counter counter : ranked.subList(0, Math.min(capacity, ranked.size()))) {
+                counters.put(counter.key, counter);
+                byCount.add(counter);
+            }
+            total += theirTotal;
+        }
+    }
+
+    /**
+     * Write the summary, to be read back by {@link #readFrom}.
+     */
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(capacity);
+        out.writeLong(total);
+        out.writeInt(counters.size());
+        for (Counter counter : byCount) {
+            out.writeUTF(counter.key);
+            out.writeLong(counter.count);
+            out.writeLong(counter.error);
+        }
+    }
+
+    public static SpaceSaving readFrom(DataInputStream in) throws IOException {
+        SpaceSaving summary = new SpaceSaving(in.readInt());
+        summary.total = in.readLong();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            Counter counter = new Counter(in.readUTF(), in.readLong(), in.readLong());
+            summary.counters.put(counter.key, counter);
+            summary.byCount.add(counter);
+        }
+        return summary;
+    }
+}
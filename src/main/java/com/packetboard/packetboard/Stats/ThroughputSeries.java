@@ -0,0 +1,249 @@
+package com.packetboard.packetboard.Stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bytes and packets over time, broken down by IP version, transport protocol and talker.
+ * <p>
+ * Only the {@value #MAX_TRACKED_HOSTS} heaviest talkers have a series of their own. Talkers without one are counted in
+ * a count-min sketch; once the estimate of one exceeds the bytes of the lightest tracked talker, it takes that
+ * talker's place. Its series then starts where it was admitted, so the early traffic of a talker that only becomes
+ * heavy later in a capture is missing from it (but not from the totals).
+ */
+public class ThroughputSeries {
+    public static final int PACKETS = 0;
+    public static final int BYTES = 1;
+    public static final int IPV4 = 2; // bytes
+    public static final int IPV6 = 3; // bytes
+    public static final int TCP = 4; // bytes
+    public static final int UDP = 5; // bytes
+    public static final int ICMP = 6; // bytes
+    public static final int OTHER = 7; // bytes
+    public static final String[] COLUMN_NAMES = {"Packets", "Total", "IPv4", "IPv6", "TCP", "UDP", "ICMP", "Other"};
+
+    /**
+     * Talkers with their own series. Hosts beyond this are only counted in the totals.
+     */
+    public static final int MAX_TRACKED_HOSTS = 64;
+    private static final int SKETCH_ROWS = 4;
+    private static final int SKETCH_WIDTH = 1024; // Counters per row, a power of two
+
+    private final long intervalMicros;
+    private final TimeSeries totals;
+    private final ConcurrentHashMap<String, Talker> talkers = new ConcurrentHashMap<>(); // IP: bytes over time
+    private final AtomicLongArray untracked = new AtomicLongArray(SKETCH_ROWS * SKETCH_WIDTH); // Other talkers: bytes
+    private volatile long admission = 0; // Bytes of the lightest tracked talker when last looked, a lower bound
+
+    /**
+     * Series of a tracked talker, with its bytes so far.
+     */
+    private static final class Talker {
+        final TimeSeries series;
+        final LongAdder bytes = new LongAdder();
+
+        Talker(TimeSeries series, long bytes) {
+            this.series = series;
+            this.bytes.add(bytes);
+        }
+    }
+
+    /**
+     * @param intervalMicros bucket width, between 1 ms and 1 h.
+     */
+    public ThroughputSeries(long intervalMicros) {
+        this(new TimeSeries(intervalMicros, COLUMN_NAMES.length));
+    }
+
+    private ThroughputSeries(TimeSeries totals) {
+        this.intervalMicros = totals.getIntervalMicros();
+        this.totals = totals;
+    }
+
+    /**
+     * Count a packet.
+     *
+     * @param tsMicros packet timestamp, microseconds since the epoch.
+     * @param ipv6     IPv6 rather than IPv4?
+     * @param protocol IP protocol number of the payload.
+     * @param size     size of the packet as described in IP header.
+     */
+    public void add(long tsMicros, boolean ipv6, int protocol, int size) {
+        totals.add(tsMicros, PACKETS, 1);
+        totals.add(tsMicros, BYTES, size);
+        totals.add(tsMicros, ipv6 ? IPV6 : IPV4, size);
+        int column = switch (protocol) {
+            case 6 -> TCP;
+            case 17 -> UDP;
+            case 1, 58 -> ICMP;
+            default -> OTHER;
+        };
+        totals.add(tsMicros, column, size);
+    }
+
+    /**
+     * Count the bytes of a packet for one talker.
+     */
+    public void addTalker(long tsMicros, String ip, int size) {
+        Talker talker = talkers.get(ip);
+        if (talker == null) {
+            long estimate = -1; // Not in the sketch yet
+            if (talkers.size() >= MAX_TRACKED_HOSTS) {
+                estimate = addUntracked(ip, size);
+                if (estimate <= admission) {
+                    return;
+                }
+            }
+            talker = admit(ip, estimate, size);
+            if (talker == null) {
+                return;
+            }
+        }
+        talker.series.add(tsMicros, 0, size);
+        talker.bytes.add(size);
+    }
+
+    /**
+     * Count the bytes of a talker without a series in the sketch.
+     *
+     * @return the estimated bytes of the talker so far, never below the true count.
+     */
+    private long addUntracked(String ip, long size) {
+        long hash = HyperLogLog.mix(ip.hashCode());
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < SKETCH_ROWS; row++) {
+            int column = (int) (hash >>> (16 * row)) & (SKETCH_WIDTH - 1);
+            estimate = Math.min(estimate, untracked.addAndGet(row * SKETCH_WIDTH + column, size));
+        }
+        return estimate;
+    }
+
+    /**
+     * Give a talker a series, evicting the lightest tracked talker if it is heavier than that one. The packet being
+     * counted is left to the caller: it is in the sketch if the talker is not admitted, and not yet in the series.
+     *
+     * @param estimate estimated bytes of the talker so far with the packet, or -1 if it was not added to the sketch.
+     * @param size     bytes of the packet being counted.
+     * @return the series, or null if the talker is not heavy enough.
+     */
+    private synchronized Talker admit(String ip, long estimate, int size) {
+        Talker talker = talkers.get(ip);
+        if (talker != null) {
+            return talker;
+        }
+        if (talkers.size() >= MAX_TRACKED_HOSTS) {
+            if (estimate < 0) {
+                // The table filled up since the caller looked.
+                estimate = addUntracked(ip, size);
+            }
+            Map.Entry<String, Talker> lightest = null;
+            for (Map.Entry<String, Talker> entry : talkers.entrySet()) {
+                if (lightest == null || entry.getValue().bytes.sum() < lightest.getValue().bytes.sum()) {
+                    lightest = entry;
+                }
+            }
+            long lightestBytes = lightest.getValue().bytes.sum();
+            if (estimate <= lightestBytes) {
+                admission = lightestBytes;
+                return null;
+            }
+            talkers.remove(lightest.getKey());
+            // The evicted talker keeps its weight, should it come back.
+            addUntracked(lightest.getKey(), lightestBytes);
+        }
+        talker = new Talker(new TimeSeries(intervalMicros, 1), Math.max(0, estimate - size));
+        talkers.put(ip, talker);
+        return talker;
+    }
+
+    /**
+     * Sum a column over steps of a time range, see {@link TimeSeries#query}.
+     */
+    public long[] query(int column, long fromMicros, long toMicros, long stepMicros) {
+        return totals.query(column, fromMicros, toMicros, stepMicros);
+    }
+
+    /**
+     * Bytes of one talker over steps of a time range.
+     *
+     * @return one sum per step, or null if the talker has no series of its own.
+     */
+    public long[] queryTalker(String ip, long fromMicros, long toMicros, long stepMicros) {
+        Talker talker = talkers.get(ip);
+        return talker == null ? null : talker.series.query(0, fromMicros, toMicros, stepMicros);
+    }
+
+    public long getIntervalMicros() {
+        return intervalMicros;
+    }
+
+    public long getStartMicros() {
+        return totals.getStartMicros();
+    }
+
+    public long getEndMicros() {
+        return totals.getEndMicros();
+    }
+
+    public boolean isEmpty() {
+        return totals.isEmpty();
+    }
+
+    /**
+     * Add the series of another capture with the same interval. The heaviest {@value #MAX_TRACKED_HOSTS} talkers of
+     * both keep their series.
+     */
+    public synchronized void merge(ThroughputSeries other) {
+        totals.merge(other.totals);
+        for (int i = 0; i < untracked.length(); i++) {
+            untracked.addAndGet(i, other.untracked.get(i));
+        }
+        for (Map.Entry<String, Talker> theirs : other.talkers.entrySet()) {
+            Talker ours = talkers.computeIfAbsent(theirs.getKey(),
+                    k -> new Talker(new TimeSeries(intervalMicros, 1), 0));
+            ours.series.merge(theirs.getValue().series);
+            ours.bytes.add(theirs.getValue().bytes.sum());
+        }
+        if (talkers.size() > MAX_TRACKED_HOSTS) {
+            ArrayList<Map.Entry<String, Talker>> byBytes = new ArrayList<>(talkers.entrySet());
+            byBytes.sort(Comparator.comparingLong(entry -> -entry.getValue().bytes.sum()));
+            for (Map.Entry<String, Talker> evicted : byBytes.subList(MAX_TRACKED_HOSTS, byBytes.size())) {
+                talkers.remove(evicted.getKey());
+                addUntracked(evicted.getKey(), evicted.getValue().bytes.sum());
+            }
+        }
+        admission = 0;
+    }
+
+    /**
+     * Write the series for {@link #readFrom}. Not safe while packets are still being added.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        totals.writeTo(out);
+        out.writeInt(talkers.size());
+        for (Map.Entry<String, Talker> talker : talkers.entrySet()) {
+            out.writeUTF(talker.getKey());
+            talker.getValue().series.writeTo(out);
+        }
+    }
+
+    public static ThroughputSeries readFrom(DataInputStream in) throws IOException {
+        ThroughputSeries series = new ThroughputSeries(TimeSeries.readFrom(in));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String ip = in.readUTF();
+            TimeSeries talker = TimeSeries.readFrom(in);
+            long[] bytes = talker.query(0, talker.getStartMicros(), talker.getEndMicros(),
+                    talker.getEndMicros() - talker.getStartMicros());
+            series.talkers.put(ip, new Talker(talker, bytes.length == 0 ? 0 : bytes[0]));
+        }
+        return series;
+    }
+}
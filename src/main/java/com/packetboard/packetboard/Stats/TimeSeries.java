@@ -0,0 +1,212 @@
+package com.packetboard.packetboard.Stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counters bucketed by packet timestamp.
+ * <p>
+ * Buckets are grouped in chunks of {@value #CHUNK_BUCKETS}, with one primitive array per column. Chunks are only
+ * allocated where the capture has packets, and their columns only once something is counted in them, so a multi-day
+ * capture with gaps, or a column that stays empty, stays compact. Any time range can be queried again at a coarser step without re-reading the capture.
+ */
+public class TimeSeries {
+    public static final long MIN_INTERVAL_MICROS = 1_000L; // 1 ms
+    public static final long MAX_INTERVAL_MICROS = 3_600_000_000L; // 1 h
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_BUCKETS = 1 << CHUNK_SHIFT;
+
+    private final long intervalMicros;
+    private final int columns;
+    private final ConcurrentHashMap<Long, Chunk> chunks = new ConcurrentHashMap<>(); // chunk index: chunk
+    private final AtomicLong firstBucket = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong lastBucket = new AtomicLong(Long.MIN_VALUE);
+    private volatile Chunk lastChunk; // Packets mostly arrive in time order, skip the map lookup.
+
+    private static final class Chunk {
+        final long index;
+        final AtomicReferenceArray<AtomicLongArray> columns; // column: bucket in chunk, null while empty
+
+        Chunk(long index, int columns) {
+            this.index = index;
+            this.columns = new AtomicReferenceArray<>(columns);
+        }
+
+        /**
+         * Buckets of a column, allocated on first use.
+         */
+        AtomicLongArray column(int column) {
+            AtomicLongArray values = columns.get(column);
+            if (values == null) {
+                columns.compareAndSet(column, null, new AtomicLongArray(CHUNK_BUCKETS));
+                values = columns.get(column);
+            }
+            return values;
+        }
+    }
+
+    /**
+     * @param intervalMicros bucket width, between 1 ms and 1 h.
+     * @param columns        number of counters per bucket.
+     */
+    public TimeSeries(long intervalMicros, int columns) {
+        if (intervalMicros < MIN_INTERVAL_MICROS || intervalMicros > MAX_INTERVAL_MICROS) {
+            throw new IllegalArgumentException("Interval must be between 1 ms and 1 h, got " + intervalMicros + " us");
+        }
+        this.intervalMicros = intervalMicros;
+        this.columns = columns;
+    }
+
+    /**
+     * Add to a counter of the bucket holding the timestamp.
+     *
+     * @param tsMicros packet timestamp, microseconds since the epoch.
+     * @param column   counter index.
+     * @param value    amount to add.
+     */
+    public void add(long tsMicros, int column, long value) {
+        long bucket = Math.floorDiv(tsMicros, intervalMicros);
+        long index = bucket >> CHUNK_SHIFT;
+        Chunk chunk = lastChunk;
+        if (chunk == null || chunk.index != index) {
+            chunk = chunks.computeIfAbsent(index, i -> new Chunk(i, columns));
+            lastChunk = chunk;
+        }
+        chunk.column(column).addAndGet((int) (bucket & (CHUNK_BUCKETS - 1)), value);
+        if (bucket < firstBucket.get()) {
+            firstBucket.accumulateAndGet(bucket, Math::min);
+        }
+        if (bucket > lastBucket.get()) {
+            lastBucket.accumulateAndGet(bucket, Math::max);
+        }
+    }
+
+    /**
+     * Sum a counter over steps of a time range.
+     *
+     * @param column     counter index.
+     * @param fromMicros start of the range (inclusive).
+     * @param toMicros   end of the range (exclusive).
+     * @param stepMicros width of each returned point, rounded up to a whole number of buckets.
+     * @return one sum per step.
+     */
+    public long[] query(int column, long fromMicros, long toMicros, long stepMicros) {
+        long bucketsPerStep = Math.max(1, (stepMicros + intervalMicros - 1) / intervalMicros);
+        long from = Math.floorDiv(fromMicros, intervalMicros);
+        long to = Math.floorDiv(toMicros - 1, intervalMicros);
+        int steps = (int) Math.max(0, (to - from) / bucketsPerStep + 1);
+        long[] out = new long[steps];
+        long bucket = from;
+        while (bucket <= to) {
+            long index = bucket >> CHUNK_SHIFT;
+            long chunkEnd = Math.min(to, ((index + 1) << CHUNK_SHIFT) - 1);
+            Chunk chunk = chunks.get(index);
+            AtomicLongArray values = chunk == null ? null : chunk.columns.get(column);
+            if (values != null) {
+                for (long b = bucket; b <= chunkEnd; b++) {
+                    out[(int) ((b - from) / bucketsPerStep)] += values.get((int) (b & (CHUNK_BUCKETS - 1)));
+                }
+            }
+            bucket = chunkEnd + 1;
+        }
+        return out;
+    }
+
+    public long getIntervalMicros() {
+        return intervalMicros;
+    }
+
+    /**
+     * Start of the first non-empty bucket, or 0 if the series is empty.
+     */
+    public long getStartMicros() {
+        long first = firstBucket.get();
+        return first == Long.MAX_VALUE ? 0 : first * intervalMicros;
+    }
+
+    /**
+     * End of the last non-empty bucket, or 0 if the series is empty.
+     */
+    public long getEndMicros() {
+        long last = lastBucket.get();
+        return last == Long.MIN_VALUE ? 0 : (last + 1) * intervalMicros;
+    }
+
+    public boolean isEmpty() {
+        return firstBucket.get() == Long.MAX_VALUE;
+    }
+
+    /**
+     * Add the counters of another series with the same interval and columns.
+     */
+    public void merge(TimeSeries other) {
+        if (other.intervalMicros != intervalMicros || other.columns != columns) {
+            throw new IllegalArgumentException("Cannot merge series of different interval or columns");
+        }
+        for (Chunk theirs : other.chunks.values()) {
+            Chunk ours = chunks.computeIfAbsent(theirs.index, i -> new Chunk(i, columns));
+            for (int column = 0; column < columns; column++) {
+                AtomicLongArray values = theirs.columns.get(column);
+                if (values == null) {
+                    continue;
+                }
+                AtomicLongArray into = ours.column(column);
+                for (int i = 0; i < CHUNK_BUCKETS; i++) {
+                    long value = values.get(i);
+                    if (value != 0) {
+                        into.addAndGet(i, value);
+                    }
+                }
+            }
+        }
+        firstBucket.accumulateAndGet(other.firstBucket.get(), Math::min);
+        lastBucket.accumulateAndGet(other.lastBucket.get(), Math::max);
+    }
+
+    /**
+     * Write the series for {@link #readFrom}. Not safe while packets are still being added.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(intervalMicros);
+        out.writeInt(columns);
+        out.writeLong(firstBucket.get());
+        out.writeLong(lastBucket.get());
+        out.writeInt(chunks.size());
+        for (Chunk chunk : chunks.values()) {
+            out.writeLong(chunk.index);
+            for (int column = 0; column < columns; column++) {
+                AtomicLongArray values = chunk.columns.get(column);
+                out.writeBoolean(values != null);
+                for (int i = 0; values != null && i < CHUNK_BUCKETS; i++) {
+                    out.writeLong(values.get(i));
+                }
+            }
+        }
+    }
+
+    public static TimeSeries readFrom(DataInputStream in) throws IOException {
+        TimeSeries series = new TimeSeries(in.readLong(), in.readInt());
+        series.firstBucket.set(in.readLong());
+        series.lastBucket.set(in.readLong());
+        int count = in.readInt();
+        for (int c = 0; c < count; c++) {
+            Chunk chunk = new Chunk(in.readLong(), series.columns);
+            for (int column = 0; column < series.columns; column++) {
+                if (!in.readBoolean()) {
+                    continue;
+                }
+                AtomicLongArray values = chunk.column(column);
+                for (int i = 0; i < CHUNK_BUCKETS; i++) {
+                    values.set(i, in.readLong());
+                }
+            }
+            series.chunks.put(chunk.index, chunk);
+        }
+        return series;
+    }
+}
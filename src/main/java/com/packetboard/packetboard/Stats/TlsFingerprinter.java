@@ -0,0 +1,337 @@
+package com.packetboard.packetboard.Stats;
+
+import com.packetboard.packetboard.Parser.TlsClientHello;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Computes JA3 and JA4 fingerprints of a parsed TLS Client Hello.
+ * <p>
+ * All intermediate lists, text and digests live in a per-thread scratch area, so hashing a Client Hello does not
+ * allocate unless the fingerprint has never been seen by the {@link FingerprintTable}.
+ *
+ * @see <a href="https://github.com/salesforce/ja3">JA3</a>
+ * @see <a href="https://github.com/FoxIO-LLC/ja4">JA4</a>
+ */
+public final class TlsFingerprinter {
+    private static final int EXT_SERVER_NAME = 0;
+    private static final int EXT_SUPPORTED_GROUPS = 10;
+    private static final int EXT_EC_POINT_FORMATS = 11;
+    private static final int EXT_SIGNATURE_ALGORITHMS = 13;
+    private static final int EXT_ALPN = 16;
+    private static final int EXT_SUPPORTED_VERSIONS = 43;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private TlsFingerprinter() {
+    }
+
+    /**
+     * Per-thread working memory.
+     */
+    private static final class Scratch {
+        int[] ciphers = new int[128];
+        int nCiphers;
+        int[] extensions = new int[64];
+        int nExtensions;
+        int[] groups = new int[64];
+        int nGroups;
+        int[] pointFormats = new int[16];
+        int nPointFormats;
+        int[] sigAlgs = new int[64];
+        int nSigAlgs;
+        int version;
+        boolean hasSni;
+        byte alpnFirst, alpnLast;
+        boolean hasAlpn;
+
+        byte[] text = new byte[1024];
+        int textLen;
+        final byte[] md5Out = new byte[16];
+        final byte[] sha256Out = new byte[32];
+        final byte[] ja4b = new byte[6];
+        final byte[] ja4c = new byte[6];
+        final byte[] ja4a = new byte[10];
+        final MessageDigest md5;
+        final MessageDigest sha256;
+
+        Scratch() {
+            try {
+                md5 = MessageDigest.getInstance("MD5");
+                sha256 = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("MD5/SHA-256 not available", e);
+            }
+        }
+
+        void reset() {
+            nCiphers = nExtensions = nGroups = nPointFormats = nSigAlgs = 0;
+            version = 0;
+            hasSni = hasAlpn = false;
+            alpnFirst = alpnLast = 0;
+            textLen = 0;
+        }
+
+        void put(byte b) {
+            if (textLen == text.length) {
+                text = Arrays.copyOf(text, text.length * 2);
+            }
+            text[textLen++] = b;
+        }
+
+        void putDecimal(int v) {
+            if (v >= 10) {
+                putDecimal(v / 10);
+            }
+            put((byte) ('0' + v % 10));
+        }
+
+        void putHex4(int v) {
+            put(HEX[(v >> 12) & 0xf]);
+            put(HEX[(v >> 8) & 0xf]);
+            put(HEX[(v >> 4) & 0xf]);
+            put(HEX[v & 0xf]);
+        }
+
+        void putDecimalList(int[] values, int n) {
+            for (int i = 0; i < n; i++) {
+                if (i > 0) {
+                    put((byte) '-');
+                }
+                putDecimal(values[i]);
+            }
+        }
+
+        void putHexList(int[] values, int n) {
+            for (int i = 0; i < n; i++) {
+                if (i > 0) {
+                    put((byte) ',');
+                }
+                putHex4(values[i]);
+            }
+        }
+    }
+
+    /**
+     * GREASE values (RFC 8701) are random placeholders and must be ignored by fingerprints.
+     */
+    public static boolean isGrease(int value) {
+        return (value & 0x0f0f) == 0x0a0a && (value >> 8) == (value & 0xff);
+    }
+
+    /**
+     * Fingerprint a Client Hello and count it in the table.
+     *
+     * @param hello  parsed Client Hello (starting at the client version field).
+     * @param quic   was the hello carried by QUIC rather than TCP?
+     * @param table  fingerprint table.
+     * @param host   source host of the hello.
+     * @param flow   flow id of the hello, or -1 if unknown.
+     * @return interned fingerprint id.
+     */
+    public static int fingerprint(TlsClientHello hello, boolean quic, FingerprintTable table, String host, int flow) {
+        Scratch s = SCRATCH.get();
+        collect(hello, s);
+
+        // JA3: SSLVersion,Ciphers,Extensions,EllipticCurves,EllipticCurvePointFormats
+        int legacyVersion = (hello.version().major() << 8) | hello.version().minor();
+        s.textLen = 0;
+        s.putDecimal(legacyVersion);
+        s.put((byte) ',');
+        s.putDecimalList(s.ciphers, s.nCiphers);
+        s.put((byte) ',');
+        s.putDecimalList(s.extensions, s.nExtensions);
+        s.put((byte) ',');
+        s.putDecimalList(s.groups, s.nGroups);
+        s.put((byte) ',');
+        s.putDecimalList(s.pointFormats, s.nPointFormats);
+        s.md5.update(s.text, 0, s.textLen);
+        digestInto(s.md5, s.md5Out);
+
+        // JA4_a: protocol, version, SNI, cipher count, extension count, ALPN
+        int version = s.version != 0 ? s.version : legacyVersion;
+        byte[] a = s.ja4a;
+        a[0] = (byte) (quic ? 'q' : 't');
+        switch (version) {
+            case 0x0304 -> { a[1] = '1'; a[2] = '3'; }
+            case 0x0303 -> { a[1] = '1'; a[2] = '2'; }
+            case 0x0302 -> { a[1] = '1'; a[2] = '1'; }
+            case 0x0301 -> { a[1] = '1'; a[2] = '0'; }
+            case 0x0300 -> { a[1] = 's'; a[2] = '3'; }
+            default -> { a[1] = '0'; a[2] = '0'; }
+        }
+        a[3] = (byte) (s.hasSni ? 'd' : 'i');
+        int nc = Math.min(s.nCiphers, 99);
+        int ne = Math.min(s.nExtensions, 99);
+        a[4] = (byte) ('0' + nc / 10);
+        a[5] = (byte) ('0' + nc % 10);
+        a[6] = (byte) ('0' + ne / 10);
+        a[7] = (byte) ('0' + ne % 10);
+        if (!s.hasAlpn) {
+            a[8] = '0';
+            a[9] = '0';
+        } else if (isAlnum(s.alpnFirst) && isAlnum(s.alpnLast)) {
+            a[8] = s.alpnFirst;
+            a[9] = s.alpnLast;
+        } else {
+            a[8] = HEX[(s.alpnFirst >> 4) & 0xf];
+            a[9] = HEX[s.alpnLast & 0xf];
+        }
+
+        // JA4_b: sorted cipher suites
+        Arrays.sort(s.ciphers, 0, s.nCiphers);
+        truncatedSha256(s, s.ciphers, s.nCiphers, null, 0, s.ja4b);
+
+        // JA4_c: sorted extensions without SNI and ALPN, then signature algorithms in original order
+        int n = 0;
+        for (int i = 0; i < s.nExtensions; i++) {
+            int ext = s.extensions[i];
+            if (ext != EXT_SERVER_NAME && ext != EXT_ALPN) {
+                s.extensions[n++] = ext;
+            }
+        }
+        Arrays.sort(s.extensions, 0, n);
+        truncatedSha256(s, s.extensions, n, s.sigAlgs, s.nSigAlgs, s.ja4c);
+
+        long key = mix(s.md5Out) ^ ((mix(s.ja4b) * 31 + mix(s.ja4c)) * 31 + mix(a));
+        return table.record(key, host, flow, s.md5Out, a, s.ja4b, s.ja4c);
+    }
+
+    /**
+     * Gather the non-GREASE fields of the hello into the scratch area.
+     */
+    private static void collect(TlsClientHello hello, Scratch s) {
+        s.reset();
+        ArrayList<Integer> ciphers = hello.cipherSuites().cipherSuites();
+        for (int i = 0; i < ciphers.size(); i++) {
+            int cipher = ciphers.get(i);
+            if (!isGrease(cipher)) {
+                s.ciphers = append(s.ciphers, s.nCiphers++, cipher);
+            }
+        }
+        if (hello.extensions() == null) {
+            return;
+        }
+        for (TlsClientHello.Extension ext : hello.extensions().extensions()) {
+            int type = ext.type();
+            if (isGrease(type)) {
+                continue;
+            }
+            s.extensions = append(s.extensions, s.nExtensions++, type);
+            switch (type) {
+                case EXT_SERVER_NAME -> s.hasSni = true;
+                case EXT_ALPN -> {
+                    var alpn = (TlsClientHello.Alpn) ext.body();
+                    if (!alpn.alpnProtocols().isEmpty()) {
+                        byte[] name = alpn.alpnProtocols().get(0).name();
+                        if (name.length > 0) {
+                            s.hasAlpn = true;
+                            s.alpnFirst = name[0];
+                            s.alpnLast = name[name.length - 1];
+                        }
+                    }
+                }
+                case EXT_SUPPORTED_GROUPS -> {
+                    byte[] body = (byte[]) ext.body();
+                    for (int i = 2; i + 1 < body.length; i += 2) {
+                        int group = u2(body, i);
+                        if (!isGrease(group)) {
+                            s.groups = append(s.groups, s.nGroups++, group);
+                        }
+                    }
+                }
+                case EXT_EC_POINT_FORMATS -> {
+                    byte[] body = (byte[]) ext.body();
+                    for (int i = 1; i < body.length; i++) {
+                        s.pointFormats = append(s.pointFormats, s.nPointFormats++, body[i] & 0xff);
+                    }
+                }
+                case EXT_SIGNATURE_ALGORITHMS -> {
+                    byte[] body = (byte[]) ext.body();
+                    for (int i = 2; i + 1 < body.length; i += 2) {
+                        int alg = u2(body, i);
+                        if (!isGrease(alg)) {
+                            s.sigAlgs = append(s.sigAlgs, s.nSigAlgs++, alg);
+                        }
+                    }
+                }
+                case EXT_SUPPORTED_VERSIONS -> {
+                    byte[] body = (byte[]) ext.body();
+                    for (int i = 1; i + 1 < body.length; i += 2) {
+                        int v = u2(body, i);
+                        if (!isGrease(v) && v > s.version) {
+                            s.version = v;
+                        }
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    private static void truncatedSha256(Scratch s, int[] first, int nFirst, int[] second, int nSecond, byte[] out) {
+        if (nFirst == 0) {
+            Arrays.fill(out, (byte) 0);
+            return;
+        }
+        s.textLen = 0;
+        s.putHexList(first, nFirst);
+        if (nSecond > 0) {
+            s.put((byte) '_');
+            s.putHexList(second, nSecond);
+        }
+        s.sha256.update(s.text, 0, s.textLen);
+        digestInto(s.sha256, s.sha256Out);
+        System.arraycopy(s.sha256Out, 0, out, 0, out.length);
+    }
+
+    private static void digestInto(MessageDigest digest, byte[] out) {
+        try {
+            digest.digest(out, 0, out.length);
+        } catch (java.security.DigestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int[] append(int[] values, int index, int value) {
+        if (index == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[index] = value;
+        return values;
+    }
+
+    private static int u2(byte[] b, int i) {
+        return ((b[i] & 0xff) << 8) | (b[i + 1] & 0xff);
+    }
+
+    private static boolean isAlnum(byte b) {
+        return (b >= '0' && b <= '9') || (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    private static long mix(byte[] b) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < b.length; i++) {
+            h = (h ^ (b[i] & 0xff)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Lower-case hex of the given bytes.
+     */
+    static String hex(byte[] b) {
+        char[] out = new char[b.length * 2];
+        for (int i = 0; i < b.length; i++) {
+            out[i * 2] = (char) HEX[(b[i] >> 4) & 0xf];
+            out[i * 2 + 1] = (char) HEX[b[i] & 0xf];
+        }
+        return new String(out);
+    }
+}
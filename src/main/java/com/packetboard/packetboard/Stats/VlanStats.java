@@ -0,0 +1,267 @@
+package com.packetboard.packetboard.Stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToLongFunction;
+
+/**
+ * Traffic per 802.1Q VLAN: packets, bytes, top talkers and the priority (PCP) distribution.
+ * <p>
+ * Counters are dense arrays indexed by VLAN ID. Each thread counts frames into arrays of its own, found through a
+ * thread local and registered on its first frame, with plain increments: counting a frame takes no atomic operation
+ * or map lookup and threads do not contend on the untagged counter. {@link #fold} adds the thread counts into the
+ * main ones once the threads are done. Reads add up the main and
+ * thread counts, so they may lag a little behind threads that are still counting. Frames with a QinQ (802.1ad)
+ * service tag are counted under their customer VLAN, and the service VLANs have packet counts of their own.
+ */
+public class VlanStats {
+    public static final int VLAN_IDS = 4096;
+    public static final int PRIORITIES = 8;
+    private static final int TALKER_CAPACITY = 64; // Talkers held per VLAN
+
+    private final Counts main = new Counts();
+    private final ConcurrentLinkedQueue<Counts> shards = new ConcurrentLinkedQueue<>(); // Thread counts not folded
+    private final ThreadLocal<Counts> local = new ThreadLocal<>(); // Counts of the calling thread
+    private final AtomicReferenceArray<SpaceSaving> talkers = new AtomicReferenceArray<>(VLAN_IDS); // VLAN ID: local IPs by bytes
+
+    /**
+     * Frame counts, of one thread or folded.
+     */
+    private static final class Counts {
+        final long[] packets = new long[VLAN_IDS]; // VLAN ID: frames
+        final long[] bytes = new long[VLAN_IDS]; // VLAN ID: frame bytes
+        final long[] priorities = new long[PRIORITIES]; // PCP: tagged frames
+        final long[] servicePackets = new long[VLAN_IDS]; // Service VLAN ID: QinQ frames
+        long untagged;
+        volatile boolean folded; // Added into the main counts; the thread starts new ones
+
+        void addTo(Counts total) {
+            for (int vlan = 0; vlan < VLAN_IDS; vlan++) {
+                total.packets[vlan] += packets[vlan];
+                total.bytes[vlan] += bytes[vlan];
+                total.servicePackets[vlan] += servicePackets[vlan];
+            }
+            for (int priority = 0; priority < PRIORITIES; priority++) {
+                total.priorities[priority] += priorities[priority];
+            }
+            total.untagged += untagged;
+        }
+    }
+
+    /**
+     * Count a frame, in the counts of the calling thread.
+     *
+     * @param vlan        VLAN ID, or -1 for an untagged frame.
+     * @param priority    PCP of the VLAN tag.
+     * @param serviceVlan service VLAN ID of a QinQ frame, or -1.
+     * @param size        frame length.
+     */
+    public void add(int vlan, int priority, int serviceVlan, int size) {
+        Counts counts = local.get();
+        if (counts == null || counts.folded) {
+            counts = new Counts();
+            shards.add(counts);
+            local.set(counts);
+        }
+        if (vlan < 0) {
+            counts.untagged++;
+            return;
+        }
+        counts.packets[vlan]++;
+        counts.bytes[vlan] += size;
+        counts.priorities[priority]++;
+        if (serviceVlan >= 0) {
+            counts.servicePackets[serviceVlan]++;
+        }
+    }
+
+    /**
+     * Add the thread counts into the main ones and drop them. Call when no thread is counting, e.g. at the end of a
+     * load.
+     */
+    public synchronized void fold() {
+        Counts counts;
+        while ((counts = shards.poll()) != null) {
+            counts.addTo(main);
+            counts.folded = true;
+        }
+    }
+
+    /**
+     * Main counts added up with the thread counts.
+     */
+    private synchronized Counts view() {
+        if (shards.isEmpty()) {
+            return main;
+        }
+        Counts view = new Counts();
+        main.addTo(view);
+        shards.forEach(counts -> counts.addTo(view));
+        return view;
+    }
+
+    /**
+     * Sum of one counter over the main and thread counts.
+     */
+    private synchronized long sum(ToLongFunction<Counts> counter) {
+        long sum = counter.applyAsLong(main);
+        for (Counts counts : shards) {
+            sum += counter.applyAsLong(counts);
+        }
+        return sum;
+    }
+
+    /**
+     * Count the bytes of a packet for a talker on a VLAN.
+     */
+    public void addTalker(int vlan, String ip, int size) {
+        SpaceSaving summary = talkers.get(vlan);
+        if (summary == null) {
+            talkers.compareAndSet(vlan, null, new SpaceSaving(TALKER_CAPACITY));
+            summary = talkers.get(vlan);
+        }
+        summary.add(ip, size);
+    }
+
+    public long packets(int vlan) {
+        return sum(counts -> counts.packets[vlan]);
+    }
+
+    public long bytes(int vlan) {
+        return sum(counts -> counts.bytes[vlan]);
+    }
+
+    /**
+     * Tagged frames with a priority code point.
+     */
+    public long priorityPackets(int priority) {
+        return sum(counts -> counts.priorities[priority]);
+    }
+
+    /**
+     * QinQ frames with a service VLAN ID.
+     */
+    public long servicePackets(int serviceVlan) {
+        return sum(counts -> counts.servicePackets[serviceVlan]);
+    }
+
+    public long untaggedPackets() {
+        return sum(counts -> counts.untagged);
+    }
+
+    /**
+     * IDs of the VLANs seen, in ascending order.
+     */
+    public int[] vlans() {
+        return seen(view().packets);
+    }
+
+    /**
+     * IDs of the service VLANs seen, in ascending order.
+     */
+    public int[] serviceVlans() {
+        return seen(view().servicePackets);
+    }
+
+    private static int[] seen(long[] counts) {
+        int n = 0;
+        int[] ids = new int[VLAN_IDS];
+        for (int vlan = 0; vlan < VLAN_IDS; vlan++) {
+            if (counts[vlan] > 0) {
+                ids[n++] = vlan;
+            }
+        }
+        return Arrays.copyOf(ids, n);
+    }
+
+    /**
+     * Local talkers of a VLAN with most bytes.
+     *
+     * @param limit maximum entries returned.
+     */
+    public List<SpaceSaving.Counter> topTalkers(int vlan, int limit) {
+        SpaceSaving summary = talkers.get(vlan);
+        return summary == null ? List.of() : summary.top(limit);
+    }
+
+    /**
+     * Were any tagged frames seen?
+     */
+    public boolean isEmpty() {
+        return vlans().length == 0;
+    }
+
+    /**
+     * Add the counts of another capture.
+     */
+    public void merge(VlanStats other) {
+        Counts theirCounts = other.view();
+        synchronized (this) {
+            theirCounts.addTo(main);
+        }
+        for (int vlan = 0; vlan < VLAN_IDS; vlan++) {
+            SpaceSaving theirs = other.talkers.get(vlan);
+            if (theirs != null) {
+                talkers.compareAndSet(vlan, null, new SpaceSaving(TALKER_CAPACITY));
+                talkers.get(vlan).merge(theirs);
+            }
+        }
+    }
+
+    /**
+     * Write the counts of the VLANs seen, thread counts included, to be read back by {@link #readFrom}.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        Counts counts = view();
+        out.writeLong(counts.untagged);
+        for (int priority = 0; priority < PRIORITIES; priority++) {
+            out.writeLong(counts.priorities[priority]);
+        }
+        int[] vlans = seen(counts.packets);
+        out.writeInt(vlans.length);
+        for (int vlan : vlans) {
+            out.writeShort(vlan);
+            out.writeLong(counts.packets[vlan]);
+            out.writeLong(counts.bytes[vlan]);
+            SpaceSaving summary = talkers.get(vlan);
+            out.writeBoolean(summary != null);
+            if (summary != null) {
+                summary.writeTo(out);
+            }
+        }
+        int[] serviceVlans = seen(counts.servicePackets);
+        out.writeInt(serviceVlans.length);
+        for (int vlan : serviceVlans) {
+            out.writeShort(vlan);
+            out.writeLong(counts.servicePackets[vlan]);
+        }
+    }
+
+    public static VlanStats readFrom(DataInputStream in) throws IOException {
+        VlanStats stats = new VlanStats();
+        Counts counts = stats.main;
+        counts.untagged = in.readLong();
+        for (int priority = 0; priority < PRIORITIES; priority++) {
+            counts.priorities[priority] = in.readLong();
+        }
+        int vlans = in.readInt();
+        for (int i = 0; i < vlans; i++) {
+            int vlan = in.readUnsignedShort();
+            counts.packets[vlan] = in.readLong();
+            counts.bytes[vlan] = in.readLong();
+            if (in.readBoolean()) {
+                stats.talkers.set(vlan, SpaceSaving.readFrom(in));
+            }
+        }
+        int serviceVlans = in.readInt();
+        for (int i = 0; i < serviceVlans; i++) {
+            counts.servicePackets[in.readUnsignedShort()] = in.readLong();
+        }
+        return stats;
+    }
+}
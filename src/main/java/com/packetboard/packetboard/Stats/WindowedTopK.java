@@ -0,0 +1,165 @@
+package com.packetboard.packetboard.Stats;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Heaviest keys of the last part of a stream, e.g. the top talkers of the last 5 minutes, in constant memory.
+ * <p>
+ * The window is a ring of per-interval {@link SpaceSaving} summaries keyed by packet timestamp. When packets reach
+ * a new interval, the oldest summary is dropped, so the window slides with the capture rather than the wall clock
+ * and covers between {@code slots - 1} and {@code slots} intervals. Packets older than the window are ignored.
+ */
+public class WindowedTopK {
+    private final long windowMicros;
+    private final long slotMicros;
+    private final int capacity;
+    private final SpaceSaving[] ring; // slot % slots: summary of that slot
+    private final long[] ringSlots; // slot % slots: slot the summary is for
+    private long latestSlot = Long.MIN_VALUE;
+
+    /**
+     * @param windowMicros length of the window.
+     * @param slots        number of intervals the window is made of.
+     * @param capacity     counters per interval.
+     */
+    public WindowedTopK(long windowMicros, int slots, int capacity) {
+        if (slots < 1 || windowMicros < slots) {
+            throw new IllegalArgumentException("Window of " + windowMicros + " us cannot have " + slots + " slots");
+        }
+        this.windowMicros = windowMicros;
+        this.slotMicros = windowMicros / slots;
+        this.capacity = capacity;
+        this.ring = new SpaceSaving[slots];
+        this.ringSlots = new long[slots];
+    }
+
+    /**
+     * Add weight to a key at a time.
+     *
+     * @param tsMicros packet timestamp, microseconds since the epoch.
+     */
+    public void add(long tsMicros, String key, long weight) {
+        SpaceSaving summary = summaryOf(Math.floorDiv(tsMicros, slotMicros));
+        if (summary != null) {
+            summary.add(key, weight);
+        }
+    }
+
+    /**
+     * Summary of an interval, moving the window forward if the interval is newer than the latest one.
+     *
+     * @return null if the interval has left the window.
+     */
+    private synchronized SpaceSaving summaryOf(long slot) {
+        latestSlot = Math.max(latestSlot, slot);
+        if (slot <= latestSlot - ring.length) {
+            return null;
+        }
+        int i = (int) Math.floorMod(slot, (long) ring.length);
+        if (ring[i] == null || ringSlots[i] != slot) {
+            // The slot held an interval that has left the window.
+            ring[i] = new SpaceSaving(capacity);
+            ringSlots[i] = slot;
+        }
+        return ring[i];
+    }
+
+    /**
+     * Heaviest keys of the window ending with the latest packet.
+     *
+     * @param limit maximum entries returned.
+     * @return counters, highest count first. Their errors also cover the merging of the intervals.
+     */
+    public List<SpaceSaving.Counter> top(int limit) {
+        ArrayList<SpaceSaving> summaries = new ArrayList<>(ring.length);
+        synchronized (this) {
+            for (int i = 0; i < ring.length; i++) {
+                if (ring[i] != null && ringSlots[i] > latestSlot - ring.length) {
+                    summaries.add(ring[i]);
+                }
+            }
+        }
+        SpaceSaving window = new SpaceSaving(capacity);
+        for (SpaceSaving summary : summaries) {
+            window.merge(summary);
+        }
+        return window.top(limit);
+    }
+
+    public long getWindowMicros() {
+        return windowMicros;
+    }
+
+    /**
+     * Add the intervals of another window of the same length to this one, e.g. of another capture. The window then
+     * ends with the latest packet of either.
+     */
+    public void merge(WindowedTopK other) {
+        if (other.slotMicros != slotMicros || other.ring.length != ring.length) {
+            throw new IllegalArgumentException("Cannot merge windows of " + other.windowMicros + " us into "
+                    + windowMicros + " us");
+        }
+        ArrayList<SpaceSaving> theirs = new ArrayList<>(ring.length);
+        ArrayList<Long> theirSlots = new ArrayList<>(ring.length);
+        synchronized (other) {
+            for (int i = 0; i < other.ring.length; i++) {
+                if (other.ring[i] != null && other.ringSlots[i] > other.latestSlot - ring.length) {
+                    theirs.add(other.ring[i]);
+                    theirSlots.add(other.ringSlots[i]);
+                }
+            }
+        }
+        // Move the window to the latest interval of either first, so intervals it has left are not added.
+        synchronized (this) {
+            for (long slot : theirSlots) {
+                latestSlot = Math.max(latestSlot, slot);
+            }
+        }
+        for (int i = 0; i < theirs.size(); i++) {
+            SpaceSaving summary = summaryOf(theirSlots.get(i));
+            if (summary != null) {
+                summary.merge(theirs.get(i));
+            }
+        }
+    }
+
+    /**
+     * Write the intervals of the window, to be read back by {@link #readFrom}.
+     */
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(windowMicros);
+        out.writeInt(ring.length);
+        out.writeInt(capacity);
+        out.writeLong(latestSlot);
+        int live = 0;
+        for (int i = 0; i < ring.length; i++) {
+            if (ring[i] != null && ringSlots[i] > latestSlot - ring.length) {
+                live++;
+            }
+        }
+        out.writeInt(live);
+        for (int i = 0; i < ring.length; i++) {
+            if (ring[i] != null && ringSlots[i] > latestSlot - ring.length) {
+                out.writeLong(ringSlots[i]);
+                ring[i].writeTo(out);
+            }
+        }
+    }
+
+    public static WindowedTopK readFrom(DataInputStream in) throws IOException {
+        WindowedTopK window = new WindowedTopK(in.readLong(), in.readInt(), in.readInt());
+        window.latestSlot = in.readLong();
+        int live = in.readInt();
+        for (int n = 0; n < live; n++) {
+            long slot = in.readLong();
+            int i = (int) Math.floorMod(slot, (long) window.ring.length);
+            window.ring[i] = SpaceSaving.readFrom(in);
+            window.ringSlots[i] = slot;
+        }
+        return window;
+    }
+}
@@ -0,0 +1,44 @@
+package com.packetboard.packetboard;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Analyses a pcap stream read from standard input, e.g. {@code tcpdump -w - | StreamAnalysis results.pbsnap} or
+ * {@code ssh sensor tcpdump -w - | ...}, without an intermediate capture file.
+ */
+public final class StreamAnalysis {
+    private StreamAnalysis() {
+    }
+
+    /**
+     * Usage: {@code StreamAnalysis [--heavy-hitter-memory=<MiB>] <snapshot> [columnar export]}. Writes the results as
+     * an {@link AnalysisSnapshot}, to be opened in the dashboard, once the stream ends. The snapshot includes rankings
+     * of the last minute, 5 minutes and hour of the stream. With
+     * {@code --heavy-hitter-memory}, talker and destination counts are bounded to that much heap, e.g. for long-running
+     * captures of many addresses.
+     */
+    public static void main(String[] args) throws IOException {
+        PacketParser parser = new PacketParser();
+        int first = 0;
+        if (args.length > 0 && args[0].startsWith(ShardCoordinator.HEAVY_HITTER_OPTION)) {
+            String mebibytes = args[0].substring(ShardCoordinator.HEAVY_HITTER_OPTION.length());
+            parser.setHeavyHitterMemory(Long.parseLong(mebibytes) << 20);
+            first = 1;
+        }
+        if (args.length - first < 1 || args.length - first > 2) {
+            System.err.println("Usage: StreamAnalysis [--heavy-hitter-memory=<MiB>] <snapshot> [columnar export]"
+                    + " < capture");
+            System.exit(2);
+        }
+        // A stream is usually live, where the last minutes say more than the totals.
+        parser.setSlidingWindows(true);
+        if (args.length - first == 2) {
+            parser.setExportPath(Path.of(args[first + 1]));
+        }
+        parser.loadStream(System.in, false, false);
+        AnalysisSnapshot.write(parser, Path.of(args[first]), null);
+        // The parser's lookups may leave non-daemon threads behind.
+        System.exit(0);
+    }
+}
@@ -11,5 +11,6 @@ module com.packetboard.packetboard {
     opens com.packetboard.packetboard to javafx.fxml;
     exports com.packetboard.packetboard;
     exports com.packetboard.packetboard.Parser;
+    exports com.packetboard.packetboard.Stats;
     opens com.packetboard.packetboard.Parser to javafx.fxml;
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+package com.packetboard.packetboard;
+
+import com.packetboard.packetboard.Stats.FlowTable;
+import com.packetboard.packetboard.Stats.ThroughputSeries;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalysisSnapshotTest {
+    private static final long STEP = 10_000_000L;
+
+    private static PacketParser roundTrip(PacketParser parser, Path capture) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        AnalysisSnapshot.write(parser, bytes, capture);
+        return AnalysisSnapshot.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static void assertSameResults(PacketParser expected, PacketParser actual) {
+        assertEquals(expected.getIpv4Counts(), actual.getIpv4Counts());
+        assertEquals(expected.getIpv6Counts(), actual.getIpv6Counts());
+        assertEquals(expected.getLocalTopSpeaker(), actual.getLocalTopSpeaker());
+        assertEquals(expected.getLocalTopTalkers(10), actual.getLocalTopTalkers(10));
+        assertEquals(expected.getTopDest(), actual.getTopDest());
+        assertEquals(expected.getSNIRanking(), actual.getSNIRanking());
+        assertEquals(expected.getFingerprintRanking(), actual.getFingerprintRanking());
+        assertEquals(expected.getExternalHosts().estimate(), actual.getExternalHosts().estimate());
+        assertEquals(expected.getDistinctFlows().estimate(), actual.getDistinctFlows().estimate());
+
+        assertEquals(expected.getFlows().size(), actual.getFlows().size());
+        FlowTable.Flow top = expected.getFlows().top(1).get(0);
+        FlowTable.Flow read = actual.getFlows().top(1).get(0);
+        assertEquals(top.key(), read.key());
+        assertEquals(top.packets(), read.packets());
+        assertEquals(top.bytes(), read.bytes());
+
+        ThroughputSeries series = expected.getThroughput();
+        long from = series.getStartMicros();
+        long to = series.getEndMicros();
+        assertEquals(from, actual.getThroughput().getStartMicros());
+        assertEquals(to, actual.getThroughput().getEndMicros());
+        for (int column = 0; column < ThroughputSeries.COLUMN_NAMES.length; column++) {
+            assertArrayEquals(series.query(column, from, to, STEP),
+                    actual.getThroughput().query(column, from, to, STEP));
+        }
+        String talker = expected.getLocalTopTalkers(1).get(0);
+        assertArrayEquals(series.queryTalker(talker, from, to, STEP),
+                actual.getThroughput().queryTalker(talker, from, to, STEP));
+
+        assertEquals(expected.getIcmp().getMessages(), actual.getIcmp().getMessages());
+        assertEquals(expected.getIcmp().getUnanswered(), actual.getIcmp().getUnanswered());
+        assertEquals(expected.getAddresses().size(), actual.getAddresses().size());
+        assertEquals(expected.getAddresses().conflicts(), actual.getAddresses().conflicts());
+        assertArrayEquals(expected.getVlans().vlans(), actual.getVlans().vlans());
+        assertEquals(expected.getVlans().untaggedPackets(), actual.getVlans().untaggedPackets());
+    }
+
+    @Test
+    void roundTripsALoadedCapture(@TempDir Path dir) throws IOException {
+        Path capture = TestCaptures.tcpdump(dir);
+        PacketParser parser = new PacketParser();
+        parser.setWriteSnapshot(false);
+        parser.load(capture.toString(), false, false);
+        assertNotEquals(0, parser.getIpv4Counts());
+
+        PacketParser read = roundTrip(parser, capture);
+
+        assertSameResults(parser, read);
+        assertEquals(parser.isDoSNI(), read.isDoSNI());
+        assertEquals(parser.isDorDNS(), read.isDorDNS());
+        // A snapshot of a snapshot is the same again.
+        assertSameResults(parser, roundTrip(read, capture));
+    }
+
+    @Test
+    void opensOnlySnapshotsMadeWithTheSameSettings(@TempDir Path dir) throws IOException {
+        Path capture = TestCaptures.tcpdump(dir);
+        PacketParser parser = new PacketParser();
+        parser.load(capture.toString(), false, false);
+        assertTrue(Files.exists(AnalysisSnapshot.sidecarOf(capture)));
+
+        PacketParser fresh = AnalysisSnapshot.openFresh(capture, false, false, 0);
+
+        assertNotNull(fresh);
+        assertSameResults(parser, fresh);
+        assertNull(AnalysisSnapshot.openFresh(capture, true, false, 0));
+        assertNull(AnalysisSnapshot.openFresh(capture, false, true, 0));
+        assertNull(AnalysisSnapshot.openFresh(capture, false, false, 1L << 20));
+        // A changed capture makes the snapshot stale.
+        Files.write(capture, new byte[16], StandardOpenOption.APPEND);
+        assertNull(AnalysisSnapshot.openFresh(capture, false, false, 0));
+    }
+}
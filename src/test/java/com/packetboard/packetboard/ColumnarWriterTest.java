@@ -0,0 +1,124 @@
+package com.packetboard.packetboard;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ColumnarWriterTest {
+    private static final long START = 1_700_000_000_000_000L;
+    private static final int ROWS = ColumnarWriter.ROW_GROUP_ROWS + 1000; // a full row group and part of another
+
+    /**
+     * Row of packet i: a few hosts, ports and SNIs, some rows without ports, TCP flags or SNI.
+     */
+    private static PacketMetadata row(int i) {
+        PacketMetadata row = new PacketMetadata();
+        row.tsMicros = START + i * 37L + (i % 3 == 0 ? 0 : 5);
+        row.src = "10.0.0." + i % 7;
+        row.dst = i % 5 == 0 ? "2001:db8::1" : "192.0.2." + i % 11;
+        row.protocol = i % 4 == 0 ? 1 : 6;
+        if (row.protocol == 6) {
+            row.srcPort = 40000 + i % 1000;
+            row.dstPort = 443;
+            row.tcpFlags = i % 50 == 0 ? 0x02 : 0x10;
+        }
+        row.length = 40 + i % 1460;
+        row.vlan = i < 1000 ? -1 : 20;
+        row.sni = i % 50 == 0 ? "example.com" : null;
+        row.ja3 = i % 50 == 0 ? "41bc9ae914d6cb3bd0bd0a5453ab7d7f" : null;
+        return row;
+    }
+
+    @Test
+    void readsBackWhatWasWritten(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("capture" + ColumnarWriter.SUFFIX);
+        try (ColumnarWriter writer = new ColumnarWriter(file)) {
+            for (int i = 0; i < ROWS; i++) {
+                writer.append(row(i));
+            }
+        }
+
+        long[] ts = new long[ROWS];
+        String[] src = new String[ROWS];
+        String[] dst = new String[ROWS];
+        long[] srcPort = new long[ROWS];
+        long[] dstPort = new long[ROWS];
+        long[] protocol = new long[ROWS];
+        long[] length = new long[ROWS];
+        long[] vlan = new long[ROWS];
+        long[] tcpFlags = new long[ROWS];
+        String[] sni = new String[ROWS];
+        String[] ja3 = new String[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            PacketMetadata row = row(i);
+            ts[i] = row.tsMicros;
+            src[i] = row.src;
+            dst[i] = row.dst;
+            srcPort[i] = row.srcPort;
+            dstPort[i] = row.dstPort;
+            protocol[i] = row.protocol;
+            length[i] = row.length;
+            vlan[i] = row.vlan;
+            tcpFlags[i] = row.tcpFlags;
+            sni[i] = row.sni;
+            ja3[i] = row.ja3;
+        }
+        try (ColumnarReader reader = ColumnarReader.open(file)) {
+            assertEquals(ROWS, reader.getRowCount());
+            assertEquals(2, reader.getRowGroupCount());
+            assertArrayEquals(ts, reader.readLongs("ts"));
+            assertArrayEquals(src, reader.readStrings("src"));
+            assertArrayEquals(dst, reader.readStrings("dst"));
+            assertArrayEquals(srcPort, reader.readLongs("src_port"));
+            assertArrayEquals(dstPort, reader.readLongs("dst_port"));
+            assertArrayEquals(protocol, reader.readLongs("protocol"));
+            assertArrayEquals(length, reader.readLongs("length"));
+            assertArrayEquals(vlan, reader.readLongs("vlan"));
+            assertArrayEquals(tcpFlags, reader.readLongs("tcp_flags"));
+            assertArrayEquals(sni, reader.readStrings("sni"));
+            assertArrayEquals(ja3, reader.readStrings("ja3"));
+        }
+        assertFalse(Files.exists(dir.resolve(file.getFileName() + ".tmp")));
+    }
+
+    @Test
+    void sortsTheRowsOfAGroupByTime(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("capture" + ColumnarWriter.SUFFIX);
+        try (ColumnarWriter writer = new ColumnarWriter(file)) {
+            // As appended by concurrent decoding threads.
+            for (int i : new int[]{3, 0, 2, 1}) {
+                writer.append(row(i));
+            }
+        }
+
+        try (ColumnarReader reader = ColumnarReader.open(file)) {
+            assertArrayEquals(new long[]{row(0).tsMicros, row(1).tsMicros, row(2).tsMicros, row(3).tsMicros},
+                    reader.readLongs("ts"));
+            assertArrayEquals(new String[]{row(0).src, row(1).src, row(2).src, row(3).src},
+                    reader.readStrings("src"));
+        }
+    }
+
+    @Test
+    void abortLeavesTheTargetAsItWas(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("capture" + ColumnarWriter.SUFFIX);
+        Files.writeString(file, "previous export");
+
+        ColumnarWriter writer = new ColumnarWriter(file);
+        writer.append(row(0));
+        writer.abort();
+        writer.close();
+
+        assertEquals("previous export", Files.readString(file));
+        try (var files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+    }
+}
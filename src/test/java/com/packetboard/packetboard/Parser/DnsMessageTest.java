@@ -0,0 +1,176 @@
+package com.packetboard.packetboard.Parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DnsMessageTest {
+    private static final int QUESTION = 12; // offset of the question name
+
+    /**
+     * Response header with one question and the given number of answers.
+     */
+    private static ByteArrayOutputStream response(int answers) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        u2(out, 0x1234);
+        u2(out, 0x8180);
+        u2(out, 1);
+        u2(out, answers);
+        u2(out, 0);
+        u2(out, 0);
+        return out;
+    }
+
+    private static void u2(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    private static void name(ByteArrayOutputStream out, String name) {
+        for (String label : name.split("\\.")) {
+            out.write(label.length());
+            out.writeBytes(label.getBytes(StandardCharsets.US_ASCII));
+        }
+        out.write(0);
+    }
+
+    private static void pointer(ByteArrayOutputStream out, int offset) {
+        u2(out, 0xc000 | offset);
+    }
+
+    private static void question(ByteArrayOutputStream out, String name) {
+        name(out, name);
+        u2(out, DnsMessage.TYPE_A);
+        u2(out, 1);
+    }
+
+    /**
+     * Type, class, TTL and data length of an answer, after its name.
+     */
+    private static void answerHeader(ByteArrayOutputStream out, int type, int rdLength) {
+        u2(out, type);
+        u2(out, 1);
+        u2(out, 0);
+        u2(out, 300);
+        u2(out, rdLength);
+    }
+
+    private static DnsMessage parse(ByteArrayOutputStream out) {
+        byte[] message = out.toByteArray();
+        return DnsMessage.parse(message, 0, message.length);
+    }
+
+    @Test
+    void readsCompressedNames() {
+        ByteArrayOutputStream out = response(2);
+        question(out, "WWW.Example.com");
+        pointer(out, QUESTION);
+        answerHeader(out, DnsMessage.TYPE_CNAME, 8);
+        int target = out.size();
+        out.writeBytes(new byte[]{4, 'e', 'd', 'g', 'e'});
+        pointer(out, QUESTION + 4); // example.com
+        out.write(0); // padding after the name, inside the record data
+        pointer(out, target);
+        answerHeader(out, DnsMessage.TYPE_A, 4);
+        out.writeBytes(new byte[]{1, 2, 3, 4});
+
+        DnsMessage message = parse(out);
+
+        assertNotNull(message);
+        assertTrue(message.isResponse());
+        assertEquals(List.of("www.example.com"), message.questions());
+        assertEquals(2, message.answers().size());
+        assertEquals("www.example.com", message.answers().get(0).name());
+        assertEquals("edge.example.com", message.answers().get(0).target());
+        assertEquals("edge.example.com", message.answers().get(1).name());
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, message.answers().get(1).address());
+    }
+
+    @Test
+    void stopsAtPointerLoops() {
+        // The answer name points to itself.
+        ByteArrayOutputStream self = response(1);
+        question(self, "example.com");
+        pointer(self, self.size());
+        answerHeader(self, DnsMessage.TYPE_A, 4);
+        self.writeBytes(new byte[4]);
+        // Two labels pointing at each other: a.<b> and b.<a>.
+        ByteArrayOutputStream pair = response(1);
+        question(pair, "example.com");
+        int a = pair.size();
+        pair.writeBytes(new byte[]{1, 'a'});
+        pointer(pair, a + 4);
+        pair.writeBytes(new byte[]{1, 'b'});
+        pointer(pair, a);
+        answerHeader(pair, DnsMessage.TYPE_A, 4);
+        pair.writeBytes(new byte[4]);
+
+        assertNull(parse(self));
+        assertNull(parse(pair));
+    }
+
+    @Test
+    void rejectsPointersOutOfTheMessage() {
+        ByteArrayOutputStream past = response(1);
+        question(past, "example.com");
+        pointer(past, 0x3fff);
+        answerHeader(past, DnsMessage.TYPE_A, 4);
+        past.writeBytes(new byte[4]);
+        ByteArrayOutputStream cut = response(0);
+        cut.write(0xc0); // half a pointer at the end of the message
+
+        assertNull(parse(past));
+        assertNull(parse(cut));
+    }
+
+    @Test
+    void rejectsPointersPastTheMessageInALargerBuffer() {
+        // The pointer lands inside the buffer but after the end of the message.
+        ByteArrayOutputStream out = response(0);
+        pointer(out, 18);
+        u2(out, DnsMessage.TYPE_A);
+        u2(out, 1);
+        int length = out.size();
+        name(out, "example.com");
+        byte[] buf = out.toByteArray();
+
+        assertNull(DnsMessage.parse(buf, 0, length));
+        assertNotNull(DnsMessage.parse(buf, 0, buf.length));
+    }
+
+    @Test
+    void skipsCnamesWithUnreadableTargets() {
+        ByteArrayOutputStream out = response(2);
+        question(out, "example.com");
+        pointer(out, QUESTION);
+        answerHeader(out, DnsMessage.TYPE_CNAME, 2);
+        pointer(out, out.size()); // loops on itself
+        pointer(out, QUESTION);
+        answerHeader(out, DnsMessage.TYPE_A, 4);
+        out.writeBytes(new byte[]{10, 0, 0, 1});
+
+        DnsMessage message = parse(out);
+
+        assertNotNull(message);
+        assertEquals(1, message.answers().size());
+        assertEquals(DnsMessage.TYPE_A, message.answers().get(0).type());
+    }
+
+    @Test
+    void rejectsNamesLongerThan255Bytes() {
+        ByteArrayOutputStream out = response(0);
+        name(out, ("a".repeat(63) + ".").repeat(4) + "com");
+        u2(out, DnsMessage.TYPE_A);
+        u2(out, 1);
+
+        assertNull(parse(out));
+    }
+}
@@ -0,0 +1,79 @@
+package com.packetboard.packetboard.Parser;
+
+import io.kaitai.struct.ByteBufferKaitaiStream;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EthernetFrameTest {
+    private static final byte[] SRC_IP = {10, 0, 0, 1};
+
+    /**
+     * Ethernet frame of an empty IPv4 packet behind the given tags, each a TPID and a TCI.
+     */
+    private static EthernetFrame frame(int... tags) {
+        byte[] p = new byte[12 + tags.length * 2 + 2 + 20];
+        int at = 12;
+        for (int tag : tags) {
+            p[at++] = (byte) (tag >> 8);
+            p[at++] = (byte) tag;
+        }
+        p[at++] = 0x08;
+        p[at++] = 0x00;
+        p[at] = 0x45;
+        p[at + 3] = 20; // total length
+        p[at + 9] = (byte) 253; // experimental protocol
+        System.arraycopy(SRC_IP, 0, p, at + 12, 4);
+        return new EthernetFrame(new ByteBufferKaitaiStream(p));
+    }
+
+    private static void assertIpv4(EthernetFrame frame) {
+        assertEquals(EthernetFrame.EtherTypeEnum.IPV4, frame.etherType());
+        assertArrayEquals(SRC_IP, assertInstanceOf(Ipv4Packet.class, frame.body()).srcIpAddr());
+    }
+
+    @Test
+    void parsesUntaggedFrames() {
+        EthernetFrame frame = frame();
+
+        assertNull(frame.tci());
+        assertIpv4(frame);
+    }
+
+    @Test
+    void parsesASingleVlanTag() {
+        EthernetFrame frame = frame(0x8100, 5 << 13 | 42);
+
+        assertEquals(42, frame.tci().vlanId());
+        assertEquals(5, frame.tci().priority());
+        assertNull(frame.innerTci());
+        assertIpv4(frame);
+    }
+
+    @Test
+    void parsesQinQServiceAndCustomerTags() {
+        EthernetFrame frame = frame(0x88a8, 1 << 13 | 100, 0x8100, 3 << 13 | 1 << 12 | 200);
+
+        assertEquals(EthernetFrame.EtherTypeEnum.IEEE_802_1AD_TPID, frame.etherType1());
+        assertEquals(100, frame.tci().vlanId());
+        assertEquals(1, frame.tci().priority());
+        assertEquals(200, frame.innerTci().vlanId());
+        assertEquals(3, frame.innerTci().priority());
+        assertTrue(frame.innerTci().dropEligible());
+        assertIpv4(frame);
+    }
+
+    @Test
+    void parsesTwo8021qTags() {
+        // Double tagging with 0x8100 twice, as some switches send it.
+        EthernetFrame frame = frame(0x8100, 10, 0x8100, 20);
+
+        assertEquals(10, frame.tci().vlanId());
+        assertEquals(20, frame.innerTci().vlanId());
+        assertIpv4(frame);
+    }
+}
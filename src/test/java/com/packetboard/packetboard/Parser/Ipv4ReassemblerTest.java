@@ -0,0 +1,145 @@
+package com.packetboard.packetboard.Parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class Ipv4ReassemblerTest {
+    private static final byte[] SRC = {10, 0, 0, 1};
+    private static final byte[] DST = {10, 0, 0, 2};
+    private static final int UDP = 17;
+
+    /**
+     * UDP datagram from port 53 to 40000, with a recognisable body.
+     */
+    private static byte[] datagram(int length) {
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++) {
+            payload[i] = (byte) (i * 7);
+        }
+        payload[0] = 0;
+        payload[1] = 53;
+        payload[2] = (byte) (40000 >> 8);
+        payload[3] = (byte) 40000;
+        return payload;
+    }
+
+    private static byte[] part(byte[] payload, int from, int to) {
+        return Arrays.copyOfRange(payload, from, to);
+    }
+
+    @Test
+    void reassemblesFragmentsInOrder() {
+        Ipv4Reassembler reassembler = new Ipv4Reassembler((protocol, src, dst) -> true);
+        byte[] payload = datagram(3000);
+
+        assertNull(reassembler.add(SRC, DST, 1, UDP, 0, true, part(payload, 0, 1480), 0).payload());
+        assertNull(reassembler.add(SRC, DST, 1, UDP, 1480, true, part(payload, 1480, 2960), 1).payload());
+        Ipv4Reassembler.Result result = reassembler.add(SRC, DST, 1, UDP, 2960, false, part(payload, 2960, 3000), 2);
+
+        assertArrayEquals(payload, result.payload());
+        assertEquals(53, result.srcPort());
+        assertEquals(40000, result.dstPort());
+        assertEquals(1, reassembler.getReassembled());
+        assertEquals(0, reassembler.size());
+        assertEquals(0, reassembler.memory());
+    }
+
+    @Test
+    void reassemblesFragmentsOutOfOrder() {
+        Ipv4Reassembler reassembler = new Ipv4Reassembler((protocol, src, dst) -> true);
+        byte[] payload = datagram(3000);
+
+        Ipv4Reassembler.Result last = reassembler.add(SRC, DST, 1, UDP, 2960, false, part(payload, 2960, 3000), 0);
+        assertEquals(-1, last.srcPort());
+        assertNull(reassembler.add(SRC, DST, 1, UDP, 1480, true, part(payload, 1480, 2960), 1).payload());
+        // A duplicate is ignored.
+        assertNull(reassembler.add(SRC, DST, 1, UDP, 1480, true, part(payload, 1480, 2960), 2).payload());
+        Ipv4Reassembler.Result result = reassembler.add(SRC, DST, 1, UDP, 0, true, part(payload, 0, 1480), 3);
+
+        assertArrayEquals(payload, result.payload());
+        assertEquals(40000, result.dstPort());
+        assertEquals(1, reassembler.getReassembled());
+        assertEquals(0, reassembler.getDropped());
+    }
+
+    @Test
+    void dropsOverlappingFragments() {
+        Ipv4Reassembler reassembler = new Ipv4Reassembler((protocol, src, dst) -> true);
+        byte[] payload = datagram(3000);
+
+        reassembler.add(SRC, DST, 1, UDP, 0, true, part(payload, 0, 1480), 0);
+        // Overlaps the first fragment with other extents, as in a teardrop attack.
+        reassembler.add(SRC, DST, 1, UDP, 1400, true, part(payload, 1400, 2960), 1);
+        Ipv4Reassembler.Result result = reassembler.add(SRC, DST, 1, UDP, 2960, false, part(payload, 2960, 3000), 2);
+
+        assertNull(result.payload());
+        assertEquals(1, reassembler.getDropped());
+        assertEquals(0, reassembler.getReassembled());
+        assertEquals(0, reassembler.memory());
+    }
+
+    @Test
+    void dropsDatagramsOverTheCap() {
+        Ipv4Reassembler reassembler = new Ipv4Reassembler((protocol, src, dst) -> true, 30_000_000L, 2000, 1 << 20);
+        byte[] payload = datagram(3000);
+
+        reassembler.add(SRC, DST, 1, UDP, 0, true, part(payload, 0, 1480), 0);
+        reassembler.add(SRC, DST, 1, UDP, 1480, true, part(payload, 1480, 2960), 1);
+        Ipv4Reassembler.Result result = reassembler.add(SRC, DST, 1, UDP, 2960, false, part(payload, 2960, 3000), 2);
+
+        assertNull(result.payload());
+        assertEquals(1, reassembler.getDropped());
+        assertEquals(0, reassembler.memory());
+    }
+
+    @Test
+    void evictsTheOldestDatagramsOverTheMemoryCap() {
+        Ipv4Reassembler reassembler = new Ipv4Reassembler((protocol, src, dst) -> true, 30_000_000L, 3000, 4000);
+        byte[] payload = datagram(3000);
+
+        reassembler.add(SRC, DST, 1, UDP, 0, true, part(payload, 0, 2960), 0);
+        reassembler.add(SRC, DST, 2, UDP, 0, true, part(payload, 0, 2960), 1);
+        assertEquals(1, reassembler.getEvicted());
+        assertEquals(2960, reassembler.memory());
+
+        Ipv4Reassembler.Result result = reassembler.add(SRC, DST, 2, UDP, 2960, false, part(payload, 2960, 3000), 2);
+        assertArrayEquals(payload, result.payload());
+        // The evicted datagram starts again from its next fragment, and cannot complete.
+        assertNull(reassembler.add(SRC, DST, 1, UDP, 2960, false, part(payload, 2960, 3000), 3).payload());
+    }
+
+    @Test
+    void tracksUnwantedDatagramsWithoutKeepingThem() {
+        Ipv4Reassembler reassembler = new Ipv4Reassembler((protocol, src, dst) -> dst == 53);
+        byte[] payload = datagram(3000);
+
+        reassembler.add(SRC, DST, 1, UDP, 0, true, part(payload, 0, 1480), 0);
+        assertEquals(0, reassembler.memory());
+        reassembler.add(SRC, DST, 1, UDP, 1480, true, part(payload, 1480, 2960), 1);
+        Ipv4Reassembler.Result result = reassembler.add(SRC, DST, 1, UDP, 2960, false, part(payload, 2960, 3000), 2);
+
+        assertNull(result.payload());
+        assertEquals(40000, result.dstPort());
+        assertEquals(1, reassembler.getSkipped());
+        assertEquals(0, reassembler.size());
+    }
+
+    @Test
+    void expiresDatagramsAfterTheTimeout() {
+        Ipv4Reassembler reassembler = new Ipv4Reassembler((protocol, src, dst) -> true);
+        byte[] payload = datagram(3000);
+
+        reassembler.add(SRC, DST, 1, UDP, 0, true, part(payload, 0, 2960), 0);
+        long late = Ipv4Reassembler.DEFAULT_TIMEOUT_MICROS + 1;
+        Ipv4Reassembler.Result result = reassembler.add(SRC, DST, 1, UDP, 2960, false, part(payload, 2960, 3000), late);
+
+        assertNull(result.payload());
+        assertEquals(1, reassembler.getExpired());
+        assertEquals(40, reassembler.memory());
+    }
+}
@@ -0,0 +1,139 @@
+package com.packetboard.packetboard.Parser;
+
+import io.kaitai.struct.ByteBufferKaitaiStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Ipv6PacketTest {
+    private static final int HOP_BY_HOP = 0;
+    private static final int UDP = 17;
+    private static final int ROUTING = 43;
+    private static final int FRAGMENT = 44;
+    private static final int AUTHENTICATION = 51;
+    private static final int DESTINATION_OPTIONS = 60;
+    private static final byte[] UDP_HEADER = {(byte) 0xc3, 0x50, 0x00, 0x35, 0x00, 0x08, 0x00, 0x00}; // 50000 -> 53
+
+    /**
+     * IPv6 packet with the given first next header, followed by the given headers.
+     */
+    private static Ipv6Packet parse(int nextHeader, byte[]... headers) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] fixed = new byte[40];
+        fixed[0] = 0x60;
+        fixed[6] = (byte) nextHeader;
+        fixed[7] = 64;
+        out.writeBytes(fixed);
+        for (byte[] header : headers) {
+            out.writeBytes(header);
+        }
+        byte[] packet = out.toByteArray();
+        packet[4] = (byte) ((packet.length - 40) >> 8);
+        packet[5] = (byte) (packet.length - 40);
+        return new Ipv6Packet(new ByteBufferKaitaiStream(packet));
+    }
+
+    /**
+     * Extension header of {@code bytes} bytes with the given next header and length field.
+     */
+    private static byte[] extension(int next, int lengthField, int bytes) {
+        byte[] header = new byte[bytes];
+        header[0] = (byte) next;
+        header[1] = (byte) lengthField;
+        return header;
+    }
+
+    private static byte[] fragment(int next, int offset, boolean more, int id) {
+        int offsetFlags = offset | (more ? 1 : 0);
+        return new byte[]{(byte) next, 0, (byte) (offsetFlags >> 8), (byte) offsetFlags,
+                (byte) (id >> 24), (byte) (id >> 16), (byte) (id >> 8), (byte) id};
+    }
+
+    private static void assertUdp(Ipv6Packet packet) {
+        assertEquals(UDP, packet.protocol());
+        UdpDatagram udp = assertInstanceOf(UdpDatagram.class, packet.nextHeader().body());
+        assertEquals(50000, udp.srcPort());
+        assertEquals(53, udp.dstPort());
+    }
+
+    @Test
+    void decodesWithoutExtensionHeaders() {
+        Ipv6Packet packet = parse(UDP, UDP_HEADER);
+
+        assertUdp(packet);
+        assertEquals(-1, packet.fragmentOffset());
+        assertFalse(packet.isFragment());
+    }
+
+    @Test
+    void skipsHopByHopRoutingAndDestinationOptions() {
+        Ipv6Packet packet = parse(HOP_BY_HOP, extension(ROUTING, 0, 8), extension(DESTINATION_OPTIONS, 2, 24),
+                extension(UDP, 1, 16), UDP_HEADER);
+
+        assertEquals(HOP_BY_HOP, packet.nextHeaderType());
+        assertUdp(packet);
+        assertFalse(packet.isFragment());
+    }
+
+    @Test
+    void countsAuthenticationHeaderLengthInFourByteUnits() {
+        // (4 + 2) * 4 = 24 bytes, where other extension headers would be (4 + 1) * 8 = 40.
+        Ipv6Packet packet = parse(HOP_BY_HOP, extension(AUTHENTICATION, 0, 8), extension(UDP, 4, 24), UDP_HEADER);
+
+        assertUdp(packet);
+    }
+
+    @Test
+    void stopsOnATruncatedChain() {
+        // The routing header claims 32 bytes, only 16 are there.
+        Ipv6Packet cut = parse(HOP_BY_HOP, extension(ROUTING, 0, 8), extension(UDP, 3, 16));
+
+        assertEquals(ROUTING, cut.protocol());
+        assertNull(cut.nextHeader());
+
+        // Fewer bytes than the smallest extension header.
+        Ipv6Packet shortTail = parse(HOP_BY_HOP, extension(DESTINATION_OPTIONS, 0, 8), new byte[]{UDP, 0, 0, 0});
+
+        assertEquals(DESTINATION_OPTIONS, shortTail.protocol());
+        assertNull(shortTail.nextHeader());
+        assertEquals(4, shortTail.rest().length);
+    }
+
+    @Test
+    void decodesAtomicFragments() {
+        Ipv6Packet packet = parse(FRAGMENT, fragment(UDP, 0, false, 0x01020304), UDP_HEADER);
+
+        assertEquals(0, packet.fragmentOffset());
+        assertFalse(packet.moreFragments());
+        assertFalse(packet.isFragment());
+        assertEquals(0x01020304, packet.fragmentId());
+        assertUdp(packet);
+    }
+
+    @Test
+    void leavesFragmentsUndecoded() {
+        Ipv6Packet first = parse(HOP_BY_HOP, extension(FRAGMENT, 0, 8), fragment(UDP, 0, true, 7), UDP_HEADER);
+
+        assertTrue(first.isFragment());
+        assertEquals(0, first.fragmentOffset());
+        assertEquals(UDP, first.protocol());
+        assertNull(first.nextHeader());
+        assertArrayEquals(UDP_HEADER, first.rest());
+
+        Ipv6Packet last = parse(FRAGMENT, fragment(UDP, 185 * 8, false, 7), new byte[16]);
+
+        assertTrue(last.isFragment());
+        assertEquals(1480, last.fragmentOffset());
+        assertFalse(last.moreFragments());
+        assertEquals(7, last.fragmentId());
+        assertNull(last.nextHeader());
+        assertEquals(16, last.rest().length);
+    }
+}
@@ -0,0 +1,128 @@
+package com.packetboard.packetboard.Parser;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LinkLayerTest {
+    private static final byte[] LLC_IPV4 = {(byte) 0xaa, (byte) 0xaa, 0x03, 0, 0, 0, 0x08, 0x00};
+    private static final long MAC = 0x0200000000abL;
+
+    private static byte[] bytes(int length, int... prefix) {
+        byte[] p = new byte[length];
+        for (int i = 0; i < prefix.length; i++) {
+            p[i] = (byte) prefix[i];
+        }
+        return p;
+    }
+
+    private static void putMac(byte[] p, int offset) {
+        p[offset] = 0x02;
+        p[offset + 5] = (byte) 0xab;
+    }
+
+    /**
+     * 802.11 data frame with an LLC/SNAP header for IPv4 after a MAC header of the given length.
+     */
+    private static byte[] wifi(int fc0, int fc1, int header) {
+        byte[] p = bytes(header + LLC_IPV4.length + 20, fc0, fc1);
+        System.arraycopy(LLC_IPV4, 0, p, header, LLC_IPV4.length);
+        return p;
+    }
+
+    private static void assertLocation(int etherType, int offset, long location) {
+        assertEquals(etherType, LinkLayer.etherType(location));
+        assertEquals(offset, LinkLayer.offset(location));
+    }
+
+    @Test
+    void locatesCookedCaptures() {
+        byte[] sll = bytes(16 + 20);
+        sll[3] = 1; // ARPHRD_ETHER
+        sll[5] = 6;
+        putMac(sll, 6);
+        sll[14] = 0x08;
+        byte[] sll2 = bytes(20 + 40, 0x86, 0xdd);
+        sll2[9] = 1;
+        sll2[11] = 6;
+        putMac(sll2, 12);
+
+        assertLocation(LinkLayer.ETHERTYPE_IPV4, 16, LinkLayer.LINUX_SLL.locate(sll));
+        assertEquals(MAC, LinkLayer.LINUX_SLL.sourceMac(sll));
+        assertLocation(LinkLayer.ETHERTYPE_IPV6, 20, LinkLayer.LINUX_SLL2.locate(sll2));
+        assertEquals(MAC, LinkLayer.LINUX_SLL2.sourceMac(sll2));
+        assertEquals(-1, LinkLayer.LINUX_SLL.locate(bytes(15)));
+        assertEquals(-1, LinkLayer.LINUX_SLL2.locate(bytes(19)));
+    }
+
+    @Test
+    void readsTheNullFamilyInEitherByteOrder() {
+        assertLocation(LinkLayer.ETHERTYPE_IPV4, 4, LinkLayer.NULL.locate(bytes(24, 2, 0, 0, 0)));
+        assertLocation(LinkLayer.ETHERTYPE_IPV4, 4, LinkLayer.NULL.locate(bytes(24, 0, 0, 0, 2)));
+        assertLocation(LinkLayer.ETHERTYPE_IPV6, 4, LinkLayer.NULL.locate(bytes(44, 30, 0, 0, 0)));
+        assertLocation(LinkLayer.ETHERTYPE_IPV6, 4, LinkLayer.NULL.locate(bytes(44, 0, 0, 0, 24)));
+        assertEquals(-1, LinkLayer.NULL.locate(bytes(24, 7, 0, 0, 0)));
+        assertEquals(-1, LinkLayer.NULL.locate(bytes(3, 2)));
+    }
+
+    @Test
+    void readsTheLoopFamilyInNetworkOrder() {
+        assertLocation(LinkLayer.ETHERTYPE_IPV4, 4, LinkLayer.LOOP.locate(bytes(24, 0, 0, 0, 2)));
+        assertLocation(LinkLayer.ETHERTYPE_IPV6, 4, LinkLayer.LOOP.locate(bytes(44, 0, 0, 0, 24)));
+        assertEquals(-1, LinkLayer.LOOP.locate(bytes(24, 2, 0, 0, 0)));
+    }
+
+    @Test
+    void locatesRawIp() {
+        assertLocation(LinkLayer.ETHERTYPE_IPV4, 0, LinkLayer.RAW.locate(bytes(20, 0x45)));
+        assertLocation(LinkLayer.ETHERTYPE_IPV6, 0, LinkLayer.RAW.locate(bytes(40, 0x60)));
+        assertEquals(-1, LinkLayer.RAW.locate(bytes(20, 0x15)));
+        assertEquals(-1, LinkLayer.RAW.locate(bytes(0)));
+    }
+
+    @Test
+    void skipsTheVariable80211Header() {
+        byte[] toDs = wifi(0x08, 0x01, 24);
+        putMac(toDs, 10);
+        byte[] fromDs = wifi(0x08, 0x02, 24);
+        putMac(fromDs, 16);
+        byte[] wds = wifi(0x08, 0x03, 30);
+        putMac(wds, 24);
+
+        assertLocation(LinkLayer.ETHERTYPE_IPV4, 32, LinkLayer.IEEE802_11.locate(toDs));
+        assertEquals(MAC, LinkLayer.IEEE802_11.sourceMac(toDs));
+        assertEquals(MAC, LinkLayer.IEEE802_11.sourceMac(fromDs));
+        assertLocation(LinkLayer.ETHERTYPE_IPV4, 38, LinkLayer.IEEE802_11.locate(wds));
+        assertEquals(MAC, LinkLayer.IEEE802_11.sourceMac(wds));
+        // QoS control, then HT control with the order bit.
+        assertLocation(LinkLayer.ETHERTYPE_IPV4, 34, LinkLayer.IEEE802_11.locate(wifi(0x88, 0x01, 26)));
+        assertLocation(LinkLayer.ETHERTYPE_IPV4, 38, LinkLayer.IEEE802_11.locate(wifi(0x88, 0x81, 30)));
+    }
+
+    @Test
+    void ignores80211FramesWithoutANetworkLayer() {
+        assertEquals(-1, LinkLayer.IEEE802_11.locate(wifi(0x80, 0x00, 24))); // beacon
+        assertEquals(-1, LinkLayer.IEEE802_11.locate(wifi(0x48, 0x01, 24))); // null data
+        assertEquals(-1, LinkLayer.IEEE802_11.locate(wifi(0x08, 0x41, 24))); // protected
+        byte[] noSnap = wifi(0x08, 0x01, 24);
+        noSnap[24] = 0;
+        assertEquals(-1, LinkLayer.IEEE802_11.locate(noSnap));
+        assertEquals(-1, LinkLayer.IEEE802_11.locate(bytes(23, 0x08)));
+    }
+
+    @Test
+    void locatesHeadersInsideARecord() {
+        // After an 8 byte header, as after a PPI header; offsets count from the start of the record.
+        byte[] frame = wifi(0x08, 0x01, 24);
+        putMac(frame, 10);
+        byte[] record = new byte[8 + frame.length];
+        System.arraycopy(frame, 0, record, 8, frame.length);
+        byte[] loopback = bytes(8 + 24);
+        loopback[8] = 2;
+
+        assertLocation(LinkLayer.ETHERTYPE_IPV4, 40, LinkLayer.IEEE802_11.locate(record, 8));
+        assertEquals(MAC, LinkLayer.IEEE802_11.sourceMac(record, 8));
+        assertLocation(LinkLayer.ETHERTYPE_IPV4, 12, LinkLayer.NULL.locate(loopback, 8));
+        assertEquals(-1, LinkLayer.LINUX_SLL.locate(record, record.length - 15));
+    }
+}
@@ -0,0 +1,171 @@
+package com.packetboard.packetboard.Parser;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PacketFilterTest {
+    private static final int TCP = 6;
+    private static final int UDP = 17;
+
+    /**
+     * Ethernet frame of an IPv4 packet with a TCP or UDP header, optionally with a VLAN tag.
+     */
+    private static byte[] ipv4(int protocol, String src, int srcPort, String dst, int dstPort, int vlan) {
+        int l3 = vlan < 0 ? 14 : 18;
+        byte[] frame = new byte[l3 + 20 + 20];
+        if (vlan >= 0) {
+            frame[12] = (byte) 0x81;
+            frame[14] = (byte) (vlan >> 8);
+            frame[15] = (byte) vlan;
+        }
+        frame[l3 - 2] = 0x08;
+        frame[l3] = 0x45;
+        frame[l3 + 9] = (byte) protocol;
+        put(frame, l3 + 12, src.split("\\."));
+        put(frame, l3 + 16, dst.split("\\."));
+        ports(frame, l3 + 20, srcPort, dstPort);
+        return frame;
+    }
+
+    private static byte[] ipv4(int protocol, String src, int srcPort, String dst, int dstPort) {
+        return ipv4(protocol, src, srcPort, dst, dstPort, -1);
+    }
+
+    /**
+     * Ethernet frame of an IPv6 UDP packet from 2001:db8::1 to 2001:db8:1::2.
+     */
+    private static byte[] ipv6Udp(int srcPort, int dstPort) {
+        byte[] frame = new byte[14 + 40 + 8];
+        frame[12] = (byte) 0x86;
+        frame[13] = (byte) 0xdd;
+        frame[14] = 0x60;
+        frame[14 + 6] = UDP;
+        byte[] src = {0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1};
+        byte[] dst = {0x20, 0x01, 0x0d, (byte) 0xb8, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 2};
+        System.arraycopy(src, 0, frame, 14 + 8, 16);
+        System.arraycopy(dst, 0, frame, 14 + 24, 16);
+        ports(frame, 14 + 40, srcPort, dstPort);
+        return frame;
+    }
+
+    private static void put(byte[] frame, int offset, String[] octets) {
+        for (int i = 0; i < 4; i++) {
+            frame[offset + i] = (byte) Integer.parseInt(octets[i]);
+        }
+    }
+
+    private static void ports(byte[] frame, int offset, int srcPort, int dstPort) {
+        frame[offset] = (byte) (srcPort >> 8);
+        frame[offset + 1] = (byte) srcPort;
+        frame[offset + 2] = (byte) (dstPort >> 8);
+        frame[offset + 3] = (byte) dstPort;
+    }
+
+    private static boolean matches(String expression, byte[] frame) {
+        return PacketFilter.compile(expression).matches(frame);
+    }
+
+    @Test
+    void matchesProtocolsAndPorts() {
+        byte[] https = ipv4(TCP, "10.0.0.1", 50000, "10.0.0.2", 443);
+        byte[] dns = ipv4(UDP, "10.0.0.1", 50000, "10.0.0.2", 53);
+
+        assertTrue(matches("tcp port 443", https));
+        assertFalse(matches("tcp port 443", dns));
+        assertTrue(matches("udp dst port 53", dns));
+        assertFalse(matches("src port 53", dns));
+        assertTrue(matches("portrange 40000-60000", https));
+    }
+
+    @Test
+    void matchesHostsAndNetworks() {
+        byte[] frame = ipv4(TCP, "10.1.2.3", 50000, "192.168.7.9", 443);
+
+        assertTrue(matches("host 10.1.2.3", frame));
+        assertTrue(matches("10.1.2.3", frame));
+        assertTrue(matches("src host 10.1.2.3", frame));
+        assertFalse(matches("dst host 10.1.2.3", frame));
+        assertTrue(matches("net 10.1", frame));
+        assertTrue(matches("dst net 192.168.0.0/16", frame));
+        assertFalse(matches("src net 192.168.0.0/16", frame));
+        assertFalse(matches("net 10.1.3.0/24", frame));
+    }
+
+    @Test
+    void matchesIpv6Literals() {
+        byte[] frame = ipv6Udp(5353, 53);
+
+        assertTrue(matches("ip6 and host 2001:db8::1", frame));
+        assertTrue(matches("dst host 2001:db8:1:0:0:0:0:2", frame));
+        assertFalse(matches("dst host 2001:db8::1", frame));
+        assertTrue(matches("net 2001:db8::/32", frame));
+        assertFalse(matches("src net 2001:db8:1::/48", frame));
+        assertTrue(matches("udp port 53", frame));
+        assertFalse(matches("ip", frame));
+    }
+
+    @Test
+    void andBindsTighterThanOr() {
+        byte[] dns = ipv4(UDP, "10.0.0.1", 50000, "10.0.0.2", 53);
+        byte[] https = ipv4(TCP, "10.0.0.1", 50000, "10.0.0.2", 443);
+
+        // udp or (tcp and port 80)
+        assertTrue(matches("udp or tcp and port 80", dns));
+        assertFalse(matches("udp or tcp and port 80", https));
+        assertFalse(matches("(udp or tcp) and port 80", dns));
+        assertTrue(matches("tcp and port 80 || udp", dns));
+        assertTrue(matches("not udp and port 443", https));
+        assertFalse(matches("not (udp or port 443)", https));
+        assertTrue(matches("! udp && ! port 80", https));
+    }
+
+    @Test
+    void skipsVlanTags() {
+        byte[] tagged = ipv4(TCP, "10.0.0.1", 50000, "10.0.0.2", 443, 42);
+
+        assertTrue(matches("vlan 42 and tcp port 443", tagged));
+        assertFalse(matches("vlan 7", tagged));
+        assertTrue(matches("host 10.0.0.2", tagged));
+    }
+
+    @Test
+    void matchesFramesAfterAnotherHeader() {
+        byte[] tagged = ipv4(TCP, "10.0.0.1", 50000, "10.0.0.2", 443, 42);
+        tagged[6 + 5] = 0x01; // source MAC 00:00:00:00:00:01
+        // Behind an 8 byte header, as after a PPI header.
+        byte[] record = new byte[8 + tagged.length];
+        System.arraycopy(tagged, 0, record, 8, tagged.length);
+
+        assertTrue(PacketFilter.compile("vlan 42 and host 10.0.0.2").matchesEthernet(record, 8, tagged.length));
+        assertTrue(PacketFilter.compile("ether src 00:00:00:00:00:01").matchesEthernet(record, 8, tagged.length));
+        assertFalse(PacketFilter.compile("ether dst 00:00:00:00:00:01").matchesEthernet(record, 8, tagged.length));
+        assertFalse(PacketFilter.compile("tcp").matchesEthernet(record, record.length - 10, 10));
+    }
+
+    @Test
+    void lessAndGreaterCompareTheWireLength() {
+        byte[] frame = ipv4(TCP, "10.0.0.1", 50000, "10.0.0.2", 443);
+        PacketFilter greater = PacketFilter.compile("greater 1000");
+        PacketFilter less = PacketFilter.compile("less 100");
+
+        // Captured whole: the frame is short.
+        assertFalse(greater.matches(frame));
+        assertTrue(less.matches(frame));
+        // Cut by the snaplen: 1500 bytes on the wire.
+        assertTrue(greater.matches(frame, 1500));
+        assertFalse(less.matches(frame, 1500));
+        assertTrue(PacketFilter.compile("less 1500").matches(frame, 1500));
+    }
+
+    @Test
+    void rejectsInvalidExpressions() {
+        for (String expression : new String[]{"", "tcp port", "port 70000", "(tcp", "host 1.2.3", "net 10.0.0.0/33",
+                "host example.com", "host localhost:80", "host 2001:db8::1::2", "host 2001:db8::g",
+                "host 1:2:3:4:5:6:7:8:9", "host 1:2:3:4:5:6:7", "ether host 11:22"}) {
+            assertThrows(IllegalArgumentException.class, () -> PacketFilter.compile(expression), expression);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.packetboard.packetboard.Parser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PcapSplitterTest {
+    private static final int SNAPLEN = 65535;
+    private static final int RECORDS = 3000;
+    private static final int PAYLOAD = 1400;
+    private static final long START_SEC = 1_700_000_000L;
+
+    /**
+     * Write a capture of {@value #RECORDS} records with the given payloads.
+     *
+     * @return offsets of the record headers.
+     */
+    private static TreeSet<Long> write(Path file, IntFunction<byte[]> payload) throws IOException {
+        ByteBuffer out = ByteBuffer.allocate(PcapRecord.GLOBAL_HEADER_LENGTH
+                + RECORDS * (PcapRecord.HEADER_LENGTH + PAYLOAD)).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(SNAPLEN).putInt(1);
+        TreeSet<Long> starts = new TreeSet<>();
+        for (int i = 0; i < RECORDS; i++) {
+            starts.add((long) out.position());
+            out.putInt((int) (START_SEC + i / 100)).putInt(i % 100 * 10_000).putInt(PAYLOAD).putInt(PAYLOAD);
+            out.put(payload.apply(i));
+        }
+        Files.write(file, out.array());
+        return starts;
+    }
+
+    private static void assertBoundariesOnRecords(Path file, TreeSet<Long> starts) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] boundaries = PcapSplitter.split(channel, SNAPLEN, 4);
+
+            assertEquals(4, boundaries.length - 1);
+            assertEquals(PcapRecord.GLOBAL_HEADER_LENGTH, boundaries[0]);
+            assertEquals(channel.size(), boundaries[boundaries.length - 1]);
+            for (int i = 1; i < boundaries.length - 1; i++) {
+                assertTrue(starts.contains(boundaries[i]), "boundary " + boundaries[i] + " is not a record start");
+                assertTrue(boundaries[i] > boundaries[i - 1]);
+            }
+            // Resyncing from inside any record lands on the next one.
+            for (long from = starts.first() + 1; from < starts.first() + 3 * (PcapRecord.HEADER_LENGTH + PAYLOAD);
+                 from += 97) {
+                assertEquals(starts.higher(from - 1), PcapSplitter.resync(channel, from, channel.size(), SNAPLEN));
+            }
+        }
+    }
+
+    @Test
+    void splitsOnRecordStarts(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("random.pcap");
+        Random random = new Random(1);
+        TreeSet<Long> starts = write(file, i -> {
+            byte[] payload = new byte[PAYLOAD];
+            random.nextBytes(payload);
+            return payload;
+        });
+
+        assertBoundariesOnRecords(file, starts);
+    }
+
+    @Test
+    void skipsZeroFilledPayloads(@TempDir Path dir) throws IOException {
+        // Runs of zeros read as a chain of empty records at timestamp 0.
+        Path file = dir.resolve("zeros.pcap");
+        TreeSet<Long> starts = write(file, i -> new byte[PAYLOAD]);
+
+        assertBoundariesOnRecords(file, starts);
+    }
+
+    @Test
+    void skipsPayloadsHoldingRecordHeaders(@TempDir Path dir) throws IOException {
+        // Each payload carries headers like those of the capture, e.g. a pcap file being downloaded, with a few
+        // records of fake data between them.
+        Path file = dir.resolve("nested.pcap");
+        TreeSet<Long> starts = write(file, i -> {
+            ByteBuffer payload = ByteBuffer.allocate(PAYLOAD).order(ByteOrder.LITTLE_ENDIAN);
+            while (payload.remaining() >= PcapRecord.HEADER_LENGTH + 100) {
+                payload.putInt((int) (START_SEC + i / 100)).putInt(i % 100 * 10_000 + 1).putInt(100).putInt(100);
+                byte[] data = new byte[100];
+                Arrays.fill(data, (byte) 0xff);
+                payload.put(data);
+            }
+            return payload.array();
+        });
+
+        assertBoundariesOnRecords(file, starts);
+    }
+}
@@ -0,0 +1,130 @@
+package com.packetboard.packetboard.Parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PpiHeaderTest {
+    private static final int COMMON = 2;
+    private static final int MAC_PHY_EXT = 4;
+    private static final int UNKNOWN_FIELD = 30000;
+
+    /**
+     * 802.11-Common field: 5745 MHz at 54 Mbps, -42 dBm signal and -95 dBm noise, bad FCS.
+     */
+    private static byte[] common() {
+        byte[] field = new byte[20];
+        field[8] = 0x04; // flags: FCS invalid
+        field[10] = 108; // rate, 500 kbps units
+        field[12] = (byte) (5745 & 0xff);
+        field[13] = (byte) (5745 >> 8);
+        field[18] = -42;
+        field[19] = -95;
+        return field;
+    }
+
+    /**
+     * 802.11n MAC+PHY extension: HT40, short guard, last subframe of A-MPDU 0x01020304, MCS 15 over 2 streams.
+     */
+    private static byte[] macPhy() {
+        byte[] field = new byte[48];
+        field[0] = 0x02 | 0x04 | 0x10;
+        field[4] = 0x04;
+        field[5] = 0x03;
+        field[6] = 0x02;
+        field[7] = 0x01;
+        field[9] = 15;
+        field[10] = 2;
+        return field;
+    }
+
+    /**
+     * PPI header with fields given as type, data pairs, then a frame of 10 bytes.
+     */
+    private static byte[] ppi(boolean aligned, Object... fields) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new byte[]{0, (byte) (aligned ? 1 : 0), 0, 0, 105, 0, 0, 0});
+        for (int i = 0; i < fields.length; i += 2) {
+            int type = (Integer) fields[i];
+            byte[] data = (byte[]) fields[i + 1];
+            out.writeBytes(new byte[]{(byte) type, (byte) (type >> 8), (byte) data.length, (byte) (data.length >> 8)});
+            out.writeBytes(data);
+            while (aligned && out.size() % 4 != 0) {
+                out.write(0);
+            }
+        }
+        int length = out.size();
+        out.writeBytes(new byte[10]);
+        byte[] p = out.toByteArray();
+        p[2] = (byte) length;
+        p[3] = (byte) (length >> 8);
+        return p;
+    }
+
+    @Test
+    void readsTheCommonAndHtFields() {
+        byte[] p = ppi(false, COMMON, common(), MAC_PHY_EXT, macPhy());
+        PpiHeader header = PpiHeader.parse(p);
+
+        assertNotNull(header);
+        assertEquals(8 + 4 + 20 + 4 + 48, header.length());
+        assertEquals(PpiHeader.DLT_IEEE802_11, header.dlt());
+        assertTrue(header.hasRadio());
+        assertTrue(header.isFcsInvalid());
+        assertEquals(108, header.rate());
+        assertEquals(5745, header.channelFreq());
+        assertEquals(-42, header.signal());
+        assertEquals(-95, header.noise());
+        assertTrue(header.isHt());
+        assertTrue(header.isHt40());
+        assertTrue(header.isShortGuard());
+        assertTrue(header.isAggregate());
+        assertFalse(header.hasMoreAggregates());
+        assertEquals(0x01020304, header.aMpduId());
+        assertEquals(15, header.mcs());
+        assertEquals(2, header.streams());
+    }
+
+    @Test
+    void padsFieldsTo32BitsWhenAligned() {
+        // A 3 byte field first: the next field starts at 16 when aligned, at 15 when not.
+        byte[] aligned = ppi(true, UNKNOWN_FIELD, new byte[3], COMMON, common());
+        byte[] packed = ppi(false, UNKNOWN_FIELD, new byte[3], COMMON, common());
+
+        assertEquals(5745, PpiHeader.parse(aligned).channelFreq());
+        assertEquals(8 + 8 + 4 + 20, PpiHeader.parse(aligned).length());
+        assertEquals(5745, PpiHeader.parse(packed).channelFreq());
+        assertEquals(8 + 7 + 4 + 20, PpiHeader.parse(packed).length());
+    }
+
+    @Test
+    void skipsShortAndTruncatedFields() {
+        byte[] shortCommon = ppi(false, COMMON, new byte[19]);
+        byte[] truncated = ppi(false, COMMON, common());
+        truncated[2] -= 1; // The header ends inside the field.
+        byte[] noMcs = ppi(false, MAC_PHY_EXT, macPhy());
+        noMcs[8 + 4 + 9] = (byte) 255;
+
+        assertFalse(PpiHeader.parse(shortCommon).hasRadio());
+        assertFalse(PpiHeader.parse(truncated).hasRadio());
+        assertEquals(PpiHeader.UNKNOWN_MCS, PpiHeader.parse(noMcs).mcs());
+    }
+
+    @Test
+    void rejectsOtherVersionsAndBadLengths() {
+        byte[] version1 = ppi(false, COMMON, common());
+        version1[0] = 1;
+        byte[] tooLong = ppi(false, COMMON, common());
+        tooLong[3] = 1; // 256 bytes more than the record
+
+        assertNull(PpiHeader.parse(version1));
+        assertNull(PpiHeader.parse(tooLong));
+        assertNull(PpiHeader.parse(new byte[7]));
+    }
+}
@@ -0,0 +1,156 @@
+package com.packetboard.packetboard.Parser;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class QuicInitialTest {
+    private static final HexFormat HEX = HexFormat.of();
+
+    // RFC 9001 A.1: Destination Connection ID of the client's first Initial, and the client keys derived from it.
+    private static final byte[] DCID = HEX.parseHex("8394c8f03e515708");
+    private static final byte[] KEY = HEX.parseHex("1f369613dd76d5467730efcbe3b1a22d");
+    private static final byte[] IV = HEX.parseHex("fa044b2f42a3fd3b46fb255c");
+    private static final byte[] HP = HEX.parseHex("9f50449e04a0e810283a1e9933adedd2");
+
+    // RFC 9001 A.2: CRYPTO frame of the client Initial, a Client Hello for example.com.
+    static final byte[] CRYPTO_FRAME = HEX.parseHex("060040f1010000ed0303ebf8fa56f12939b9584a3896472ec40bb863cfd3e868"
+            + "04fe3a47f06a2b69484c00000413011302010000c000000010000e00000b6578616d706c652e636f6dff01000100000a0008"
+            + "0006001d0017001800100007000504616c706e000500050100000000003300260024001d00209370b2c9caa47fbabaf4559f"
+            + "edba753de171fa71f50f1ce15d43e994ec74d748002b0003020304000d0010000e0403050306030203080408050806002d00"
+            + "020101001c00024001003900320408ffffffffffffffff05048000ffff07048000ffff0801100104800075300901100f0883"
+            + "94c8f03e51570806048000ffff");
+
+    @Test
+    void decryptsTheRfc9001ClientInitial() throws Exception {
+        byte[] datagram = protect(2, 4, CRYPTO_FRAME);
+
+        // RFC 9001 A.2: the protected header, and the sample its mask is made from.
+        assertArrayEquals(HEX.parseHex("c000000001088394c8f03e5157080000449e7b9aec34"), Arrays.copyOf(datagram, 22));
+        assertArrayEquals(HEX.parseHex("d1b1c98dd7689fb8ec11d242b123dc9b"), Arrays.copyOfRange(datagram, 22, 38));
+
+        QuicInitial quic = new QuicInitial();
+        TlsClientHello hello = quic.clientHello(datagram, 0, datagram.length);
+        assertNotNull(hello);
+        assertEquals("example.com", TlsRecordSniffer.serverName(hello));
+        assertEquals(1, quic.getPackets());
+        assertEquals(1, quic.getHellos());
+    }
+
+    @Test
+    void reassemblesAHelloSplitOverPackets() throws Exception {
+        byte[] hello = Arrays.copyOfRange(CRYPTO_FRAME, 4, CRYPTO_FRAME.length);
+        byte[] first = cryptoFrame(0, Arrays.copyOf(hello, 100));
+        byte[] second = cryptoFrame(100, Arrays.copyOfRange(hello, 100, hello.length));
+
+        QuicInitial quic = new QuicInitial();
+        byte[] datagram = protect(0, 1, first);
+        assertNull(quic.clientHello(datagram, 0, datagram.length));
+        datagram = protect(1, 2, second);
+        TlsClientHello reassembled = quic.clientHello(datagram, 0, datagram.length);
+        assertNotNull(reassembled);
+        assertEquals("example.com", TlsRecordSniffer.serverName(reassembled));
+        assertEquals(2, quic.getPackets());
+    }
+
+    @Test
+    void ignoresPacketsThatDoNotDecrypt() throws Exception {
+        byte[] datagram = protect(2, 4, CRYPTO_FRAME);
+        datagram[100] ^= 1;
+
+        QuicInitial quic = new QuicInitial();
+        assertNull(quic.clientHello(datagram, 0, datagram.length));
+        assertEquals(0, quic.getPackets());
+        assertEquals(1, quic.getFailures());
+    }
+
+    @Test
+    void ignoresDatagramsTooShortForAClientInitial() throws Exception {
+        byte[] datagram = protect(2, 4, CRYPTO_FRAME);
+
+        QuicInitial quic = new QuicInitial();
+        assertNull(quic.clientHello(datagram, 0, datagram.length - 1));
+        assertEquals(0, quic.getPackets());
+        assertEquals(0, quic.getFailures());
+    }
+
+    @Test
+    void decodesTruncatedPacketNumbers() {
+        // RFC 9000 A.3 example.
+        assertEquals(0xa82f9b32L, QuicInitial.decodePacketNumber(0xa82f30eaL, 0x9b32, 16));
+        assertEquals(2, QuicInitial.decodePacketNumber(-1, 2, 32));
+        // Past the end of the window of the truncated value.
+        assertEquals(0x101, QuicInitial.decodePacketNumber(0xfe, 0x01, 8));
+        // A late packet from before the largest received.
+        assertEquals(0x1fe, QuicInitial.decodePacketNumber(0x201, 0xfe, 8));
+    }
+
+    private static byte[] cryptoFrame(int offset, byte[] data) {
+        byte[] frame = new byte[1 + 2 + 2 + data.length];
+        frame[0] = 0x06;
+        frame[1] = (byte) (0x40 | (offset >> 8));
+        frame[2] = (byte) offset;
+        frame[3] = (byte) (0x40 | (data.length >> 8));
+        frame[4] = (byte) data.length;
+        System.arraycopy(data, 0, frame, 5, data.length);
+        return frame;
+    }
+
+    /**
+     * Client Initial of the RFC 9001 A.2 connection, padded to 1200 bytes, protected as in RFC 9001 5.
+     *
+     * @param packetNumber full packet number.
+     * @param pnLength     bytes of the packet number sent.
+     * @param frames       frames of the payload, before padding.
+     */
+    private static byte[] protect(long packetNumber, int pnLength, byte[] frames) throws Exception {
+        int headerLength = 1 + 4 + 1 + DCID.length + 1 + 1 + 2 + pnLength;
+        byte[] payload = Arrays.copyOf(frames, 1200 - headerLength - 16);
+        int length = pnLength + payload.length + 16;
+
+        byte[] header = new byte[headerLength];
+        header[0] = (byte) (0xc0 | (pnLength - 1));
+        header[4] = 0x01; // version 1
+        header[5] = (byte) DCID.length;
+        System.arraycopy(DCID, 0, header, 6, DCID.length);
+        int i = 6 + DCID.length;
+        header[i++] = 0; // Source Connection ID length
+        header[i++] = 0; // Token length
+        header[i++] = (byte) (0x40 | (length >> 8));
+        header[i++] = (byte) length;
+        int pnOffset = i;
+        for (int k = 0; k < pnLength; k++) {
+            header[pnOffset + k] = (byte) (packetNumber >>> (8 * (pnLength - 1 - k)));
+        }
+
+        byte[] nonce = IV.clone();
+        for (int k = 0; k < 8; k++) {
+            nonce[nonce.length - 1 - k] ^= (byte) (packetNumber >>> (8 * k));
+        }
+        Cipher gcm = Cipher.getInstance("AES/GCM/NoPadding");
+        gcm.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(KEY, "AES"), new GCMParameterSpec(128, nonce));
+        gcm.updateAAD(header);
+        byte[] sealed = gcm.doFinal(payload);
+
+        Cipher ecb = Cipher.getInstance("AES/ECB/NoPadding");
+        ecb.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(HP, "AES"));
+        byte[] mask = ecb.doFinal(sealed, 4 - pnLength, 16);
+        header[0] ^= (byte) (mask[0] & 0x0f);
+        for (int k = 0; k < pnLength; k++) {
+            header[pnOffset + k] ^= mask[1 + k];
+        }
+
+        byte[] datagram = Arrays.copyOf(header, header.length + sealed.length);
+        System.arraycopy(sealed, 0, datagram, header.length, sealed.length);
+        return datagram;
+    }
+}
@@ -0,0 +1,135 @@
+package com.packetboard.packetboard.Parser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TlsRecordSnifferTest {
+    private static final HexFormat HEX = HexFormat.of();
+
+    // RFC 9001 A.2: Client Hello handshake message for example.com.
+    private static final byte[] HELLO = HEX.parseHex("010000ed0303ebf8fa56f12939b9584a3896472ec40bb863cfd3e868"
+            + "04fe3a47f06a2b69484c00000413011302010000c000000010000e00000b6578616d706c652e636f6dff01000100000a0008"
+            + "0006001d0017001800100007000504616c706e000500050100000000003300260024001d00209370b2c9caa47fbabaf4559f"
+            + "edba753de171fa71f50f1ce15d43e994ec74d748002b0003020304000d0010000e0403050306030203080408050806002d00"
+            + "020101001c00024001003900320408ffffffffffffffff05048000ffff07048000ffff0801100104800075300901100f0883"
+            + "94c8f03e51570806048000ffff");
+    // Offsets in HELLO
+    private static final int SESSION_ID_LENGTH = 38;
+    private static final int CIPHERS_LENGTH = 39;
+    private static final int EXTENSIONS_LENGTH = 47;
+    private static final int SNI_LENGTH = 51; // length of the first extension, server_name
+    private static final int SNI_NAME_LENGTH = 56; // length of the host name in the server_name list
+    private static final int BODY = TlsRecordSniffer.HANDSHAKE_HEADER_LENGTH;
+
+    /**
+     * The hello in a TLS record, after {@code prefix} bytes of something else and followed by {@code suffix} more.
+     */
+    private static byte[] record(byte[] hello, int prefix, int suffix) {
+        byte[] buf = new byte[prefix + TlsRecordSniffer.RECORD_HEADER_LENGTH + hello.length + suffix];
+        buf[prefix] = TlsRecordSniffer.CONTENT_TYPE_HANDSHAKE;
+        buf[prefix + 1] = 3;
+        buf[prefix + 2] = 1;
+        buf[prefix + 3] = (byte) (hello.length >> 8);
+        buf[prefix + 4] = (byte) hello.length;
+        System.arraycopy(hello, 0, buf, prefix + TlsRecordSniffer.RECORD_HEADER_LENGTH, hello.length);
+        return buf;
+    }
+
+    private static byte[] set(int offset, int... values) {
+        byte[] hello = HELLO.clone();
+        for (int i = 0; i < values.length; i++) {
+            hello[offset + i] = (byte) values[i];
+        }
+        return hello;
+    }
+
+    private static boolean consistent(byte[] hello) {
+        return TlsRecordSniffer.bodyIsConsistent(hello, BODY, hello.length);
+    }
+
+    @Test
+    void parsesAHelloAtAnOffset() {
+        byte[] buf = record(HELLO, 7, 0);
+        TlsClientHello hello = TlsRecordSniffer.parseClientHello(buf, 7, buf.length - 7);
+
+        assertNotNull(hello);
+        assertEquals("example.com", TlsRecordSniffer.serverName(hello));
+        assertEquals(HELLO.length - BODY, TlsRecordSniffer.clientHelloLength(buf, 7, buf.length - 7));
+        // Bytes after the record, e.g. a second record in the segment, are not part of the hello.
+        byte[] followed = record(HELLO, 3, 20);
+        assertNotNull(TlsRecordSniffer.parseClientHello(followed, 3, followed.length - 3));
+        assertNotNull(TlsRecordSniffer.parseClientHelloMessage(buf, 7 + 5, HELLO.length));
+    }
+
+    @Test
+    void rejectsTruncatedHellos() {
+        byte[] buf = record(HELLO, 7, 0);
+
+        assertNull(TlsRecordSniffer.parseClientHello(buf, 7, buf.length - 8));
+        assertNull(TlsRecordSniffer.parseClientHello(buf, 7, 20));
+        assertNull(TlsRecordSniffer.parseClientHelloMessage(HELLO, 0, HELLO.length - 1));
+        assertNull(TlsRecordSniffer.parseClientHello(buf, 8, buf.length - 8)); // not at a record start
+    }
+
+    @Test
+    void rejectsLyingRecordAndHandshakeLengths() {
+        byte[] shortRecord = record(HELLO, 0, 0);
+        shortRecord[4]--; // the handshake no longer fits the record
+        byte[] longHandshake = record(set(1, 0, 0, 0xee), 0, 0);
+        byte[] shortHandshake = record(set(1, 0, 0, 0xec), 0, 1);
+
+        assertEquals(-1, TlsRecordSniffer.clientHelloLength(shortRecord, 0, shortRecord.length));
+        assertEquals(-1, TlsRecordSniffer.clientHelloLength(longHandshake, 0, longHandshake.length));
+        // The hello body no longer ends where the extensions do.
+        assertEquals(-1, TlsRecordSniffer.clientHelloLength(shortHandshake, 0, shortHandshake.length));
+    }
+
+    @Test
+    void acceptsARecordLongerThanTheSegmentIfTheHelloFits() {
+        // The record goes on with more handshake data in the next segment.
+        byte[] buf = record(HELLO, 0, 0);
+        buf[3] = 0x10;
+
+        assertEquals(HELLO.length - BODY, TlsRecordSniffer.clientHelloLength(buf, 0, buf.length));
+    }
+
+    @Test
+    void checksTheBodyFieldsAddUp() {
+        assertTrue(consistent(HELLO));
+        assertFalse(consistent(set(BODY, 2))); // client version major
+        assertFalse(consistent(set(SESSION_ID_LENGTH, 255)));
+        assertFalse(consistent(set(CIPHERS_LENGTH, 0, 5))); // odd
+        assertFalse(consistent(set(CIPHERS_LENGTH, 0xff, 0xfe)));
+        assertFalse(consistent(set(EXTENSIONS_LENGTH, 0, 0xc1)));
+        assertFalse(consistent(set(EXTENSIONS_LENGTH, 0, 0xbf)));
+        assertFalse(consistent(set(SNI_LENGTH, 0, 0x11))); // runs past the other extensions
+        assertFalse(consistent(set(SNI_LENGTH, 0xff, 0xff)));
+    }
+
+    @Test
+    void acceptsHellosWithoutExtensions() {
+        // The hello cut after the compression methods, with its handshake length to match.
+        byte[] hello = new byte[EXTENSIONS_LENGTH];
+        System.arraycopy(HELLO, 0, hello, 0, hello.length);
+        hello[3] = (byte) (hello.length - BODY);
+
+        assertTrue(consistent(hello));
+        assertNotNull(TlsRecordSniffer.parseClientHelloMessage(hello, 0, hello.length));
+    }
+
+    @Test
+    void survivesLyingExtensionContents() {
+        // The host name claims more bytes than its extension has; the extension lengths still add up.
+        byte[] hello = set(SNI_NAME_LENGTH, 0, 0xff);
+
+        assertTrue(consistent(hello));
+        assertNull(TlsRecordSniffer.parseClientHelloMessage(hello, 0, hello.length));
+    }
+}
@@ -0,0 +1,43 @@
+package com.packetboard.packetboard;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class ShardCoordinatorTest {
+    @Test
+    void shardedWorkersMatchASingleProcessLoad(@TempDir Path dir) throws IOException {
+        Path capture = TestCaptures.tcpdump(dir);
+        List<ShardCoordinator.Shard> shards = ShardCoordinator.split(List.of(capture), Files.size(capture) / 2);
+        assertEquals(2, shards.size(), shards.toString());
+
+        PacketParser sharded;
+        try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            sharded = ShardCoordinator.run(shards, server, 2, false, false, 0);
+        }
+        PacketParser single = new PacketParser();
+        single.load(capture.toString(), false, false);
+
+        assertNotEquals(0, single.getIpv4Counts());
+        assertEquals(single.getIpv4Counts(), sharded.getIpv4Counts());
+        assertEquals(single.getIpv6Counts(), sharded.getIpv6Counts());
+        assertEquals(single.getFlows().size(), sharded.getFlows().size());
+        assertEquals(single.getLocalTopTalkers(10), sharded.getLocalTopTalkers(10));
+        assertEquals(single.getTopDest(), sharded.getTopDest());
+        assertEquals(single.getExternalHosts().estimate(), sharded.getExternalHosts().estimate());
+        long from = single.getThroughput().getStartMicros();
+        long to = single.getThroughput().getEndMicros();
+        assertArrayEquals(single.getThroughput().query(1, from, to, 1_000_000L),
+                sharded.getThroughput().query(1, from, to, 1_000_000L));
+    }
+}
@@ -0,0 +1,56 @@
+package com.packetboard.packetboard.Stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AddressTableTest {
+    private static final long HOST = 0x0200000000aaL;
+    private static final long ROUTER = 0x0200000000ffL;
+    private static final long SPOOFER = 0x0200000000eeL;
+
+    @Test
+    void routedHostsAreNotConflicts() {
+        AddressTable table = new AddressTable();
+        // 10.0.0.5 is seen directly, then behind the router, e.g. from another subnet.
+        table.observeFrame("10.0.0.5", HOST, 1);
+        table.observeFrame("10.0.0.5", ROUTER, 2);
+        table.observe("10.0.0.5", HOST, 3);
+
+        assertTrue(table.conflicts().isEmpty());
+        assertEquals(AddressTable.formatMac(HOST), table.macOf("10.0.0.5"));
+        assertEquals(1, table.bindingsOf("10.0.0.5").size());
+    }
+
+    @Test
+    void arpBindingsWithSeveralMacsAreConflicts() {
+        AddressTable table = new AddressTable();
+        table.observe("10.0.0.1", ROUTER, 1);
+        table.observe("10.0.0.1", SPOOFER, 2);
+
+        assertEquals(1, table.conflicts().size());
+        assertEquals(AddressTable.formatMac(SPOOFER), table.macOf("10.0.0.1"));
+    }
+
+    @Test
+    void frameBindingsStandInForIpsArpNeverAnnounced() throws IOException {
+        AddressTable table = new AddressTable();
+        table.observeFrame("192.168.1.20", HOST, 1);
+        table.observe("192.168.1.1", ROUTER, 2);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        table.writeTo(new DataOutputStream(bytes));
+        AddressTable read = AddressTable.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(2, read.size());
+        assertEquals(AddressTable.formatMac(HOST), read.macOf("192.168.1.20"));
+        assertEquals(AddressTable.formatMac(ROUTER), read.macOf("192.168.1.1"));
+    }
+}
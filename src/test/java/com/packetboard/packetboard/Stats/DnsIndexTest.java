@@ -0,0 +1,124 @@
+package com.packetboard.packetboard.Stats;
+
+import com.packetboard.packetboard.Parser.DnsMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DnsIndexTest {
+    private static final Function<byte[], String> FORMAT = Arrays::toString;
+    private static final byte[] IPV4 = {1, 2, 3, 4};
+    private static final byte[] IPV6 = {0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1};
+
+    /**
+     * DNS message without questions holding the given records, each an owner name followed by a CNAME target or an
+     * address.
+     */
+    private static DnsMessage message(int flags, Object... records) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        u2(out, 1);
+        u2(out, flags);
+        u2(out, 0);
+        u2(out, records.length / 2);
+        u2(out, 0);
+        u2(out, 0);
+        for (int i = 0; i < records.length; i += 2) {
+            name(out, (String) records[i]);
+            byte[] rdata;
+            int type;
+            if (records[i + 1] instanceof String target) {
+                ByteArrayOutputStream name = new ByteArrayOutputStream();
+                name(name, target);
+                rdata = name.toByteArray();
+                type = DnsMessage.TYPE_CNAME;
+            } else {
+                rdata = (byte[]) records[i + 1];
+                type = rdata.length == 4 ? DnsMessage.TYPE_A : DnsMessage.TYPE_AAAA;
+            }
+            u2(out, type);
+            u2(out, 1);
+            u2(out, 0);
+            u2(out, 60);
+            u2(out, rdata.length);
+            out.writeBytes(rdata);
+        }
+        byte[] bytes = out.toByteArray();
+        return DnsMessage.parse(bytes, 0, bytes.length);
+    }
+
+    private static DnsMessage response(Object... records) {
+        return message(0x8180, records);
+    }
+
+    private static void u2(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    private static void name(ByteArrayOutputStream out, String name) {
+        for (String label : name.split("\\.")) {
+            out.write(label.length());
+            out.writeBytes(label.getBytes(StandardCharsets.US_ASCII));
+        }
+        out.write(0);
+    }
+
+    @Test
+    void namesAddressesAfterTheQueriedName() {
+        DnsIndex index = new DnsIndex(FORMAT, FORMAT);
+
+        // Records out of chain order.
+        index.observe(response("edge.cdn.net", "a1.cdn.net", "a1.cdn.net", IPV4, "www.example.com", "edge.cdn.net",
+                "a1.cdn.net", IPV6));
+
+        assertEquals("www.example.com", index.nameOf(FORMAT.apply(IPV4)));
+        assertEquals("www.example.com", index.nameOf(FORMAT.apply(IPV6)));
+        assertEquals(1, index.getResponses());
+    }
+
+    @Test
+    void stopsWalkingCnameLoops() {
+        DnsIndex index = new DnsIndex(FORMAT, FORMAT);
+
+        index.observe(response("a.example.com", "b.example.com", "b.example.com", "a.example.com",
+                "b.example.com", IPV4));
+
+        // Named after one of the loop's names, whichever the walk stops at.
+        String name = index.nameOf(FORMAT.apply(IPV4));
+        assertTrue(name.equals("a.example.com") || name.equals("b.example.com"), name);
+    }
+
+    @Test
+    void ignoresQueriesAndFailedResponses() {
+        DnsIndex index = new DnsIndex(FORMAT, FORMAT);
+
+        index.observe(message(0x0100, "example.com", IPV4));
+        index.observe(message(0x8183, "example.com", IPV4)); // NXDOMAIN
+        index.observe(response());
+
+        assertNull(index.nameOf(FORMAT.apply(IPV4)));
+        assertEquals(0, index.size());
+        assertEquals(0, index.getResponses());
+    }
+
+    @Test
+    void keepsTheFirstNameWhenMerging() {
+        DnsIndex first = new DnsIndex(FORMAT, FORMAT);
+        first.observe(response("one.example.com", IPV4));
+        DnsIndex second = new DnsIndex(FORMAT, FORMAT);
+        second.observe(response("two.example.com", IPV4, "two.example.com", IPV6));
+
+        first.merge(second);
+
+        assertEquals("one.example.com", first.nameOf(FORMAT.apply(IPV4)));
+        assertEquals("two.example.com", first.nameOf(FORMAT.apply(IPV6)));
+        assertEquals(2, first.getResponses());
+    }
+}
@@ -0,0 +1,88 @@
+package com.packetboard.packetboard.Stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+
+    /**
+     * Add the IPv4 addresses numbered from (inclusive) to (exclusive).
+     */
+    private static void addRange(HyperLogLog sketch, int from, int to) {
+        for (int i = from; i < to; i++) {
+            sketch.add(new byte[]{10, (byte) (i >> 16), (byte) (i >> 8), (byte) i});
+        }
+    }
+
+    private static void assertWithin(long expected, HyperLogLog sketch, double standardErrors) {
+        double error = Math.abs(sketch.estimate() - expected) / (double) expected;
+        assertTrue(error <= standardErrors * sketch.standardError(),
+                "estimate " + sketch.estimate() + " for " + expected);
+    }
+
+    @Test
+    void estimatesWithinTheStandardError() {
+        for (int precision : new int[]{10, HyperLogLog.DEFAULT_PRECISION, 14}) {
+            HyperLogLog sketch = new HyperLogLog(precision);
+            addRange(sketch, 0, 200_000);
+            // Past 4 standard errors would be a broken estimator, not bad luck.
+            assertWithin(200_000, sketch, 4);
+        }
+    }
+
+    @Test
+    void isNearlyExactForFewKeys() {
+        HyperLogLog sketch = new HyperLogLog();
+        addRange(sketch, 0, 100);
+        addRange(sketch, 0, 100);
+
+        assertTrue(Math.abs(sketch.estimate() - 100) <= 2, "estimate " + sketch.estimate());
+        assertEquals(0, new HyperLogLog().estimate());
+    }
+
+    @Test
+    void mergeEqualsTheSketchOfTheUnion() {
+        HyperLogLog first = new HyperLogLog();
+        HyperLogLog second = new HyperLogLog();
+        HyperLogLog union = new HyperLogLog();
+        addRange(first, 0, 60_000);
+        addRange(second, 40_000, 100_000);
+        addRange(union, 0, 100_000);
+        long secondEstimate = second.estimate();
+
+        first.merge(second);
+
+        assertEquals(union.estimate(), first.estimate());
+        assertEquals(secondEstimate, second.estimate());
+        assertWithin(100_000, first, 4);
+    }
+
+    @Test
+    void rejectsMismatchedPrecisions() {
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(3));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(19));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(12).merge(new HyperLogLog(14)));
+    }
+
+    @Test
+    void roundTripsThroughAStream() throws IOException {
+        HyperLogLog sketch = new HyperLogLog(10);
+        addRange(sketch, 0, 5000);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sketch.writeTo(new DataOutputStream(bytes));
+        HyperLogLog read = HyperLogLog.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(10, read.getPrecision());
+        assertEquals(sketch.estimate(), read.estimate());
+    }
+}
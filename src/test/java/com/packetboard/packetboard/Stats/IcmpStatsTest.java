@@ -0,0 +1,79 @@
+package com.packetboard.packetboard.Stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IcmpStatsTest {
+    private static final Function<byte[], String> FORMAT = Arrays::toString;
+    private static final byte[] HOST = {10, 0, 0, 1};
+    private static final byte[] SERVER = {(byte) 192, 0, 2, 1};
+
+    private static byte[] echo(int type, int id, int seq) {
+        return new byte[]{(byte) type, 0, 0, 0, (byte) (id >> 8), (byte) id, (byte) (seq >> 8), (byte) seq};
+    }
+
+    private static IcmpStats roundTrip(IcmpStats stats) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        stats.writeTo(new DataOutputStream(bytes));
+        return IcmpStats.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), FORMAT);
+    }
+
+    @Test
+    void matchesRepliesInEitherOrder() {
+        IcmpStats stats = new IcmpStats(FORMAT);
+        stats.add(echo(IcmpStats.TYPE_ECHO, 1, 1), HOST, SERVER, 1000);
+        stats.add(echo(IcmpStats.TYPE_ECHO_REPLY, 1, 1), SERVER, HOST, 1500);
+        // A reply decoded before its request, as with concurrently decoded ranges.
+        stats.add(echo(IcmpStats.TYPE_ECHO_REPLY, 1, 2), SERVER, HOST, 2600);
+        stats.add(echo(IcmpStats.TYPE_ECHO, 1, 2), HOST, SERVER, 2000);
+
+        assertEquals(2, stats.getExchanges());
+        assertEquals(550, stats.getMeanRtt());
+        assertEquals(600, stats.getMaxRtt());
+        assertEquals(0, stats.getPending());
+    }
+
+    @Test
+    void matchesPingsAcrossMergedCaptures() throws IOException {
+        IcmpStats first = new IcmpStats(FORMAT);
+        first.add(echo(IcmpStats.TYPE_ECHO, 7, 1), HOST, SERVER, 1000);
+        first.add(echo(IcmpStats.TYPE_ECHO, 7, 2), HOST, SERVER, 2000);
+        IcmpStats second = new IcmpStats(FORMAT);
+        second.add(echo(IcmpStats.TYPE_ECHO_REPLY, 7, 1), SERVER, HOST, 1300);
+
+        // Pending echoes survive a snapshot, then meet their counterpart when merged.
+        IcmpStats saved = roundTrip(first);
+        assertEquals(2, saved.getPendingRequests());
+        saved.merge(roundTrip(second));
+
+        assertEquals(1, saved.getExchanges());
+        assertEquals(300, saved.getMaxRtt());
+        assertEquals(1, saved.getPendingRequests());
+        assertEquals(3, saved.messages(IcmpStats.TYPE_ECHO) + saved.messages(IcmpStats.TYPE_ECHO_REPLY));
+    }
+
+    @Test
+    void expiresRequestsLeftWithoutReply() {
+        IcmpStats stats = new IcmpStats(FORMAT);
+        stats.add(echo(IcmpStats.TYPE_ECHO, 3, 1), HOST, SERVER, 1_000_000);
+        stats.add(echo(IcmpStats.TYPE_ECHO_REPLY, 3, 9), SERVER, HOST, 2_000_000);
+        stats.add(echo(IcmpStats.TYPE_ECHO, 3, 2), HOST, SERVER, 100_000_000);
+
+        stats.expireRequests(120_000_000);
+
+        // The first request is over a minute old; the reply may belong to a request in the previous file.
+        assertEquals(1, stats.getUnanswered());
+        assertEquals(1, stats.getPendingRequests());
+        assertEquals(2, stats.getPending());
+        assertEquals(0, stats.getUnmatched());
+    }
+}
@@ -0,0 +1,147 @@
+package com.packetboard.packetboard.Stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpaceSavingTest {
+    private static final int CAPACITY = 50;
+
+    /**
+     * Skewed stream over 2000 keys: key i has weight about 1 / (i + 1).
+     */
+    private static void feed(SpaceSaving summary, Map<String, Long> truth, long seed, int events) {
+        Random random = new Random(seed);
+        for (int i = 0; i < events; i++) {
+            int key = (int) Math.floor(Math.pow(2000, random.nextDouble())) - 1;
+            long weight = 1 + random.nextInt(1500);
+            summary.add("10.0." + key / 256 + "." + key % 256, weight);
+            truth.merge("10.0." + key / 256 + "." + key % 256, weight, Long::sum);
+        }
+    }
+
+    /**
+     * Check the Space-Saving guarantees of a summary against the true weights.
+     */
+    private static void assertBounds(SpaceSaving summary, Map<String, Long> truth) {
+        long total = truth.values().stream().mapToLong(Long::longValue).sum();
+        assertEquals(total, summary.getTotal());
+        assertEquals(CAPACITY, summary.size());
+        assertTrue(summary.errorBound() <= total / CAPACITY, "bound " + summary.errorBound());
+
+        List<SpaceSaving.Counter> top = summary.top(CAPACITY);
+        for (SpaceSaving.Counter counter : top) {
+            long weight = truth.getOrDefault(counter.key(), 0L);
+            assertTrue(counter.count() >= weight, counter.key());
+            assertTrue(counter.guaranteed() <= weight, counter.key());
+            assertTrue(counter.error() <= summary.errorBound(), counter.key());
+        }
+        for (Map.Entry<String, Long> entry : truth.entrySet()) {
+            if (entry.getValue() > summary.errorBound()) {
+                assertTrue(summary.count(entry.getKey()) >= entry.getValue(), entry.getKey());
+            }
+        }
+    }
+
+    @Test
+    void keepsTheHeaviestKeysWithinTheErrorBound() {
+        SpaceSaving summary = new SpaceSaving(CAPACITY);
+        HashMap<String, Long> truth = new HashMap<>();
+        feed(summary, truth, 1, 100_000);
+
+        assertBounds(summary, truth);
+        // The heaviest key is far above the bound, so it ranks first.
+        String heaviest = truth.entrySet().stream().max(Map.Entry.comparingByValue()).orElseThrow().getKey();
+        assertEquals(heaviest, summary.top(1).get(0).key());
+    }
+
+    @Test
+    void isExactBelowCapacity() {
+        SpaceSaving summary = new SpaceSaving(CAPACITY);
+        for (int i = 1; i < CAPACITY; i++) {
+            summary.add("key" + i, i);
+            summary.add("key" + i, i);
+        }
+
+        assertEquals(0, summary.errorBound());
+        assertEquals(2 * (CAPACITY - 1), summary.count("key" + (CAPACITY - 1)));
+        assertEquals(0, summary.top(CAPACITY).get(0).error());
+    }
+
+    @Test
+    void mergesWithTheSameGuarantees() {
+        SpaceSaving first = new SpaceSaving(CAPACITY);
+        SpaceSaving second = new SpaceSaving(CAPACITY);
+        HashMap<String, Long> truth = new HashMap<>();
+        feed(first, truth, 2, 50_000);
+        feed(second, truth, 3, 50_000);
+
+        long secondTotal = second.getTotal();
+        first.merge(second);
+
+        assertBounds(first, truth);
+        // The other summary is left unchanged.
+        assertEquals(secondTotal, second.getTotal());
+        assertEquals(CAPACITY, second.size());
+    }
+
+    @Test
+    void shardedSummariesFoldIntoOne() throws InterruptedException {
+        ShardedSpaceSaving sharded = new ShardedSpaceSaving(CAPACITY);
+        HashMap<String, Long> truth = new HashMap<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    sharded.add("key" + i % 20, 1);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < 20; i++) {
+            truth.put("key" + i, 200L);
+        }
+
+        // Read while the thread summaries are still apart, then after folding.
+        assertEquals(20, sharded.top(CAPACITY).size());
+        sharded.fold();
+        for (SpaceSaving.Counter counter : sharded.top(CAPACITY)) {
+            assertEquals(truth.get(counter.key()), counter.count());
+            assertEquals(0, counter.error());
+        }
+    }
+
+    @Test
+    void roundTripsThroughAStream() throws IOException {
+        SpaceSaving summary = new SpaceSaving(CAPACITY);
+        feed(summary, new HashMap<>(), 4, 10_000);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        summary.writeTo(new DataOutputStream(bytes));
+        SpaceSaving read = SpaceSaving.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(summary.getTotal(), read.getTotal());
+        assertEquals(summary.errorBound(), read.errorBound());
+        List<SpaceSaving.Counter> expected = summary.top(CAPACITY);
+        List<SpaceSaving.Counter> actual = read.top(CAPACITY);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).key(), actual.get(i).key());
+            assertEquals(expected.get(i).count(), actual.get(i).count());
+            assertEquals(expected.get(i).error(), actual.get(i).error());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.packetboard.packetboard.Stats;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ThroughputSeriesTest {
+    private static final long SECOND = 1_000_000L;
+    private static final long START = 1_700_000_000L * SECOND;
+
+    private static ThroughputSeries roundTrip(ThroughputSeries series) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        series.writeTo(new DataOutputStream(bytes));
+        return ThroughputSeries.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    void admittedTalkersCountTheirPacketOnce() {
+        ThroughputSeries series = new ThroughputSeries(SECOND);
+        for (int i = 0; i < ThroughputSeries.MAX_TRACKED_HOSTS; i++) {
+            series.addTalker(START, "10.0.0." + i, 200);
+        }
+        // Admitted on its second packet, with 300 bytes so far.
+        series.addTalker(START, "10.0.1.1", 150);
+        series.addTalker(START + SECOND, "10.0.1.1", 150);
+        assertNotNull(series.queryTalker("10.0.1.1", START, START + 2 * SECOND, SECOND));
+        for (int i = 1; i < ThroughputSeries.MAX_TRACKED_HOSTS; i++) {
+            series.addTalker(START, "10.0.0." + i, 300);
+        }
+
+        // 400 bytes outweigh the 300 of the lightest talker, not 450 had its second packet been counted twice.
+        series.addTalker(START, "10.0.2.2", 400);
+
+        assertNotNull(series.queryTalker("10.0.2.2", START, START + SECOND, SECOND));
+        assertNull(series.queryTalker("10.0.1.1", START, START + 2 * SECOND, SECOND));
+    }
+
+    @Test
+    void roundTripsColumnsThatStayEmpty() throws IOException {
+        ThroughputSeries series = new ThroughputSeries(SECOND);
+        series.add(START, false, 6, 1500);
+        series.add(START + 2 * SECOND, false, 6, 40);
+        series.add(START + 5000 * SECOND, false, 6, 100); // another chunk
+        series.addTalker(START, "10.0.0.1", 1500);
+
+        ThroughputSeries read = roundTrip(series);
+
+        long end = START + 5001 * SECOND;
+        for (int column = 0; column < ThroughputSeries.COLUMN_NAMES.length; column++) {
+            assertArrayEquals(series.query(column, START, end, SECOND), read.query(column, START, end, SECOND));
+        }
+        assertArrayEquals(new long[]{1540, 0, 100}, read.query(ThroughputSeries.TCP, START, end, 2000 * SECOND));
+        assertArrayEquals(new long[]{0}, read.query(ThroughputSeries.IPV6, START, end, end - START));
+        assertArrayEquals(new long[]{1500, 0}, read.queryTalker("10.0.0.1", START, START + 2 * SECOND, SECOND));
+    }
+}
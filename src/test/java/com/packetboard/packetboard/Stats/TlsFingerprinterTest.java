@@ -0,0 +1,107 @@
+package com.packetboard.packetboard.Stats;
+
+import com.packetboard.packetboard.Parser.TlsClientHello;
+import com.packetboard.packetboard.Parser.TlsRecordSniffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TlsFingerprinterTest {
+    private static final HexFormat HEX = HexFormat.of();
+
+    // RFC 9001 A.2: Client Hello handshake message for example.com, with ALPN "alpn".
+    private static final byte[] HELLO = HEX.parseHex("010000ed0303ebf8fa56f12939b9584a3896472ec40bb863cfd3e868"
+            + "04fe3a47f06a2b69484c00000413011302010000c000000010000e00000b6578616d706c652e636f6dff01000100000a0008"
+            + "0006001d0017001800100007000504616c706e000500050100000000003300260024001d00209370b2c9caa47fbabaf4559f"
+            + "edba753de171fa71f50f1ce15d43e994ec74d748002b0003020304000d0010000e0403050306030203080408050806002d00"
+            + "020101001c00024001003900320408ffffffffffffffff05048000ffff07048000ffff0801100104800075300901100f0883"
+            + "94c8f03e51570806048000ffff");
+    private static final int CIPHERS_LENGTH = 39; // offset of the cipher suites length in HELLO
+    private static final int EXTENSIONS_LENGTH = 47; // offset of the extensions length in HELLO
+
+    // JA3 string 771,4865-4866,0-65281-10-16-5-51-43-13-45-28-57,29-23-24, and its MD5.
+    private static final String JA3 = "41bc9ae914d6cb3bd0bd0a5453ab7d7f";
+    private static final String JA4_QUIC = "q13d0211an_62ed6f6ca7ad_4d634acda6c0";
+    private static final String JA4_TCP = "t13d0211an_62ed6f6ca7ad_4d634acda6c0";
+
+    private static TlsClientHello parse(byte[] message) {
+        TlsClientHello hello = TlsRecordSniffer.parseClientHelloMessage(message, 0, message.length);
+        assertNotNull(hello);
+        return hello;
+    }
+
+    /**
+     * Insert bytes into the hello, growing the length field at {@code lengthOffset} and the handshake length.
+     */
+    private static byte[] insert(byte[] message, int at, int lengthOffset, byte[] bytes) {
+        byte[] grown = new byte[message.length + bytes.length];
+        System.arraycopy(message, 0, grown, 0, at);
+        System.arraycopy(bytes, 0, grown, at, bytes.length);
+        System.arraycopy(message, at, grown, at + bytes.length, message.length - at);
+        int handshake = ((grown[1] & 0xff) << 16 | (grown[2] & 0xff) << 8 | grown[3] & 0xff) + bytes.length;
+        grown[1] = (byte) (handshake >> 16);
+        grown[2] = (byte) (handshake >> 8);
+        grown[3] = (byte) handshake;
+        int length = ((grown[lengthOffset] & 0xff) << 8 | grown[lengthOffset + 1] & 0xff) + bytes.length;
+        grown[lengthOffset] = (byte) (length >> 8);
+        grown[lengthOffset + 1] = (byte) length;
+        return grown;
+    }
+
+    @Test
+    void fingerprintsTheRfc9001ClientHello() {
+        FingerprintTable table = new FingerprintTable();
+
+        int quic = TlsFingerprinter.fingerprint(parse(HELLO), true, table, "10.0.0.1", 7);
+        int tcp = TlsFingerprinter.fingerprint(parse(HELLO), false, table, "10.0.0.1", -1);
+
+        assertEquals(JA3, table.getJa3(quic));
+        assertEquals(JA4_QUIC, table.getJa4(quic));
+        assertEquals(JA3, table.getJa3(tcp));
+        assertEquals(JA4_TCP, table.getJa4(tcp));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    void countsRepeatedHellosUnderOneId() {
+        FingerprintTable table = new FingerprintTable();
+
+        int first = TlsFingerprinter.fingerprint(parse(HELLO), true, table, "10.0.0.1", 1);
+        int second = TlsFingerprinter.fingerprint(parse(HELLO), true, table, "10.0.0.2", 2);
+
+        assertEquals(first, second);
+        assertEquals(2, table.count(first));
+        assertEquals(2, table.hostsFor(first));
+        assertEquals(2, table.flowsFor(first));
+    }
+
+    @Test
+    void ignoresGreaseValues() {
+        // A GREASE extension at the front of the extensions, then a GREASE cipher suite at the front of the ciphers.
+        byte[] greased = insert(HELLO, EXTENSIONS_LENGTH + 2, EXTENSIONS_LENGTH, HEX.parseHex("1a1a0000"));
+        greased = insert(greased, CIPHERS_LENGTH + 2, CIPHERS_LENGTH, HEX.parseHex("0a0a"));
+        FingerprintTable table = new FingerprintTable();
+
+        int plain = TlsFingerprinter.fingerprint(parse(HELLO), true, table, null, -1);
+        int grease = TlsFingerprinter.fingerprint(parse(greased), true, table, null, -1);
+
+        assertEquals(plain, grease);
+        assertEquals(JA3, table.getJa3(grease));
+        assertEquals(JA4_QUIC, table.getJa4(grease));
+    }
+
+    @Test
+    void recognisesGreaseValues() {
+        for (int i = 0; i < 16; i++) {
+            assertTrue(TlsFingerprinter.isGrease(i << 12 | 0x0a00 | i << 4 | 0x0a));
+        }
+        assertFalse(TlsFingerprinter.isGrease(0x0a1a));
+        assertFalse(TlsFingerprinter.isGrease(0x1301));
+        assertFalse(TlsFingerprinter.isGrease(0x0000));
+    }
+}
@@ -0,0 +1,51 @@
+package com.packetboard.packetboard.Stats;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VlanStatsTest {
+    @Test
+    void foldsTheCountsOfEveryThread() throws InterruptedException {
+        VlanStats stats = new VlanStats();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int frame = 0; frame < 1000; frame++) {
+                    stats.add(frame % 2 == 0 ? 10 : -1, 3, -1, 100);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Read before and after the fold.
+        assertEquals(2000, stats.packets(10));
+        stats.fold();
+        assertEquals(2000, stats.packets(10));
+        assertEquals(200_000, stats.bytes(10));
+        assertEquals(2000, stats.untaggedPackets());
+        assertEquals(2000, stats.priorityPackets(3));
+    }
+
+    @Test
+    void keepsCountingAfterAFold() {
+        VlanStats stats = new VlanStats();
+        stats.add(7, 0, 100, 60);
+        stats.fold();
+
+        // The same thread counts into new counts once its old ones are folded.
+        stats.add(7, 0, 100, 60);
+        stats.add(8, 0, -1, 60);
+
+        assertEquals(2, stats.packets(7));
+        assertEquals(2, stats.servicePackets(100));
+        stats.fold();
+        assertArrayEquals(new int[]{7, 8}, stats.vlans());
+        assertArrayEquals(new int[]{100}, stats.serviceVlans());
+        assertEquals(3, stats.priorityPackets(0));
+    }
+}
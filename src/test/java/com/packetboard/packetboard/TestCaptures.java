@@ -0,0 +1,39 @@
+package com.packetboard.packetboard;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Captures shipped with the application, for tests that load a whole file.
+ */
+final class TestCaptures {
+    private static final Path TCPDUMP = Path.of("src/main/resources/tcpdump.pcap"); // big-endian
+
+    private TestCaptures() {
+    }
+
+    /**
+     * Copy of the bundled tcpdump.pcap in a directory, as a little-endian file: the only byte order the parser reads.
+     */
+    static Path tcpdump(Path dir) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(TCPDUMP)).order(ByteOrder.BIG_ENDIAN);
+        ByteBuffer out = ByteBuffer.allocate(in.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(in.getInt()).putShort(in.getShort()).putShort(in.getShort());
+        for (int i = 0; i < 4; i++) {
+            out.putInt(in.getInt()); // thiszone, sigfigs, snaplen, network
+        }
+        while (in.hasRemaining()) {
+            for (int i = 0; i < 3; i++) {
+                out.putInt(in.getInt()); // ts_sec, ts_usec, incl_len
+            }
+            int length = in.getInt(in.position() - 4);
+            out.putInt(in.getInt()); // orig_len
+            out.put(in.array(), in.position(), length);
+            in.position(in.position() + length);
+        }
+        return Files.write(dir.resolve("tcpdump.pcap"), out.array());
+    }
+}